@@ -0,0 +1,99 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ChunkingService#chunk} on representative inputs. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="ChunkingServiceBenchmark -prof gc"};
+ * add {@code -jvmArgs -Dtokenizer.vocab=file:/path/to/vocab.txt} to measure WordPiece counting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkingServiceBenchmark {
+
+    private static final String[] WORDS = {
+        "the", "retrieval", "index", "stores", "chunks", "of", "each", "document", "with",
+        "embeddings", "and", "a", "heading", "so", "answers", "can", "cite", "their", "source"
+    };
+
+    /** smallNote: ~500 chars; largeMarkdown: ~2 MB of headed sections; giantParagraph: ~2 MB without line breaks */
+    @Param({"smallNote", "largeMarkdown", "giantParagraph"})
+    public String input;
+
+    private ChunkingService chunkingService;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setTokenizerVocab(System.getProperty("tokenizer.vocab", properties.getIngestion().getTokenizerVocab()));
+        chunkingService = new ChunkingService(properties, new EmbeddingTokenizer(properties));
+        Random random = new Random(7);
+        text = switch (input) {
+            case "smallNote" -> sentences(random, 6);
+            case "largeMarkdown" -> markdown(random, 2_000_000);
+            case "giantParagraph" -> sentences(random, 25_000);
+            default -> throw new IllegalArgumentException(input);
+        };
+    }
+
+    @Benchmark
+    public List<ChunkingService.TextChunk> chunk() {
+        return chunkingService.chunk(text, "benchmark");
+    }
+
+    private static String markdown(Random random, int targetChars) {
+        StringBuilder sb = new StringBuilder(targetChars + 1024);
+        int section = 0;
+        while (sb.length() < targetChars) {
+            sb.append("## Section ").append(++section).append("\n\n");
+            int paragraphs = 1 + random.nextInt(6);
+            for (int p = 0; p < paragraphs; p++) {
+                if (random.nextInt(4) == 0) {
+                    for (int item = 0; item < 4; item++) {
+                        sb.append("- ").append(sentences(random, 1)).append('\n');
+                    }
+                } else {
+                    sb.append(sentences(random, 2 + random.nextInt(8)));
+                }
+                sb.append("\n\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String sentences(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < count; s++) {
+            if (s > 0) sb.append(' ');
+            int words = 6 + random.nextInt(14);
+            for (int w = 0; w < words; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                if (w == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                else sb.append(' ');
+                sb.append(word);
+            }
+            sb.append('.');
+        }
+        return sb.toString();
+    }
+}
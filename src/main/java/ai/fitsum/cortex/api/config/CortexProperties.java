@@ -2,7 +2,9 @@ package ai.fitsum.cortex.api.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -54,7 +56,30 @@ public class CortexProperties {
     public static class Ingestion {
         private int chunkSizeTokens = 400;
         private int chunkOverlapPercent = 15;
+        private String tokenizerVocab = "";
+        private int embeddingMaxTokens = 512;
         private int batchSize = 50;
+        private DataSize streamingThreshold = DataSize.ofMegabytes(16);
+        private String stagingDir = "";
+        private boolean sharedStaging = false;
+        private int queueWorkers = 4;
+        private int queueMaxAttempts = 5;
+        private Duration queueRetryBackoff = Duration.ofSeconds(5);
+        private Duration queueLeaseDuration = Duration.ofMinutes(2);
+        private Duration queuePollInterval = Duration.ofSeconds(1);
+        private Duration queueMaintenanceInterval = Duration.ofSeconds(30);
+        private Duration queueRetention = Duration.ofDays(7);
+        private int connectorConcurrency = 4;
+        private int connectorCheckpointInterval = 100;
+        private int archiveConcurrency = 4;
+        private int archiveMaxEntries = 100_000;
+        private NearDuplicateMode nearDuplicates = NearDuplicateMode.OFF;
+        private double nearDuplicateThreshold = 0.9;
+        private Duration purgeInterval = Duration.ofSeconds(30);
+        private int purgeBatchSize = 1000;
+        private Duration purgePause = Duration.ofMillis(200);
+
+        public enum NearDuplicateMode { OFF, LINK, SKIP }
         
         public int getChunkSizeTokens() { return chunkSizeTokens; }
         public void setChunkSizeTokens(int chunkSizeTokens) { this.chunkSizeTokens = chunkSizeTokens; }
@@ -62,8 +87,71 @@ public class CortexProperties {
         public int getChunkOverlapPercent() { return chunkOverlapPercent; }
         public void setChunkOverlapPercent(int chunkOverlapPercent) { this.chunkOverlapPercent = chunkOverlapPercent; }
         
+        public String getTokenizerVocab() { return tokenizerVocab; }
+        public void setTokenizerVocab(String tokenizerVocab) { this.tokenizerVocab = tokenizerVocab; }
+        
+        public int getEmbeddingMaxTokens() { return embeddingMaxTokens; }
+        public void setEmbeddingMaxTokens(int embeddingMaxTokens) { this.embeddingMaxTokens = embeddingMaxTokens; }
+        
         public int getBatchSize() { return batchSize; }
         public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        
+        public DataSize getStreamingThreshold() { return streamingThreshold; }
+        public void setStreamingThreshold(DataSize streamingThreshold) { this.streamingThreshold = streamingThreshold; }
+        
+        public String getStagingDir() { return stagingDir; }
+        public void setStagingDir(String stagingDir) { this.stagingDir = stagingDir; }
+        
+        public boolean isSharedStaging() { return sharedStaging; }
+        public void setSharedStaging(boolean sharedStaging) { this.sharedStaging = sharedStaging; }
+        
+        public int getQueueWorkers() { return queueWorkers; }
+        public void setQueueWorkers(int queueWorkers) { this.queueWorkers = queueWorkers; }
+        
+        public int getQueueMaxAttempts() { return queueMaxAttempts; }
+        public void setQueueMaxAttempts(int queueMaxAttempts) { this.queueMaxAttempts = queueMaxAttempts; }
+        
+        public Duration getQueueRetryBackoff() { return queueRetryBackoff; }
+        public void setQueueRetryBackoff(Duration queueRetryBackoff) { this.queueRetryBackoff = queueRetryBackoff; }
+        
+        public Duration getQueueLeaseDuration() { return queueLeaseDuration; }
+        public void setQueueLeaseDuration(Duration queueLeaseDuration) { this.queueLeaseDuration = queueLeaseDuration; }
+        
+        public Duration getQueuePollInterval() { return queuePollInterval; }
+        public void setQueuePollInterval(Duration queuePollInterval) { this.queuePollInterval = queuePollInterval; }
+        
+        public Duration getQueueMaintenanceInterval() { return queueMaintenanceInterval; }
+        public void setQueueMaintenanceInterval(Duration queueMaintenanceInterval) { this.queueMaintenanceInterval = queueMaintenanceInterval; }
+        
+        public Duration getQueueRetention() { return queueRetention; }
+        public void setQueueRetention(Duration queueRetention) { this.queueRetention = queueRetention; }
+        
+        public int getConnectorConcurrency() { return connectorConcurrency; }
+        public void setConnectorConcurrency(int connectorConcurrency) { this.connectorConcurrency = connectorConcurrency; }
+        
+        public int getConnectorCheckpointInterval() { return connectorCheckpointInterval; }
+        public void setConnectorCheckpointInterval(int connectorCheckpointInterval) { this.connectorCheckpointInterval = connectorCheckpointInterval; }
+        
+        public int getArchiveConcurrency() { return archiveConcurrency; }
+        public void setArchiveConcurrency(int archiveConcurrency) { this.archiveConcurrency = archiveConcurrency; }
+        
+        public int getArchiveMaxEntries() { return archiveMaxEntries; }
+        public void setArchiveMaxEntries(int archiveMaxEntries) { this.archiveMaxEntries = archiveMaxEntries; }
+        
+        public NearDuplicateMode getNearDuplicates() { return nearDuplicates; }
+        public void setNearDuplicates(NearDuplicateMode nearDuplicates) { this.nearDuplicates = nearDuplicates; }
+        
+        public double getNearDuplicateThreshold() { return nearDuplicateThreshold; }
+        public void setNearDuplicateThreshold(double nearDuplicateThreshold) { this.nearDuplicateThreshold = nearDuplicateThreshold; }
+        
+        public Duration getPurgeInterval() { return purgeInterval; }
+        public void setPurgeInterval(Duration purgeInterval) { this.purgeInterval = purgeInterval; }
+        
+        public int getPurgeBatchSize() { return purgeBatchSize; }
+        public void setPurgeBatchSize(int purgeBatchSize) { this.purgeBatchSize = purgeBatchSize; }
+        
+        public Duration getPurgePause() { return purgePause; }
+        public void setPurgePause(Duration purgePause) { this.purgePause = purgePause; }
     }
     
     public static class Security {
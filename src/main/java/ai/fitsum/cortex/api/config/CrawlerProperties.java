@@ -0,0 +1,51 @@
+package ai.fitsum.cortex.api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "cortex.crawler")
+public class CrawlerProperties {
+
+    private boolean enabled = false;
+    private List<String> seeds = List.of();
+    private List<String> sitemaps = List.of();
+    private Duration interval = Duration.ofHours(6);
+    private int maxDepth = 2;
+    private int maxPages = 10000;
+    private int maxConcurrency = 64;
+    private int perHostConcurrency = 4;
+    private int ingestConcurrency = 4;
+    private Duration timeout = Duration.ofSeconds(20);
+    private DataSize maxPageSize = DataSize.ofMegabytes(10);
+    private String userAgent = "FitsumCortexBot/1.0";
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public List<String> getSeeds() { return seeds; }
+    public void setSeeds(List<String> seeds) { this.seeds = seeds; }
+    public List<String> getSitemaps() { return sitemaps; }
+    public void setSitemaps(List<String> sitemaps) { this.sitemaps = sitemaps; }
+    public Duration getInterval() { return interval; }
+    public void setInterval(Duration interval) { this.interval = interval; }
+    public int getMaxDepth() { return maxDepth; }
+    public void setMaxDepth(int maxDepth) { this.maxDepth = maxDepth; }
+    public int getMaxPages() { return maxPages; }
+    public void setMaxPages(int maxPages) { this.maxPages = maxPages; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+    public int getPerHostConcurrency() { return perHostConcurrency; }
+    public void setPerHostConcurrency(int perHostConcurrency) { this.perHostConcurrency = perHostConcurrency; }
+    public int getIngestConcurrency() { return ingestConcurrency; }
+    public void setIngestConcurrency(int ingestConcurrency) { this.ingestConcurrency = ingestConcurrency; }
+    public Duration getTimeout() { return timeout; }
+    public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    public DataSize getMaxPageSize() { return maxPageSize; }
+    public void setMaxPageSize(DataSize maxPageSize) { this.maxPageSize = maxPageSize; }
+    public String getUserAgent() { return userAgent; }
+    public void setUserAgent(String userAgent) { this.userAgent = userAgent; }
+}
@@ -2,6 +2,9 @@ package ai.fitsum.cortex.api.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @Component
 @ConfigurationProperties(prefix = "cortex.ocr")
@@ -11,6 +14,13 @@ public class OcrProperties {
     private int maxPages = 10;
     private int maxImageWidth = 3000;
     private int maxImageHeight = 3000;
+    private int dpi = 200;
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private Duration pageTimeout = Duration.ofSeconds(60);
+    private int minPageChars = 20;
+    private boolean cacheEnabled = true;
+    private DataSize cacheMaxSize = DataSize.ofMegabytes(256);
+    private Duration cacheEvictionInterval = Duration.ofMinutes(10);
 
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
@@ -22,6 +32,20 @@ public class OcrProperties {
     public void setMaxImageWidth(int maxImageWidth) { this.maxImageWidth = maxImageWidth; }
     public int getMaxImageHeight() { return maxImageHeight; }
     public void setMaxImageHeight(int maxImageHeight) { this.maxImageHeight = maxImageHeight; }
+    public int getDpi() { return dpi; }
+    public void setDpi(int dpi) { this.dpi = dpi; }
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+    public Duration getPageTimeout() { return pageTimeout; }
+    public void setPageTimeout(Duration pageTimeout) { this.pageTimeout = pageTimeout; }
+    public int getMinPageChars() { return minPageChars; }
+    public void setMinPageChars(int minPageChars) { this.minPageChars = minPageChars; }
+    public boolean isCacheEnabled() { return cacheEnabled; }
+    public void setCacheEnabled(boolean cacheEnabled) { this.cacheEnabled = cacheEnabled; }
+    public DataSize getCacheMaxSize() { return cacheMaxSize; }
+    public void setCacheMaxSize(DataSize cacheMaxSize) { this.cacheMaxSize = cacheMaxSize; }
+    public Duration getCacheEvictionInterval() { return cacheEvictionInterval; }
+    public void setCacheEvictionInterval(Duration cacheEvictionInterval) { this.cacheEvictionInterval = cacheEvictionInterval; }
 }
 
 
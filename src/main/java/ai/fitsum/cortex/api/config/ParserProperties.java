@@ -0,0 +1,34 @@
+package ai.fitsum.cortex.api.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "cortex.parser")
+public class ParserProperties {
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private Duration timeout = Duration.ofMinutes(2);
+    private int maxTextLength = 20_000_000;
+    private boolean fork = false;
+    private DataSize forkHeap = DataSize.ofMegabytes(512);
+    private String forkJavaCommand = "";
+    private int forkMaxDocuments = 200;
+
+    public int getWorkers() { return workers; }
+    public void setWorkers(int workers) { this.workers = workers; }
+    public Duration getTimeout() { return timeout; }
+    public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    public int getMaxTextLength() { return maxTextLength; }
+    public void setMaxTextLength(int maxTextLength) { this.maxTextLength = maxTextLength; }
+    public boolean isFork() { return fork; }
+    public void setFork(boolean fork) { this.fork = fork; }
+    public DataSize getForkHeap() { return forkHeap; }
+    public void setForkHeap(DataSize forkHeap) { this.forkHeap = forkHeap; }
+    public String getForkJavaCommand() { return forkJavaCommand; }
+    public void setForkJavaCommand(String forkJavaCommand) { this.forkJavaCommand = forkJavaCommand; }
+    public int getForkMaxDocuments() { return forkMaxDocuments; }
+    public void setForkMaxDocuments(int forkMaxDocuments) { this.forkMaxDocuments = forkMaxDocuments; }
+}
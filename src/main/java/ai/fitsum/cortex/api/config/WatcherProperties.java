@@ -14,9 +14,22 @@ public class WatcherProperties {
     private String root = "";
     private boolean recursive = true;
     private Duration pollInterval = Duration.ofSeconds(30);
+    private boolean events = true;
+    private Duration debounce = Duration.ofMillis(500);
+    private Duration reconcileInterval = Duration.ofHours(1);
     private List<String> ignoreGlobs = List.of("**/*.tmp", "**/~$*");
     private List<String> extensions = List.of("pdf","docx","md","txt","png","jpg","jpeg","webp");
     private String processedRoot = "";
+    private int stateBatchSize = 500;
+    private int concurrency = 4;
+    private int maxAttempts = 5;
+    private Duration retryBackoff = Duration.ofSeconds(2);
+    private Duration maxRetryBackoff = Duration.ofMinutes(5);
+    private boolean queue = false;
+    private boolean cluster = false;
+    private String nodeId = "";
+    private Duration heartbeatInterval = Duration.ofSeconds(10);
+    private Duration nodeTimeout = Duration.ofSeconds(30);
 
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
@@ -26,12 +39,38 @@ public class WatcherProperties {
     public void setRecursive(boolean recursive) { this.recursive = recursive; }
     public Duration getPollInterval() { return pollInterval; }
     public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+    public boolean isEvents() { return events; }
+    public void setEvents(boolean events) { this.events = events; }
+    public Duration getDebounce() { return debounce; }
+    public void setDebounce(Duration debounce) { this.debounce = debounce; }
+    public Duration getReconcileInterval() { return reconcileInterval; }
+    public void setReconcileInterval(Duration reconcileInterval) { this.reconcileInterval = reconcileInterval; }
     public List<String> getIgnoreGlobs() { return ignoreGlobs; }
     public void setIgnoreGlobs(List<String> ignoreGlobs) { this.ignoreGlobs = ignoreGlobs; }
     public List<String> getExtensions() { return extensions; }
     public void setExtensions(List<String> extensions) { this.extensions = extensions; }
     public String getProcessedRoot() { return processedRoot; }
     public void setProcessedRoot(String processedRoot) { this.processedRoot = processedRoot; }
+    public int getStateBatchSize() { return stateBatchSize; }
+    public void setStateBatchSize(int stateBatchSize) { this.stateBatchSize = stateBatchSize; }
+    public int getConcurrency() { return concurrency; }
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+    public int getMaxAttempts() { return maxAttempts; }
+    public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+    public Duration getRetryBackoff() { return retryBackoff; }
+    public void setRetryBackoff(Duration retryBackoff) { this.retryBackoff = retryBackoff; }
+    public Duration getMaxRetryBackoff() { return maxRetryBackoff; }
+    public void setMaxRetryBackoff(Duration maxRetryBackoff) { this.maxRetryBackoff = maxRetryBackoff; }
+    public boolean isQueue() { return queue; }
+    public void setQueue(boolean queue) { this.queue = queue; }
+    public boolean isCluster() { return cluster; }
+    public void setCluster(boolean cluster) { this.cluster = cluster; }
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+    public Duration getHeartbeatInterval() { return heartbeatInterval; }
+    public void setHeartbeatInterval(Duration heartbeatInterval) { this.heartbeatInterval = heartbeatInterval; }
+    public Duration getNodeTimeout() { return nodeTimeout; }
+    public void setNodeTimeout(Duration nodeTimeout) { this.nodeTimeout = nodeTimeout; }
 }
 
 
@@ -0,0 +1,65 @@
+package ai.fitsum.cortex.api.controller;
+
+import ai.fitsum.cortex.api.config.CrawlerProperties;
+import ai.fitsum.cortex.ingest.crawler.WebCrawler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/v1/crawler")
+public class CrawlerController {
+
+    private static final Logger log = LoggerFactory.getLogger(CrawlerController.class);
+
+    private final WebCrawler crawler;
+    private final CrawlerProperties props;
+
+    public CrawlerController(WebCrawler crawler, CrawlerProperties props) {
+        this.crawler = crawler;
+        this.props = props;
+    }
+
+    public record CrawlRequest(List<String> seeds, List<String> sitemaps) {}
+
+    @GetMapping("/status")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", crawler.isRunning());
+        status.put("lastCrawl", crawler.lastSummary());
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Starts a crawl in the background; without a body the configured seeds and sitemaps are
+     * crawled. Progress and the result are reported by {@code /status}.
+     */
+    @PostMapping("/crawl")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> crawl(@RequestBody(required = false) CrawlRequest request) {
+        List<String> seeds = request != null && request.seeds() != null ? request.seeds() : props.getSeeds();
+        List<String> sitemaps = request != null && request.sitemaps() != null ? request.sitemaps() : props.getSitemaps();
+        if (seeds.isEmpty() && sitemaps.isEmpty()) {
+            return ResponseEntity.badRequest().body("No seeds or sitemaps to crawl");
+        }
+        if (crawler.isRunning()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A crawl is already running");
+        }
+        Thread.ofVirtual().name("web-crawl").start(() -> {
+            try {
+                crawler.crawl(seeds, sitemaps);
+            } catch (Exception e) {
+                log.error("Crawl failed", e);
+            }
+        });
+        return ResponseEntity.accepted().body(Map.of("seeds", seeds.size(), "sitemaps", sitemaps.size()));
+    }
+}
@@ -1,17 +1,30 @@
 package ai.fitsum.cortex.api.controller;
 
+import ai.fitsum.cortex.api.service.DocumentListingService;
+import ai.fitsum.cortex.ingest.service.ArchiveIngestionService;
+import ai.fitsum.cortex.ingest.service.DocumentContentStore;
+import ai.fitsum.cortex.ingest.service.IngestJobService;
+import ai.fitsum.cortex.ingest.service.IngestQueue;
 import ai.fitsum.cortex.ingest.service.IngestionService;
+import ai.fitsum.cortex.ingest.service.UploadStager;
 import ai.fitsum.cortex.api.repository.DocumentRepository;
 import ai.fitsum.cortex.api.repository.ChunkRepository;
-import ai.fitsum.cortex.api.domain.Chunk;
 import ai.fitsum.cortex.api.domain.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1/ingest")
@@ -20,28 +33,76 @@ public class IngestController {
     private static final Logger log = LoggerFactory.getLogger(IngestController.class);
 
     private final IngestionService ingestionService;
+    private final IngestJobService jobService;
+    private final IngestQueue ingestQueue;
+    private final UploadStager uploadStager;
     private final DocumentRepository documentRepository;
     private final ChunkRepository chunkRepository;
+    private final ArchiveIngestionService archiveIngestionService;
+    private final DocumentContentStore documentContentStore;
+    private final DocumentListingService documentListingService;
 
-    public IngestController(IngestionService ingestionService, DocumentRepository documentRepository, ChunkRepository chunkRepository) {
+    public IngestController(IngestionService ingestionService, IngestJobService jobService, IngestQueue ingestQueue,
+                            UploadStager uploadStager, DocumentRepository documentRepository, ChunkRepository chunkRepository,
+                            ArchiveIngestionService archiveIngestionService, DocumentContentStore documentContentStore,
+                            DocumentListingService documentListingService) {
         this.ingestionService = ingestionService;
+        this.jobService = jobService;
+        this.ingestQueue = ingestQueue;
+        this.uploadStager = uploadStager;
         this.documentRepository = documentRepository;
         this.chunkRepository = chunkRepository;
+        this.archiveIngestionService = archiveIngestionService;
+        this.documentContentStore = documentContentStore;
+        this.documentListingService = documentListingService;
     }
 
+    /**
+     * Uploads and URLs are ingested through the shared work queue at interactive priority, so
+     * any idle node may do the work. The answer is 202 with the task id right away; poll
+     * {@code GET /v1/ingest/tasks/{id}} for the document id.
+     */
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> upload(@RequestPart("file") MultipartFile file) {
         try {
-            byte[] bytes = file.getBytes();
-            var result = ingestionService.ingestLocalFile(bytes, file.getOriginalFilename());
-            return ResponseEntity.ok(result.documentId());
+            UploadStager.StagedFile staged;
+            try (var in = file.getInputStream()) {
+                staged = uploadStager.stage(in, file.getOriginalFilename());
+            }
+            long taskId;
+            try {
+                taskId = jobService.enqueueUpload(staged);
+            } catch (RuntimeException e) {
+                uploadStager.discard(staged);
+                throw e;
+            }
+            return accepted(taskId);
         } catch (Exception e) {
             log.error("Upload failed", e);
             return ResponseEntity.internalServerError().body(e.getMessage());
         }
     }
 
+    /**
+     * Ingests every document in a ZIP, TAR or .tar.gz upload, read as a stream, and answers
+     * with a summary once all entries are done. Each entry is stored under
+     * {@code archive:<file name>/<prefix><path in archive>}.
+     */
+    @PostMapping(value = "/archive", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> archive(@RequestPart("file") MultipartFile file,
+                                     @RequestParam(value = "prefix", defaultValue = "") String prefix) {
+        try (var in = file.getInputStream()) {
+            return ResponseEntity.ok(archiveIngestionService.ingest(in, file.getOriginalFilename(), prefix));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Archive ingestion failed", e);
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+
     @PostMapping(value = "/url", consumes = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> ingestUrl(@RequestBody UrlIngestRequest request) {
@@ -49,15 +110,43 @@ public class IngestController {
             if (request == null || request.url == null || request.url.isBlank()) {
                 return ResponseEntity.badRequest().body("url is required");
             }
-            var result = ingestionService.ingestUrl(request.url.trim());
-            return ResponseEntity.ok(result.documentId());
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.unprocessableEntity().body(e.getMessage());
+            return accepted(jobService.enqueueUrl(request.url.trim()));
         } catch (Exception e) {
             log.error("URL ingest failed", e);
             return ResponseEntity.internalServerError().body(e.getMessage());
         }
     }
+
+    private static ResponseEntity<?> accepted(long taskId) {
+        return ResponseEntity.accepted()
+            .location(URI.create("/v1/ingest/tasks/" + taskId))
+            .body(Map.of("taskId", taskId, "status", IngestQueue.Status.QUEUED));
+    }
+
+    /**
+     * The task as it stands: 200 while it is queued or running and once it is done, 422 if it
+     * failed on its input (nothing extractable, a rejected URL), 503 if it failed because
+     * transient errors outlasted its retries and submitting it again may work.
+     */
+    @GetMapping("/tasks/{id}")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> task(@PathVariable("id") Long id) {
+        var task = ingestQueue.find(id).orElse(null);
+        if (task == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (task.status() != IngestQueue.Status.FAILED) {
+            return ResponseEntity.ok(task);
+        }
+        return ResponseEntity.status(task.isPermanentFailure() ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.SERVICE_UNAVAILABLE)
+            .body(task);
+    }
+
+    @GetMapping("/queue")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> queue() {
+        return ResponseEntity.ok(ingestQueue.stats());
+    }
     @PostMapping(value = "/text", consumes = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> ingestText(@RequestBody TextIngestRequest request) {
@@ -85,36 +174,71 @@ public class IngestController {
         return ResponseEntity.ok(docs);
     }
 
+    /**
+     * Pages of documents, newest first, written as they are read. {@code fields} picks the
+     * columns (default: all but {@code metadataJson}); see {@link DocumentListingService}.
+     */
+    @GetMapping("/documents")
+    public ResponseEntity<StreamingResponseBody> documents(@RequestParam(name = "cursor", required = false) Long cursor,
+                                                           @RequestParam(name = "limit", defaultValue = "50") int limit,
+                                                           @RequestParam(name = "fields", required = false) List<String> fields) {
+        Set<DocumentListingService.DocumentField> selected;
+        try {
+            selected = DocumentListingService.DocumentField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            // A streaming body is only recognised in a declared StreamingResponseBody return type
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        StreamingResponseBody body = out -> documentListingService.writeDocuments(cursor, limit, selected, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /** The document's row and chunk count; its extracted text only with {@code content=true}. */
     @GetMapping("/document/{id}")
-    public ResponseEntity<?> getDocument(@PathVariable("id") Long id) {
+    public ResponseEntity<?> getDocument(@PathVariable("id") Long id,
+                                         @RequestParam(name = "content", defaultValue = "false") boolean content) {
         try {
-            var docOpt = documentRepository.findById(id);
+            var docOpt = documentRepository.findLiveById(id);
             if (docOpt.isEmpty()) {
                 log.info("Document {} not found", id);
                 return ResponseEntity.notFound().build();
             }
             var doc = docOpt.get();
-            var chunks = chunkRepository.findByDocumentId(id);
-            log.info("Retrieved document id={} title='{}' chunks={}", id, doc.title(), chunks.size());
-            return ResponseEntity.ok(new DocumentWithChunks(doc, chunks));
+            long chunkCount = chunkRepository.countByDocumentId(id);
+            String text = content ? documentContentStore.get(id).orElse(null) : null;
+            log.info("Retrieved document id={} title='{}' chunks={}", id, doc.title(), chunkCount);
+            return ResponseEntity.ok(new DocumentDetail(doc, chunkCount, text));
         } catch (Exception e) {
             log.error("Failed to retrieve document {}", id, e);
             return ResponseEntity.internalServerError().body(e.getMessage());
         }
     }
 
+    /** Pages of a document's chunks in order, without embeddings; chunk text with {@code content=true}. */
+    @GetMapping("/document/{id}/chunks")
+    public ResponseEntity<StreamingResponseBody> chunks(@PathVariable("id") Long id,
+                                                        @RequestParam(name = "cursor", required = false) Long cursor,
+                                                        @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                        @RequestParam(name = "content", defaultValue = "false") boolean content) {
+        if (documentRepository.findLiveById(id).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Document " + id + " not found");
+        }
+        StreamingResponseBody body = out -> documentListingService.writeChunks(id, cursor, limit, content, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /** Tombstones the document; its chunks are purged in the background. */
     @DeleteMapping("/document/{id}")
     public ResponseEntity<?> delete(@PathVariable("id") Long id) {
         try {
-            var docOpt = documentRepository.findById(id);
+            var docOpt = documentRepository.findLiveById(id);
             if (docOpt.isEmpty()) {
                 log.info("Delete requested for non-existent document {}", id);
                 return ResponseEntity.noContent().build();
             }
             var doc = docOpt.get();
-            long chunkCount = chunkRepository.countByDocumentId(id);
-            documentRepository.deleteById(id); // cascades chunks via FK
-            log.info("Deleted document id={} title='{}' chunks_deleted={} content_type={}", id, doc.title(), chunkCount, doc.contentType());
+            ingestionService.deleteDocument(id);
+            log.info("Deleted document id={} title='{}' content_type={}", id, doc.title(), doc.contentType());
             return ResponseEntity.noContent().build();
         } catch (Exception e) {
             log.error("Delete failed for document {}", id, e);
@@ -122,7 +246,7 @@ public class IngestController {
         }
     }
 
-    public record DocumentWithChunks(Document document, java.util.List<Chunk> chunks) {}
+    public record DocumentDetail(Document document, long chunkCount, String content) {}
 
     public record TextIngestRequest(String title, String content, java.util.List<String> tags) {}
 
@@ -0,0 +1,91 @@
+package ai.fitsum.cortex.api.controller;
+
+import ai.fitsum.cortex.ingest.service.IngestJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Asynchronous ingestion: uploads return a job id immediately and progress is
+ * available by polling or as a server-sent event stream.
+ */
+@RestController
+@RequestMapping("/v1/ingest/jobs")
+public class IngestJobController {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJobController.class);
+
+    private final IngestJobService jobService;
+
+    public IngestJobController(IngestJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> submit(
+        @RequestPart("files") List<MultipartFile> files,
+        @AuthenticationPrincipal UserDetails user
+    ) {
+        if (files == null || files.isEmpty()) {
+            return ResponseEntity.badRequest().body("at least one file is required");
+        }
+        try {
+            String userId = user != null ? user.getUsername() : "anonymous";
+            var job = jobService.submit(files, userId);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (Exception e) {
+            log.error("Failed to create ingest job", e);
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> recent(@RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(jobService.recent(Math.max(1, Math.min(limit, 100))));
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> get(@PathVariable("id") Long id) {
+        return jobService.find(id)
+            .<ResponseEntity<?>>map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Emits the job with its items whenever it changes; completes once the job has finished
+     * or was deleted.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public Flux<IngestJobService.JobView> events(@PathVariable("id") Long id) {
+        if (jobService.find(id).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no ingest job " + id);
+        }
+        return Flux.interval(Duration.ZERO, Duration.ofSeconds(1))
+            .onBackpressureDrop()
+            .publishOn(Schedulers.boundedElastic())
+            .concatMap(tick -> Flux.just(jobService.find(id)))
+            .takeWhile(Optional::isPresent)
+            .map(Optional::get)
+            .distinctUntilChanged()
+            .takeUntil(view -> view.job().isFinished())
+            .timeout(Duration.ofHours(6), Flux.empty());
+    }
+}
@@ -0,0 +1,80 @@
+package ai.fitsum.cortex.api.controller;
+
+import ai.fitsum.cortex.api.domain.Source;
+import ai.fitsum.cortex.api.repository.SourceRepository;
+import ai.fitsum.cortex.ingest.connector.SourceSyncService;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connector-backed sources. {@code config_json} may hold credentials, so it is accepted on
+ * create but never returned.
+ */
+@RestController
+@RequestMapping("/v1/sources")
+public class SourceController {
+
+    private final SourceRepository sourceRepository;
+    private final SourceSyncService syncService;
+
+    public SourceController(SourceRepository sourceRepository, SourceSyncService syncService) {
+        this.sourceRepository = sourceRepository;
+        this.syncService = syncService;
+    }
+
+    public record CreateSourceRequest(String name, Source.SourceType sourceType, JsonNode config) {}
+
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> list() {
+        List<Map<String, Object>> sources = new ArrayList<>();
+        for (Source source : sourceRepository.findAll()) {
+            sources.add(view(source));
+        }
+        return ResponseEntity.ok(sources);
+    }
+
+    @PostMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> create(@RequestBody CreateSourceRequest request) {
+        if (request.name() == null || request.name().isBlank() || request.sourceType() == null) {
+            return ResponseEntity.badRequest().body("name and sourceType are required");
+        }
+        Source source = sourceRepository.save(Source.create(request.name().trim(), request.sourceType(),
+            request.config() == null ? null : request.config().toString()));
+        return ResponseEntity.status(HttpStatus.CREATED).body(view(source));
+    }
+
+    /** Starts a sync in the background; {@code GET /v1/sources} shows its progress. */
+    @PostMapping("/{id}/sync")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> sync(@PathVariable("id") Long id) {
+        try {
+            if (!syncService.startSync(id)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Source " + id + " is already syncing");
+            }
+            return ResponseEntity.accepted().body(Map.of("sourceId", id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private Map<String, Object> view(Source source) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", source.id());
+        view.put("name", source.name());
+        view.put("sourceType", source.sourceType());
+        view.put("enabled", source.isEnabled());
+        view.put("lastSyncAt", source.lastSyncAt());
+        view.put("sync", syncService.progress(source.id()));
+        return view;
+    }
+}
@@ -1,10 +1,13 @@
 package ai.fitsum.cortex.api.controller;
 
 import ai.fitsum.cortex.ingest.service.FolderWatcherService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/v1/watcher")
 public class WatcherController {
@@ -24,9 +27,24 @@ public class WatcherController {
     @PostMapping("/scan")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<?> scan() {
-        watcherService.scanNow();
+        if (!watcherService.scanNow()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(watcherService.status());
+        }
         return ResponseEntity.ok(watcherService.status());
     }
+
+    @GetMapping("/dead-letters")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> deadLetters(@RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return ResponseEntity.ok(watcherService.deadLetters(Math.max(1, Math.min(limit, 1000))));
+    }
+
+    /** Retries one parked file ({@code path}) or all of them. */
+    @PostMapping("/dead-letters/retry")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> retryDeadLetters(@RequestParam(value = "path", required = false) String path) {
+        return ResponseEntity.ok(Map.of("queued", watcherService.retryDeadLetters(path)));
+    }
 }
 
 
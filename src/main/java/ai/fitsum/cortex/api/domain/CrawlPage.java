@@ -0,0 +1,17 @@
+package ai.fitsum.cortex.api.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("crawl_page")
+public record CrawlPage(
+    @Id String url,
+    String etag,
+    String lastModified,
+    Long documentId,
+    String links,
+    LocalDateTime fetchedAt,
+    LocalDateTime checkedAt
+) {}
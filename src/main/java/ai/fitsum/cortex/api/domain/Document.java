@@ -13,7 +13,6 @@ public record Document(
     String title,
     String contentHash,
     String contentType,
-    String rawContent,
     String metadataJson,
     LocalDateTime indexedAt,
     LocalDateTime updatedAt,
@@ -25,7 +24,6 @@ public record Document(
         String title,
         String contentHash,
         String contentType,
-        String rawContent,
         String metadata
     ) {
         return new Document(
@@ -35,12 +33,20 @@ public record Document(
             title,
             contentHash,
             contentType,
-            rawContent,
             metadata,
             LocalDateTime.now(),
             LocalDateTime.now(),
             LocalDateTime.now()
         );
     }
-}
 
+    public Document withContent(
+        String title,
+        String contentHash,
+        String contentType,
+        String metadata
+    ) {
+        LocalDateTime now = LocalDateTime.now();
+        return new Document(id, sourceId, externalId, title, contentHash, contentType, metadata, now, now, createdAt);
+    }
+}
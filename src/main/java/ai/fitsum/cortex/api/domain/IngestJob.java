@@ -0,0 +1,43 @@
+package ai.fitsum.cortex.api.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("ingest_job")
+public record IngestJob(
+    @Id Long id,
+    Status status,
+    String createdBy,
+    Integer totalFiles,
+    Integer completedFiles,
+    Integer failedFiles,
+    LocalDateTime createdAt,
+    LocalDateTime updatedAt,
+    LocalDateTime finishedAt
+) {
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        COMPLETED_WITH_ERRORS
+    }
+
+    public static IngestJob create(String createdBy, int totalFiles) {
+        return new IngestJob(
+            null,
+            Status.RUNNING,
+            createdBy,
+            totalFiles,
+            0,
+            0,
+            LocalDateTime.now(),
+            LocalDateTime.now(),
+            null
+        );
+    }
+
+    public boolean isFinished() {
+        return status != Status.RUNNING;
+    }
+}
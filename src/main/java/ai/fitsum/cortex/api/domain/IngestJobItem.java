@@ -0,0 +1,49 @@
+package ai.fitsum.cortex.api.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("ingest_job_item")
+public record IngestJobItem(
+    @Id Long id,
+    Long jobId,
+    String filename,
+    String stagedPath,
+    String contentHash,
+    Long sizeBytes,
+    Status status,
+    Long documentId,
+    Integer chunkCount,
+    String error,
+    LocalDateTime startedAt,
+    LocalDateTime finishedAt,
+    LocalDateTime createdAt
+) {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        DUPLICATE,
+        FAILED
+    }
+
+    public static IngestJobItem queued(Long jobId, String filename, String stagedPath, String contentHash, long sizeBytes) {
+        return new IngestJobItem(
+            null,
+            jobId,
+            filename,
+            stagedPath,
+            contentHash,
+            sizeBytes,
+            Status.QUEUED,
+            null,
+            null,
+            null,
+            null,
+            null,
+            LocalDateTime.now()
+        );
+    }
+}
@@ -19,7 +19,8 @@ public record Source(
     public enum SourceType {
         LOCAL_FILES,
         GMAIL,
-        WEB_URL
+        WEB_URL,
+        MAILBOX
     }
     
     public static Source create(String name, SourceType sourceType, String configJson) {
@@ -38,5 +39,9 @@ public record Source(
     public Source withLastSyncAt(LocalDateTime lastSyncAt) {
         return new Source(id, name, sourceType, configJson, isEnabled, lastSyncAt, createdAt, LocalDateTime.now());
     }
+    
+    public Source withSyncState(String configJson, LocalDateTime lastSyncAt) {
+        return new Source(id, name, sourceType, configJson, isEnabled, lastSyncAt, createdAt, LocalDateTime.now());
+    }
 }
 
@@ -0,0 +1,15 @@
+package ai.fitsum.cortex.api.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("watcher_dead_letter")
+public record WatcherDeadLetter(
+    @Id String path,
+    Integer attempts,
+    String lastError,
+    LocalDateTime firstFailedAt,
+    LocalDateTime lastFailedAt
+) {}
@@ -1,6 +1,7 @@
 package ai.fitsum.cortex.api.repository;
 
 import ai.fitsum.cortex.api.domain.Chunk;
+import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -20,6 +21,15 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
         """)
     List<Chunk> findByDocumentId(@Param("documentId") Long documentId);
     
+    /** Chunk rows without content or embedding, for diffing against a re-chunked document. */
+    @Query("""
+        SELECT c.id, c.document_id, c.chunk_index, c.content_hash, c.heading, c.page_number
+        FROM chunk c
+        WHERE c.document_id = :documentId
+        ORDER BY c.chunk_index
+        """)
+    List<Chunk> findHashesByDocumentId(@Param("documentId") Long documentId);
+
     @Query("""
         SELECT c.id, c.document_id, c.chunk_index, c.content, c.content_hash,
                c.token_count, c.heading, c.page_number, c.created_at
@@ -37,8 +47,8 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
         FROM (
             SELECT c.id
             FROM chunk c, q
-            WHERE to_tsvector('english', c.content) @@ q.tsq
-               OR c.content % q.raw
+            WHERE (to_tsvector('english', c.content) @@ q.tsq OR c.content % q.raw)
+              AND c.document_id NOT IN (SELECT id FROM document WHERE deleted_at IS NOT NULL)
             ORDER BY (
                 ts_rank(to_tsvector('english', c.content), q.tsq) * 0.7
               + similarity(c.content, q.raw) * 0.3
@@ -61,6 +71,7 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
             FROM chunk c, q
             WHERE c.document_id = ANY(:documentIds)
               AND (to_tsvector('english', c.content) @@ q.tsq OR c.content % q.raw)
+              AND c.document_id NOT IN (SELECT id FROM document WHERE deleted_at IS NOT NULL)
             ORDER BY (
                 ts_rank(to_tsvector('english', c.content), q.tsq) * 0.7
               + similarity(c.content, q.raw) * 0.3
@@ -78,6 +89,7 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
         SELECT c.id, c.document_id, c.chunk_index, c.content, c.content_hash,
                c.token_count, c.heading, c.page_number, c.created_at
         FROM chunk c
+        WHERE c.document_id NOT IN (SELECT id FROM document WHERE deleted_at IS NOT NULL)
         ORDER BY c.embedding <=> CAST(:embedding AS vector)
         LIMIT :limit
         """)
@@ -88,6 +100,7 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
                c.token_count, c.heading, c.page_number, c.created_at
         FROM chunk c
         WHERE c.document_id = ANY(:documentIds)
+          AND c.document_id NOT IN (SELECT id FROM document WHERE deleted_at IS NOT NULL)
         ORDER BY c.embedding <=> CAST(:embedding AS vector)
         LIMIT :limit
         """)
@@ -97,5 +110,23 @@ public interface ChunkRepository extends CrudRepository<Chunk, Long> {
 
     @Query("SELECT COUNT(*) FROM chunk WHERE document_id = :documentId")
     long countByDocumentId(@Param("documentId") Long documentId);
-}
 
+    @Modifying
+    @Query("""
+        UPDATE chunk
+        SET chunk_index = :chunkIndex, heading = :heading, page_number = :pageNumber
+        WHERE id = :id
+        """)
+    int updatePosition(@Param("id") Long id,
+                       @Param("chunkIndex") int chunkIndex,
+                       @Param("heading") String heading,
+                       @Param("pageNumber") Integer pageNumber);
+
+    @Modifying
+    @Query("DELETE FROM chunk WHERE id = ANY(:ids)")
+    int deleteByIdIn(@Param("ids") Long[] ids);
+
+    @Modifying
+    @Query("DELETE FROM chunk WHERE document_id = :documentId")
+    int deleteByDocumentId(@Param("documentId") Long documentId);
+}
@@ -0,0 +1,31 @@
+package ai.fitsum.cortex.api.repository;
+
+import ai.fitsum.cortex.api.domain.CrawlPage;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CrawlPageRepository extends CrudRepository<CrawlPage, String> {
+
+    @Modifying
+    @Query("""
+        INSERT INTO crawl_page(url, etag, last_modified, document_id, links, fetched_at, checked_at)
+        VALUES (:url, :etag, :lastModified, :documentId, :links, NOW(), NOW())
+        ON CONFLICT (url) DO UPDATE
+        SET etag = EXCLUDED.etag,
+            last_modified = EXCLUDED.last_modified,
+            document_id = EXCLUDED.document_id,
+            links = EXCLUDED.links,
+            fetched_at = NOW(),
+            checked_at = NOW()
+        """)
+    int recordFetch(@Param("url") String url, @Param("etag") String etag, @Param("lastModified") String lastModified,
+                    @Param("documentId") Long documentId, @Param("links") String links);
+
+    @Modifying
+    @Query("UPDATE crawl_page SET checked_at = NOW() WHERE url = :url")
+    int recordNotModified(@Param("url") String url);
+}
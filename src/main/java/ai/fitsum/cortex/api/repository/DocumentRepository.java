@@ -1,6 +1,7 @@
 package ai.fitsum.cortex.api.repository;
 
 import ai.fitsum.cortex.api.domain.Document;
+import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -11,18 +12,88 @@ import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends CrudRepository<Document, Long> {
-    
-    @Query("SELECT * FROM document WHERE source_id = :sourceId AND content_hash = :contentHash")
+
+    /** Identity columns only (the rest null), for answering a duplicate with its twin. */
+    @Query("""
+        SELECT id, source_id, external_id, title, content_hash
+        FROM document
+        WHERE source_id = :sourceId AND content_hash = :contentHash AND deleted_at IS NULL
+        LIMIT 1
+        """)
     Optional<Document> findBySourceIdAndContentHash(@Param("sourceId") Long sourceId, @Param("contentHash") String contentHash);
-    
-    @Query("SELECT * FROM document WHERE source_id = :sourceId AND external_id = :externalId")
-    Optional<Document> findBySourceIdAndExternalId(@Param("sourceId") Long sourceId, @Param("externalId") String externalId);
 
     @Query("""
         SELECT * FROM document
+        WHERE source_id = :sourceId AND external_id = :externalId AND deleted_at IS NULL
+        ORDER BY updated_at DESC NULLS LAST, id DESC
+        LIMIT 1
+        """)
+    Optional<Document> findBySourceIdAndExternalId(@Param("sourceId") Long sourceId, @Param("externalId") String externalId);
+
+    /** Listing columns only, without {@code metadata_json}. */
+    @Query("""
+        SELECT id, source_id, external_id, title, content_hash, content_type, indexed_at, updated_at, created_at
+        FROM document
+        WHERE deleted_at IS NULL
         ORDER BY created_at DESC
         LIMIT :limit
         """)
     List<Document> findRecent(@Param("limit") int limit);
-}
 
+    /** {@link #findById} unless the document has been deleted and awaits purging. */
+    @Query("SELECT * FROM document WHERE id = :id AND deleted_at IS NULL")
+    Optional<Document> findLiveById(@Param("id") Long id);
+
+    /** Id and title only, for labelling retrieved chunks. */
+    @Query("SELECT id, title FROM document WHERE id = ANY(:ids)")
+    List<Document> findTitlesByIdIn(@Param("ids") Long[] ids);
+
+    /** Deletes by tombstone: the document disappears at once and {@code DocumentPurger} removes it later. */
+    @Modifying
+    @Query("UPDATE document SET deleted_at = NOW() WHERE id = :id AND deleted_at IS NULL")
+    int tombstoneById(@Param("id") Long id);
+
+    /**
+     * Keeps a document that is still being written hidden: it is tombstoned, so nothing finds
+     * it, and claimed from {@code DocumentPurger} for {@code leaseSeconds}. Returns 0 once the
+     * purger has removed it (the claim lapsed).
+     */
+    @Modifying
+    @Query("""
+        UPDATE document SET deleted_at = COALESCE(deleted_at, NOW()),
+            purge_claimed_until = NOW() + make_interval(secs => :leaseSeconds)
+        WHERE id = :id
+        """)
+    int holdUnpublished(@Param("id") Long id, @Param("leaseSeconds") long leaseSeconds);
+
+    /** Makes a document held by {@link #holdUnpublished} visible. */
+    @Modifying
+    @Query("UPDATE document SET deleted_at = NULL, purge_claimed_until = NULL WHERE id = :id AND deleted_at IS NOT NULL")
+    int publish(@Param("id") Long id);
+
+    /** Hands a document held by {@link #holdUnpublished} to {@code DocumentPurger}. */
+    @Modifying
+    @Query("UPDATE document SET purge_claimed_until = NULL WHERE id = :id AND deleted_at IS NOT NULL")
+    int releaseUnpublished(@Param("id") Long id);
+
+    @Modifying
+    @Query("""
+        UPDATE document SET deleted_at = NOW()
+        WHERE source_id = :sourceId AND external_id = ANY(:externalIds) AND deleted_at IS NULL
+        """)
+    int tombstoneBySourceIdAndExternalIdIn(@Param("sourceId") Long sourceId, @Param("externalIds") String[] externalIds);
+
+    /**
+     * Prepends {@code prefix} to the external id of live documents whose external id and
+     * content hash match a pair at the same position in the two arrays.
+     */
+    @Modifying
+    @Query("""
+        UPDATE document d SET external_id = :prefix || d.external_id
+        FROM unnest(CAST(:externalIds AS text[]), CAST(:contentHashes AS text[])) AS t(external_id, content_hash)
+        WHERE d.source_id = :sourceId AND d.external_id = t.external_id AND d.content_hash = t.content_hash
+          AND d.deleted_at IS NULL
+        """)
+    int prefixExternalIds(@Param("sourceId") Long sourceId, @Param("prefix") String prefix,
+                          @Param("externalIds") String[] externalIds, @Param("contentHashes") String[] contentHashes);
+}
@@ -0,0 +1,52 @@
+package ai.fitsum.cortex.api.repository;
+
+import ai.fitsum.cortex.api.domain.IngestJobItem;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IngestJobItemRepository extends CrudRepository<IngestJobItem, Long> {
+
+    @Query("SELECT * FROM ingest_job_item WHERE job_id = :jobId ORDER BY id")
+    List<IngestJobItem> findByJobId(@Param("jobId") Long jobId);
+
+    /**
+     * Marks an item running; returns 0 if it has already finished. Items already RUNNING
+     * are taken again: the queue only hands an item to a new worker once the previous
+     * attempt failed or its lease expired.
+     */
+    @Modifying
+    @Query("""
+        UPDATE ingest_job_item
+        SET status = 'RUNNING', started_at = NOW()
+        WHERE id = :id AND status IN ('QUEUED', 'RUNNING')
+        """)
+    int markRunning(@Param("id") Long id);
+
+    @Modifying
+    @Query("""
+        UPDATE ingest_job_item
+        SET status = :status, document_id = :documentId, chunk_count = :chunkCount,
+            error = :error, staged_path = NULL, finished_at = NOW()
+        WHERE id = :id
+        """)
+    int markFinished(@Param("id") Long id,
+                     @Param("status") String status,
+                     @Param("documentId") Long documentId,
+                     @Param("chunkCount") Integer chunkCount,
+                     @Param("error") String error);
+
+    /** Fails an item whose task gave up without finishing it; returns 0 if it has finished. */
+    @Modifying
+    @Query("""
+        UPDATE ingest_job_item
+        SET status = 'FAILED', error = :error, staged_path = NULL, finished_at = NOW()
+        WHERE id = :id AND status IN ('QUEUED', 'RUNNING')
+        """)
+    int markFailedIfUnfinished(@Param("id") Long id, @Param("error") String error);
+}
@@ -0,0 +1,41 @@
+package ai.fitsum.cortex.api.repository;
+
+import ai.fitsum.cortex.api.domain.IngestJob;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IngestJobRepository extends CrudRepository<IngestJob, Long> {
+
+    @Query("""
+        SELECT * FROM ingest_job
+        ORDER BY created_at DESC
+        LIMIT :limit
+        """)
+    List<IngestJob> findRecent(@Param("limit") int limit);
+
+    /** Counts one finished item and closes the job once every item has finished. */
+    @Modifying
+    @Query("""
+        UPDATE ingest_job
+        SET completed_files = completed_files + :completed,
+            failed_files = failed_files + :failed,
+            status = CASE
+                WHEN completed_files + :completed + failed_files + :failed < total_files THEN status
+                WHEN failed_files + :failed > 0 THEN 'COMPLETED_WITH_ERRORS'
+                ELSE 'COMPLETED'
+            END,
+            finished_at = CASE
+                WHEN completed_files + :completed + failed_files + :failed >= total_files THEN NOW()
+                ELSE finished_at
+            END,
+            updated_at = NOW()
+        WHERE id = :id
+        """)
+    int recordItemFinished(@Param("id") Long id, @Param("completed") int completed, @Param("failed") int failed);
+}
@@ -1,8 +1,10 @@
 package ai.fitsum.cortex.api.repository;
 
 import ai.fitsum.cortex.api.domain.Source;
+import org.springframework.data.jdbc.repository.query.Modifying;
 import org.springframework.data.jdbc.repository.query.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,5 +16,28 @@ public interface SourceRepository extends CrudRepository<Source, Long> {
     
     @Query("SELECT * FROM source WHERE source_type = :sourceType")
     List<Source> findBySourceType(String sourceType);
+
+    /**
+     * Claims the source's sync for {@code owner} unless another node holds an unexpired claim.
+     *
+     * @return 1 if claimed, 0 if another node is syncing it
+     */
+    @Modifying
+    @Query("""
+        UPDATE source SET sync_owner = :owner, sync_lease_expires_at = NOW() + make_interval(secs => :leaseSeconds)
+        WHERE id = :id AND (sync_owner IS NULL OR sync_owner = :owner OR sync_lease_expires_at < NOW())
+        """)
+    int claimSync(@Param("id") Long id, @Param("owner") String owner, @Param("leaseSeconds") double leaseSeconds);
+
+    @Modifying
+    @Query("""
+        UPDATE source SET sync_lease_expires_at = NOW() + make_interval(secs => :leaseSeconds)
+        WHERE id = ANY(:ids) AND sync_owner = :owner
+        """)
+    int renewSyncClaims(@Param("ids") Long[] ids, @Param("owner") String owner, @Param("leaseSeconds") double leaseSeconds);
+
+    @Modifying
+    @Query("UPDATE source SET sync_owner = NULL, sync_lease_expires_at = NULL WHERE id = :id AND sync_owner = :owner")
+    int releaseSync(@Param("id") Long id, @Param("owner") String owner);
 }
 
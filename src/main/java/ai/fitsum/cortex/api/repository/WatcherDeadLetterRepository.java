@@ -0,0 +1,32 @@
+package ai.fitsum.cortex.api.repository;
+
+import ai.fitsum.cortex.api.domain.WatcherDeadLetter;
+import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface WatcherDeadLetterRepository extends CrudRepository<WatcherDeadLetter, String> {
+
+    @Query("SELECT * FROM watcher_dead_letter ORDER BY last_failed_at DESC LIMIT :limit")
+    List<WatcherDeadLetter> findRecent(@Param("limit") int limit);
+
+    @Modifying
+    @Query("""
+        INSERT INTO watcher_dead_letter(path, attempts, last_error)
+        VALUES (:path, :attempts, :lastError)
+        ON CONFLICT (path) DO UPDATE
+        SET attempts = watcher_dead_letter.attempts + EXCLUDED.attempts,
+            last_error = EXCLUDED.last_error,
+            last_failed_at = NOW()
+        """)
+    int park(@Param("path") String path, @Param("attempts") int attempts, @Param("lastError") String lastError);
+
+    @Modifying
+    @Query("DELETE FROM watcher_dead_letter WHERE path = ANY(:paths)")
+    int deleteByPathIn(@Param("paths") String[] paths);
+}
@@ -0,0 +1,178 @@
+package ai.fitsum.cortex.api.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset-paginated listings of documents and chunks, written as JSON row by row straight from
+ * the result set, so a page never exists as entities or as a response string. Pages look like
+ * {@code {"items": [...], "nextCursor": 123}}; {@code nextCursor} is {@code null} on the last
+ * page and is passed back as {@code cursor} for the next one. Embeddings and document text are
+ * never listed; chunk text only on request.
+ */
+@Service
+public class DocumentListingService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /** Listable document columns, by JSON name. {@code id} is always written. */
+    public enum DocumentField {
+        ID("id", "id"),
+        SOURCE_ID("sourceId", "source_id"),
+        EXTERNAL_ID("externalId", "external_id"),
+        TITLE("title", "title"),
+        CONTENT_TYPE("contentType", "content_type"),
+        CONTENT_HASH("contentHash", "content_hash"),
+        METADATA_JSON("metadataJson", "metadata_json"),
+        INDEXED_AT("indexedAt", "indexed_at"),
+        UPDATED_AT("updatedAt", "updated_at"),
+        CREATED_AT("createdAt", "created_at");
+
+        private final String json;
+        private final String column;
+
+        DocumentField(String json, String column) {
+            this.json = json;
+            this.column = column;
+        }
+
+        /** Fields named in {@code names}; everything but {@code metadataJson} if none are. */
+        public static Set<DocumentField> parse(List<String> names) {
+            if (names == null || names.isEmpty()) {
+                return EnumSet.complementOf(EnumSet.of(METADATA_JSON));
+            }
+            Set<DocumentField> fields = EnumSet.of(ID);
+            for (String name : names) {
+                fields.add(Arrays.stream(values())
+                    .filter(f -> f.json.equals(name.trim()))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown document field: " + name)));
+            }
+            return fields;
+        }
+    }
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final ObjectMapper objectMapper;
+
+    public DocumentListingService(NamedParameterJdbcTemplate namedJdbc, ObjectMapper objectMapper) {
+        this.namedJdbc = namedJdbc;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Documents newest first (by id), those with an id below {@code cursor} if given. */
+    public void writeDocuments(Long cursor, int limit, Set<DocumentField> fields, OutputStream out) throws IOException {
+        String columns = fields.stream().map(f -> f.column).collect(Collectors.joining(", "));
+        var params = new MapSqlParameterSource()
+            .addValue("cursor", cursor != null ? cursor : Long.MAX_VALUE)
+            .addValue("limit", pageSize(limit) + 1);
+        writePage(out, pageSize(limit), """
+            SELECT %s
+            FROM document
+            WHERE id < :cursor AND deleted_at IS NULL
+            ORDER BY id DESC
+            LIMIT :limit
+            """.formatted(columns), params, "id", (rs, json) -> {
+                for (DocumentField field : fields) {
+                    switch (field) {
+                        case ID, SOURCE_ID -> writeLong(json, field.json, rs, field.column);
+                        case INDEXED_AT, UPDATED_AT, CREATED_AT -> json.writeObjectField(field.json,
+                            rs.getObject(field.column, LocalDateTime.class));
+                        default -> json.writeStringField(field.json, rs.getString(field.column));
+                    }
+                }
+            });
+    }
+
+    /** Chunks of a document in order, those after chunk index {@code cursor} if given. */
+    public void writeChunks(Long documentId, Long cursor, int limit, boolean content, OutputStream out) throws IOException {
+        var params = new MapSqlParameterSource()
+            .addValue("documentId", documentId)
+            .addValue("cursor", cursor != null ? cursor : -1L)
+            .addValue("limit", pageSize(limit) + 1);
+        writePage(out, pageSize(limit), """
+            SELECT id, document_id, chunk_index, content_hash, token_count, heading, page_number, created_at%s
+            FROM chunk
+            WHERE document_id = :documentId AND chunk_index > :cursor
+            ORDER BY chunk_index
+            LIMIT :limit
+            """.formatted(content ? ", content" : ""), params, "chunk_index", (rs, json) -> {
+                writeLong(json, "id", rs, "id");
+                writeLong(json, "documentId", rs, "document_id");
+                writeLong(json, "chunkIndex", rs, "chunk_index");
+                json.writeStringField("contentHash", rs.getString("content_hash"));
+                writeLong(json, "tokenCount", rs, "token_count");
+                json.writeStringField("heading", rs.getString("heading"));
+                writeLong(json, "pageNumber", rs, "page_number");
+                json.writeObjectField("createdAt", rs.getObject("created_at", LocalDateTime.class));
+                if (content) json.writeStringField("content", rs.getString("content"));
+            });
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs, JsonGenerator json) throws SQLException, IOException;
+    }
+
+    /** Writes up to {@code pageSize} rows of a query asking for one more, which only decides {@code nextCursor}. */
+    private void writePage(OutputStream out, int pageSize, String sql, MapSqlParameterSource params,
+                           String cursorColumn, RowWriter rows) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("items");
+            long[] written = {0};
+            Long[] lastKey = {null};
+            Long[] next = {null};
+            try {
+                namedJdbc.query(sql, params, (RowCallbackHandler) rs -> {
+                    if (written[0] == pageSize) {
+                        next[0] = lastKey[0];
+                        return;
+                    }
+                    try {
+                        json.writeStartObject();
+                        rows.write(rs, json);
+                        json.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    lastKey[0] = rs.getLong(cursorColumn);
+                    written[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            json.writeEndArray();
+            json.writeObjectField("nextCursor", next[0]);
+            json.writeEndObject();
+        }
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static void writeLong(JsonGenerator json, String name, ResultSet rs, String column) throws SQLException, IOException {
+        long value = rs.getLong(column);
+        if (rs.wasNull()) {
+            json.writeNullField(name);
+        } else {
+            json.writeNumberField(name, value);
+        }
+    }
+}
@@ -18,6 +18,7 @@ import reactor.core.publisher.Flux;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -157,10 +158,10 @@ public class RagService {
             return List.of();
         }
         
+        Map<Long, String> titles = titles(chunks);
         return chunks.stream()
             .map(rc -> {
-                Document doc = documentRepository.findById(rc.chunk().documentId()).orElse(null);
-                String title = doc != null ? doc.title() : "Unknown Document";
+                String title = titles.getOrDefault(rc.chunk().documentId(), "Unknown Document");
                 String location = rc.chunk().heading() != null ? rc.chunk().heading() :
                                  rc.chunk().pageNumber() != null ? "Page " + rc.chunk().pageNumber() :
                                  "Section " + rc.chunk().chunkIndex();
@@ -178,11 +179,20 @@ public class RagService {
             .collect(Collectors.toList());
     }
     
+    /** Titles of the chunks' documents, read in one query without the rest of the row. */
+    private Map<Long, String> titles(List<RetrievedChunk> chunks) {
+        Long[] ids = chunks.stream().map(rc -> rc.chunk().documentId()).distinct().toArray(Long[]::new);
+        if (ids.length == 0) return Map.of();
+        return documentRepository.findTitlesByIdIn(ids).stream()
+            .filter(d -> d.title() != null)
+            .collect(Collectors.toMap(Document::id, Document::title));
+    }
+
     private String buildContext(List<RetrievedChunk> chunks) {
+        Map<Long, String> titles = titles(chunks);
         return chunks.stream()
             .map(rc -> {
-                Document doc = documentRepository.findById(rc.chunk().documentId()).orElse(null);
-                String title = doc != null ? doc.title() : "Unknown";
+                String title = titles.getOrDefault(rc.chunk().documentId(), "Unknown");
                 String location = rc.chunk().heading() != null ? rc.chunk().heading() :
                                  rc.chunk().pageNumber() != null ? "Page " + rc.chunk().pageNumber() :
                                  "Section " + rc.chunk().chunkIndex();
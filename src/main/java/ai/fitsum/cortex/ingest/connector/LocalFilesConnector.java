@@ -1,7 +1,6 @@
 package ai.fitsum.cortex.ingest.connector;
 
-import ai.fitsum.cortex.ingest.service.ChunkingService;
-import ai.fitsum.cortex.ingest.service.DocumentNormalizer;
+import ai.fitsum.cortex.api.domain.Source;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,94 +8,157 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
  * Connector for ingesting local files.
- * Recursively scans a directory and processes all supported file types.
+ * Walks a directory depth-first in name order, one directory listing at a time, and yields
+ * supported files as it goes. The checkpoint is the file's path relative to the root, so an
+ * interrupted sync resumes after the last file it finished, skipping whole subtrees that
+ * sort before it. Files not modified since the last completed sync are skipped unless
+ * {@code "incremental": false}.
+ *
+ * <p>Config: {@code {"path": "/data/docs", "recursive": true, "extensions": ["pdf", ...],
+ * "incremental": true}}
  */
 @Service
-public class LocalFilesConnector {
-    
+public class LocalFilesConnector implements SourceConnector {
+
     private static final Logger log = LoggerFactory.getLogger(LocalFilesConnector.class);
-    
-    private final DocumentNormalizer normalizer;
-    private final ChunkingService chunker;
-    
-    public LocalFilesConnector(DocumentNormalizer normalizer, ChunkingService chunker) {
-        this.normalizer = normalizer;
-        this.chunker = chunker;
+
+    private static final List<String> DEFAULT_EXTENSIONS = List.of("txt", "md", "pdf", "doc", "docx", "html", "htm");
+
+    @Override
+    public Source.SourceType type() {
+        return Source.SourceType.LOCAL_FILES;
     }
-    
-    public List<IngestedDocument> sync(JsonNode config) throws IOException {
-        String basePath = config.get("path").asText();
-        boolean recursive = config.has("recursive") ? config.get("recursive").asBoolean() : true;
-        
-        log.info("Syncing local files from: {} (recursive: {})", basePath, recursive);
-        
-        Path rootPath = Paths.get(basePath);
-        List<IngestedDocument> documents = new ArrayList<>();
-        
-        try (Stream<Path> paths = recursive ? 
-                Files.walk(rootPath) : 
-                Files.list(rootPath)) {
-            
-            paths.filter(Files::isRegularFile)
-                .filter(this::isSupportedFile)
-                .forEach(path -> {
-                    try {
-                        IngestedDocument doc = ingestFile(path);
-                        documents.add(doc);
-                        log.debug("Ingested: {}", path.getFileName());
-                    } catch (IOException e) {
-                        log.error("Failed to ingest file: {}", path, e);
-                    }
-                });
+
+    @Override
+    public SourceCursor open(JsonNode config, String checkpoint, Instant since) throws IOException {
+        if (config == null || !config.hasNonNull("path")) {
+            throw new IllegalArgumentException("Local files source needs a \"path\" in its config");
         }
-        
-        log.info("Ingested {} documents from local files", documents.size());
-        return documents;
-    }
-    
-    private IngestedDocument ingestFile(Path path) throws IOException {
-        byte[] content = Files.readAllBytes(path);
-        String fileName = path.getFileName().toString();
-        
-        DocumentNormalizer.NormalizedDocument normalized = normalizer.normalize(content, fileName);
-        List<ChunkingService.TextChunk> chunks = chunker.chunk(normalized.text(), normalized.title());
-        
-        return new IngestedDocument(
-            path.toString(),
-            normalized.title(),
-            normalized.text(),
-            normalized.contentHash(),
-            normalized.contentType(),
-            chunks
-        );
+        Path root = Paths.get(config.get("path").asText());
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        boolean recursive = !config.has("recursive") || config.get("recursive").asBoolean();
+        boolean incremental = !config.has("incremental") || config.get("incremental").asBoolean();
+        Set<String> extensions = new HashSet<>();
+        if (config.has("extensions")) {
+            config.get("extensions").forEach(e -> extensions.add(e.asText().toLowerCase(Locale.ROOT)));
+        } else {
+            extensions.addAll(DEFAULT_EXTENSIONS);
+        }
+
+        log.info("Syncing local files from: {} (recursive: {}, resuming after: {}, changed since: {})",
+            root, recursive, checkpoint, incremental ? since : null);
+        return new Cursor(root, recursive, extensions, checkpoint, incremental ? since : null);
     }
-    
-    private boolean isSupportedFile(Path path) {
-        String name = path.getFileName().toString().toLowerCase();
-        return name.endsWith(".txt") ||
-               name.endsWith(".md") ||
-               name.endsWith(".pdf") ||
-               name.endsWith(".doc") ||
-               name.endsWith(".docx") ||
-               name.endsWith(".html") ||
-               name.endsWith(".htm");
+
+    private static final class Cursor implements SourceCursor {
+
+        private final Path root;
+        private final boolean recursive;
+        private final Set<String> extensions;
+        private final String[] resumeAfter;
+        private final Instant since;
+        // Directories being walked, each with its remaining entries in name order
+        private final Deque<Deque<Path>> stack = new ArrayDeque<>();
+
+        Cursor(Path root, boolean recursive, Set<String> extensions, String checkpoint, Instant since) throws IOException {
+            this.root = root;
+            this.recursive = recursive;
+            this.extensions = extensions;
+            this.resumeAfter = checkpoint == null || checkpoint.isEmpty() ? null : checkpoint.split("/");
+            this.since = since;
+            stack.push(list(root));
+        }
+
+        @Override
+        public SourceItem next() throws IOException {
+            while (!stack.isEmpty()) {
+                Path path = stack.peek().poll();
+                if (path == null) {
+                    stack.pop();
+                    continue;
+                }
+                String[] relative = components(path);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable path {}: {}", path, e.toString());
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    if (recursive && !before(relative, true)) {
+                        try {
+                            stack.push(list(path));
+                        } catch (IOException e) {
+                            log.warn("Skipping unreadable directory {}: {}", path, e.toString());
+                        }
+                    }
+                    continue;
+                }
+                if (!attrs.isRegularFile() || !isSupportedFile(path) || before(relative, false)) continue;
+                if (since != null && attrs.lastModifiedTime().toInstant().isBefore(since)) continue;
+                return SourceItem.ofFile(path.toString(), path, attrs.size(), String.join("/", relative));
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            stack.clear();
+        }
+
+        private static Deque<Path> list(Path dir) throws IOException {
+            try (Stream<Path> children = Files.list(dir)) {
+                return children
+                    .sorted((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()))
+                    .collect(ArrayDeque::new, ArrayDeque::add, ArrayDeque::addAll);
+            }
+        }
+
+        private String[] components(Path path) {
+            Path relative = root.relativize(path);
+            String[] names = new String[relative.getNameCount()];
+            for (int i = 0; i < names.length; i++) names[i] = relative.getName(i).toString();
+            return names;
+        }
+
+        /**
+         * Whether {@code path} was fully handled before the checkpoint. The walk visits paths
+         * in component-wise name order, so a directory is done only if it sorts before the
+         * checkpoint without containing it.
+         */
+        private boolean before(String[] path, boolean directory) {
+            if (resumeAfter == null) return false;
+            int n = Math.min(path.length, resumeAfter.length);
+            for (int i = 0; i < n; i++) {
+                int c = path[i].compareTo(resumeAfter[i]);
+                if (c != 0) return c < 0;
+            }
+            // One is a prefix of the other: a directory on the checkpoint's path is still open
+            return !directory && path.length <= resumeAfter.length;
+        }
+
+        private boolean isSupportedFile(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 && extensions.contains(name.substring(dot + 1));
+        }
     }
-    
-    public record IngestedDocument(
-        String externalId,
-        String title,
-        String content,
-        String contentHash,
-        String contentType,
-        List<ChunkingService.TextChunk> chunks
-    ) {}
 }
-
@@ -0,0 +1,435 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import ai.fitsum.cortex.api.domain.Source;
+import ai.fitsum.cortex.ingest.service.Hashes;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Connector for exported mailboxes: a single mbox file, or a directory tree of {@code .mbox}
+ * and {@code .eml} files (and extensionless files that start with a {@code From } line). Mbox files are scanned line by line without being loaded; the
+ * cursor keeps only the current line and the offsets of the message it is reading, and each
+ * message is handed to ingestion as a lazily opened byte range of the file (mboxrd
+ * {@code >From } quoting undone), which Tika parses as {@code message/rfc822}.
+ *
+ * <p>Messages are stored under their {@code Message-ID} as {@code external_id}, so a message
+ * exported into several folders, or exported again, is indexed once; messages without one
+ * fall back to a hash of their header block. The checkpoint holds the byte offset up to which
+ * each mbox file has been read. Mbox files only grow, so the checkpoint is kept after a
+ * completed sync and the next sync reads only newly appended messages, plus any from the
+ * first message that failed to ingest onwards (a file that shrank was rewritten and is read
+ * again from the start). The last message of a file has no separator after it and may be cut
+ * off mid-append, so the checkpoint stays at its {@code From } line and the next sync reads
+ * it again; unchanged, it is skipped by its content hash. {@code .eml} files are skipped when
+ * not modified since the last completed sync.
+ *
+ * <p>Config: {@code {"path": "/exports/mail.mbox"}}
+ */
+@Service
+public class MailboxConnector implements SourceConnector {
+
+    private static final Logger log = LoggerFactory.getLogger(MailboxConnector.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<Map<String, Long>> OFFSETS = new TypeReference<>() {};
+
+    @Override
+    public Source.SourceType type() {
+        return Source.SourceType.MAILBOX;
+    }
+
+    @Override
+    public boolean keepsCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public SourceCursor open(JsonNode config, String checkpoint, Instant since) throws IOException {
+        if (config == null || !config.hasNonNull("path")) {
+            throw new IllegalArgumentException("Mailbox source needs a \"path\" in its config");
+        }
+        Path root = Paths.get(config.get("path").asText());
+        Deque<Path> files = new ArrayDeque<>();
+        if (Files.isRegularFile(root)) {
+            files.add(root);
+        } else if (Files.isDirectory(root)) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(Files::isRegularFile)
+                    .filter(p -> isMbox(p) || isEml(p))
+                    .sorted()
+                    .forEach(files::add);
+            }
+        } else {
+            throw new IOException("No such mailbox: " + root);
+        }
+        Map<String, Long> offsets = new TreeMap<>();
+        if (checkpoint != null && !checkpoint.isEmpty()) {
+            offsets.putAll(JSON.readValue(checkpoint, OFFSETS));
+        }
+        log.info("Syncing mailbox {} ({} files, resuming from {} mbox offsets)", root, files.size(), offsets.size());
+        return new Cursor(root, files, offsets, since);
+    }
+
+    /** Mbox files by extension, or extensionless files (as some exporters write) that open with a {@code From } line. */
+    private static boolean isMbox(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".mbox") || name.endsWith(".mbx")) return true;
+        return !name.contains(".") && startsWithFrom(path);
+    }
+
+    private static boolean startsWithFrom(Path path) {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(5), "From ".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            log.warn("Skipping unreadable file {} in mailbox: {}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isEml(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".eml");
+    }
+
+    private static final class Cursor implements SourceCursor {
+
+        private final Path root;
+        private final Deque<Path> files;
+        private final Map<String, Long> offsets;
+        private final Instant since;
+        private MboxScanner mbox;
+
+        Cursor(Path root, Deque<Path> files, Map<String, Long> offsets, Instant since) {
+            this.root = root;
+            this.files = files;
+            this.offsets = offsets;
+            this.since = since;
+        }
+
+        @Override
+        public SourceItem next() throws IOException {
+            while (true) {
+                if (mbox != null) {
+                    MboxScanner.Message message = mbox.next();
+                    if (message != null) {
+                        offsets.put(mbox.key, message.resumeAt());
+                        Path file = mbox.file;
+                        long start = message.start();
+                        long length = message.end() - message.start();
+                        return SourceItem.ofStream(message.messageId(), safeName(message.messageId()) + ".eml", length,
+                            checkpoint(), () -> new MboxrdUnquotingInputStream(openRange(file, start, length)));
+                    }
+                    mbox.close();
+                    mbox = null;
+                }
+                Path file = files.poll();
+                if (file == null) return null;
+                String key = root.equals(file) ? "" : root.relativize(file).toString().replace('\\', '/');
+                if (isEml(file)) {
+                    if (since != null && Files.getLastModifiedTime(file).toInstant().isBefore(since)) continue;
+                    String messageId;
+                    try (LineReader lines = new LineReader(new BufferedInputStream(Files.newInputStream(file)))) {
+                        messageId = MboxScanner.readHeaders(lines);
+                        if (messageId == null) messageId = "sha256:" + lines.headerHash();
+                    }
+                    return SourceItem.ofFile(messageId, file, Files.size(file), checkpoint());
+                }
+                long size = Files.size(file);
+                long offset = offsets.getOrDefault(key, 0L);
+                if (offset > size) {
+                    log.info("Mailbox {} shrank below its checkpoint; reading it again from the start", file);
+                    offset = 0;
+                }
+                if (offset == size) continue;
+                mbox = MboxScanner.open(file, key, offset);
+            }
+        }
+
+        private String checkpoint() throws JsonProcessingException {
+            return JSON.writeValueAsString(offsets);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mbox != null) mbox.close();
+        }
+    }
+
+    private static InputStream openRange(Path file, long start, long length) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(start);
+        InputStream in = Channels.newInputStream(channel);
+        return new BufferedInputStream(BoundedInputStream.builder()
+            .setInputStream(in)
+            .setMaxCount(length)
+            .get());
+    }
+
+    private static String safeName(String messageId) {
+        String name = messageId.replaceAll("[^A-Za-z0-9._-]", "_");
+        return name.length() > 100 ? name.substring(0, 100) : name;
+    }
+
+    /**
+     * Finds message boundaries in an mbox file: every line starting with {@code "From "}
+     * begins a message (mboxrd/mboxo quote such lines inside messages).
+     */
+    static final class MboxScanner implements AutoCloseable {
+
+        /**
+         * A message's byte range (after its {@code From } line), and the offset a later scan
+         * should resume from: the end of the message when another separator follows it, or its
+         * own separator when it runs to the end of the file and may still be being appended.
+         */
+        record Message(String messageId, long start, long end, long resumeAt) {}
+
+        final Path file;
+        final String key;
+        private final LineReader lines;
+        private boolean atFrom;
+        private long separator;
+
+        private MboxScanner(Path file, String key, LineReader lines) {
+            this.file = file;
+            this.key = key;
+            this.lines = lines;
+        }
+
+        static MboxScanner open(Path file, String key, long offset) throws IOException {
+            InputStream in = Files.newInputStream(file);
+            try {
+                in.skipNBytes(offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new MboxScanner(file, key, new LineReader(new BufferedInputStream(in, 64 * 1024), offset));
+        }
+
+        /** The next message, or null at the end of the file. */
+        Message next() throws IOException {
+            // Skip to the first separator (only blank lines are expected before it)
+            while (!atFrom) {
+                separator = lines.position();
+                if (lines.read() < 0) return null;
+                atFrom = lines.startsWith("From ");
+            }
+            long from = separator;
+            long start = lines.position();
+            String messageId = readHeaders(lines);
+            long end;
+            long resumeAt;
+            while (true) {
+                long lineStart = lines.position();
+                if (lines.read() < 0) {
+                    end = lineStart;
+                    resumeAt = from;
+                    atFrom = false;
+                    break;
+                }
+                if (lines.startsWith("From ")) {
+                    end = lineStart;
+                    resumeAt = end;
+                    separator = lineStart;
+                    atFrom = true;
+                    break;
+                }
+            }
+            if (messageId == null) messageId = "sha256:" + lines.headerHash();
+            return new Message(messageId, start, end, resumeAt);
+        }
+
+        /**
+         * Reads a header block up to the blank line that ends it and returns the unfolded
+         * {@code Message-ID} without angle brackets, or null. The block is also hashed
+         * (see {@link LineReader#headerHash()}) for messages without an id.
+         */
+        static String readHeaders(LineReader lines) throws IOException {
+            lines.resetHash();
+            StringBuilder current = null;
+            String messageId = null;
+            while (lines.read() >= 0 && !lines.isBlank()) {
+                lines.hashLine();
+                String line = lines.text();
+                if (current != null && (line.startsWith(" ") || line.startsWith("\t"))) {
+                    current.append(line.trim());
+                    continue;
+                }
+                if (current != null && messageId == null) messageId = messageIdFrom(current.toString());
+                current = line.regionMatches(true, 0, "Message-ID:", 0, 11) ? new StringBuilder(line.substring(11).trim()) : null;
+            }
+            if (current != null && messageId == null) messageId = messageIdFrom(current.toString());
+            return messageId;
+        }
+
+        private static String messageIdFrom(String value) {
+            String id = value.trim();
+            int lt = id.indexOf('<');
+            int gt = id.indexOf('>', lt + 1);
+            if (lt >= 0 && gt > lt) id = id.substring(lt + 1, gt);
+            return id.isBlank() ? null : id.trim();
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+
+    /**
+     * Reads an input stream line by line as bytes, tracking the byte offset of each line and
+     * keeping at most {@link #MAX_KEPT} bytes of the current line.
+     */
+    static final class LineReader implements AutoCloseable {
+
+        private static final int MAX_KEPT = 4096;
+
+        private final InputStream in;
+        private final byte[] line = new byte[MAX_KEPT];
+        private int kept;
+        private long position;
+        private MessageDigest digest;
+
+        LineReader(InputStream in) {
+            this(in, 0);
+        }
+
+        LineReader(InputStream in, long position) {
+            this.in = in;
+            this.position = position;
+        }
+
+        /** Reads the next line; returns its length in bytes including the newline, or -1 at EOF. */
+        int read() throws IOException {
+            kept = 0;
+            int length = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                length++;
+                if (b == '\n') break;
+                if (kept < MAX_KEPT) line[kept++] = (byte) b;
+            }
+            if (length == 0) return -1;
+            if (kept > 0 && line[kept - 1] == '\r') kept--;
+            position += length;
+            return length;
+        }
+
+        /** Offset of the next unread byte. */
+        long position() {
+            return position;
+        }
+
+        boolean startsWith(String prefix) {
+            if (kept < prefix.length()) return false;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (line[i] != prefix.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        boolean isBlank() {
+            for (int i = 0; i < kept; i++) {
+                if (line[i] != ' ' && line[i] != '\t') return false;
+            }
+            return true;
+        }
+
+        String text() {
+            return new String(line, 0, kept, StandardCharsets.ISO_8859_1);
+        }
+
+        void resetHash() {
+            digest = Hashes.sha256();
+        }
+
+        void hashLine() {
+            digest.update(line, 0, kept);
+        }
+
+        String headerHash() {
+            return Hashes.hex(digest.digest());
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Undoes mboxrd quoting: one {@code >} is removed from lines matching {@code ^>+From }. */
+    static final class MboxrdUnquotingInputStream extends InputStream {
+
+        private static final byte[] FROM = "From ".getBytes(StandardCharsets.US_ASCII);
+        private static final int MAX_QUOTES = 256;
+
+        private final InputStream in;
+        private boolean lineStart = true;
+
+        MboxrdUnquotingInputStream(InputStream in) {
+            this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (lineStart) {
+                lineStart = false;
+                in.mark(MAX_QUOTES + FROM.length);
+                int quotes = 0;
+                int b;
+                while ((b = in.read()) == '>' && quotes < MAX_QUOTES) quotes++;
+                boolean from = quotes > 0 && b == FROM[0];
+                for (int i = 1; from && i < FROM.length; i++) {
+                    from = in.read() == FROM[i];
+                }
+                in.reset();
+                if (from) in.read(); // drop one '>'
+            }
+            int b = in.read();
+            if (b == '\n') lineStart = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int n = 0;
+            while (n < len) {
+                int b = read();
+                if (b < 0) break;
+                buf[off + n++] = (byte) b;
+            }
+            return n == 0 ? -1 : n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
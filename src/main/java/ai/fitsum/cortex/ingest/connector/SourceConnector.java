@@ -0,0 +1,37 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import ai.fitsum.cortex.api.domain.Source;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Pulls documents out of an external system on behalf of a {@link Source} of {@link #type()}.
+ * Items are produced lazily through a {@link SourceCursor}: the caller asks for the next item
+ * only when it has capacity to ingest it, so a connector never has to materialise the whole
+ * source. Each item carries a checkpoint from which {@link #open} can resume after an
+ * interrupted sync. Implementations are Spring beans picked up by {@link SourceSyncService}.
+ */
+public interface SourceConnector {
+
+    Source.SourceType type();
+
+    /**
+     * @param config     the source's {@code config_json}
+     * @param checkpoint checkpoint of the last item handled by an interrupted sync, or null to
+     *                   start from the beginning; items up to and including it are skipped
+     * @param since      start of the last completed sync, or null; connectors that can tell
+     *                   may skip items unchanged since then
+     */
+    SourceCursor open(JsonNode config, String checkpoint, Instant since) throws IOException;
+
+    /**
+     * Whether the checkpoint of a completed sync is passed to the next one. Suits append-only
+     * sources (e.g. mbox files), where it marks how far the source was read. It never passes
+     * an item that failed to ingest, so the next sync tries that item again.
+     */
+    default boolean keepsCheckpoint() {
+        return false;
+    }
+}
@@ -0,0 +1,14 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Lazy, pull-based sequence of {@link SourceItem}s. Not thread-safe; closing releases whatever
+ * the connector holds open (directory streams, files, connections).
+ */
+public interface SourceCursor extends Closeable {
+
+    /** The next item, or null when the source is exhausted. */
+    SourceItem next() throws IOException;
+}
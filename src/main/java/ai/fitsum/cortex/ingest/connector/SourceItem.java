@@ -0,0 +1,30 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * One document produced by a {@link SourceConnector}. Content is not read until the item is
+ * ingested: either {@code file} is set (the file is hashed and parsed from disk) or
+ * {@code content} opens a stream over the raw bytes.
+ *
+ * @param externalId stable id of the document within its source
+ * @param name       file name used for content-type detection and as fallback title
+ * @param checkpoint position to resume from once this item and all before it are ingested
+ */
+public record SourceItem(String externalId, String name, long size, String checkpoint, Path file, Content content) {
+
+    @FunctionalInterface
+    public interface Content {
+        InputStream open() throws IOException;
+    }
+
+    public static SourceItem ofFile(String externalId, Path file, long size, String checkpoint) {
+        return new SourceItem(externalId, file.getFileName().toString(), size, checkpoint, file, null);
+    }
+
+    public static SourceItem ofStream(String externalId, String name, long size, String checkpoint, Content content) {
+        return new SourceItem(externalId, name, size, checkpoint, null, content);
+    }
+}
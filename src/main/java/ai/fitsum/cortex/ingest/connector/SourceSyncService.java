@@ -0,0 +1,365 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.domain.Source;
+import ai.fitsum.cortex.api.repository.SourceRepository;
+import ai.fitsum.cortex.ingest.service.IngestionResult;
+import ai.fitsum.cortex.ingest.service.IngestionService;
+import ai.fitsum.cortex.ingest.service.Nodes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link SourceConnector} syncs. Items are pulled from the connector's cursor only while
+ * fewer than {@code cortex.ingestion.connector-concurrency} are being ingested, so memory is
+ * bounded by the documents in flight rather than by the size of the source.
+ *
+ * <p>Every {@code connector-checkpoint-interval} items the sync waits for the items in flight
+ * and stores the last item's checkpoint in the source's {@code config_json} under
+ * {@code "sync"}; a sync that is interrupted (crash, restart, connector error) resumes from
+ * there, and interrupted syncs are resumed at startup. Once an item fails the checkpoint
+ * stays at the item before it, so resuming never skips a failed item. A completed sync clears the checkpoint
+ * (unless the connector {@linkplain SourceConnector#keepsCheckpoint() keeps it}) and sets
+ * {@code last_sync_at} to the time it started, which connectors use to skip unchanged items
+ * next time; if any item failed, {@code last_sync_at} is left alone so the next sync looks at
+ * those items again.
+ *
+ * <p>A sync first claims its source in the database ({@code source.sync_owner}), so with
+ * several nodes only one of them syncs (or resumes) a source at a time. The claim is a lease
+ * of {@code cortex.ingestion.queue-lease-duration} renewed while the sync runs; if its node
+ * dies, another node may take the source over once the lease has expired.
+ */
+@Service
+public class SourceSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(SourceSyncService.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String SYNC_STATE = "sync";
+
+    public record SyncResult(
+        Long sourceId,
+        int ingested,
+        int unchanged,
+        int failed,
+        String resumedFrom,
+        long durationMs
+    ) {}
+
+    /** Live counters of a running sync. */
+    public record Progress(int ingested, int unchanged, int failed, String checkpoint) {}
+
+    private final Map<Source.SourceType, SourceConnector> connectors = new EnumMap<>(Source.SourceType.class);
+    private final SourceRepository sourceRepository;
+    private final IngestionService ingestionService;
+    private final int concurrency;
+    private final int checkpointInterval;
+    private final double leaseSeconds;
+    private final String owner = Nodes.localNodeId();
+    private final ExecutorService workers;
+    private final Map<Long, Counters> running = new ConcurrentHashMap<>();
+
+    public SourceSyncService(
+        List<SourceConnector> connectors,
+        SourceRepository sourceRepository,
+        IngestionService ingestionService,
+        CortexProperties properties
+    ) {
+        for (SourceConnector connector : connectors) {
+            this.connectors.put(connector.type(), connector);
+        }
+        this.sourceRepository = sourceRepository;
+        this.ingestionService = ingestionService;
+        this.concurrency = Math.max(1, properties.getIngestion().getConnectorConcurrency());
+        this.checkpointInterval = Math.max(1, properties.getIngestion().getConnectorCheckpointInterval());
+        this.leaseSeconds = Math.max(1, properties.getIngestion().getQueueLeaseDuration().toSeconds());
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "source-sync-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Resumes syncs that were interrupted by a shutdown, unless another node has claimed them
+     * already.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        for (Source source : sourceRepository.findByIsEnabled(true)) {
+            if (connectors.containsKey(source.sourceType()) && parseConfig(source).path(SYNC_STATE).hasNonNull("startedAt")) {
+                if (startSync(source.id())) {
+                    log.info("Resuming interrupted sync of source {} ({})", source.id(), source.name());
+                } else {
+                    log.info("Not resuming sync of source {} ({}): another node is syncing it", source.id(), source.name());
+                }
+            }
+        }
+    }
+
+    /** Renews this node's claims on the sources it is syncing. */
+    @Scheduled(fixedDelayString = "${cortex.ingestion.queue-maintenance-interval:PT30S}")
+    public void renewClaims() {
+        if (running.isEmpty()) return;
+        try {
+            sourceRepository.renewSyncClaims(running.keySet().toArray(Long[]::new), owner, leaseSeconds);
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew sync claims: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts syncing {@code sourceId} in the background.
+     *
+     * @return false if that source is already syncing, on this node or another
+     */
+    public boolean startSync(Long sourceId) {
+        Counters counters = new Counters();
+        Source source = claim(sourceId, counters);
+        if (source == null) return false;
+        Thread.ofVirtual().name("source-sync-" + sourceId).start(() -> {
+            try {
+                run(source, counters);
+            } catch (Exception e) {
+                log.error("Sync of source {} failed; it resumes from its last checkpoint", sourceId, e);
+            } finally {
+                release(sourceId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Syncs {@code sourceId} and returns when done.
+     *
+     * @throws IllegalStateException if that source is already syncing
+     */
+    public SyncResult sync(Long sourceId) throws IOException, InterruptedException {
+        Counters counters = new Counters();
+        Source source = claim(sourceId, counters);
+        if (source == null) {
+            throw new IllegalStateException("Source " + sourceId + " is already syncing");
+        }
+        try {
+            return run(source, counters);
+        } finally {
+            release(sourceId);
+        }
+    }
+
+    /** Progress of the running sync of {@code sourceId}, or null if it is not syncing. */
+    public Progress progress(Long sourceId) {
+        Counters c = running.get(sourceId);
+        return c == null ? null : new Progress(c.ingested.get(), c.unchanged.get(), c.failed.get(), c.checkpoint);
+    }
+
+    private Source load(Long sourceId) {
+        Source source = sourceRepository.findById(sourceId)
+            .orElseThrow(() -> new IllegalArgumentException("Unknown source " + sourceId));
+        if (!connectors.containsKey(source.sourceType())) {
+            throw new IllegalArgumentException("No connector for " + source.sourceType() + " sources");
+        }
+        if (Boolean.FALSE.equals(source.isEnabled())) {
+            throw new IllegalArgumentException("Source " + sourceId + " is disabled");
+        }
+        return source;
+    }
+
+    /**
+     * Claims {@code sourceId} for this node and returns it as it stands after the claim, or
+     * null if it is syncing already, here or on another node.
+     */
+    private Source claim(Long sourceId, Counters counters) {
+        load(sourceId);
+        if (running.putIfAbsent(sourceId, counters) != null) return null;
+        try {
+            if (sourceRepository.claimSync(sourceId, owner, leaseSeconds) == 0) {
+                running.remove(sourceId);
+                return null;
+            }
+            // Read again: the node that held the claim may have moved the checkpoint meanwhile
+            return load(sourceId);
+        } catch (RuntimeException e) {
+            release(sourceId);
+            throw e;
+        }
+    }
+
+    private void release(Long sourceId) {
+        running.remove(sourceId);
+        try {
+            sourceRepository.releaseSync(sourceId, owner);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release the sync claim on source {}; it expires with its lease: {}", sourceId, e.getMessage());
+        }
+    }
+
+    private static final class Counters {
+        final AtomicInteger ingested = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        volatile String checkpoint;
+    }
+
+    private SyncResult run(Source source, Counters counters) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        ObjectNode config = parseConfig(source);
+        String resumedFrom = checkpointOf(config);
+        JsonNode state = config.path(SYNC_STATE);
+        // A resumed sync keeps the start time of the attempt it continues
+        Instant startedAt = state.hasNonNull("startedAt") ? Instant.parse(state.get("startedAt").asText()) : Instant.now();
+        Instant since = source.lastSyncAt() == null ? null : source.lastSyncAt().atZone(ZoneId.systemDefault()).toInstant();
+        counters.checkpoint = resumedFrom;
+
+        SourceConnector connector = connectors.get(source.sourceType());
+        Semaphore slots = new Semaphore(concurrency);
+        List<Pending> batch = new ArrayList<>();
+        Resume resume = new Resume(resumedFrom);
+        try (SourceCursor cursor = connector.open(config, resumedFrom, since)) {
+            try {
+                SourceItem item;
+                while ((item = cursor.next()) != null) {
+                    slots.acquire();
+                    SourceItem next = item;
+                    batch.add(new Pending(item.checkpoint(), workers.submit(() -> {
+                        try {
+                            return ingest(source, next, counters);
+                        } finally {
+                            slots.release();
+                        }
+                    })));
+                    if (batch.size() >= checkpointInterval) {
+                        awaitAll(batch, resume);
+                        counters.checkpoint = resume.checkpoint;
+                        saveState(source, config, resume.checkpoint, startedAt, source.lastSyncAt());
+                    }
+                }
+            } finally {
+                awaitAll(batch, resume);
+            }
+        }
+
+        config.remove(SYNC_STATE);
+        if (connector.keepsCheckpoint() && resume.checkpoint != null) {
+            config.putObject(SYNC_STATE).put("checkpoint", resume.checkpoint);
+        }
+        LocalDateTime lastSyncAt = counters.failed.get() == 0
+            ? LocalDateTime.ofInstant(startedAt, ZoneId.systemDefault())
+            : source.lastSyncAt();
+        sourceRepository.save(source.withSyncState(config.toString(), lastSyncAt));
+
+        SyncResult result = new SyncResult(source.id(), counters.ingested.get(), counters.unchanged.get(),
+            counters.failed.get(), resumedFrom, System.currentTimeMillis() - start);
+        log.info("Synced source {} ({}): {}", source.id(), source.name(), result);
+        return result;
+    }
+
+    /** @return whether the item was ingested (or found unchanged) */
+    private boolean ingest(Source source, SourceItem item, Counters counters) {
+        try {
+            IngestionResult result;
+            if (item.file() != null) {
+                result = ingestionService.ingestSourceFile(source.id(), item.file(), item.externalId());
+            } else {
+                try (InputStream in = item.content().open()) {
+                    result = ingestionService.ingestSourceStream(source.id(), in, item.name(), item.externalId(), item.size());
+                }
+            }
+            (result.duplicate() ? counters.unchanged : counters.ingested).incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            counters.failed.incrementAndGet();
+            log.warn("Failed to ingest {} from source {}: {}", item.externalId(), source.id(), e.getMessage());
+            return false;
+        }
+    }
+
+    /** An item handed to a worker, with the checkpoint that follows it. */
+    private record Pending(String checkpoint, Future<Boolean> ingested) {}
+
+    /** The checkpoint a sync may resume from: it stops advancing at the first failed item. */
+    private static final class Resume {
+        String checkpoint;
+        boolean held;
+
+        Resume(String checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    /** Waits for the batch and moves the checkpoint over its items, in cursor order, up to the first failure. */
+    private static void awaitAll(List<Pending> batch, Resume resume) throws InterruptedException {
+        for (Pending pending : batch) {
+            boolean ingested;
+            try {
+                ingested = pending.ingested().get();
+            } catch (ExecutionException e) {
+                // ingest() handles its own failures
+                log.warn("Sync task failed", e.getCause());
+                ingested = false;
+            }
+            if (!ingested) {
+                resume.held = true;
+            } else if (!resume.held) {
+                resume.checkpoint = pending.checkpoint();
+            }
+        }
+        batch.clear();
+    }
+
+    private void saveState(Source source, ObjectNode config, String checkpoint, Instant startedAt, LocalDateTime lastSyncAt) {
+        ObjectNode state = config.putObject(SYNC_STATE);
+        state.put("checkpoint", checkpoint);
+        state.put("startedAt", startedAt.toString());
+        sourceRepository.save(source.withSyncState(config.toString(), lastSyncAt));
+    }
+
+    private static String checkpointOf(ObjectNode config) {
+        JsonNode checkpoint = config.path(SYNC_STATE).path("checkpoint");
+        return checkpoint.isTextual() ? checkpoint.asText() : null;
+    }
+
+    private static ObjectNode parseConfig(Source source) {
+        if (source.configJson() == null || source.configJson().isBlank()) return JSON.createObjectNode();
+        try {
+            JsonNode node = JSON.readTree(source.configJson());
+            if (node instanceof ObjectNode object) return object;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid config_json of source " + source.id() + ": " + e.getMessage());
+        }
+        throw new IllegalArgumentException("config_json of source " + source.id() + " is not a JSON object");
+    }
+}
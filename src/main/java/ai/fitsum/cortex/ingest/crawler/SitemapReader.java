@@ -0,0 +1,82 @@
+package ai.fitsum.cortex.ingest.crawler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+
+/**
+ * Streams {@code <url>} and {@code <sitemap>} entries out of a sitemap or sitemap index with
+ * StAX, so large sitemaps (up to 50,000 URLs each) are never held in memory. DTDs and external
+ * entities are disabled.
+ */
+final class SitemapReader {
+
+    record Entry(String loc, Instant lastModified) {}
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    }
+
+    private SitemapReader() {}
+
+    /**
+     * @param pages    receives {@code <url>} entries
+     * @param sitemaps receives the child sitemaps of a sitemap index
+     */
+    static void read(InputStream in, Consumer<Entry> pages, Consumer<Entry> sitemaps) throws XMLStreamException {
+        XMLStreamReader xml = FACTORY.createXMLStreamReader(in);
+        try {
+            String loc = null;
+            String lastmod = null;
+            StringBuilder text = new StringBuilder();
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> text.setLength(0);
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(xml.getText());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        switch (xml.getLocalName()) {
+                            case "loc" -> loc = text.toString().trim();
+                            case "lastmod" -> lastmod = text.toString().trim();
+                            case "url", "sitemap" -> {
+                                if (loc != null && !loc.isEmpty()) {
+                                    Entry entry = new Entry(loc, parseLastmod(lastmod));
+                                    if (xml.getLocalName().equals("url")) pages.accept(entry);
+                                    else sitemaps.accept(entry);
+                                }
+                                loc = null;
+                                lastmod = null;
+                            }
+                            default -> { }
+                        }
+                    }
+                    default -> { }
+                }
+            }
+        } finally {
+            xml.close();
+        }
+    }
+
+    /** W3C datetime as used by sitemaps: a date, or a date-time with offset. */
+    static Instant parseLastmod(String value) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            if (value.length() == 10) return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
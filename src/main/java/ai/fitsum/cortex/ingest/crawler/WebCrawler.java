@@ -0,0 +1,438 @@
+package ai.fitsum.cortex.ingest.crawler;
+
+import ai.fitsum.cortex.api.config.CrawlerProperties;
+import ai.fitsum.cortex.api.domain.CrawlPage;
+import ai.fitsum.cortex.api.repository.CrawlPageRepository;
+import ai.fitsum.cortex.ingest.service.HtmlTextExtractor;
+import ai.fitsum.cortex.ingest.service.IngestionResult;
+import ai.fitsum.cortex.ingest.service.IngestionService;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Keeps web pages (e.g. an internal wiki) indexed. Each crawl starts from the configured seed
+ * pages, following links up to {@code max-depth} hops under the seed's directory, and from the
+ * configured sitemaps. Every fetch runs on its own virtual thread, bounded by a global and a
+ * per-host limit; HTML is reduced to text while it streams in (see {@link HtmlTextExtractor}).
+ * The limits cover fetching only: a page is chunked and embedded after its connection and
+ * host slot are handed back. Pages larger than {@code max-page-size} are skipped, not cut.
+ *
+ * <p>Pages already indexed are revalidated with {@code If-None-Match}/{@code If-Modified-Since}
+ * from {@code crawl_page}, so an unchanged page costs one 304 response; sitemap entries whose
+ * {@code lastmod} is not newer than our copy are not requested at all. Changed pages are
+ * updated in place under their URL and pages answering 404/410 are removed from the index.
+ */
+@Service
+public class WebCrawler {
+
+    private static final Logger log = LoggerFactory.getLogger(WebCrawler.class);
+
+    private static final int MAX_SITEMAP_NESTING = 3;
+
+    public record CrawlSummary(
+        int pages,
+        int fetched,
+        int notModified,
+        int sitemapSkipped,
+        int ingested,
+        int unchanged,
+        int removed,
+        int skipped,
+        int tooLarge,
+        int failed,
+        long durationMs
+    ) {}
+
+    private final CrawlerProperties props;
+    private final IngestionService ingestionService;
+    private final CrawlPageRepository pageRepository;
+    private final HttpClient client;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile CrawlSummary lastSummary;
+
+    public WebCrawler(CrawlerProperties props, IngestionService ingestionService, CrawlPageRepository pageRepository) {
+        this.props = props;
+        this.ingestionService = ingestionService;
+        this.pageRepository = pageRepository;
+        this.client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(props.getTimeout())
+            .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        client.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${cortex.crawler.initial-delay:PT1M}", fixedDelayString = "${cortex.crawler.interval:PT6H}")
+    public void scheduledCrawl() {
+        if (!props.isEnabled() || (props.getSeeds().isEmpty() && props.getSitemaps().isEmpty())) return;
+        try {
+            crawl(props.getSeeds(), props.getSitemaps());
+        } catch (IllegalStateException e) {
+            log.info("Skipping scheduled crawl: {}", e.getMessage());
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public CrawlSummary lastSummary() {
+        return lastSummary;
+    }
+
+    /**
+     * Crawls the given seeds and sitemaps and returns once every reachable page has been
+     * handled.
+     *
+     * @throws IllegalStateException if a crawl is already running
+     */
+    public CrawlSummary crawl(List<String> seeds, List<String> sitemaps) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A crawl is already running");
+        }
+        long start = System.currentTimeMillis();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Run run = new Run(executor);
+            for (String sitemap : sitemaps) {
+                String url = canonical(sitemap);
+                if (url != null) run.fork(() -> readSitemap(run, url, 0));
+            }
+            for (String seed : seeds) {
+                String url = canonical(seed);
+                if (url == null) {
+                    log.warn("Ignoring crawl seed {}: not an http(s) URL", seed);
+                    continue;
+                }
+                run.submit(url, 0, url.substring(0, url.lastIndexOf('/') + 1));
+            }
+            run.arrive();
+            run.done.join();
+            CrawlSummary summary = run.summary(System.currentTimeMillis() - start);
+            lastSummary = summary;
+            log.info("Crawl finished: {}", summary);
+            return summary;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** State of one crawl: pages seen, outstanding tasks, limits and counters. */
+    private final class Run {
+        final ExecutorService executor;
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        final AtomicInteger pending = new AtomicInteger(1); // the crawl itself until seeding is done
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final Semaphore connections = new Semaphore(Math.max(1, props.getMaxConcurrency()));
+        final Semaphore ingestSlots = new Semaphore(Math.max(1, props.getIngestConcurrency()));
+        final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
+        final AtomicInteger sitemapSkipped = new AtomicInteger();
+        final AtomicInteger ingested = new AtomicInteger();
+        final AtomicInteger unchanged = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger tooLarge = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        Run(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /** Visits {@code url} unless it was seen already or the page budget is spent. */
+        void submit(String url, int depth, String scope) {
+            if (seen.size() >= props.getMaxPages() || !seen.add(url)) return;
+            fork(() -> visit(this, url, depth, scope));
+        }
+
+        void fork(Runnable task) {
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    arrive();
+                }
+            });
+        }
+
+        void arrive() {
+            if (pending.decrementAndGet() == 0) done.complete(null);
+        }
+
+        Semaphore host(URI uri) {
+            return hosts.computeIfAbsent(String.valueOf(uri.getAuthority()),
+                h -> new Semaphore(Math.max(1, props.getPerHostConcurrency())));
+        }
+
+        CrawlSummary summary(long durationMs) {
+            return new CrawlSummary(seen.size(), fetched.get(), notModified.get(), sitemapSkipped.get(),
+                ingested.get(), unchanged.get(), removed.get(), skipped.get(), tooLarge.get(), failed.get(), durationMs);
+        }
+    }
+
+    /** A fetched page reduced to what is indexed. */
+    private record Fetched(String title, String text, List<String> links) {}
+
+    private void visit(Run run, String url, int depth, String scope) {
+        CrawlPage state = pageRepository.findById(url).orElse(null);
+        boolean indexed = state != null && state.documentId() != null;
+        HttpRequest.Builder request = request(url);
+        if (indexed && state.etag() != null) request.header("If-None-Match", state.etag());
+        if (indexed && state.lastModified() != null) request.header("If-Modified-Since", state.lastModified());
+        URI uri = URI.create(url);
+        Semaphore host = run.host(uri);
+        try {
+            HttpResponse<InputStream> response;
+            Fetched page = null;
+            run.connections.acquire();
+            host.acquire();
+            try {
+                response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() / 100 == 2) page = read(run, url, scope, response, body);
+                }
+            } finally {
+                host.release();
+                run.connections.release();
+            }
+            handle(run, url, depth, scope, state, response, page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            run.failed.incrementAndGet();
+            log.warn("Failed to crawl {}: {}", url, e.toString());
+        }
+    }
+
+    /**
+     * Reads a 2xx body into text and links, or null if the page is not indexed: an unsupported
+     * content type, or larger than {@code max-page-size}.
+     */
+    private Fetched read(Run run, String url, String scope, HttpResponse<InputStream> response,
+                         InputStream body) throws Exception {
+        run.fetched.incrementAndGet();
+        long maxSize = props.getMaxPageSize().toBytes();
+        if (response.headers().firstValueAsLong("Content-Length").orElse(-1) > maxSize) {
+            return tooLarge(run, url);
+        }
+        String contentType = response.headers().firstValue("Content-Type").orElse("text/html").toLowerCase();
+        // One byte past the limit tells a page of exactly max-page-size from a larger one
+        BoundedInputStream limited = BoundedInputStream.builder()
+            .setInputStream(body)
+            .setMaxCount(maxSize + 1)
+            .get();
+        Fetched page;
+        try (Reader reader = new BufferedReader(new InputStreamReader(limited, charset(contentType)))) {
+            if (contentType.contains("html")) {
+                HtmlTextExtractor.Page html = HtmlTextExtractor.extract(reader, response.uri().toString());
+                page = new Fetched(html.title(), html.text(), inScope(html.links(), scope));
+            } else if (contentType.startsWith("text/plain")) {
+                StringWriter plain = new StringWriter();
+                reader.transferTo(plain);
+                page = new Fetched(null, plain.toString(), List.of());
+            } else {
+                run.skipped.incrementAndGet();
+                log.debug("Skipping {}: unsupported content type {}", url, contentType);
+                return null;
+            }
+        }
+        return limited.getCount() > maxSize ? tooLarge(run, url) : page;
+    }
+
+    private Fetched tooLarge(Run run, String url) {
+        run.tooLarge.incrementAndGet();
+        log.warn("Skipping {}: larger than max-page-size {}; the index keeps any earlier copy",
+            url, props.getMaxPageSize());
+        return null;
+    }
+
+    /** Acts on a response once its connection is released; {@code page} is null unless it is to be indexed. */
+    private void handle(Run run, String url, int depth, String scope, CrawlPage state,
+                        HttpResponse<InputStream> response, Fetched page) throws Exception {
+        int status = response.statusCode();
+        if (status == 304 && state != null) {
+            run.notModified.incrementAndGet();
+            pageRepository.recordNotModified(url);
+            follow(run, state.links() == null ? List.of() : List.of(state.links().split("\n")), depth, scope);
+            return;
+        }
+        if (status == 404 || status == 410) {
+            if (state != null) {
+                run.removed.addAndGet(ingestionService.deleteWebPages(List.of(url)));
+                pageRepository.deleteById(url);
+            }
+            return;
+        }
+        if (status / 100 != 2) {
+            run.failed.incrementAndGet();
+            log.warn("Crawling {} returned HTTP {}", url, status);
+            return;
+        }
+        if (page == null) return;
+
+        Long documentId = state != null ? state.documentId() : null;
+        if (page.text().isBlank()) {
+            run.skipped.incrementAndGet();
+        } else {
+            run.ingestSlots.acquire();
+            try {
+                IngestionResult result = ingestionService.ingestWebPage(url, page.title(), page.text());
+                documentId = result.documentId();
+                (result.duplicate() ? run.unchanged : run.ingested).incrementAndGet();
+            } finally {
+                run.ingestSlots.release();
+            }
+        }
+        pageRepository.recordFetch(url,
+            response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null),
+            documentId,
+            page.links().isEmpty() ? null : String.join("\n", page.links()));
+        follow(run, page.links(), depth, scope);
+    }
+
+    private void follow(Run run, List<String> links, int depth, String scope) {
+        if (depth >= props.getMaxDepth() || scope == null) return;
+        for (String link : links) {
+            run.submit(link, depth + 1, scope);
+        }
+    }
+
+    private void readSitemap(Run run, String url, int nesting) {
+        List<SitemapReader.Entry> children = new ArrayList<>();
+        Map<String, Instant> pages = new LinkedHashMap<>();
+        URI uri = URI.create(url);
+        Semaphore host = run.host(uri);
+        try {
+            run.connections.acquire();
+            host.acquire();
+            try {
+                HttpResponse<InputStream> response = client.send(request(url).build(), HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() / 100 != 2) {
+                        run.failed.incrementAndGet();
+                        log.warn("Fetching sitemap {} returned HTTP {}", url, response.statusCode());
+                        return;
+                    }
+                    InputStream in = url.endsWith(".gz") ? new GZIPInputStream(body) : body;
+                    SitemapReader.read(in, e -> {
+                        String page = canonical(e.loc());
+                        if (page != null) pages.putIfAbsent(page, e.lastModified());
+                    }, children::add);
+                }
+            } finally {
+                host.release();
+                run.connections.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            run.failed.incrementAndGet();
+            log.warn("Failed to read sitemap {}: {}", url, e.toString());
+            return;
+        }
+
+        for (SitemapReader.Entry child : children) {
+            String childUrl = canonical(child.loc());
+            if (childUrl != null && nesting < MAX_SITEMAP_NESTING) run.fork(() -> readSitemap(run, childUrl, nesting + 1));
+        }
+        pages.forEach((page, lastModified) -> {
+            if (lastModified != null && isCurrent(page, lastModified)) {
+                if (run.seen.add(page)) run.sitemapSkipped.incrementAndGet();
+                return;
+            }
+            run.submit(page, props.getMaxDepth(), null); // sitemap pages are listed, not followed
+        });
+    }
+
+    /** Whether our copy of {@code url} was fetched after the sitemap says it last changed. */
+    private boolean isCurrent(String url, Instant lastModified) {
+        return pageRepository.findById(url)
+            .filter(p -> p.documentId() != null && p.fetchedAt() != null)
+            .map(p -> !lastModified.isAfter(p.fetchedAt().atZone(ZoneId.systemDefault()).toInstant()))
+            .orElse(false);
+    }
+
+    private HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+            .timeout(props.getTimeout())
+            .header("User-Agent", props.getUserAgent())
+            .header("Accept", "text/html,application/xhtml+xml,text/plain;q=0.9,*/*;q=0.5")
+            .GET();
+    }
+
+    private static List<String> inScope(List<String> links, String scope) {
+        List<String> result = new ArrayList<>();
+        for (String link : links) {
+            String url = canonical(link);
+            if (url != null && (scope == null || url.startsWith(scope))) result.add(url);
+        }
+        return result;
+    }
+
+    /** Absolute http(s) URL without fragment, or null if {@code url} is not one. */
+    static String canonical(String url) {
+        try {
+            URI uri = new URI(url.trim()).normalize();
+            String scheme = uri.getScheme();
+            if (scheme == null || uri.getHost() == null
+                || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+                return null;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+            return scheme.toLowerCase() + "://" + uri.getRawAuthority().toLowerCase() + path + query;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Charset charset(String contentType) {
+        int i = contentType.indexOf("charset=");
+        if (i < 0) return StandardCharsets.UTF_8;
+        String name = contentType.substring(i + 8).split("[;\\s]")[0].replace("\"", "");
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+}
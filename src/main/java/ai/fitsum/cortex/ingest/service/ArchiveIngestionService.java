@@ -0,0 +1,252 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingests every document in a ZIP, TAR or gzipped TAR archive straight from the upload
+ * stream; nothing is extracted to disk. Entries are read one after another, hashed, and
+ * handed to {@code cortex.ingestion.archive-concurrency} workers; reading pauses while all
+ * workers are busy, so at most that many entries (each below
+ * {@code streaming-threshold}) are held in memory. Larger entries are streamed through the
+ * normalizer on the reading thread instead.
+ *
+ * <p>Each entry is stored with {@code external_id} {@code archive:<archive name>/<prefix><path>}.
+ * The namespace keeps entries apart from uploads and watched files with the same relative
+ * path. Uploading a newer version of the same archive updates changed entries in place.
+ * Entries whose content is already indexed, or repeated within the archive, are not parsed
+ * again.
+ */
+@Service
+public class ArchiveIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveIngestionService.class);
+
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    static final String EXTERNAL_ID_PREFIX = "archive:";
+
+    private static final Set<String> NESTED_ARCHIVES = Set.of("zip", "tar", "gz", "tgz", "7z", "rar", "jar");
+
+    public record EntryFailure(String entry, String error) {}
+
+    public record ArchiveResult(
+        String archive,
+        String format,
+        int entries,
+        int ingested,
+        int duplicates,
+        int skipped,
+        int failed,
+        List<EntryFailure> failures,
+        long durationMs
+    ) {}
+
+    private final IngestionService ingestionService;
+    private final int concurrency;
+    private final long maxBufferedEntry;
+    private final int maxEntries;
+    private final ExecutorService workers;
+
+    public ArchiveIngestionService(IngestionService ingestionService, CortexProperties properties) {
+        this.ingestionService = ingestionService;
+        CortexProperties.Ingestion ingestion = properties.getIngestion();
+        this.concurrency = Math.max(1, ingestion.getArchiveConcurrency());
+        this.maxBufferedEntry = Math.min(ingestion.getStreamingThreshold().toBytes(), Integer.MAX_VALUE - 8);
+        this.maxEntries = ingestion.getArchiveMaxEntries();
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "archive-ingest-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static final class Tally {
+        final AtomicInteger ingested = new AtomicInteger();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<EntryFailure> failures = Collections.synchronizedList(new ArrayList<>());
+
+        void record(IngestionResult result) {
+            (result.duplicate() ? duplicates : ingested).incrementAndGet();
+        }
+
+        void fail(String entry, Exception e) {
+            if (e instanceof IllegalArgumentException) {
+                // no extractable text: nothing to index, not an error in the archive
+                skipped.incrementAndGet();
+                log.debug("Skipping archive entry {}: {}", entry, e.getMessage());
+                return;
+            }
+            failed.incrementAndGet();
+            log.warn("Failed to ingest archive entry {}: {}", entry, e.toString());
+            if (failures.size() < MAX_REPORTED_FAILURES) failures.add(new EntryFailure(entry, Failures.message(e)));
+        }
+    }
+
+    /**
+     * Ingests all entries of the archive in {@code in} and returns once every entry is done.
+     * The stream is not closed.
+     *
+     * @param prefix prepended to each entry path within the archive's namespace; may be empty
+     * @throws IllegalArgumentException if the stream is not a ZIP or (gzipped) TAR archive
+     */
+    public ArchiveResult ingest(InputStream in, String archiveName, String prefix) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        InputStream buffered = new BufferedInputStream(CloseShieldInputStream.wrap(in));
+        boolean gzip = isGzip(buffered);
+        if (gzip) {
+            buffered = new BufferedInputStream(new GzipCompressorInputStream(buffered, true));
+        }
+        String format;
+        ArchiveInputStream archive;
+        try {
+            format = ArchiveStreamFactory.detect(buffered);
+            if (!format.equals(ArchiveStreamFactory.ZIP) && !format.equals(ArchiveStreamFactory.TAR)) {
+                throw new IllegalArgumentException("Unsupported archive format: " + format);
+            }
+            archive = new ArchiveStreamFactory().createArchiveInputStream(format, buffered);
+        } catch (ArchiveException e) {
+            throw new IllegalArgumentException("Not a ZIP or TAR archive: " + archiveName);
+        }
+        if (gzip) format += "+gzip";
+
+        String idPrefix = externalIdPrefix(archiveName, prefix);
+        Tally tally = new Tally();
+        Set<String> seenHashes = new HashSet<>();
+        Semaphore slots = new Semaphore(concurrency);
+        int entries = 0;
+        try (archive) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                if (++entries > maxEntries) {
+                    log.warn("Archive {} has more than {} entries; ignoring the rest", archiveName, maxEntries);
+                    entries--;
+                    break;
+                }
+                String path = entryPath(entry.getName());
+                if (path == null || ignored(path) || !archive.canReadEntryData(entry)) {
+                    tally.skipped.incrementAndGet();
+                    continue;
+                }
+                String filename = path.substring(path.lastIndexOf('/') + 1);
+                String externalId = idPrefix + path;
+
+                long size = entry.getSize();
+                byte[] head = size > maxBufferedEntry ? new byte[0] : archive.readNBytes((int) maxBufferedEntry + 1);
+                if (head.length > maxBufferedEntry || size > maxBufferedEntry) {
+                    // Too large to buffer: stage and ingest it from disk here, pausing the read loop
+                    InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head), CloseShieldInputStream.wrap(archive));
+                    try {
+                        tally.record(ingestionService.ingestLocalFileStreaming(rest, filename, externalId, Math.max(size, head.length)));
+                    } catch (Exception e) {
+                        tally.fail(path, e);
+                    }
+                    continue;
+                }
+
+                String hash = Hashes.sha256(head);
+                if (!seenHashes.add(hash)) {
+                    tally.duplicates.incrementAndGet();
+                    continue;
+                }
+                slots.acquire();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            tally.record(ingestionService.ingestArchiveEntry(head, filename, externalId, hash));
+                        } catch (Exception e) {
+                            tally.fail(path, e);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+        } finally {
+            slots.acquire(concurrency); // wait for the entries still being ingested
+            slots.release(concurrency);
+        }
+
+        ArchiveResult result = new ArchiveResult(archiveName, format, entries, tally.ingested.get(),
+            tally.duplicates.get(), tally.skipped.get(), tally.failed.get(), List.copyOf(tally.failures),
+            System.currentTimeMillis() - start);
+        log.info("Ingested archive {}: entries={} ingested={} duplicates={} skipped={} failed={} in {} ms",
+            archiveName, result.entries(), result.ingested(), result.duplicates(), result.skipped(), result.failed(),
+            result.durationMs());
+        return result;
+    }
+
+    /** {@code archive:<archive name>/<prefix>}; entry paths are appended to form external ids. */
+    static String externalIdPrefix(String archiveName, String prefix) {
+        String name = archiveName == null || archiveName.isBlank() ? "archive" : archiveName.strip();
+        return EXTERNAL_ID_PREFIX + name + "/" + (prefix == null ? "" : prefix);
+    }
+
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b;
+    }
+
+    /** Entry name as a relative '/'-separated path, or null if it escapes the archive root. */
+    static String entryPath(String name) {
+        String path = name.replace('\\', '/');
+        while (path.startsWith("./")) path = path.substring(2);
+        while (path.startsWith("/")) path = path.substring(1);
+        if (path.isEmpty()) return null;
+        for (String segment : path.split("/")) {
+            if (segment.equals("..")) return null;
+        }
+        return path;
+    }
+
+    /** OS metadata, hidden and temporary files, and archives nested in the archive. */
+    private static boolean ignored(String path) {
+        if (path.startsWith("__MACOSX/")) return true;
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (name.startsWith(".") || name.startsWith("~$")) return true;
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && NESTED_ARCHIVES.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,94 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Charset sniffing for the normalizer's text fast paths, a cheap stand-in for Tika's
+ * detectors: a byte order mark wins, then (for HTML) a {@code <meta charset>} declaration,
+ * then UTF-8 if the bytes are valid UTF-8, else windows-1252 (which decodes any byte).
+ */
+final class Charsets {
+
+    /** How many leading bytes callers should hand to {@link #sniff} when streaming. */
+    static final int SNIFF_LENGTH = 8192;
+
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static final Pattern META_CHARSET = Pattern.compile(
+        "<meta[^>]+charset\\s*=\\s*[\"']?([A-Za-z0-9_:.-]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * @param bomLength bytes of byte order mark to skip before decoding
+     */
+    record Sniffed(Charset charset, int bomLength) {}
+
+    private Charsets() {}
+
+    /**
+     * @param complete whether {@code head[0, length)} is the whole content; if not, a multi-byte
+     *                 sequence cut off at the end does not count against UTF-8
+     */
+    static Sniffed sniff(byte[] head, int length, boolean complete, boolean html) {
+        if (startsWith(head, length, 0xEF, 0xBB, 0xBF)) return new Sniffed(StandardCharsets.UTF_8, 3);
+        if (startsWith(head, length, 0xFE, 0xFF)) return new Sniffed(StandardCharsets.UTF_16BE, 2);
+        if (startsWith(head, length, 0xFF, 0xFE)) return new Sniffed(StandardCharsets.UTF_16LE, 2);
+        if (html) {
+            Charset declared = declaredCharset(head, Math.min(length, SNIFF_LENGTH));
+            if (declared != null) return new Sniffed(declared, 0);
+        }
+        return new Sniffed(isUtf8(head, length, complete) ? StandardCharsets.UTF_8 : WINDOWS_1252, 0);
+    }
+
+    /** Whether the bytes look binary: a NUL byte never occurs in 8-bit text. */
+    static boolean hasNul(byte[] head, int length) {
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) return true;
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... bom) {
+        if (length < bom.length) return false;
+        for (int i = 0; i < bom.length; i++) {
+            if ((head[i] & 0xFF) != bom[i]) return false;
+        }
+        return true;
+    }
+
+    private static Charset declaredCharset(byte[] head, int length) {
+        Matcher m = META_CHARSET.matcher(new String(head, 0, length, StandardCharsets.ISO_8859_1));
+        if (!m.find()) return null;
+        try {
+            Charset charset = Charset.forName(m.group(1));
+            // As in browsers (WHATWG Encoding), a declared ISO-8859-1 means windows-1252
+            return charset.equals(StandardCharsets.ISO_8859_1) ? WINDOWS_1252 : charset;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isUtf8(byte[] head, int length, boolean complete) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(head, 0, length);
+        CharBuffer out = CharBuffer.allocate(4096);
+        while (true) {
+            var result = decoder.decode(in, out, complete);
+            if (result.isError()) return false;
+            if (result.isOverflow()) {
+                out.clear();
+                continue;
+            }
+            // Underflow: everything decoded, or (when incomplete) only a cut-off sequence is left
+            return complete || in.remaining() < 4;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Packs trimmed paragraphs into overlapping chunks of at most {@code maxTokens} embedding
+ * tokens. Shared by {@link ChunkingService#chunk} and {@link IncrementalChunker}; paragraphs
+ * are passed as ranges of a caller-owned {@link CharSequence}, so the only strings created
+ * are the emitted chunks and detected headings.
+ */
+final class ChunkAssembler {
+
+    private static final String PARAGRAPH_SEPARATOR = "\n\n";
+
+    private final TokenCounter tokens;
+    private final int maxTokens;
+    private final int overlapPercent;
+    private final int separatorTokens;
+    private final Consumer<ChunkingService.TextChunk> sink;
+
+    private final StringBuilder current = new StringBuilder();
+    private int currentTokens;
+    private String currentHeading;
+    private Integer page;
+    private Integer currentPage; // page on which the buffered chunk starts
+    private int chunkIndex;
+
+    ChunkAssembler(TokenCounter tokens, int maxTokens, int overlapPercent, Consumer<ChunkingService.TextChunk> sink) {
+        this.tokens = tokens;
+        this.maxTokens = maxTokens;
+        this.overlapPercent = overlapPercent;
+        this.separatorTokens = tokens.count(PARAGRAPH_SEPARATOR);
+        this.sink = sink;
+    }
+
+    void page(Integer pageNumber) {
+        this.page = pageNumber;
+    }
+
+    int chunkCount() {
+        return chunkIndex;
+    }
+
+    /**
+     * Adds {@code src[from, to)} as one paragraph: it is trimmed, may become the current
+     * heading, and is either appended to the buffered chunk or hard-wrapped if oversize.
+     */
+    void paragraph(CharSequence src, int from, int to) {
+        int start = trimStart(src, from, to);
+        int end = trimEnd(src, start, to);
+        if (start == end) return;
+        int length = tokens.count(src, start, end);
+
+        if (isHeading(src, start, end)) {
+            currentHeading = src.subSequence(start, end).toString();
+        }
+
+        // Flush current if appending would exceed cap
+        if (current.length() > 0 && currentTokens + length + separatorTokens > maxTokens) {
+            emit(current, 0, current.length(), currentPage);
+            retainOverlap();
+            if (currentTokens + length + separatorTokens > maxTokens) {
+                // The overlap must not push the next chunk over the budget
+                current.setLength(0);
+                currentTokens = 0;
+            }
+            currentPage = page;
+        }
+
+        // Hard-wrap extremely large paragraphs
+        if (length > maxTokens) {
+            slice(src, start, end);
+        } else {
+            if (current.length() == 0) currentPage = page;
+            current.append(src, start, end).append(PARAGRAPH_SEPARATOR);
+            currentTokens += length + separatorTokens;
+        }
+    }
+
+    /**
+     * Emits {@code src[from, to)} as chunks of its own, flushing the buffered chunk first and
+     * hard-wrapping at word boundaries where the range exceeds the token budget.
+     */
+    void slice(CharSequence src, int from, int to) {
+        finish();
+        int start = from;
+        while (start < to) {
+            int end = tokens.fit(src, start, to, maxTokens);
+            emit(src, start, end, page);
+            start = end;
+        }
+    }
+
+    void finish() {
+        if (current.length() > 0) {
+            emit(current, 0, current.length(), currentPage);
+            current.setLength(0);
+            currentTokens = 0;
+        }
+    }
+
+    private void emit(CharSequence src, int from, int to, Integer pageNumber) {
+        int start = trimStart(src, from, to);
+        int end = trimEnd(src, start, to);
+        if (start == end) return;
+        sink.accept(new ChunkingService.TextChunk(chunkIndex++, src.subSequence(start, end).toString(), currentHeading, pageNumber));
+    }
+
+    /**
+     * Keeps the last {@code overlapPercent} of the buffered chunk, starting after the first
+     * sentence end ({@code [.!?]\s+}) in that tail when there is one.
+     */
+    private void retainOverlap() {
+        int length = current.length();
+        int overlapSize = (int) (length * overlapPercent / 100.0);
+        if (overlapSize <= 0 || length <= overlapSize) {
+            current.setLength(0);
+            currentTokens = 0;
+            return;
+        }
+        int from = length - overlapSize;
+        for (int i = from; i < length - 1; i++) {
+            char c = current.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && isSpace(current.charAt(i + 1))) {
+                int j = i + 1;
+                while (j < length && isSpace(current.charAt(j))) j++;
+                from = j;
+                break;
+            }
+        }
+        current.delete(0, from);
+        currentTokens = tokens.count(current, 0, current.length());
+    }
+
+    /**
+     * Markdown-style ({@code #}), colon-terminated or short title-case-letters-only lines.
+     */
+    static boolean isHeading(CharSequence s, int from, int to) {
+        int length = to - from;
+        if (length == 0) return false;
+        char first = s.charAt(from);
+        if (first == '#') return true;
+        if (length < 100 && s.charAt(to - 1) == ':') return true;
+        if (length < 3 || length > 51 || first < 'A' || first > 'Z') return false;
+        for (int i = from + 1; i < to; i++) {
+            char c = s.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || isSpace(c))) return false;
+        }
+        return true;
+    }
+
+    // String.trim() semantics: everything up to U+0020 is stripped
+    static int trimStart(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    static int trimEnd(CharSequence s, int from, int to) {
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        return to;
+    }
+
+    // Regex \s without UNICODE_CHARACTER_CLASS
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -5,97 +5,135 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Chunks text into overlapping segments optimized for embedding and retrieval.
- * Uses configurable token target and overlap; hard-wraps oversize blocks to
- * keep under the model context (BGE-Large ~512 tokens).
+ * Uses configurable token target and overlap, measured with the embedding model's
+ * tokenizer; hard-wraps oversize blocks to keep under the model context (BGE-Large
+ * 512 tokens). Paragraph boundaries are found by scanning the text in place; only
+ * emitted chunks are copied into new strings.
  */
 @Service
 public class ChunkingService {
 
-    private static final double CHARS_PER_TOKEN = 3.2; // safer for BERT/BGE
+    private static final int SPECIAL_TOKENS = 2; // [CLS] and [SEP]
+    private static final int MAX_CHARS_PER_TOKEN = 8; // bounds IncrementalChunker's line buffers
 
     private final CortexProperties properties;
+    private final TokenCounter tokenCounter;
 
-    public ChunkingService(CortexProperties properties) {
+    public ChunkingService(CortexProperties properties, TokenCounter tokenCounter) {
         this.properties = properties;
+        this.tokenCounter = tokenCounter;
     }
 
     public List<TextChunk> chunk(String text, String documentTitle) {
-        int targetTokens = properties.getIngestion().getChunkSizeTokens();
-        int overlapPercent = properties.getIngestion().getChunkOverlapPercent();
-        int maxChars = (int) Math.round(targetTokens * CHARS_PER_TOKEN);
-
         List<TextChunk> chunks = new ArrayList<>();
+        ChunkAssembler assembler = assembler(chunks::add);
+        int length = text.length();
+
+        // Prefer paragraph boundaries (2+ line breaks); fall back to single-line boundaries
+        // when the text has no paragraph break other than a trailing one
+        int paragraphBreak = nextParagraphBreak(text, 0);
+        if (paragraphBreak >= 0 && skipLineBreaks(text, paragraphBreak) < length) {
+            int start = 0;
+            while (paragraphBreak >= 0) {
+                assembler.paragraph(text, start, paragraphBreak);
+                start = skipLineBreaks(text, paragraphBreak);
+                paragraphBreak = nextParagraphBreak(text, start);
+            }
+            assembler.paragraph(text, start, length);
+        } else {
+            int start = 0;
+            while (start < length) {
+                int end = start;
+                while (end < length && lineBreakEnd(text, end) == end) end++;
+                assembler.paragraph(text, start, end);
+                start = end < length ? lineBreakEnd(text, end) : length;
+            }
+        }
 
-        // Prefer paragraph boundaries; fallback to single-line boundaries
-        String[] blocks = text.split("\\R{2,}");
-        if (blocks.length == 1) {
-            blocks = text.split("\\R");
+        assembler.finish();
+        return chunks;
+    }
+
+    /**
+     * Chunks page-separated text (index 0 = page 1), carrying page numbers into
+     * {@link TextChunk#pageNumber()}. Paragraphs never span pages; a chunk reports the
+     * page on which it starts.
+     */
+    public List<TextChunk> chunkPages(List<String> pages, String documentTitle) {
+        List<TextChunk> chunks = new ArrayList<>();
+        IncrementalChunker chunker = incremental(chunks::add);
+        for (int i = 0; i < pages.size(); i++) {
+            chunker.startPage(i + 1);
+            String page = pages.get(i);
+            if (page != null) chunker.write(page);
         }
+        chunker.finish();
+        return chunks;
+    }
 
-        StringBuilder current = new StringBuilder();
-        int chunkIndex = 0;
-        String currentHeading = null;
+    /**
+     * Creates a chunker that accepts text incrementally (e.g. as a Tika SAX writer)
+     * and hands each chunk to {@code sink} as soon as it is complete.
+     */
+    public IncrementalChunker incremental(java.util.function.Consumer<TextChunk> sink) {
+        return new IncrementalChunker(assembler(sink), maxTokens() * MAX_CHARS_PER_TOKEN);
+    }
 
-        for (String block : blocks) {
-            String paragraph = block.trim();
-            if (paragraph.isEmpty()) continue;
+    /**
+     * Token budget per chunk: the configured chunk size, capped so that a chunk plus the
+     * special tokens always fits the embedding model's input window.
+     */
+    public int maxTokens() {
+        CortexProperties.Ingestion ingestion = properties.getIngestion();
+        return Math.max(1, Math.min(ingestion.getChunkSizeTokens(), ingestion.getEmbeddingMaxTokens() - SPECIAL_TOKENS));
+    }
 
-            if (isHeading(paragraph)) {
-                currentHeading = paragraph;
-            }
+    private ChunkAssembler assembler(java.util.function.Consumer<TextChunk> sink) {
+        return new ChunkAssembler(tokenCounter, maxTokens(), properties.getIngestion().getChunkOverlapPercent(), sink);
+    }
 
-            // Flush current if appending would exceed cap
-            if (current.length() > 0 && current.length() + paragraph.length() + 2 > maxChars) {
-                chunks.add(new TextChunk(chunkIndex++, current.toString().trim(), currentHeading, null));
-                String overlap = extractOverlap(current.toString(), overlapPercent);
-                current = new StringBuilder(overlap);
+    /**
+     * Start of the next run of two or more line breaks at or after {@code from}, or -1.
+     */
+    static int nextParagraphBreak(CharSequence s, int from) {
+        int i = from;
+        while (i < s.length()) {
+            int next = lineBreakEnd(s, i);
+            if (next == i) {
+                i++;
+                continue;
             }
-
-            // Hard-wrap extremely large paragraphs
-            if (paragraph.length() > maxChars) {
-                int start = 0;
-                while (start < paragraph.length()) {
-                    int end = Math.min(paragraph.length(), start + maxChars);
-                    String slice = paragraph.substring(start, end);
-                    if (current.length() > 0) {
-                        chunks.add(new TextChunk(chunkIndex++, current.toString().trim(), currentHeading, null));
-                        current.setLength(0);
-                    }
-                    chunks.add(new TextChunk(chunkIndex++, slice.trim(), currentHeading, null));
-                    start = end;
-                }
-            } else {
-                current.append(paragraph).append("\n\n");
+            int runStart = i;
+            int breaks = 0;
+            while (next > i) {
+                breaks++;
+                i = next;
+                next = lineBreakEnd(s, i);
             }
+            if (breaks >= 2) return runStart;
         }
-
-        if (current.length() > 0) {
-            chunks.add(new TextChunk(chunkIndex, current.toString().trim(), currentHeading, null));
-        }
-
-        return chunks;
+        return -1;
     }
 
-    private boolean isHeading(String text) {
-        return text.startsWith("#") ||
-            (text.length() < 100 && text.endsWith(":")) ||
-            text.matches("^[A-Z][A-Za-z\\s]{2,50}$");
+    static int skipLineBreaks(CharSequence s, int from) {
+        int i = from;
+        int next;
+        while ((next = lineBreakEnd(s, i)) > i) i = next;
+        return i;
     }
 
-    private String extractOverlap(String text, int overlapPercent) {
-        int overlapSize = Math.max(0, (int) (text.length() * overlapPercent / 100.0));
-        if (overlapSize == 0 || text.length() <= overlapSize) return "";
-        String tail = text.substring(text.length() - overlapSize);
-
-        Pattern sentenceEnd = Pattern.compile("[.!?]\\s+");
-        Matcher m = sentenceEnd.matcher(tail);
-        if (m.find()) return tail.substring(m.end());
-        return tail;
+    /**
+     * Index just past the line break at {@code i}, or {@code i} if there is none. Matches
+     * regex {@code \R}: CRLF counts as a single break.
+     */
+    static int lineBreakEnd(CharSequence s, int i) {
+        if (i >= s.length()) return i;
+        char c = s.charAt(i);
+        if (c == '\r') return i + 1 < s.length() && s.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+        return c == '\n' || c == '\u000B' || c == '\f' || c == '\u0085' || c == '\u2028' || c == '\u2029' ? i + 1 : i;
     }
 
     public record TextChunk(
@@ -105,4 +143,3 @@ public class ChunkingService {
         Integer pageNumber
     ) {}
 }
-
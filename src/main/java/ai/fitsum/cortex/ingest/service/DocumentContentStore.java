@@ -0,0 +1,70 @@
+package ai.fitsum.cortex.ingest.service;
+
+import com.github.luben.zstd.Zstd;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Extracted text of documents, kept out of the {@code document} row so that document lookups
+ * never read it. Text is stored zstd-compressed in {@code document_content} and only loaded
+ * by {@link #get}; rows migrated from the old {@code raw_content} column stay uncompressed
+ * ({@code plain}) until the document is re-ingested.
+ */
+@Service
+public class DocumentContentStore {
+
+    private static final String ZSTD = "zstd";
+    private static final String PLAIN = "plain";
+    private static final int LEVEL = 3;
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    public DocumentContentStore(NamedParameterJdbcTemplate namedJdbc) {
+        this.namedJdbc = namedJdbc;
+    }
+
+    /** Stores {@code text} for {@code documentId}, replacing what was there; {@code null} removes it. */
+    public void put(Long documentId, String text) {
+        if (text == null) {
+            delete(documentId);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        var params = new MapSqlParameterSource("id", documentId)
+            .addValue("codec", ZSTD)
+            .addValue("length", bytes.length)
+            .addValue("content", Zstd.compress(bytes, LEVEL));
+        namedJdbc.update("""
+            INSERT INTO document_content(document_id, codec, length, content)
+            VALUES (:id, :codec, :length, :content)
+            ON CONFLICT (document_id) DO UPDATE
+            SET codec = EXCLUDED.codec, length = EXCLUDED.length, content = EXCLUDED.content
+            """, params);
+    }
+
+    public Optional<String> get(Long documentId) {
+        return namedJdbc.query(
+            "SELECT codec, length, content FROM document_content WHERE document_id = :id",
+            new MapSqlParameterSource("id", documentId),
+            (rs, i) -> decode(rs.getString("codec"), rs.getInt("length"), rs.getBytes("content"))
+        ).stream().findFirst();
+    }
+
+    public void delete(Long documentId) {
+        namedJdbc.update("DELETE FROM document_content WHERE document_id = :id",
+            new MapSqlParameterSource("id", documentId));
+    }
+
+    static String decode(String codec, int length, byte[] content) {
+        byte[] bytes = switch (codec) {
+            case ZSTD -> Zstd.decompress(content, length);
+            case PLAIN -> content;
+            default -> throw new IllegalStateException("Unknown document content codec: " + codec);
+        };
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
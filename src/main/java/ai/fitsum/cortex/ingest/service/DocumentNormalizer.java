@@ -1,62 +1,108 @@
 package ai.fitsum.cortex.ingest.service;
 
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.sax.BodyContentHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Normalizes documents from various formats to plain text.
- * Uses Apache Tika for format detection and parsing.
+ * Uses Apache Tika for format detection and parsing; PDFs are extracted page by page with
+ * PDFBox so scanned pages can be OCR'd selectively and page numbers are kept. Both run under
+ * the worker, time and output limits of {@link TikaParserPool} (PDFs in-process even when
+ * Tika forks).
+ * Plain text, Markdown and HTML files (by extension) skip Tika's detection and parser chain:
+ * they are decoded with a sniffed charset ({@link Charsets}) and converted directly, Markdown
+ * and HTML headings becoming {@code #} lines for the chunker. Files with such a name that
+ * turn out to be binary still go through Tika.
  */
 @Service
 public class DocumentNormalizer {
     
     private static final Logger log = LoggerFactory.getLogger(DocumentNormalizer.class);
     
-    private final AutoDetectParser parser = new AutoDetectParser();
+    private static final String PDF_CONTENT_TYPE = "application/pdf";
+
+    private enum FastPath {
+        TEXT("text/plain"),
+        MARKDOWN("text/x-web-markdown"),
+        HTML("text/html");
+
+        final String mediaType;
+
+        FastPath(String mediaType) {
+            this.mediaType = mediaType;
+        }
+    }
+
     private final OcrService ocrService;
+    private final PdfPageExtractor pdfPageExtractor;
+    private final TikaParserPool tikaParsers;
     
-    public DocumentNormalizer(OcrService ocrService) {
+    public DocumentNormalizer(OcrService ocrService, PdfPageExtractor pdfPageExtractor, TikaParserPool tikaParsers) {
         this.ocrService = ocrService;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.tikaParsers = tikaParsers;
     }
 
     public NormalizedDocument normalize(byte[] rawContent, String fileName) throws IOException {
+        return normalize(rawContent, fileName, null);
+    }
+
+    /**
+     * @param contentHash SHA-256 of {@code rawContent} if the caller already has it, otherwise
+     *                    {@code null} to compute it here
+     */
+    public NormalizedDocument normalize(byte[] rawContent, String fileName, String contentHash) throws IOException {
+        if (contentHash == null) {
+            contentHash = Hashes.sha256(rawContent);
+        }
+        if (isPdf(rawContent, fileName)) {
+            return normalizePdf(rawContent, fileName, contentHash);
+        }
+        FastPath fastPath = fastPath(fileName);
+        if (fastPath != null) {
+            NormalizedDocument normalized = normalizeFast(fastPath, rawContent, fileName, contentHash);
+            if (normalized != null) return normalized;
+        }
         try {
-            BodyContentHandler handler = new BodyContentHandler(-1);  // no limit
             Metadata metadata = new Metadata();
             metadata.set("resourceName", fileName);
             
-            ParseContext parseContext = new ParseContext();
-            parser.parse(
-                new ByteArrayInputStream(rawContent),
-                handler,
-                metadata,
-                parseContext
-            );
+            TikaParserPool.Parsed parsed = tikaParsers.parseToString(new ByteArrayInputStream(rawContent), metadata);
+            if (parsed.truncated()) {
+                metadata.set("truncated", "true");
+            }
             
-            String text = handler.toString();
+            String text = parsed.text();
             String contentType = metadata.get(Metadata.CONTENT_TYPE);
             String title = extractTitle(metadata, fileName);
-            String contentHash = computeSha256(rawContent);
             
-            // Fallback to OCR when enabled and extracted text is empty/minimal
+            // Fallback to OCR when enabled and extracted text is empty/minimal (PDFs are handled per page)
             if (ocrService.isEnabled()) {
-                boolean isPdf = (contentType != null && contentType.contains("pdf"))
-                    || (fileName != null && fileName.toLowerCase().endsWith(".pdf"));
                 boolean isImage = contentType != null && contentType.startsWith("image/");
                 boolean needsOcr = text == null || text.isBlank() || text.length() < 20;
-                if (needsOcr && (isPdf || isImage)) {
-                    String ocrText = isPdf ? ocrService.ocrPdf(rawContent) : ocrService.ocrImage(rawContent);
+                if (needsOcr && isImage) {
+                    String ocrText = ocrService.ocrImage(rawContent);
                     if (ocrText != null && !ocrText.isBlank()) {
                         text = ocrText;
                         metadata.add("ocr", "true");
@@ -79,8 +125,271 @@ public class DocumentNormalizer {
         }
     }
     
+    private NormalizedDocument normalizePdf(byte[] rawContent, String fileName, String contentHash) throws IOException {
+        try {
+            List<StringBuilder> pages = new ArrayList<>();
+            Metadata metadata = pdfMetadata();
+            var extracted = tikaParsers.extract(fileName, out -> {
+                try (PDDocument doc = PDDocument.load(rawContent)) {
+                    return extractPdf(doc, metadata, out);
+                }
+            }, new TikaParserPool.TextSink() {
+                @Override
+                public void startPage(int pageNumber) {
+                    pages.add(new StringBuilder());
+                }
+
+                @Override
+                public void write(String text) {
+                    pages.get(pages.size() - 1).append(text);
+                }
+            });
+            if (extracted.truncated()) {
+                metadata.set("truncated", "true");
+            }
+
+            StringBuilder text = new StringBuilder();
+            for (StringBuilder page : pages) {
+                if (page.isEmpty() || page.toString().isBlank()) continue;
+                if (text.length() > 0) text.append("\n\n");
+                text.append(page.toString().strip());
+            }
+            String title = extractTitle(metadata, fileName);
+            log.debug("Normalized PDF: {} ({} pages, {} chars)", title, pages.size(), text.length());
+
+            return new NormalizedDocument(
+                title,
+                text.toString(),
+                PDF_CONTENT_TYPE,
+                contentHash,
+                metadata,
+                pages.stream().map(StringBuilder::toString).toList()
+            );
+        } catch (Exception e) {
+            throw new IOException("Failed to parse document: " + fileName, e);
+        }
+    }
+
+    /**
+     * Writes the pages of {@code doc} to {@code out}, adding its title and whether pages were
+     * OCR'd to {@code metadata}. Runs on a {@link TikaParserPool} thread.
+     */
+    private PdfPageExtractor.PdfExtraction extractPdf(PDDocument doc, Metadata metadata, TikaParserPool.TextSink out)
+            throws IOException {
+        String title = doc.getDocumentInformation() != null ? doc.getDocumentInformation().getTitle() : null;
+        if (title != null && !title.isBlank()) {
+            metadata.set("title", title);
+        }
+        var extraction = pdfPageExtractor.extract(doc, page -> {
+            try {
+                out.startPage(page.pageNumber());
+                if (page.text() != null) out.write(page.text());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (extraction.ocrPages() > 0) {
+            metadata.add("ocr", "true");
+        }
+        return extraction;
+    }
+
+    /**
+     * @return {@code null} if the content looks binary and should go through Tika instead
+     */
+    private NormalizedDocument normalizeFast(FastPath fastPath, byte[] rawContent, String fileName,
+                                             String contentHash) throws IOException {
+        Charsets.Sniffed sniffed = Charsets.sniff(rawContent, rawContent.length, true, fastPath == FastPath.HTML);
+        if (sniffed.bomLength() == 0 && Charsets.hasNul(rawContent, rawContent.length)) return null;
+        StringWriter text = new StringWriter(rawContent.length);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(rawContent, sniffed.bomLength(), rawContent.length - sniffed.bomLength()),
+            sniffed.charset()));
+        Metadata metadata = fastMetadata(fastPath, sniffed, fileName, extractFast(fastPath, reader, text));
+        String title = extractTitle(metadata, fileName);
+        log.debug("Normalized document without Tika: {} (type: {}, {} chars)", title, fastPath.mediaType, text.getBuffer().length());
+        return new NormalizedDocument(
+            title,
+            text.toString(),
+            metadata.get(Metadata.CONTENT_TYPE),
+            contentHash,
+            metadata
+        );
+    }
+
+    /**
+     * Writes the text of {@code reader} to {@code out}.
+     *
+     * @return the document's own title, or {@code null}
+     */
+    private static String extractFast(FastPath fastPath, BufferedReader reader, Writer out) throws IOException {
+        switch (fastPath) {
+            case TEXT -> {
+                reader.transferTo(out);
+                return null;
+            }
+            case MARKDOWN -> {
+                return MarkdownTextExtractor.extract(reader, out);
+            }
+            default -> {
+                HtmlTextExtractor.Page page = HtmlTextExtractor.extract(reader, "");
+                out.write(page.text());
+                return page.title();
+            }
+        }
+    }
+
+    private static Metadata fastMetadata(FastPath fastPath, Charsets.Sniffed sniffed, String fileName, String title) {
+        Metadata metadata = new Metadata();
+        metadata.set("resourceName", fileName);
+        metadata.set(Metadata.CONTENT_TYPE, fastPath.mediaType + "; charset=" + sniffed.charset().name());
+        if (title != null && !title.isBlank()) {
+            metadata.set("title", title.strip());
+        }
+        return metadata;
+    }
+
+    private static FastPath fastPath(String fileName) {
+        int dot = fileName == null ? -1 : fileName.lastIndexOf('.');
+        if (dot < 0) return null;
+        return switch (fileName.substring(dot + 1).toLowerCase(Locale.ROOT)) {
+            case "txt", "text" -> FastPath.TEXT;
+            case "md", "markdown" -> FastPath.MARKDOWN;
+            case "html", "htm" -> FastPath.HTML;
+            default -> null;
+        };
+    }
+
+    private static Metadata pdfMetadata() {
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, PDF_CONTENT_TYPE);
+        return metadata;
+    }
+
+    private static boolean isPdf(byte[] rawContent, String fileName) {
+        if (fileName != null && fileName.toLowerCase().endsWith(".pdf")) return true;
+        return rawContent.length >= 5 && rawContent[0] == '%' && rawContent[1] == 'P'
+            && rawContent[2] == 'D' && rawContent[3] == 'F' && rawContent[4] == '-';
+    }
+
+    /**
+     * Streaming variant of {@link #normalize}: Tika's SAX text output is written straight
+     * into {@code chunker}, and the SHA-256 content hash is computed on the input stream as
+     * it is consumed, so neither the raw bytes nor the extracted text are held in memory.
+     * PDFs are extracted page by page (with selective OCR); for other formats OCR fallback
+     * is not applied here and callers holding the file can retry via {@link #normalize}
+     * when no text was produced. Plain text, Markdown and HTML take the same fast paths as in
+     * {@link #normalize}, with the charset sniffed from the first {@value Charsets#SNIFF_LENGTH}
+     * bytes. The stream is not closed.
+     */
+    public StreamedDocument normalizeStreaming(InputStream in, String fileName, IncrementalChunker chunker) throws IOException {
+        return normalizeStreaming(in, fileName, chunker, null);
+    }
+
+    /**
+     * @param contentHash SHA-256 of the stream if the caller already has it; the stream is
+     *                    then parsed without being hashed again
+     */
+    public StreamedDocument normalizeStreaming(InputStream in, String fileName, IncrementalChunker chunker,
+                                               String contentHash) throws IOException {
+        MessageDigest digest = contentHash == null ? Hashes.sha256() : null;
+        InputStream source = CloseShieldInputStream.wrap(in);
+        try (InputStream hashing = digest != null ? new DigestInputStream(source, digest) : source) {
+            if (fileName != null && fileName.toLowerCase().endsWith(".pdf")) {
+                Metadata metadata = pdfMetadata();
+                var extracted = tikaParsers.extract(fileName, out -> {
+                    // PDFBox needs random access; it spools the stream to a scratch file instead of the heap
+                    try (PDDocument doc = PDDocument.load(hashing, MemoryUsageSetting.setupTempFileOnly())) {
+                        return extractPdf(doc, metadata, out);
+                    }
+                }, new TikaParserPool.TextSink() {
+                    @Override
+                    public void startPage(int pageNumber) {
+                        chunker.startPage(pageNumber);
+                    }
+
+                    @Override
+                    public void write(String text) {
+                        chunker.write(text);
+                    }
+                });
+                if (extracted.truncated()) {
+                    metadata.set("truncated", "true");
+                }
+                chunker.finish();
+                if (digest != null) hashing.transferTo(OutputStream.nullOutputStream());
+                return new StreamedDocument(
+                    extractTitle(metadata, fileName),
+                    PDF_CONTENT_TYPE,
+                    digest != null ? Hashes.hex(digest.digest()) : contentHash,
+                    metadata,
+                    chunker.charCount(),
+                    chunker.chunkCount()
+                );
+            }
+
+            InputStream input = hashing;
+            FastPath fastPath = fastPath(fileName);
+            if (fastPath != null) {
+                BufferedInputStream buffered = new BufferedInputStream(hashing, Charsets.SNIFF_LENGTH);
+                buffered.mark(Charsets.SNIFF_LENGTH);
+                byte[] head = buffered.readNBytes(Charsets.SNIFF_LENGTH);
+                buffered.reset();
+                Charsets.Sniffed sniffed = Charsets.sniff(head, head.length, head.length < Charsets.SNIFF_LENGTH,
+                    fastPath == FastPath.HTML);
+                if (sniffed.bomLength() > 0 || !Charsets.hasNul(head, head.length)) {
+                    buffered.skipNBytes(sniffed.bomLength());
+                    String ownTitle = extractFast(fastPath,
+                        new BufferedReader(new InputStreamReader(CloseShieldInputStream.wrap(buffered), sniffed.charset())),
+                        chunker);
+                    chunker.finish();
+                    if (digest != null) buffered.transferTo(OutputStream.nullOutputStream());
+                    Metadata metadata = fastMetadata(fastPath, sniffed, fileName, ownTitle);
+                    String title = extractTitle(metadata, fileName);
+                    log.debug("Normalized (streaming) document without Tika: {} (type: {}, {} chars, {} chunks)",
+                        title, fastPath.mediaType, chunker.charCount(), chunker.chunkCount());
+                    return new StreamedDocument(
+                        title,
+                        metadata.get(Metadata.CONTENT_TYPE),
+                        digest != null ? Hashes.hex(digest.digest()) : contentHash,
+                        metadata,
+                        chunker.charCount(),
+                        chunker.chunkCount()
+                    );
+                }
+                input = buffered; // binary after all: Tika reads the sniffed bytes again
+            }
+
+            Metadata metadata = new Metadata();
+            metadata.set("resourceName", fileName);
+
+            if (tikaParsers.parse(input, chunker, metadata)) {
+                metadata.set("truncated", "true");
+            }
+            chunker.finish();
+            // Parsers may stop before EOF; the hash must still cover every byte
+            if (digest != null) input.transferTo(OutputStream.nullOutputStream());
+
+            String contentType = metadata.get(Metadata.CONTENT_TYPE);
+            String title = extractTitle(metadata, fileName);
+            log.debug("Normalized (streaming) document: {} (type: {}, {} chars, {} chunks)",
+                title, contentType, chunker.charCount(), chunker.chunkCount());
+
+            return new StreamedDocument(
+                title,
+                contentType,
+                digest != null ? Hashes.hex(digest.digest()) : contentHash,
+                metadata,
+                chunker.charCount(),
+                chunker.chunkCount()
+            );
+        } catch (Exception e) {
+            throw new IOException("Failed to parse document: " + fileName, e);
+        }
+    }
+
     public NormalizedDocument normalizeText(String text, String title) {
-        String contentHash = computeSha256(text.getBytes(StandardCharsets.UTF_8));
+        String contentHash = Hashes.sha256(text);
         return new NormalizedDocument(
             title,
             text,
@@ -101,31 +410,28 @@ public class DocumentNormalizer {
         return name;
     }
     
-    private String computeSha256(byte[] content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content);
-            
-            // Convert to hex string
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-            
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
-        }
-    }
-    
+    /**
+     * @param pages per-page text (index 0 = page 1) for paged formats, otherwise {@code null}
+     */
     public record NormalizedDocument(
         String title,
         String text,
         String contentType,
         String contentHash,
-        Metadata metadata
+        Metadata metadata,
+        List<String> pages
+    ) {
+        public NormalizedDocument(String title, String text, String contentType, String contentHash, Metadata metadata) {
+            this(title, text, contentType, contentHash, metadata, null);
+        }
+    }
+
+    public record StreamedDocument(
+        String title,
+        String contentType,
+        String contentHash,
+        Metadata metadata,
+        long charCount,
+        int chunkCount
     ) {}
 }
-
@@ -0,0 +1,150 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes tombstoned documents ({@code deleted_at} set). Deleting a document with thousands
+ * of chunks in one statement holds row locks and rewrites the full-text, trigram and vector
+ * indexes in a single long transaction; here chunks are deleted {@code purge-batch-size} at a
+ * time, each batch committed on its own, with {@code purge-pause} between batches. The
+ * document row goes last, taking its stored text and near-duplicate signature with it.
+ *
+ * <p>Deletes only tombstone, so the work they leave behind happens here as well: each run
+ * first re-indexes the near-duplicates whose twin was deleted (see
+ * {@link IngestionService#reindexReleasedDuplicates()}).
+ *
+ * <p>Every node may run it: a pass claims its documents with {@code FOR UPDATE SKIP LOCKED}
+ * for {@code queue-lease-duration} ({@code purge_claimed_until}), so other nodes pick
+ * different ones. Batches also skip chunks locked by another node, so a claim that outlives
+ * its lease only means two nodes share a document. A document still being streamed in is
+ * held the same way (see {@link DocumentRepository#holdUnpublished}), so it is purged only
+ * once its ingest fails or stops renewing the claim.
+ */
+@Service
+public class DocumentPurger {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentPurger.class);
+
+    private static final int DOCUMENTS_PER_PASS = 50;
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final IngestionService ingestionService;
+    private final CortexProperties.Ingestion props;
+
+    public DocumentPurger(NamedParameterJdbcTemplate namedJdbc, IngestionService ingestionService, CortexProperties properties) {
+        this.namedJdbc = namedJdbc;
+        this.ingestionService = ingestionService;
+        this.props = properties.getIngestion();
+    }
+
+    /** Purges tombstones until none are left or a pass makes no progress. */
+    @Scheduled(fixedDelayString = "${cortex.ingestion.purge-interval:PT30S}")
+    public void purge() {
+        try {
+            ingestionService.reindexReleasedDuplicates();
+        } catch (RuntimeException e) {
+            // Released near-duplicates stay marked as such and are picked up by the next run
+            log.warn("Re-indexing near-duplicates of deleted documents failed", e);
+        }
+        try {
+            int batchSize = Math.max(1, props.getPurgeBatchSize());
+            int documents = 0;
+            long chunks = 0;
+            long sincePause = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Long> ids = claim();
+                if (ids.isEmpty()) break;
+                int purged = 0;
+                for (Long id : ids) {
+                    // purgeChunks pauses after full batches; the rest of small documents add up to one
+                    long removed = purgeChunks(id, batchSize);
+                    if (Thread.currentThread().isInterrupted()) return;
+                    chunks += removed;
+                    sincePause += removed % batchSize;
+                    if (sincePause >= batchSize) {
+                        sincePause = 0;
+                        if (!pause()) return;
+                    }
+                    purged += namedJdbc.update("""
+                        DELETE FROM document
+                        WHERE id = :id AND deleted_at IS NOT NULL
+                          AND NOT EXISTS (SELECT 1 FROM chunk WHERE document_id = :id)
+                        """, Map.of("id", id));
+                }
+                documents += purged;
+                if (purged == 0) break;
+            }
+            if (documents > 0 || chunks > 0) {
+                log.info("Purged {} deleted documents and {} chunks", documents, chunks);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Purging deleted documents failed", e);
+        }
+    }
+
+    /** Number of deleted documents not yet purged. */
+    public long pending() {
+        Long count = namedJdbc.queryForObject(
+            "SELECT COUNT(*) FROM document WHERE deleted_at IS NOT NULL", Map.of(), Long.class);
+        return count != null ? count : 0;
+    }
+
+    /** Claims up to {@link #DOCUMENTS_PER_PASS} deleted documents no other node is purging, oldest first. */
+    private List<Long> claim() {
+        var params = new MapSqlParameterSource("limit", DOCUMENTS_PER_PASS)
+            .addValue("lease", Math.max(1, props.getQueueLeaseDuration().toSeconds()));
+        return namedJdbc.queryForList("""
+            UPDATE document SET purge_claimed_until = NOW() + make_interval(secs => :lease)
+            WHERE id IN (
+                SELECT id FROM document
+                WHERE deleted_at IS NOT NULL
+                  AND (purge_claimed_until IS NULL OR purge_claimed_until < NOW())
+                ORDER BY deleted_at, id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING id
+            """, params, Long.class);
+    }
+
+    /** Deletes the document's chunks in batches, pausing between full ones. */
+    private long purgeChunks(Long documentId, int batchSize) {
+        var params = new MapSqlParameterSource("id", documentId).addValue("batch", batchSize);
+        long removed = 0;
+        int n;
+        do {
+            n = namedJdbc.update("""
+                DELETE FROM chunk
+                WHERE id IN (
+                    SELECT id FROM chunk
+                    WHERE document_id = :id
+                    LIMIT :batch
+                    FOR UPDATE SKIP LOCKED
+                )
+                """, params);
+            removed += n;
+        } while (n == batchSize && pause());
+        return removed;
+    }
+
+    /** Sleeps {@code purge-pause}; false if interrupted. */
+    boolean pause() {
+        try {
+            Thread.sleep(props.getPurgePause().toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code documentStorage} in {@code /actuator/health}: deleted documents still waiting for
+ * {@link DocumentPurger}, and vacuum/analyze state of the document tables from
+ * {@code pg_stat_user_tables}. Tables with many dead rows are listed under
+ * {@code vacuumDue}; they do not make the application unhealthy.
+ */
+@Component
+public class DocumentStorageHealthIndicator implements HealthIndicator {
+
+    private static final List<String> TABLES = List.of("document", "chunk", "document_content", "document_lsh_bucket");
+    // autovacuum's default threshold is 20%; past it without a vacuum the table is bloating
+    private static final double DEAD_RATIO = 0.2;
+    private static final long DEAD_MIN = 10_000;
+
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final DocumentPurger purger;
+
+    public DocumentStorageHealthIndicator(NamedParameterJdbcTemplate namedJdbc, DocumentPurger purger) {
+        this.namedJdbc = namedJdbc;
+        this.purger = purger;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> tables = new LinkedHashMap<>();
+        List<String> vacuumDue = new ArrayList<>();
+        namedJdbc.query("""
+            SELECT relname, n_live_tup, n_dead_tup, n_mod_since_analyze,
+                   GREATEST(last_vacuum, last_autovacuum) AS last_vacuum,
+                   GREATEST(last_analyze, last_autoanalyze) AS last_analyze
+            FROM pg_stat_user_tables
+            WHERE relname IN (:tables)
+            ORDER BY relname
+            """, Map.of("tables", TABLES), rs -> {
+                long live = rs.getLong("n_live_tup");
+                long dead = rs.getLong("n_dead_tup");
+                double ratio = live + dead == 0 ? 0 : (double) dead / (live + dead);
+                Map<String, Object> table = new LinkedHashMap<>();
+                table.put("liveRows", live);
+                table.put("deadRows", dead);
+                table.put("deadRatio", Math.round(ratio * 1000) / 1000.0);
+                table.put("modifiedSinceAnalyze", rs.getLong("n_mod_since_analyze"));
+                table.put("lastVacuum", rs.getTimestamp("last_vacuum"));
+                table.put("lastAnalyze", rs.getTimestamp("last_analyze"));
+                tables.put(rs.getString("relname"), table);
+                if (dead >= DEAD_MIN && ratio > DEAD_RATIO) {
+                    vacuumDue.add(rs.getString("relname"));
+                }
+            });
+        return Health.up()
+            .withDetail("deletedDocumentsPendingPurge", purger.pending())
+            .withDetail("vacuumDue", vacuumDue)
+            .withDetail("tables", tables)
+            .build();
+    }
+}
@@ -0,0 +1,83 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Token counting for the embedding model. Loads the model's WordPiece vocabulary once from
+ * {@code cortex.ingestion.tokenizer-vocab}; a configured vocabulary that cannot be loaded
+ * fails startup. When none is configured, falls back to the former characters-per-token
+ * estimate so ingestion keeps working, and {@link #isExact()} tells callers not to store
+ * the counts.
+ */
+@Service
+public class EmbeddingTokenizer implements TokenCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingTokenizer.class);
+
+    static final double CHARS_PER_TOKEN = 3.2; // conservative for BERT/BGE, used without a vocabulary
+
+    private final TokenCounter delegate;
+
+    public EmbeddingTokenizer(CortexProperties properties) {
+        this.delegate = load(properties.getIngestion().getTokenizerVocab());
+    }
+
+    /**
+     * True when counts come from the model vocabulary rather than the estimate.
+     */
+    public boolean isExact() {
+        return delegate instanceof WordPieceTokenizer;
+    }
+
+    @Override
+    public int count(CharSequence text, int from, int to) {
+        return delegate.count(text, from, to);
+    }
+
+    @Override
+    public int fit(CharSequence text, int from, int to, int maxTokens) {
+        return delegate.fit(text, from, to, maxTokens);
+    }
+
+    private static TokenCounter load(String location) {
+        if (location == null || location.isBlank()) {
+            log.warn("No tokenizer vocabulary configured (cortex.ingestion.tokenizer-vocab): chunk sizes are estimated "
+                + "at {} chars per token and chunks are stored without a token count. Point it at the embedding "
+                + "model's vocab.txt for exact counts", CHARS_PER_TOKEN);
+            return new Estimate();
+        }
+        Resource resource = new DefaultResourceLoader().getResource(location);
+        if (!resource.exists()) {
+            throw new IllegalStateException("Tokenizer vocabulary " + location
+                + " not found; fix cortex.ingestion.tokenizer-vocab or leave it empty to estimate token counts");
+        }
+        try (InputStream in = resource.getInputStream()) {
+            WordPieceTokenizer tokenizer = WordPieceTokenizer.load(in);
+            log.info("Loaded WordPiece vocabulary from {} ({} tokens)", location, tokenizer.vocabularySize());
+            return tokenizer;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load tokenizer vocabulary " + location, e);
+        }
+    }
+
+    static final class Estimate implements TokenCounter {
+        @Override
+        public int count(CharSequence text, int from, int to) {
+            return (int) Math.ceil((to - from) / CHARS_PER_TOKEN);
+        }
+
+        @Override
+        public int fit(CharSequence text, int from, int to, int maxTokens) {
+            return TokenCounter.codePointBoundary(text, from, to,
+                Math.min(to, from + Math.max(1, (int) (maxTokens * CHARS_PER_TOKEN))));
+        }
+    }
+}
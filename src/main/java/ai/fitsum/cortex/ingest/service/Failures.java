@@ -0,0 +1,47 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Classifies ingestion failures for the retry loops of the watcher and the work queue.
+ */
+final class Failures {
+
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+
+    private Failures() {}
+
+    /**
+     * Whether retrying later may succeed: the embedding server or database was busy or
+     * unreachable. Parse errors and rejected requests are permanent.
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof NonTransientAiException) return false;
+            if (t instanceof TransientAiException
+                || t instanceof ResourceAccessException
+                || t instanceof TransientDataAccessException
+                || t instanceof RecoverableDataAccessException
+                || t instanceof DuplicateKeyException // a twin file was being ingested concurrently
+                || t instanceof java.net.ConnectException
+                || t instanceof java.net.SocketTimeoutException
+                || t instanceof java.net.http.HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The exception and its root cause, capped for storage. */
+    static String message(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) root = root.getCause();
+        String message = root == e ? e.toString() : e + " (caused by " + root + ")";
+        return message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    }
+}
@@ -1,148 +1,617 @@
 package ai.fitsum.cortex.ingest.service;
 
 import ai.fitsum.cortex.api.config.WatcherProperties;
-import ai.fitsum.cortex.api.repository.WatcherStateRepository;
+import ai.fitsum.cortex.api.domain.WatcherDeadLetter;
+import ai.fitsum.cortex.api.repository.WatcherDeadLetterRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Keeps the configured folder ingested. By default changes are picked up from file-system
+ * events ({@link RecursiveDirectoryWatcher}) within the debounce period, and a full scan only
+ * runs every {@code reconcile-interval} (or after events were lost) to catch anything missed.
+ * With {@code cortex.watcher.events=false}, or where watching is unavailable, the tree is
+ * scanned every {@code poll-interval} as before.
+ * <p>
+ * Changed files are ingested on a pool of {@code concurrency} workers with a bounded backlog,
+ * so scans and event bursts keep the embedding server busy without queueing the whole tree.
+ * Only one scan runs at a time. Transient failures (embedding server or database busy) are
+ * retried with exponential backoff; files that keep failing are parked in
+ * {@code watcher_dead_letter} and skipped until they change or are retried explicitly.
+ * <p>
+ * With {@code cortex.watcher.cluster=true}, several instances can watch the same shared
+ * root: each heartbeats into {@code watcher_node} and only ingests the files it owns (see
+ * {@link WatcherCluster}). When a node joins, leaves or stops heartbeating, the others
+ * reload the shared state and rescan to take over its files.
+ * <p>
+ * With {@code cortex.watcher.queue=true}, changed files are handed to the {@link IngestQueue}
+ * instead of being parsed here, so any node with the root mounted may ingest them; their
+ * retries and failures are then tracked on the queue task.
+ */
 @Service
 public class FolderWatcherService {
 
     private static final Logger log = LoggerFactory.getLogger(FolderWatcherService.class);
 
+    static final String WATCHED_FILE = "WATCHED_FILE";
+    /** Namespace of watched files' external ids within the local-files source, apart from uploads. */
+    static final String EXTERNAL_ID_PREFIX = "watch:";
+
     private final WatcherProperties props;
     private final IngestionService ingestionService;
-    private final WatcherStateRepository stateRepository;
+    private final WatcherDeadLetterRepository deadLetterRepository;
+    private final IngestQueue ingestQueue;
     private final org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate namedJdbc;
 
     // Runtime stats
     private volatile long lastScanStart = 0L;
     private volatile long lastScanEnd = 0L;
-    private volatile int lastScanned = 0;
-    private volatile int lastIngested = 0;
-    private volatile int lastFailed = 0;
+    private final AtomicInteger lastScanned = new AtomicInteger();
+    private final AtomicInteger lastIngested = new AtomicInteger();
+    private final AtomicInteger lastFailed = new AtomicInteger();
+    private final AtomicInteger lastDeleted = new AtomicInteger();
+    private final AtomicLong backgroundIngested = new AtomicLong();
+    private final AtomicInteger retrying = new AtomicInteger();
+
+    private WatcherStateStore stateStore;
+
+    private volatile RecursiveDirectoryWatcher directoryWatcher;
+    private volatile boolean reconcileRequested = false;
+
+    private final AtomicBoolean scanning = new AtomicBoolean();
+    private final ScheduledThreadPoolExecutor workers;
+    // Bounds files queued or running on first attempt; scans and the event thread wait on it
+    private final Semaphore slots;
+    // Files queued, running or awaiting a retry -> "changed again meanwhile" flag
+    private final ConcurrentHashMap<Path, AtomicBoolean> inFlight = new ConcurrentHashMap<>();
+    // null unless cortex.watcher.cluster is enabled
+    private final WatcherCluster cluster;
 
-    public FolderWatcherService(WatcherProperties props, IngestionService ingestionService, WatcherStateRepository stateRepository,
+    public FolderWatcherService(WatcherProperties props, IngestionService ingestionService,
+                                WatcherDeadLetterRepository deadLetterRepository, IngestQueue ingestQueue,
                                 org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate namedJdbc) {
         this.props = props;
         this.ingestionService = ingestionService;
-        this.stateRepository = stateRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.ingestQueue = ingestQueue;
         this.namedJdbc = namedJdbc;
+        int concurrency = Math.max(1, props.getConcurrency());
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = new ScheduledThreadPoolExecutor(concurrency, r -> {
+            Thread t = new Thread(r, "watcher-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = new Semaphore(concurrency * 4);
+        this.cluster = props.isCluster() ? new WatcherCluster(namedJdbc, nodeId(props), props.getNodeTimeout()) : null;
+        if (props.isEnabled() && ingestQueue != null) {
+            ingestQueue.register(WATCHED_FILE, this::ingestQueued);
+        }
+    }
+
+    private static String nodeId(WatcherProperties props) {
+        return props.getNodeId() != null && !props.getNodeId().isBlank() ? props.getNodeId() : Nodes.localNodeId();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void startWatching() {
+        if (!props.isEnabled()) return;
+        heartbeat(); // join before the first scan so files are not all unowned
+        if (!props.isEvents() || directoryWatcher != null) return;
+        Path root = configuredRoot();
+        if (root == null) return;
+        FileFilter filter = fileFilter(root);
+        try {
+            RecursiveDirectoryWatcher watcher = new RecursiveDirectoryWatcher(root, props.isRecursive(), props.getDebounce(),
+                filter::acceptsDirectory, new RecursiveDirectoryWatcher.Listener() {
+                    @Override
+                    public void changed(Path file) {
+                        if (filter.acceptsFile(file) && owns(root, file)) dispatch(root, file, null);
+                    }
+
+                    @Override
+                    public void deleted(Path path) {
+                        WatcherStateStore store = stateStore(root);
+                        String key = path.toAbsolutePath().toString();
+                        List<String> gone = new ArrayList<>(store.pathsAt(key, root.getFileSystem().getSeparator()));
+                        gone.removeIf(p -> !owns(root, Paths.get(p)));
+                        if (!gone.isEmpty() && Files.notExists(path)) {
+                            removeDeleted(root, store, gone);
+                        }
+                    }
+
+                    @Override
+                    public void overflow() {
+                        reconcileRequested = true;
+                    }
+                });
+            watcher.start();
+            directoryWatcher = watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot watch {} for changes; falling back to polling every {}", root, props.getPollInterval(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stopWatching() {
+        if (directoryWatcher != null) {
+            directoryWatcher.close();
+            directoryWatcher = null;
+        }
+        workers.shutdownNow();
+        flushState();
+        if (cluster != null) cluster.leave();
+    }
+
+    /**
+     * Cluster heartbeat. A membership change reshuffles file ownership, so the state other
+     * nodes wrote is reloaded and a full scan requested to pick up newly owned files.
+     */
+    @Scheduled(fixedDelayString = "${cortex.watcher.heartbeat-interval:PT10S}")
+    public void heartbeat() {
+        if (cluster == null || !props.isEnabled()) return;
+        try {
+            if (cluster.heartbeat()) {
+                reloadState();
+                reconcileRequested = true;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Watcher cluster heartbeat failed for node {}", cluster.nodeId(), e);
+        }
+    }
+
+    private boolean owns(Path root, Path file) {
+        return cluster == null || cluster.owns(relativePath(root, file));
     }
 
+    /**
+     * Full scan every poll interval, or, while file-system events are being watched, only
+     * when a reconciliation is due or was requested after an event overflow.
+     */
     @Scheduled(fixedDelayString = "${cortex.watcher.poll-interval:PT30S}")
     public void poll() {
+        flushState(); // write back state changed by events since the last poll
+        if (isEventDriven() && !reconcileRequested
+            && System.currentTimeMillis() - lastScanEnd < props.getReconcileInterval().toMillis()) {
+            return;
+        }
+        reconcileRequested = false;
         scanInternal();
     }
 
-    public void scanNow() { scanInternal(); }
+    /**
+     * Runs a full scan on the calling thread.
+     *
+     * @return {@code false} if a scan was already running
+     */
+    public boolean scanNow() {
+        return scanInternal();
+    }
+
+    private boolean isEventDriven() {
+        RecursiveDirectoryWatcher watcher = directoryWatcher;
+        return watcher != null && watcher.isRunning();
+    }
 
-    private void scanInternal() {
+    private boolean scanInternal() {
+        if (!scanning.compareAndSet(false, true)) {
+            log.info("Folder watcher scan already running; skipping");
+            return false;
+        }
+        try {
+            scan();
+            return true;
+        } finally {
+            scanning.set(false);
+        }
+    }
+
+    private void scan() {
         lastScanStart = System.currentTimeMillis();
-        lastScanned = lastIngested = lastFailed = 0;
+        lastScanned.set(0);
+        lastIngested.set(0);
+        lastFailed.set(0);
+        lastDeleted.set(0);
         if (!props.isEnabled()) { lastScanEnd = System.currentTimeMillis(); return; }
-        if (props.getRoot() == null || props.getRoot().isBlank()) { lastScanEnd = System.currentTimeMillis(); return; }
-        Path root = Paths.get(props.getRoot());
-        if (!Files.isDirectory(root)) { lastScanEnd = System.currentTimeMillis(); return; }
+        Path root = configuredRoot();
+        if (root == null) { lastScanEnd = System.currentTimeMillis(); return; }
+        if (cluster != null && cluster.members().isEmpty()) heartbeat();
+        WatcherStateStore store = stateStore(root);
+        Phaser pending = new Phaser(1);
         try {
             int maxDepth = props.isRecursive() ? Integer.MAX_VALUE : 1;
-            Set<String> ext = new HashSet<>(props.getExtensions());
-            List<PathMatcher> ignores = new ArrayList<>();
-            for (String g : props.getIgnoreGlobs()) {
-                ignores.add(root.getFileSystem().getPathMatcher("glob:" + g));
-            }
+            FileFilter filter = fileFilter(root);
+            Set<String> seen = new HashSet<>(store.size() * 2);
             try (var stream = Files.walk(root, maxDepth)) {
                 stream.filter(Files::isRegularFile)
-                    .peek(p -> lastScanned++)
-                    .filter(p -> !isIgnored(root, p, ignores))
-                    .filter(p -> hasAllowedExtension(p, ext))
-                    .forEach(p -> ingestIfChanged(root, p));
+                    .peek(p -> lastScanned.incrementAndGet())
+                    .peek(p -> seen.add(p.toAbsolutePath().toString()))
+                    .filter(filter::acceptsFile)
+                    .filter(p -> owns(root, p))
+                    .forEach(p -> dispatch(root, p, pending));
+            }
+            pending.arriveAndAwaitAdvance(); // first attempts done; retries continue in the background
+            // Only a complete walk can prove absence; files outside a non-recursive walk still exist
+            List<String> gone = new ArrayList<>();
+            for (String path : store.missingFrom(seen)) {
+                Path file = Paths.get(path);
+                if (owns(root, file) && Files.notExists(file)) gone.add(path);
             }
-        } catch (IOException e) {
+            removeDeleted(root, store, gone);
+        } catch (IOException | UncheckedIOException e) {
             log.warn("Folder watcher scan error", e);
         } finally {
+            flushState();
             lastScanEnd = System.currentTimeMillis();
         }
     }
 
-    private boolean isIgnored(Path root, Path p, List<PathMatcher> ignores) {
-        Path rel = root.relativize(p);
-        for (PathMatcher m : ignores) {
-            if (m.matches(rel)) return true;
+    private synchronized WatcherStateStore stateStore(Path root) {
+        String prefix = root.toAbsolutePath().toString();
+        String separator = root.getFileSystem().getSeparator();
+        if (!prefix.endsWith(separator)) prefix += separator;
+        if (stateStore == null || !stateStore.prefix().equals(prefix)) {
+            if (stateStore != null) stateStore.flush();
+            stateStore = new WatcherStateStore(namedJdbc, prefix, props.getStateBatchSize()).load();
+            adoptLegacyDocuments(root, stateStore);
         }
-        return false;
+        return stateStore;
     }
 
-    private boolean hasAllowedExtension(Path p, Set<String> allowed) {
-        String name = p.getFileName().toString().toLowerCase();
-        int i = name.lastIndexOf('.') ;
-        if (i < 0) return false;
-        return allowed.contains(name.substring(i+1));
+    /**
+     * Watched files used to share the bare root-relative path as external id with uploads.
+     * Tracked files still indexed that way are moved into the {@code watch:} namespace; the
+     * content hash match leaves uploads of the same name alone. Nothing matches once done.
+     */
+    private void adoptLegacyDocuments(Path root, WatcherStateStore store) {
+        List<String> legacyIds = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        store.snapshot().forEach((path, st) -> {
+            if (st.contentHash() != null) {
+                legacyIds.add(relativePath(root, Paths.get(path)));
+                hashes.add(st.contentHash());
+            }
+        });
+        try {
+            int adopted = ingestionService.prefixLocalFileIds(EXTERNAL_ID_PREFIX, legacyIds, hashes);
+            if (adopted > 0) {
+                log.info("Moved {} watched documents under {} to the {} namespace", adopted, root, EXTERNAL_ID_PREFIX);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to move watched documents under {} to the {} namespace", root, EXTERNAL_ID_PREFIX, e);
+        }
+    }
+
+    private synchronized void reloadState() {
+        if (stateStore == null) return;
+        stateStore.flush();
+        stateStore.load();
     }
 
-    private void ingestIfChanged(Path root, Path file) {
+    private void flushState() {
+        WatcherStateStore store;
+        synchronized (this) {
+            store = stateStore;
+        }
+        if (store == null) return;
         try {
-            long lm = Files.getLastModifiedTime(file).toMillis();
-            long size = Files.size(file);
-            String key = file.toAbsolutePath().toString();
-            var existing = stateRepository.findById(key);
-            if (existing.isPresent()) {
-                var st = existing.get();
-                if (st.lastModified() != null && st.size() != null && st.lastModified() == lm && st.size() == size) {
-                    return; // unchanged
-                }
+            store.flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to write back watcher state", e);
+        }
+    }
+
+    /**
+     * Drops state and documents of watched files that no longer exist.
+     */
+    private void removeDeleted(Path root, WatcherStateStore store, List<String> paths) {
+        if (paths.isEmpty()) return;
+        List<String> externalIds = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            externalIds.add(externalId(root, Paths.get(path)));
+        }
+        try {
+            int documents = ingestionService.deleteLocalFiles(externalIds);
+            paths.forEach(store::remove);
+            deadLetterRepository.deleteByPathIn(paths.toArray(String[]::new));
+            lastDeleted.addAndGet(paths.size());
+            log.info("Removed {} deleted watched files under {} ({} documents)", paths.size(), root, documents);
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove documents of {} deleted watched files", paths.size(), e);
+        }
+    }
+
+    private boolean isQueued() {
+        return props.isQueue() && ingestQueue != null;
+    }
+
+    private boolean hasProcessedRoot() {
+        return props.getProcessedRoot() != null && !props.getProcessedRoot().isBlank();
+    }
+
+    /**
+     * Queue handler: ingests a watched file on whichever node claimed the task, resolving
+     * its root-relative path against this node's mount of the root.
+     */
+    private Long ingestQueued(IngestQueue.Task task) throws Exception {
+        Path root = configuredRoot();
+        if (root == null) {
+            throw new IllegalStateException("Watched root " + props.getRoot() + " is not available on this node");
+        }
+        Path file = root.resolve(task.payload().get("path"));
+        if (!Files.isRegularFile(file)) return null; // deleted or moved since it was queued
+        var result = ingestionService.ingestLocalPath(file, externalId(root, file));
+        log.info("Ingested queued watched file: {} -> doc {}", file, result.documentId());
+        if (hasProcessedRoot()) moveToProcessed(root, file);
+        return result.documentId();
+    }
+
+    /** Root-relative path with forward slashes: the shard key and the queue payload. */
+    private static String relativePath(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    /** The document's external id: the root-relative path in the {@code watch:} namespace. */
+    static String externalId(Path root, Path file) {
+        return EXTERNAL_ID_PREFIX + relativePath(root, file);
+    }
+
+    private Path configuredRoot() {
+        if (props.getRoot() == null || props.getRoot().isBlank()) return null;
+        Path root = Paths.get(props.getRoot());
+        return Files.isDirectory(root) ? root : null;
+    }
+
+    private FileFilter fileFilter(Path root) {
+        List<PathMatcher> ignores = new ArrayList<>();
+        for (String g : props.getIgnoreGlobs()) {
+            ignores.add(root.getFileSystem().getPathMatcher("glob:" + g));
+        }
+        Path processedRoot = props.getProcessedRoot() == null || props.getProcessedRoot().isBlank()
+            ? null : Paths.get(props.getProcessedRoot()).toAbsolutePath().normalize();
+        return new FileFilter(root, new HashSet<>(props.getExtensions()), ignores, processedRoot);
+    }
+
+    private record FileFilter(Path root, Set<String> extensions, List<PathMatcher> ignores, Path processedRoot) {
+
+        boolean acceptsFile(Path p) {
+            return !isIgnored(p) && hasAllowedExtension(p);
+        }
+
+        boolean acceptsDirectory(Path dir) {
+            if (processedRoot != null && dir.toAbsolutePath().normalize().startsWith(processedRoot)) return false;
+            return !isIgnored(dir);
+        }
+
+        private boolean isIgnored(Path p) {
+            Path rel = root.relativize(p);
+            for (PathMatcher m : ignores) {
+                if (m.matches(rel)) return true;
             }
-            byte[] bytes = Files.readAllBytes(file);
-            var result = ingestionService.ingestLocalFile(bytes, file.getFileName().toString());
-            String hash = sha256(bytes);
-            upsertState(key, lm, size, hash);
-            log.info("Ingested file via watcher: {} -> doc {}", file, result.documentId());
-            lastIngested++;
-
-            // Move processed file if configured
-            if (props.getProcessedRoot() != null && !props.getProcessedRoot().isBlank()) {
-                moveToProcessed(root, file);
+            return false;
+        }
+
+        private boolean hasAllowedExtension(Path p) {
+            String name = p.getFileName().toString().toLowerCase();
+            int i = name.lastIndexOf('.') ;
+            if (i < 0) return false;
+            return extensions.contains(name.substring(i+1));
+        }
+    }
+
+    /**
+     * Queues {@code file} for a change check and ingestion. Blocks while the backlog is full.
+     * A file already queued or running is only flagged, and rechecked when that attempt ends.
+     *
+     * @param scan phaser of the dispatching scan, or {@code null} for events and retries
+     */
+    private void dispatch(Path root, Path file, Phaser scan) {
+        AtomicBoolean existing = inFlight.putIfAbsent(file, new AtomicBoolean());
+        if (existing != null) {
+            existing.set(true);
+            return;
+        }
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.remove(file);
+            return;
+        }
+        if (scan != null) scan.register();
+        try {
+            workers.execute(() -> attempt(new Task(root, file, 1, scan != null), scan, true));
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            inFlight.remove(file);
+            if (scan != null) scan.arriveAndDeregister();
+        }
+    }
+
+    private record Task(Path root, Path file, int attempt, boolean fromScan) {
+        Task next() {
+            return new Task(root, file, attempt + 1, fromScan);
+        }
+    }
+
+    private void attempt(Task task, Phaser scan, boolean holdsSlot) {
+        boolean done = true;
+        try {
+            if (ingestIfChanged(task.root(), task.file())) {
+                if (task.fromScan()) lastIngested.incrementAndGet();
+                else backgroundIngested.incrementAndGet();
             }
         } catch (Exception e) {
-            lastFailed++;
-            log.warn("Failed to ingest file {}", file, e);
+            if (task.attempt() < props.getMaxAttempts() && Failures.isTransient(e)) {
+                done = !scheduleRetry(task, e);
+            }
+            if (done) {
+                if (task.fromScan()) lastFailed.incrementAndGet();
+                park(task, e);
+            }
+        } finally {
+            if (holdsSlot) slots.release();
+            if (done) {
+                AtomicBoolean changedAgain = inFlight.remove(task.file());
+                if (changedAgain != null && changedAgain.get()) redispatch(task.root(), task.file());
+            }
+            // Last, so a scan that waited for this file sees it finished, not still in flight
+            if (scan != null) scan.arriveAndDeregister();
         }
     }
 
-    private static String sha256(byte[] content) {
+    private boolean scheduleRetry(Task task, Exception e) {
+        long base = props.getRetryBackoff().toMillis() << Math.min(task.attempt() - 1, 20);
+        long delay = Math.min(base, props.getMaxRetryBackoff().toMillis());
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] h = md.digest(content);
-            StringBuilder sb = new StringBuilder();
-            for (byte b : h) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            return null;
+            workers.schedule(() -> {
+                retrying.decrementAndGet();
+                attempt(task.next(), null, false);
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejected) {
+            return false;
         }
+        retrying.incrementAndGet();
+        log.warn("Transient failure ingesting {} (attempt {}/{}): {}; retrying in {} ms",
+            task.file(), task.attempt(), props.getMaxAttempts(), e.toString(), delay);
+        return true;
     }
 
-    private void upsertState(String path, long lastModified, long size, String hash) {
-        var sql = "INSERT INTO watcher_state(path,last_modified,size,content_hash) VALUES(:p,:lm,:s,:h) " +
-                "ON CONFLICT (path) DO UPDATE SET last_modified=:lm, size=:s, content_hash=:h";
-        var params = new java.util.HashMap<String, Object>();
-        params.put("p", path);
-        params.put("lm", lastModified);
-        params.put("s", size);
-        params.put("h", hash);
-        namedJdbc.update(sql, params);
+    // Called from workers, which must not wait for a slot held by the queue they drain
+    private void redispatch(Path root, Path file) {
+        if (inFlight.putIfAbsent(file, new AtomicBoolean()) != null) return;
+        try {
+            workers.execute(() -> attempt(new Task(root, file, 1, false), null, false));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(file);
+        }
+    }
+
+    /**
+     * Records a file that keeps failing. Its current mtime/size go into the state (without a
+     * content hash), so scans skip it until it is modified or explicitly retried.
+     */
+    private void park(Task task, Exception e) {
+        Path file = task.file();
+        String key = file.toAbsolutePath().toString();
+        log.warn("Failed to ingest file {} after {} attempt(s); parking it", file, task.attempt(), e);
+        try {
+            deadLetterRepository.park(key, task.attempt(), Failures.message(e));
+            if (Files.isRegularFile(file)) {
+                stateStore(task.root()).put(key, new WatcherStateStore.FileState(
+                    Files.getLastModifiedTime(file).toMillis(), Files.size(file), null));
+            }
+        } catch (Exception ex) {
+            log.warn("Failed to record dead letter for {}", file, ex);
+        }
+    }
+
+    public List<WatcherDeadLetter> deadLetters(int limit) {
+        return deadLetterRepository.findRecent(limit);
+    }
+
+    /**
+     * Clears dead letters (one path, or all when {@code path} is {@code null}) and queues the
+     * files that still exist under the root for another attempt.
+     *
+     * @return number of files queued
+     */
+    public int retryDeadLetters(String path) {
+        Path root = configuredRoot();
+        List<String> paths = new ArrayList<>();
+        if (path != null) {
+            paths.add(path);
+        } else {
+            deadLetterRepository.findAll().forEach(d -> paths.add(d.path()));
+        }
+        if (paths.isEmpty()) return 0;
+        deadLetterRepository.deleteByPathIn(paths.toArray(String[]::new));
+        if (root == null || !props.isEnabled()) return 0;
+        WatcherStateStore store = stateStore(root);
+        Path absoluteRoot = root.toAbsolutePath();
+        int queued = 0;
+        for (String p : paths) {
+            store.remove(p);
+            Path file = Paths.get(p);
+            if (file.startsWith(absoluteRoot) && Files.isRegularFile(file)) {
+                dispatch(root, file, null);
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return whether the file was (re)ingested
+     */
+    private boolean ingestIfChanged(Path root, Path file) throws Exception {
+        if (!Files.isRegularFile(file)) return false; // removed while queued
+        long lm = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        String key = file.toAbsolutePath().toString();
+        WatcherStateStore store = stateStore(root);
+        var st = store.get(key);
+        if (st != null && st.lastModified() == lm && st.size() == size) {
+            return false; // unchanged, or parked until modified
+        }
+        // Hash before parsing: touched or checked-out-again files keep their content
+        String hash = Hashes.sha256(file);
+        if (st != null && hash.equals(st.contentHash())) {
+            store.put(key, new WatcherStateStore.FileState(lm, size, hash));
+            return false;
+        }
+        if (isQueued()) {
+            String path = relativePath(root, file);
+            ingestQueue.enqueue(WATCHED_FILE, Map.of("path", path), WATCHED_FILE + ":" + path,
+                IngestQueue.PRIORITY_BACKGROUND, false);
+            // A file moved to the processed root by the consuming node must not read as deleted
+            if (hasProcessedRoot()) store.remove(key);
+            else store.put(key, new WatcherStateStore.FileState(lm, size, hash));
+            return true;
+        }
+        var result = ingestionService.ingestLocalPath(file, externalId(root, file), hash);
+        var state = new WatcherStateStore.FileState(lm, size, hash);
+        if (st != null && st.contentHash() == null) {
+            deadLetterRepository.deleteByPathIn(new String[]{key}); // recovered after being parked
+        }
+        log.info("Ingested file via watcher: {} -> doc {}", file, result.documentId());
+
+        if (hasProcessedRoot()) {
+            // Forgotten before it leaves the root: its delete event must not take the document along
+            store.remove(key);
+            if (!moveToProcessed(root, file)) store.put(key, state);
+        } else {
+            store.put(key, state);
+        }
+        return true;
     }
 
-    private void moveToProcessed(Path root, Path file) {
+    private boolean moveToProcessed(Path root, Path file) {
         try {
             Path processedRoot = Paths.get(props.getProcessedRoot());
             Path rel = root.relativize(file);
@@ -150,23 +619,40 @@ public class FolderWatcherService {
             Files.createDirectories(target.getParent());
             Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
             log.info("Moved processed file {} -> {}", file, target);
+            return true;
         } catch (Exception ex) {
             log.warn("Failed to move processed file {}", file, ex);
+            return false;
         }
     }
 
     public WatcherStatus status() {
+        RecursiveDirectoryWatcher watcher = directoryWatcher;
+        boolean eventDriven = watcher != null && watcher.isRunning();
         return new WatcherStatus(
             props.isEnabled(),
             props.getRoot(),
             props.getProcessedRoot(),
             props.isRecursive(),
             props.getPollInterval() != null ? props.getPollInterval().toString() : null,
+            eventDriven,
+            props.getReconcileInterval() != null ? props.getReconcileInterval().toString() : null,
+            eventDriven ? watcher.watchedDirectories() : 0,
+            eventDriven ? watcher.pendingFiles() : 0,
+            backgroundIngested.get(),
+            scanning.get(),
+            inFlight.size(),
+            retrying.get(),
+            deadLetterRepository.count(),
+            cluster != null ? cluster.nodeId() : null,
+            cluster != null ? cluster.members().size() : 1,
             lastScanStart,
             lastScanEnd,
-            lastScanned,
-            lastIngested,
-            lastFailed
+            lastScanned.get(),
+            lastIngested.get(),
+            lastFailed.get(),
+            lastDeleted.get(),
+            stateStore != null ? stateStore.size() : 0
         );
     }
 
@@ -176,11 +662,24 @@ public class FolderWatcherService {
         String processedRoot,
         boolean recursive,
         String pollInterval,
+        boolean eventDriven,
+        String reconcileInterval,
+        int watchedDirectories,
+        int pendingEvents,
+        long backgroundIngested,
+        boolean scanning,
+        int inFlight,
+        int retrying,
+        long deadLetters,
+        String nodeId,
+        int clusterNodes,
         long lastScanStart,
         long lastScanEnd,
         int scanned,
         int ingested,
-        int failed
+        int failed,
+        int deleted,
+        int trackedFiles
     ) {}
 }
 
@@ -0,0 +1,72 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 helpers shared by the ingestion pipeline. Hashes are lower-case hex; a file's hash
+ * is the same value in {@code document.content_hash} and {@code watcher_state.content_hash}.
+ */
+public final class Hashes {
+
+    private static final HexFormat HEX = HexFormat.of();
+    // Smaller files are cheaper to read through a buffer than to map
+    private static final long MAP_THRESHOLD = 1L << 20;
+    private static final long MAP_WINDOW = 64L << 20;
+
+    private Hashes() {}
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String sha256(byte[] content) {
+        return hex(sha256().digest(content));
+    }
+
+    static String sha256(String text) {
+        return sha256(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes a file without copying it onto the heap: large files are digested straight
+     * from memory-mapped windows, small ones through a single reused buffer.
+     */
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(8192);
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (InternalError e) {
+            // Raised when a mapped file is truncated underneath us
+            throw new IOException("File changed while hashing: " + file, e);
+        }
+        return hex(digest.digest());
+    }
+
+    public static String hex(byte[] digest) {
+        return HEX.formatHex(digest);
+    }
+}
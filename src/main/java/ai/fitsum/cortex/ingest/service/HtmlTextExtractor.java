@@ -0,0 +1,81 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts readable text and outgoing links from HTML while it is being parsed. Elements are
+ * handled as soon as their end tag is seen: a block's text is appended to the output and the
+ * block is dropped from the tree, so memory stays proportional to the nesting depth rather than
+ * the page size. Like {@code UrlFetcher}, text inside {@code <article>} wins over
+ * {@code <main>}, which wins over the rest of the body; blocks are separated by blank lines so
+ * the chunker sees paragraphs, and {@code <h1>}-{@code <h6>} are written as Markdown headings
+ * so it picks them up as section headings.
+ */
+public final class HtmlTextExtractor {
+
+    public record Page(String title, String text, List<String> links) {}
+
+    private static final int MAX_LINKS = 2000;
+
+    private static final Set<String> SKIPPED = Set.of("script", "style", "noscript", "template", "svg", "iframe", "head");
+
+    private static final Set<String> BLOCKS = Set.of(
+        "p", "h1", "h2", "h3", "h4", "h5", "h6", "li", "dt", "dd", "pre", "blockquote", "figcaption",
+        "caption", "td", "th", "tr", "table", "ul", "ol", "dl", "div", "section", "article", "main",
+        "header", "footer", "aside", "nav", "form", "address", "details", "summary", "body");
+
+    private HtmlTextExtractor() {}
+
+    public static Page extract(Reader html, String baseUri) throws IOException {
+        String title = null;
+        List<String> article = new ArrayList<>();
+        List<String> main = new ArrayList<>();
+        List<String> body = new ArrayList<>();
+        Set<String> links = new LinkedHashSet<>();
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(html, baseUri)) {
+            Iterator<Element> elements = parser.iterator();
+            while (elements.hasNext()) {
+                Element el = elements.next();
+                String tag = el.normalName();
+                if (tag.equals("title") && title == null) {
+                    title = el.text();
+                } else if (tag.equals("a") && links.size() < MAX_LINKS) {
+                    String href = el.absUrl("href");
+                    if (!href.isEmpty()) links.add(href);
+                    continue; // inline: its text belongs to the enclosing block
+                }
+                if (SKIPPED.contains(tag)) {
+                    el.remove();
+                } else if (BLOCKS.contains(tag)) {
+                    String text = el.text();
+                    if (!text.isBlank()) {
+                        if (isHeading(tag)) text = "#".repeat(tag.charAt(1) - '0') + " " + text;
+                        if (el.closest("article") != null) article.add(text);
+                        else if (el.closest("main") != null) main.add(text);
+                        else body.add(text);
+                    }
+                    if (el.parent() != null) el.replaceWith(new TextNode(" "));
+                }
+            }
+        } catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<String> blocks = !article.isEmpty() ? article : !main.isEmpty() ? main : body;
+        return new Page(title, String.join("\n\n", blocks), List.copyOf(links));
+    }
+
+    private static boolean isHeading(String tag) {
+        return tag.length() == 2 && tag.charAt(0) == 'h' && tag.charAt(1) >= '1' && tag.charAt(1) <= '6';
+    }
+}
@@ -0,0 +1,130 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.io.Writer;
+
+/**
+ * Streaming counterpart of {@link ChunkingService#chunk}. Text is written in arbitrary
+ * pieces (typically by Tika's SAX body handler); paragraphs are cut on blank lines, or on
+ * single line breaks once a paragraph would outgrow {@code maxChars}, and every finished
+ * chunk is pushed to the sink immediately. Buffered text is bounded by a few multiples of
+ * {@code maxChars} regardless of the document length.
+ */
+public class IncrementalChunker extends Writer {
+
+    private final int maxChars;
+    private final ChunkAssembler assembler;
+
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder paragraph = new StringBuilder();
+    private long charCount;
+    private boolean pendingCr;
+    private boolean finished;
+
+    IncrementalChunker(ChunkAssembler assembler, int maxChars) {
+        this.maxChars = maxChars;
+        this.assembler = assembler;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        charCount += len;
+        for (int i = off; i < off + len; i++) {
+            char ch = cbuf[i];
+            if (ch == '\r') {
+                endLine();
+                pendingCr = true;
+                continue;
+            }
+            if (ch == '\n') {
+                if (!pendingCr) endLine();
+                pendingCr = false;
+                continue;
+            }
+            pendingCr = false;
+            line.append(ch);
+            // Pathological single lines (minified logs, extracted tables) are hard-wrapped here
+            if (line.length() >= maxChars * 2) {
+                flushParagraph();
+                assembler.slice(line, 0, maxChars);
+                line.delete(0, maxChars);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        char[] buf = new char[Math.min(len, 8192)];
+        for (int pos = off; pos < off + len; pos += buf.length) {
+            int n = Math.min(buf.length, off + len - pos);
+            str.getChars(pos, pos + n, buf, 0);
+            write(buf, 0, n);
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Chunks are only emitted on paragraph boundaries; see finish()
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    /**
+     * Flushes buffered text as final chunks. Idempotent.
+     */
+    public void finish() {
+        if (finished) return;
+        finished = true;
+        endLine();
+        flushParagraph();
+        assembler.finish();
+    }
+
+    /**
+     * Marks the start of a new page (1-based). Buffered paragraphs are closed so that a
+     * paragraph never spans pages; chunks report the page on which they start.
+     */
+    public void startPage(int pageNumber) {
+        endLine();
+        flushParagraph();
+        assembler.page(pageNumber);
+    }
+
+    public int chunkCount() { return assembler.chunkCount(); }
+
+    public long charCount() { return charCount; }
+
+    private void endLine() {
+        if (isBlank(line)) {
+            line.setLength(0);
+            flushParagraph();
+            return;
+        }
+        if (paragraph.length() > 0 && paragraph.length() + line.length() + 1 > maxChars) {
+            flushParagraph();
+        }
+        if (paragraph.length() > 0) paragraph.append('\n');
+        paragraph.append(line);
+        line.setLength(0);
+    }
+
+    private void flushParagraph() {
+        if (paragraph.length() == 0) return;
+        assembler.paragraph(paragraph, 0, paragraph.length());
+        paragraph.setLength(0);
+    }
+
+    private static boolean isBlank(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,235 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.domain.IngestJob;
+import ai.fitsum.cortex.api.domain.IngestJobItem;
+import ai.fitsum.cortex.api.repository.ChunkRepository;
+import ai.fitsum.cortex.api.repository.IngestJobItemRepository;
+import ai.fitsum.cortex.api.repository.IngestJobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs file and URL ingestion through the {@link IngestQueue}. Uploads are staged to disk
+ * and recorded (as {@code ingest_job_item} rows for async jobs) inside the request; the
+ * queue then ingests them on whichever node has an idle worker, or only on the receiving
+ * host when the staging directory is not shared. Because state lives in Postgres and staged
+ * files on disk, queued or interrupted work is picked up again after a restart. An item
+ * whose last attempt dies with its node is failed by the queue's expiry callback, so its job
+ * still finishes.
+ */
+@Service
+public class IngestJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJobService.class);
+
+    static final String JOB_ITEM = "JOB_ITEM";
+    static final String UPLOAD = "UPLOAD";
+    static final String URL = "URL";
+
+    private final IngestionService ingestionService;
+    private final UploadStager uploadStager;
+    private final IngestJobRepository jobRepository;
+    private final IngestJobItemRepository itemRepository;
+    private final ChunkRepository chunkRepository;
+    private final IngestQueue queue;
+    private final TransactionTemplate transactions;
+    private final CortexProperties.Ingestion props;
+
+    public IngestJobService(
+        IngestionService ingestionService,
+        UploadStager uploadStager,
+        IngestJobRepository jobRepository,
+        IngestJobItemRepository itemRepository,
+        ChunkRepository chunkRepository,
+        IngestQueue queue,
+        TransactionTemplate transactions,
+        CortexProperties properties
+    ) {
+        this.ingestionService = ingestionService;
+        this.uploadStager = uploadStager;
+        this.jobRepository = jobRepository;
+        this.itemRepository = itemRepository;
+        this.chunkRepository = chunkRepository;
+        this.queue = queue;
+        this.transactions = transactions;
+        this.props = properties.getIngestion();
+        queue.register(JOB_ITEM, this::process, this::itemExpired);
+        queue.register(UPLOAD, this::ingestUpload, task -> discardIfLocal(task, stagedUpload(task)));
+        queue.register(URL, task -> ingestionService.ingestUrl(task.payload().get("url")).documentId());
+    }
+
+    /**
+     * Stages every file and records the job before returning; ingestion itself happens
+     * on the queue workers. The job, its items and their tasks are written in one
+     * transaction after staging, so a failure leaves neither an orphaned job nor staged files.
+     */
+    public IngestJob submit(List<MultipartFile> files, String createdBy) throws Exception {
+        List<UploadStager.StagedFile> staged = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                try (var in = file.getInputStream()) {
+                    staged.add(uploadStager.stage(in, file.getOriginalFilename()));
+                }
+            }
+        } catch (Exception e) {
+            staged.forEach(uploadStager::discard);
+            throw e;
+        }
+
+        IngestJob job;
+        try {
+            job = transactions.execute(tx -> {
+                IngestJob created = jobRepository.save(IngestJob.create(createdBy, staged.size()));
+                for (UploadStager.StagedFile sf : staged) {
+                    IngestJobItem item = itemRepository.save(IngestJobItem.queued(
+                        created.id(), sf.filename(), sf.path().toString(), sf.contentHash(), sf.sizeBytes()
+                    ));
+                    queue.enqueue(JOB_ITEM, Map.of("itemId", item.id().toString()), null, IngestQueue.PRIORITY_BATCH, !props.isSharedStaging());
+                }
+                return created;
+            });
+        } catch (RuntimeException e) {
+            staged.forEach(uploadStager::discard);
+            throw e;
+        }
+        log.info("Created ingest job {} with {} file(s) for {}", job.id(), staged.size(), createdBy);
+        return job;
+    }
+
+    /**
+     * Queues a single staged upload ahead of batch work. The staged file is consumed.
+     *
+     * @return id of the queue task
+     */
+    public long enqueueUpload(UploadStager.StagedFile staged) {
+        return queue.enqueue(UPLOAD, Map.of(
+            "path", staged.path().toString(),
+            "filename", staged.filename(),
+            "contentHash", staged.contentHash()
+        ), null, IngestQueue.PRIORITY_INTERACTIVE, !props.isSharedStaging());
+    }
+
+    /** @return id of the queue task */
+    public long enqueueUrl(String url) {
+        return queue.enqueue(URL, Map.of("url", url), "url:" + url, IngestQueue.PRIORITY_INTERACTIVE, false);
+    }
+
+    public Optional<JobView> find(Long jobId) {
+        return jobRepository.findById(jobId)
+            .map(job -> new JobView(job, itemRepository.findByJobId(jobId)));
+    }
+
+    public List<IngestJob> recent(int limit) {
+        return jobRepository.findRecent(limit);
+    }
+
+    private Long ingestUpload(IngestQueue.Task task) throws Exception {
+        var staged = stagedUpload(task);
+        boolean retrying = false;
+        try {
+            if (!Files.exists(staged.path())) {
+                throw new IllegalStateException("Staged upload is no longer available");
+            }
+            return ingestionService.ingestStagedFile(staged.path(), staged.filename(), staged.contentHash()).documentId();
+        } catch (Exception e) {
+            retrying = willRetry(task, e);
+            throw e;
+        } finally {
+            if (!retrying) uploadStager.discard(staged);
+        }
+    }
+
+    private Long process(IngestQueue.Task task) throws Exception {
+        Long itemId = Long.valueOf(task.payload().get("itemId"));
+        if (itemRepository.markRunning(itemId) == 0) return null; // already finished
+        IngestJobItem item = itemRepository.findById(itemId).orElse(null);
+        if (item == null) return null;
+
+        Path staged = item.stagedPath() != null ? Paths.get(item.stagedPath()) : null;
+        try {
+            if (staged == null || !Files.exists(staged)) {
+                throw new IllegalStateException("Staged upload is no longer available");
+            }
+            IngestionResult result = ingestionService.ingestStagedFile(staged, item.filename(), item.contentHash());
+            int chunks = (int) chunkRepository.countByDocumentId(result.documentId());
+            var status = result.duplicate() ? IngestJobItem.Status.DUPLICATE : IngestJobItem.Status.DONE;
+            finishItem(item, staged, status, result.documentId(), chunks, null);
+            log.info("Ingest job {} item {} ({}): {} -> doc {} ({} chunks)",
+                item.jobId(), itemId, item.filename(), status, result.documentId(), chunks);
+            return result.documentId();
+        } catch (Exception e) {
+            if (willRetry(task, e)) throw e; // the item stays RUNNING and keeps its staged file
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            finishItem(item, staged, IngestJobItem.Status.FAILED, null, null, message);
+            log.warn("Ingest job {} item {} ({}) failed", item.jobId(), itemId, item.filename(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the item's outcome and counts it on its job in one transaction, so the job's
+     * counters never miss a finished item, then drops the staged file.
+     */
+    private void finishItem(IngestJobItem item, Path staged, IngestJobItem.Status status,
+                            Long documentId, Integer chunks, String error) {
+        boolean failed = status == IngestJobItem.Status.FAILED;
+        transactions.executeWithoutResult(tx -> {
+            itemRepository.markFinished(item.id(), status.name(), documentId, chunks, error);
+            jobRepository.recordItemFinished(item.jobId(), failed ? 0 : 1, failed ? 1 : 0);
+        });
+        if (staged != null) {
+            uploadStager.discard(new UploadStager.StagedFile(staged, item.filename(), item.contentHash(), 0));
+        }
+    }
+
+    /**
+     * The item's task failed because its worker stopped on the last attempt: the item is
+     * failed and counted as such, and its staged file dropped if it is reachable from here.
+     */
+    private void itemExpired(IngestQueue.Task task) {
+        Long itemId = Long.valueOf(task.payload().get("itemId"));
+        IngestJobItem item = itemRepository.findById(itemId).orElse(null);
+        if (item == null) return;
+        String error = task.lastError() != null ? task.lastError() : "ingest worker stopped";
+        boolean failed = Boolean.TRUE.equals(transactions.execute(tx -> {
+            if (itemRepository.markFailedIfUnfinished(itemId, error) == 0) return false;
+            jobRepository.recordItemFinished(item.jobId(), 0, 1);
+            return true;
+        }));
+        if (!failed) return;
+        log.warn("Ingest job {} item {} ({}) failed: {}", item.jobId(), itemId, item.filename(), error);
+        if (item.stagedPath() != null) {
+            discardIfLocal(task, new UploadStager.StagedFile(Paths.get(item.stagedPath()), item.filename(), item.contentHash(), 0));
+        }
+    }
+
+    /** Deletes a staged file unless it lives on another host's disk. */
+    private void discardIfLocal(IngestQueue.Task task, UploadStager.StagedFile staged) {
+        if (task.pinnedHost() == null || task.pinnedHost().equals(Nodes.localHost())) {
+            uploadStager.discard(staged);
+        }
+    }
+
+    private static UploadStager.StagedFile stagedUpload(IngestQueue.Task task) {
+        Map<String, String> payload = task.payload();
+        return new UploadStager.StagedFile(Paths.get(payload.get("path")), payload.get("filename"), payload.get("contentHash"), 0);
+    }
+
+    private static boolean willRetry(IngestQueue.Task task, Exception e) {
+        return !task.isLastAttempt() && Failures.isTransient(e);
+    }
+
+    public record JobView(IngestJob job, List<IngestJobItem> items) {}
+}
@@ -0,0 +1,508 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable ingestion work queue in {@code ingest_task}, consumed by every node. Each node
+ * claims as many ready tasks as it has idle workers with {@code FOR UPDATE SKIP LOCKED}, so
+ * nodes never block on or double-claim each other's rows and throughput grows with the
+ * number of nodes. A claimed task carries a lease that its node renews while it runs; tasks
+ * whose lease expired (the node died) are queued again. Failures are retried with
+ * exponential backoff when {@link Failures#isTransient transient}, up to the task's
+ * {@code max_attempts}; then the task is marked {@code FAILED} with its last error.
+ * <p>
+ * Producers register a {@link Handler} per task kind at startup and enqueue with a priority
+ * (higher first). Tasks that only one host can run, such as uploads staged on local disk,
+ * are pinned to that host. Every consumer heartbeats its host in {@code ingest_host}; queued
+ * tasks pinned to a host that stopped heartbeating are unpinned, so another node runs them
+ * (and fails them if their input is gone) instead of leaving them queued forever.
+ * <p>
+ * A task whose lease expires on its last attempt is failed without its handler running
+ * again; the kind's {@link ExpiryHandler}, if registered, cleans up after it instead.
+ * <p>
+ * At most one task per dedupe key is queued. A running task that would go back to the queue
+ * while another task with its key is already queued is marked {@code DONE} as superseded
+ * instead (see {@link #SUPERSEDED}); the queued one does the same work.
+ */
+@Service
+public class IngestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestQueue.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /** Someone is waiting for the result (synchronous upload or URL request). */
+    public static final int PRIORITY_INTERACTIVE = 100;
+    /** Async upload jobs. */
+    public static final int PRIORITY_BATCH = 50;
+    /** Watched files and other background discovery. */
+    public static final int PRIORITY_BACKGROUND = 0;
+
+    /** {@code last_error} of a task that was not re-queued because its key already was. */
+    public static final String SUPERSEDED = "superseded by a queued task with the same key";
+
+    // Running task t cannot go back to the queue: its key is queued already, or another
+    // task with its key is being re-queued in the same statement (the lowest id wins)
+    private static final String REQUEUE_CONFLICT = """
+        t.dedupe_key IS NOT NULL AND (
+            EXISTS (SELECT 1 FROM ingest_task q WHERE q.dedupe_key = t.dedupe_key AND q.status = 'QUEUED')
+            OR EXISTS (SELECT 1 FROM ingest_task o WHERE o.dedupe_key = t.dedupe_key AND o.status = 'RUNNING'
+                       AND o.id < t.id AND %s))
+        """;
+
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Runs a claimed task.
+         *
+         * @return id of the ingested document, if any
+         * @throws Exception to fail the attempt; transient failures are retried
+         */
+        Long handle(Task task) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface ExpiryHandler {
+        /**
+         * Called once, on whichever node noticed, for a task failed because its lease expired
+         * on the last attempt: its handler never saw the final failure.
+         */
+        void expired(Task task) throws Exception;
+    }
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    public record Task(
+        Long id,
+        String kind,
+        Map<String, String> payload,
+        int priority,
+        String pinnedHost,
+        Status status,
+        int attempts,
+        int maxAttempts,
+        Long documentId,
+        String lastError,
+        Boolean transientFailure,
+        LocalDateTime createdAt,
+        LocalDateTime finishedAt
+    ) {
+        public boolean isLastAttempt() {
+            return attempts >= maxAttempts;
+        }
+
+        public boolean isFinished() {
+            return status == Status.DONE || status == Status.FAILED;
+        }
+
+        /** Failed on its input (e.g. nothing extractable), not because retries ran out. */
+        public boolean isPermanentFailure() {
+            return status == Status.FAILED && !Boolean.TRUE.equals(transientFailure);
+        }
+    }
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final CortexProperties.Ingestion props;
+    private final String owner = Nodes.localNodeId();
+    private final String host = Nodes.localHost();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, ExpiryHandler> expiryHandlers = new ConcurrentHashMap<>();
+    private final Map<Long, Task> running = new ConcurrentHashMap<>();
+    private final int workerCount;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService poller;
+    private volatile boolean started;
+
+    public IngestQueue(NamedParameterJdbcTemplate jdbc, CortexProperties properties) {
+        this.jdbc = jdbc;
+        this.props = properties.getIngestion();
+        this.workerCount = Math.max(1, props.getQueueWorkers());
+        AtomicInteger threadIds = new AtomicInteger();
+        // Never holds more than workerCount tasks: the poller only claims for idle workers
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "ingest-worker-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ingest-queue");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void register(String kind, Handler handler) {
+        handlers.put(kind, handler);
+    }
+
+    public void register(String kind, Handler handler, ExpiryHandler onExpired) {
+        register(kind, handler);
+        expiryHandlers.put(kind, onExpired);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (started) return;
+        started = true;
+        long interval = Math.max(50, props.getQueuePollInterval().toMillis());
+        poller.scheduleWithFixedDelay(this::claimSafely, 0, interval, TimeUnit.MILLISECONDS);
+        log.info("Ingest queue consumer {} started with {} workers ({})", owner, workerCount, handlers.keySet());
+    }
+
+    /**
+     * Adds a task. With a {@code dedupeKey}, a task still queued under the same key absorbs
+     * the new one (keeping the higher priority) and its id is returned.
+     *
+     * @param pinned whether only this host may run the task
+     */
+    public long enqueue(String kind, Map<String, String> payload, String dedupeKey, int priority, boolean pinned) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("kind", kind);
+        params.put("payload", toJson(payload));
+        params.put("key", dedupeKey);
+        params.put("priority", priority);
+        params.put("host", pinned ? host : null);
+        params.put("max", Math.max(1, props.getQueueMaxAttempts()));
+        Long id = jdbc.queryForObject("""
+            INSERT INTO ingest_task(kind, payload, dedupe_key, priority, pinned_host, max_attempts)
+            VALUES (:kind, CAST(:payload AS jsonb), :key, :priority, :host, :max)
+            ON CONFLICT (dedupe_key) WHERE status = 'QUEUED'
+            DO UPDATE SET priority = GREATEST(ingest_task.priority, EXCLUDED.priority)
+            RETURNING id
+            """, params, Long.class);
+        wakeUp();
+        return id;
+    }
+
+    public Optional<Task> find(long id) {
+        return jdbc.query("SELECT * FROM ingest_task WHERE id = :id", Map.of("id", id), TASK).stream().findFirst();
+    }
+
+    /**
+     * Waits up to {@code timeout} for a task to finish. Request threads should not wait on
+     * tasks; answer with the task id and let the client poll {@link #find} instead.
+     *
+     * @return the finished task, or the task as it stands when the timeout elapsed
+     */
+    public Optional<Task> await(long id, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long pause = 25;
+        while (true) {
+            Optional<Task> task = find(id);
+            if (task.isEmpty() || task.get().isFinished() || System.nanoTime() >= deadline) return task;
+            Thread.sleep(pause);
+            pause = Math.min(pause * 2, 500);
+        }
+    }
+
+    /** Task counts by status, plus this node's running tasks. */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Status status : Status.values()) stats.put(status.name().toLowerCase(), 0L);
+        jdbc.query("SELECT status, COUNT(*) AS n FROM ingest_task GROUP BY status", Map.of(),
+            rs -> { stats.put(rs.getString("status").toLowerCase(), rs.getLong("n")); });
+        stats.put("node", owner);
+        stats.put("workers", workerCount);
+        stats.put("runningHere", running.size());
+        return stats;
+    }
+
+    /**
+     * Renews the leases of this node's running tasks and its host's heartbeat, re-queues (or
+     * on the last attempt fails) tasks whose lease expired, unpins tasks of hosts that stopped
+     * heartbeating and purges finished tasks older than the retention period.
+     */
+    @Scheduled(fixedDelayString = "${cortex.ingestion.queue-maintenance-interval:PT30S}")
+    public void maintain() {
+        try {
+            heartbeat();
+            if (!running.isEmpty()) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("ids", running.keySet().toArray(Long[]::new));
+                params.put("owner", owner);
+                params.put("lease", leaseSeconds());
+                jdbc.update("""
+                    UPDATE ingest_task SET lease_expires_at = NOW() + make_interval(secs => :lease)
+                    WHERE id = ANY(:ids) AND lease_owner = :owner AND status = 'RUNNING'
+                    """, params);
+            }
+            String requeued = "o.lease_expires_at < NOW() AND o.attempts < o.max_attempts";
+            int superseded = supersede("""
+                t.status = 'RUNNING' AND t.lease_expires_at < NOW() AND t.attempts < t.max_attempts AND
+                """ + REQUEUE_CONFLICT.formatted(requeued), Map.of());
+            List<Task> expired = jdbc.query("""
+                UPDATE ingest_task
+                SET status = CASE WHEN attempts >= max_attempts THEN 'FAILED' ELSE 'QUEUED' END,
+                    last_error = COALESCE(last_error, 'lease of ' || lease_owner || ' expired'),
+                    transient_failure = TRUE,
+                    finished_at = CASE WHEN attempts >= max_attempts THEN NOW() END,
+                    lease_owner = NULL, lease_expires_at = NULL, available_at = NOW()
+                WHERE status = 'RUNNING' AND lease_expires_at < NOW()
+                RETURNING *
+                """, Map.of(), TASK);
+            int unpinned = jdbc.update("""
+                UPDATE ingest_task t SET pinned_host = NULL
+                WHERE t.status = 'QUEUED' AND t.pinned_host IS NOT NULL
+                  AND t.created_at < NOW() - make_interval(secs => :timeout)
+                  AND NOT EXISTS (SELECT 1 FROM ingest_host h WHERE h.host = t.pinned_host
+                                  AND h.heartbeat_at >= NOW() - make_interval(secs => :timeout))
+                """, Map.of("timeout", hostTimeoutSeconds()));
+            if (!expired.isEmpty() || superseded > 0) {
+                log.warn("Took back {} ingest task(s) whose worker stopped renewing its lease; {} more were already queued again",
+                    expired.size(), superseded);
+            }
+            if (unpinned > 0) {
+                log.warn("Unpinned {} queued ingest task(s) whose host stopped heartbeating", unpinned);
+            }
+            if (!expired.isEmpty() || superseded > 0 || unpinned > 0) wakeUp();
+            expired.stream().filter(task -> task.status() == Status.FAILED).forEach(this::expired);
+            jdbc.update("""
+                DELETE FROM ingest_task
+                WHERE status IN ('DONE', 'FAILED') AND finished_at < NOW() - make_interval(secs => :retention)
+                """, Map.of("retention", (double) props.getQueueRetention().toSeconds()));
+        } catch (RuntimeException e) {
+            log.warn("Ingest queue maintenance failed", e);
+        }
+    }
+
+    private void heartbeat() {
+        jdbc.update("""
+            INSERT INTO ingest_host(host) VALUES (:host)
+            ON CONFLICT (host) DO UPDATE SET heartbeat_at = NOW()
+            """, Map.of("host", host));
+    }
+
+    private void expired(Task task) {
+        log.warn("Ingest task {} ({}) failed after {} attempt(s): {}", task.id(), task.kind(), task.attempts(), task.lastError());
+        ExpiryHandler handler = expiryHandlers.get(task.kind());
+        if (handler == null) return;
+        try {
+            handler.expired(task);
+        } catch (Exception e) {
+            log.warn("Cleaning up after expired ingest task {} ({}) failed", task.id(), task.kind(), e);
+        }
+    }
+
+    private void wakeUp() {
+        if (!started) return;
+        try {
+            poller.execute(this::claimSafely);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    private void claimSafely() {
+        try {
+            claim();
+        } catch (RuntimeException e) {
+            log.warn("Failed to claim ingest tasks", e);
+        }
+    }
+
+    private void claim() {
+        int idle = workerCount - running.size();
+        if (idle <= 0 || handlers.isEmpty()) return;
+        Map<String, Object> params = new HashMap<>();
+        params.put("owner", owner);
+        params.put("host", host);
+        params.put("kinds", handlers.keySet().toArray(String[]::new));
+        params.put("lease", leaseSeconds());
+        params.put("limit", idle);
+        List<Task> claimed = jdbc.query("""
+            UPDATE ingest_task t
+            SET status = 'RUNNING', attempts = t.attempts + 1, lease_owner = :owner,
+                lease_expires_at = NOW() + make_interval(secs => :lease)
+            WHERE t.id IN (
+                SELECT id FROM ingest_task
+                WHERE status = 'QUEUED' AND available_at <= NOW() AND kind = ANY(:kinds)
+                  AND (pinned_host IS NULL OR pinned_host = :host)
+                  AND (dedupe_key IS NULL OR NOT EXISTS (  -- one run per key at a time
+                      SELECT 1 FROM ingest_task r WHERE r.dedupe_key = ingest_task.dedupe_key AND r.status = 'RUNNING'))
+                ORDER BY priority DESC, available_at, id
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING t.*
+            """, params, TASK);
+        for (Task task : claimed) {
+            running.put(task.id(), task);
+            try {
+                workers.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                running.remove(task.id()); // shutting down; the lease expires and another node takes it
+            }
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            Handler handler = handlers.get(task.kind());
+            if (handler == null) throw new IllegalStateException("No handler for ingest task kind " + task.kind());
+            Long documentId = handler.handle(task);
+            finish(task, documentId);
+        } catch (Exception e) {
+            fail(task, e);
+        } finally {
+            running.remove(task.id());
+            wakeUp();
+        }
+    }
+
+    private void finish(Task task, Long documentId) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", task.id());
+        params.put("owner", owner);
+        params.put("doc", documentId);
+        jdbc.update("""
+            UPDATE ingest_task
+            SET status = 'DONE', document_id = :doc, last_error = NULL, finished_at = NOW(),
+                lease_owner = NULL, lease_expires_at = NULL
+            WHERE id = :id AND lease_owner = :owner
+            """, params);
+    }
+
+    private void fail(Task task, Exception e) {
+        boolean isTransient = Failures.isTransient(e);
+        boolean retry = !task.isLastAttempt() && isTransient;
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", task.id());
+        params.put("owner", owner);
+        params.put("error", Failures.message(e));
+        params.put("delay", retry ? backoffSeconds(task.attempts()) : 0.0);
+        params.put("status", retry ? Status.QUEUED.name() : Status.FAILED.name());
+        params.put("transient", isTransient);
+        if (retry && supersede("t.id = :id AND t.lease_owner = :owner AND " + REQUEUE_CONFLICT.formatted("FALSE"), params) > 0) {
+            log.info("Ingest task {} ({}) failed on attempt {}/{}; not retried, its key is queued again: {}",
+                task.id(), task.kind(), task.attempts(), task.maxAttempts(), e.toString());
+            return;
+        }
+        try {
+            jdbc.update("""
+                UPDATE ingest_task
+                SET status = :status, last_error = :error, transient_failure = :transient,
+                    available_at = NOW() + make_interval(secs => :delay),
+                    finished_at = CASE WHEN :status = 'FAILED' THEN NOW() END,
+                    lease_owner = NULL, lease_expires_at = NULL
+                WHERE id = :id AND lease_owner = :owner
+                """, params);
+        } catch (DuplicateKeyException raced) {
+            // The key was queued again between the check and the update
+            supersede("t.id = :id AND t.lease_owner = :owner", params);
+            return;
+        }
+        if (retry) {
+            log.warn("Ingest task {} ({}) failed on attempt {}/{}; retrying: {}",
+                task.id(), task.kind(), task.attempts(), task.maxAttempts(), e.toString());
+        } else {
+            log.warn("Ingest task {} ({}) failed after {} attempt(s)", task.id(), task.kind(), task.attempts(), e);
+        }
+    }
+
+    /**
+     * Finishes the running tasks matching {@code condition} (on alias {@code t}) as
+     * {@link #SUPERSEDED}.
+     */
+    private int supersede(String condition, Map<String, ?> params) {
+        return jdbc.update("""
+            UPDATE ingest_task t
+            SET status = 'DONE', last_error = '%s', finished_at = NOW(),
+                lease_owner = NULL, lease_expires_at = NULL
+            WHERE %s
+            """.formatted(SUPERSEDED, condition), params);
+    }
+
+    private double backoffSeconds(int attempts) {
+        double base = props.getQueueRetryBackoff().toMillis() / 1000.0 * (1L << Math.min(attempts - 1, 16));
+        return Math.min(base, 3600);
+    }
+
+    private double leaseSeconds() {
+        return Math.max(1, props.getQueueLeaseDuration().toSeconds());
+    }
+
+    // A host is gone once it missed a lease duration and a few maintenance runs of heartbeats
+    private double hostTimeoutSeconds() {
+        return Math.max(leaseSeconds(), 3.0 * props.getQueueMaintenanceInterval().toSeconds());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+        if (running.isEmpty()) return;
+        try {
+            // Hand unfinished tasks back now instead of waiting for their leases to expire
+            Map<String, Object> params = Map.of("ids", running.keySet().toArray(Long[]::new), "owner", owner);
+            supersede("t.id = ANY(:ids) AND t.lease_owner = :owner AND t.status = 'RUNNING' AND "
+                + REQUEUE_CONFLICT.formatted("o.id = ANY(:ids)"), params);
+            jdbc.update("""
+                UPDATE ingest_task
+                SET status = 'QUEUED', attempts = GREATEST(attempts - 1, 0), lease_owner = NULL, lease_expires_at = NULL
+                WHERE id = ANY(:ids) AND lease_owner = :owner AND status = 'RUNNING'
+                """, params);
+        } catch (RuntimeException e) {
+            log.debug("Failed to release running ingest tasks on shutdown", e);
+        }
+    }
+
+    private static String toJson(Map<String, String> payload) {
+        try {
+            return JSON.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable ingest task payload", e);
+        }
+    }
+
+    private static final RowMapper<Task> TASK = (rs, n) -> {
+        Map<String, String> payload;
+        try {
+            payload = JSON.readValue(rs.getString("payload"), new TypeReference<>() {});
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt payload in ingest task " + rs.getLong("id"), e);
+        }
+        return new Task(
+            rs.getLong("id"),
+            rs.getString("kind"),
+            payload,
+            rs.getInt("priority"),
+            rs.getString("pinned_host"),
+            Status.valueOf(rs.getString("status")),
+            rs.getInt("attempts"),
+            rs.getInt("max_attempts"),
+            rs.getObject("document_id", Long.class),
+            rs.getString("last_error"),
+            rs.getObject("transient_failure", Boolean.class),
+            rs.getObject("created_at", LocalDateTime.class),
+            rs.getObject("finished_at", LocalDateTime.class)
+        );
+    };
+}
@@ -6,56 +6,97 @@ import ai.fitsum.cortex.api.domain.Source;
 import ai.fitsum.cortex.api.repository.ChunkRepository;
 import ai.fitsum.cortex.api.repository.DocumentRepository;
 import ai.fitsum.cortex.api.repository.SourceRepository;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import ai.fitsum.cortex.api.config.CortexProperties;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.nio.charset.StandardCharsets;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 @Service
 public class IngestionService {
 
+    private static final Logger log = LoggerFactory.getLogger(IngestionService.class);
+
+    /** Chunks embedded by a streaming ingest are committed this many at a time. */
+    private static final int STREAM_BATCH_CHUNKS = 32;
+
     private final DocumentNormalizer documentNormalizer;
     private final ChunkingService chunkingService;
+    private final EmbeddingTokenizer tokenizer;
     private final EmbeddingModel embeddingModel;
     private final DocumentRepository documentRepository;
     private final ChunkRepository chunkRepository;
     private final SourceRepository sourceRepository;
     private final CortexProperties properties;
+    private final NearDuplicateIndex nearDuplicates;
+    private final DocumentContentStore contents;
+    private final UploadStager stager;
+    private final TransactionTemplate transactions;
     @Value("${spring.ai.vectorstore.pgvector.dimensions}")
     private int embeddingDimensions;
 
     public IngestionService(
         DocumentNormalizer documentNormalizer,
         ChunkingService chunkingService,
+        EmbeddingTokenizer tokenizer,
         @Qualifier("cortexEmbeddingModel") EmbeddingModel embeddingModel,
         DocumentRepository documentRepository,
         ChunkRepository chunkRepository,
         SourceRepository sourceRepository,
-        CortexProperties properties
+        CortexProperties properties,
+        NearDuplicateIndex nearDuplicates,
+        DocumentContentStore contents,
+        UploadStager stager,
+        TransactionTemplate transactions
     ) {
         this.documentNormalizer = documentNormalizer;
         this.chunkingService = chunkingService;
+        this.tokenizer = tokenizer;
         this.embeddingModel = embeddingModel;
         this.documentRepository = documentRepository;
         this.chunkRepository = chunkRepository;
         this.sourceRepository = sourceRepository;
         this.properties = properties;
+        this.nearDuplicates = nearDuplicates;
+        this.contents = contents;
+        this.stager = stager;
+        this.transactions = transactions;
     }
 
     private String buildMetadataJson(DocumentNormalizer.NormalizedDocument normalized) {
+        return buildMetadataJson(normalized.contentType(), normalized.metadata(), false);
+    }
+
+    private String buildMetadataJson(String contentType, org.apache.tika.metadata.Metadata md, boolean streamed) {
         try {
-            var md = normalized.metadata();
             boolean ocr = md.get("ocr") != null && !md.get("ocr").isBlank();
-            String contentType = normalized.contentType();
             StringBuilder json = new StringBuilder();
             json.append('{');
             json.append("\"contentType\":\"").append(contentType == null ? "" : contentType.replace("\"", "\\\"")).append("\"");
             if (ocr) json.append(",\"ocr\":true");
+            if ("true".equals(md.get("truncated"))) json.append(",\"truncated\":true");
+            if (streamed) json.append(",\"streamed\":true");
+            String url = md.get("url");
+            if (url != null) json.append(",\"url\":\"").append(url.replace("\"", "\\\"")).append("\"");
             json.append('}');
             return json.toString();
         } catch (Exception e) {
@@ -65,17 +106,505 @@ public class IngestionService {
 
     @Transactional
     public IngestionResult ingestLocalFile(byte[] rawBytes, String filename) throws Exception {
+        return ingestLocalFile(rawBytes, filename, filename);
+    }
+
+    @Transactional
+    public IngestionResult ingestLocalFile(byte[] rawBytes, String filename, String externalId) throws Exception {
+        return ingestLocalFile(rawBytes, filename, externalId, null);
+    }
+
+    private IngestionResult ingestLocalFile(byte[] rawBytes, String filename, String externalId, String contentHash) throws Exception {
         // Ensure a LOCAL_FILES source exists
         Long sourceId = ensureLocalFilesSource();
 
         // Normalize & compute content hash
-        DocumentNormalizer.NormalizedDocument normalized = documentNormalizer.normalize(rawBytes, filename);
+        DocumentNormalizer.NormalizedDocument normalized = normalizeLocalFile(rawBytes, filename, contentHash);
+        return createDocument(sourceId, normalized, filename, externalId, rawBytes.length);
+    }
+
+    /**
+     * Re-ingests a file tracked under a stable external id (e.g. a watched path).
+     * If a document already exists for (source_id, external_id) it is updated in place:
+     * the new text is re-chunked, chunks are matched by content hash against the stored
+     * ones, and only new chunks are embedded. Unchanged chunks keep their embedding and
+     * vanished chunks are deleted. Unknown external ids fall back to a regular ingest.
+     */
+    @Transactional
+    public IngestionResult ingestOrUpdateLocalFile(byte[] rawBytes, String filename, String externalId) throws Exception {
+        return ingestOrUpdateLocalFile(ensureLocalFilesSource(), rawBytes, filename, externalId, null);
+    }
+
+    private IngestionResult ingestOrUpdateLocalFile(Long sourceId, byte[] rawBytes, String filename, String externalId, String contentHash) throws Exception {
+        DocumentNormalizer.NormalizedDocument normalized = normalizeLocalFile(rawBytes, filename, contentHash);
+        return upsertDocument(sourceId, normalized, filename, externalId, rawBytes.length);
+    }
+
+    /**
+     * Creates the document for (source_id, external_id) or updates it in place, re-embedding
+     * only chunks whose content changed. See {@link #ingestOrUpdateLocalFile}. If the new
+     * content is a near-duplicate of another document, the document is linked to it and its
+     * chunks are dropped (with {@code near-duplicates: skip} too, since the document exists).
+     */
+    private IngestionResult upsertDocument(
+        Long sourceId,
+        DocumentNormalizer.NormalizedDocument normalized,
+        String filename,
+        String externalId,
+        long sizeBytes
+    ) {
+        var current = documentRepository.findBySourceIdAndExternalId(sourceId, externalId);
+        if (current.isEmpty()) {
+            return createDocument(sourceId, normalized, filename, externalId, sizeBytes);
+        }
+        Document document = current.get();
+        if (normalized.contentHash().equals(document.contentHash())) {
+            return new IngestionResult(document.id(), document.title(), filename, sizeBytes, java.time.Instant.now(), true);
+        }
+
+        // The new content may already be stored under another external id; (source_id, content_hash) is unique
+        var twin = documentRepository.findBySourceIdAndContentHash(sourceId, normalized.contentHash());
+        if (twin.isPresent()) {
+            log.info("Content of {} already indexed as document {}; leaving document {} unchanged",
+                externalId, twin.get().id(), document.id());
+            return new IngestionResult(twin.get().id(), twin.get().title(), filename, sizeBytes, java.time.Instant.now(), true);
+        }
+        int[] signature = nearDuplicates.signature(normalized.text());
+        var nearTwin = nearDuplicates.findTwin(sourceId, signature, document.id());
+
+        document = documentRepository.save(document.withContent(
+            normalized.title(),
+            normalized.contentHash(),
+            normalized.contentType(),
+            buildMetadataJson(normalized)
+        ));
+        contents.put(document.id(), normalized.text());
+
+        if (nearTwin.isPresent()) {
+            chunkRepository.deleteByDocumentId(document.id());
+            if (nearDuplicates.link(document.id(), nearTwin.get()) > 0) {
+                reindexReleasedDuplicates();
+            }
+            return new IngestionResult(document.id(), normalized.title(), filename, sizeBytes, java.time.Instant.now(), true);
+        }
+
+        List<ChunkingService.TextChunk> textChunks = chunk(normalized);
+
+        // Index stored chunks by content hash; duplicates within a document are matched in order
+        Map<String, Deque<Chunk>> stored = new HashMap<>();
+        for (Chunk c : chunkRepository.findByDocumentId(document.id())) {
+            stored.computeIfAbsent(c.contentHash(), k -> new ArrayDeque<>()).add(c);
+        }
+
+        int reused = 0, embedded = 0;
+        for (ChunkingService.TextChunk tc : textChunks) {
+            Deque<Chunk> candidates = stored.get(Hashes.sha256(tc.content()));
+            Chunk match = candidates != null ? candidates.pollFirst() : null;
+            if (match == null) {
+                embedAndSaveChunk(document.id(), tc);
+                embedded++;
+                continue;
+            }
+            if (!Objects.equals(match.chunkIndex(), tc.index())
+                || !Objects.equals(match.heading(), tc.heading())
+                || !Objects.equals(match.pageNumber(), tc.pageNumber())) {
+                chunkRepository.updatePosition(match.id(), tc.index(), tc.heading(), tc.pageNumber());
+            }
+            reused++;
+        }
+
+        Long[] vanished = stored.values().stream()
+            .flatMap(Deque::stream)
+            .map(Chunk::id)
+            .toArray(Long[]::new);
+        if (vanished.length > 0) {
+            chunkRepository.deleteByIdIn(vanished);
+        }
+
+        if (nearDuplicates.enabled() && nearDuplicates.indexed(document.id(), signature) > 0) {
+            reindexReleasedDuplicates();
+        }
+
+        log.info("Updated document id={} externalId='{}': reused={} embedded={} deleted={}",
+            document.id(), externalId, reused, embedded, vanished.length);
+
+        return new IngestionResult(
+            document.id(),
+            normalized.title(),
+            filename,
+            sizeBytes,
+            java.time.Instant.now(),
+            false
+        );
+    }
+
+    /**
+     * Ingests a file from disk, choosing the streaming path for files at or above
+     * {@code cortex.ingestion.streaming-threshold}. Smaller files are read fully and go
+     * through {@link #ingestOrUpdateLocalFile}; so do large files whose streamed parse
+     * yields no text, so that the OCR fallback still applies to big scanned PDFs. Files are
+     * parsed outside a transaction; see {@link #streamLocalFile} for how streamed ones are
+     * stored.
+     */
+    public IngestionResult ingestLocalPath(Path file, String externalId) throws Exception {
+        return ingestLocalPath(file, externalId, Hashes.sha256(file));
+    }
+
+    /**
+     * Like {@link #ingestLocalPath(Path, String)} for a caller that has already hashed the
+     * file. Content already indexed under {@code externalId}, or under another document, is
+     * answered from the hash without reading or parsing the file.
+     */
+    public IngestionResult ingestLocalPath(Path file, String externalId, String contentHash) throws Exception {
+        return ingestPath(ensureLocalFilesSource(), file, file.getFileName().toString(), externalId, contentHash);
+    }
+
+    /**
+     * Like {@link #ingestLocalPath(Path, String)} for a file belonging to the given source
+     * (e.g. one synced by a {@code SourceConnector}).
+     */
+    public IngestionResult ingestSourceFile(Long sourceId, Path file, String externalId) throws Exception {
+        return ingestPath(sourceId, file, file.getFileName().toString(), externalId, Hashes.sha256(file));
+    }
+
+    private IngestionResult ingestPath(Long sourceId, Path file, String filename, String externalId, String contentHash) throws Exception {
+        long size = Files.size(file);
+        Optional<IngestionResult> known = alreadyIndexed(sourceId, externalId, contentHash, filename, size);
+        if (known.isPresent()) {
+            return known.get();
+        }
+        if (size >= properties.getIngestion().getStreamingThreshold().toBytes()) {
+            IngestionResult streamed;
+            try (InputStream in = Files.newInputStream(file)) {
+                streamed = streamLocalFile(sourceId, in, filename, externalId, size, true, contentHash);
+            }
+            // PDFs were already OCR'd page by page while streaming; other formats retry in memory
+            if (streamed != null || filename.toLowerCase().endsWith(".pdf")) {
+                return requireText(streamed);
+            }
+            log.info("Streaming parse of {} produced no text; retrying in memory for OCR", filename);
+        }
+        return ingestBuffered(sourceId, Files.readAllBytes(file), filename, externalId, contentHash);
+    }
+
+    /** Parses outside any transaction, then stores the document and its chunks in one. */
+    private IngestionResult ingestBuffered(Long sourceId, byte[] rawBytes, String filename, String externalId, String contentHash) throws Exception {
+        DocumentNormalizer.NormalizedDocument normalized = normalizeLocalFile(rawBytes, filename, contentHash);
+        return transactions.execute(tx -> upsertDocument(sourceId, normalized, filename, externalId, rawBytes.length));
+    }
+
+    /**
+     * Ingests one archive entry, held in memory, under {@code externalId} (its path in the
+     * archive). Content already indexed is answered from {@code contentHash} without parsing;
+     * an entry that changed since a previous upload of the archive is updated in place.
+     */
+    @Transactional
+    public IngestionResult ingestArchiveEntry(byte[] rawBytes, String filename, String externalId, String contentHash) throws Exception {
+        Long sourceId = ensureLocalFilesSource();
+        Optional<IngestionResult> known = alreadyIndexed(sourceId, externalId, contentHash, filename, rawBytes.length);
+        if (known.isPresent()) {
+            return known.get();
+        }
+        return ingestOrUpdateLocalFile(sourceId, rawBytes, filename, externalId, contentHash);
+    }
+
+    /**
+     * The document already holding {@code contentHash}: the one stored under {@code externalId}
+     * or, since (source_id, content_hash) is unique, any other.
+     */
+    private Optional<IngestionResult> alreadyIndexed(Long sourceId, String externalId, String contentHash, String filename, long size) {
+        var current = documentRepository.findBySourceIdAndExternalId(sourceId, externalId);
+        if (current.isPresent() && contentHash.equals(current.get().contentHash())) {
+            return Optional.of(new IngestionResult(current.get().id(), current.get().title(), filename, size, java.time.Instant.now(), true));
+        }
+        var twin = documentRepository.findBySourceIdAndContentHash(sourceId, contentHash);
+        if (twin.isPresent()) {
+            log.info("Content of {} already indexed as document {}; not parsing it again", externalId, twin.get().id());
+            return Optional.of(new IngestionResult(twin.get().id(), twin.get().title(), filename, size, java.time.Instant.now(), true));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Deletes the local-file documents tracked under the given external ids (e.g. watched
+     * files that were removed). They are tombstoned, so they leave retrieval at once, and
+     * {@link DocumentPurger} removes their chunks and rows later and re-indexes their
+     * near-duplicates.
+     *
+     * @return number of documents deleted
+     */
+    @Transactional
+    public int deleteLocalFiles(java.util.Collection<String> externalIds) {
+        if (externalIds.isEmpty()) return 0;
+        Long sourceId = ensureLocalFilesSource();
+        return documentRepository.tombstoneBySourceIdAndExternalIdIn(sourceId, externalIds.toArray(String[]::new));
+    }
+
+    /**
+     * Moves local-file documents to {@code prefix + externalId}, for the given external ids
+     * whose document still holds the content hash at the same position in
+     * {@code contentHashes}. Used to move documents into a namespace of their own; the hash
+     * keeps an unrelated upload that happens to share a name where it is.
+     *
+     * @return number of documents renamed
+     */
+    @Transactional
+    public int prefixLocalFileIds(String prefix, List<String> externalIds, List<String> contentHashes) {
+        if (externalIds.isEmpty()) return 0;
+        return documentRepository.prefixExternalIds(ensureLocalFilesSource(), prefix,
+            externalIds.toArray(String[]::new), contentHashes.toArray(String[]::new));
+    }
+
+    /**
+     * Ingests an upload that has already been staged to disk and hashed (see
+     * {@link UploadStager}). Exact duplicates are answered from the content hash without
+     * parsing; large files are streamed through the normalizer rather than read into memory.
+     * Like {@link #ingestLocalFile}, uploads always create a new document.
+     */
+    public IngestionResult ingestStagedFile(Path file, String filename, String contentHash) throws Exception {
+        Long sourceId = ensureLocalFilesSource();
+        long size = Files.size(file);
+
+        var existing = documentRepository.findBySourceIdAndContentHash(sourceId, contentHash);
+        if (existing.isPresent()) {
+            return new IngestionResult(
+                existing.get().id(),
+                existing.get().title(),
+                filename,
+                size,
+                java.time.Instant.now(),
+                true
+            );
+        }
+
+        if (size >= properties.getIngestion().getStreamingThreshold().toBytes()) {
+            IngestionResult streamed;
+            try (InputStream in = Files.newInputStream(file)) {
+                streamed = streamLocalFile(sourceId, in, filename, filename, size, false, contentHash);
+            }
+            // PDFs were already OCR'd page by page while streaming; other formats retry in memory
+            if (streamed != null || filename.toLowerCase().endsWith(".pdf")) {
+                return requireText(streamed);
+            }
+            log.info("Streaming parse of {} produced no text; retrying in memory for OCR", filename);
+        }
+        byte[] rawBytes = Files.readAllBytes(file);
+        DocumentNormalizer.NormalizedDocument normalized = normalizeLocalFile(rawBytes, filename, contentHash);
+        return transactions.execute(tx -> createDocument(sourceId, normalized, filename, filename, rawBytes.length));
+    }
+
+    /**
+     * Ingests a stream under {@code externalId}. A stream whose {@code sizeBytes} is below
+     * {@code streaming-threshold} is read into memory; larger ones, and ones of unknown size
+     * (negative), are staged to disk first (see {@link UploadStager}). Either way the content
+     * is hashed before anything is parsed or embedded, so content already indexed is answered
+     * from the hash; the rest is handled like {@link #ingestLocalPath(Path, String, String)}.
+     * The stream is not closed.
+     */
+    public IngestionResult ingestLocalFileStreaming(InputStream in, String filename, String externalId, long sizeBytes) throws Exception {
+        return ingestStream(ensureLocalFilesSource(), in, filename, externalId, sizeBytes);
+    }
+
+    /**
+     * Like {@link #ingestLocalFileStreaming} into the given source, for connector items that
+     * are not files on disk.
+     */
+    public IngestionResult ingestSourceStream(Long sourceId, InputStream in, String filename, String externalId, long sizeBytes) throws Exception {
+        return ingestStream(sourceId, in, filename, externalId, sizeBytes);
+    }
+
+    private IngestionResult ingestStream(Long sourceId, InputStream in, String filename, String externalId, long sizeBytes) throws Exception {
+        long threshold = Math.min(properties.getIngestion().getStreamingThreshold().toBytes(), Integer.MAX_VALUE - 8);
+        byte[] head = new byte[0];
+        if (sizeBytes >= 0 && sizeBytes < threshold) {
+            // Sizes are hints (e.g. before mboxrd unquoting): stage anyway if the stream runs past the threshold
+            head = in.readNBytes((int) threshold);
+            if (head.length < threshold) {
+                String contentHash = Hashes.sha256(head);
+                Optional<IngestionResult> known = alreadyIndexed(sourceId, externalId, contentHash, filename, head.length);
+                if (known.isPresent()) {
+                    return known.get();
+                }
+                return ingestBuffered(sourceId, head, filename, externalId, contentHash);
+            }
+        }
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head), CloseShieldInputStream.wrap(in));
+        UploadStager.StagedFile staged = stager.stage(rest, filename);
+        try {
+            return ingestPath(sourceId, staged.path(), filename, externalId, staged.contentHash());
+        } finally {
+            stager.discard(staged);
+        }
+    }
+
+    private static IngestionResult requireText(IngestionResult streamed) {
+        if (streamed == null) {
+            throw new IllegalArgumentException(
+                "No extractable text found in document. If this is a scanned PDF or image-only PDF, enable OCR via 'cortex.ocr.enabled=true' and try again."
+            );
+        }
+        return streamed;
+    }
+
+    /**
+     * Streaming ingest: text is chunked, embedded and persisted while Tika is still parsing,
+     * so memory stays bounded by the chunk size instead of the document size. Documents
+     * already stored under the same (source_id, external_id) are diffed by chunk hash like
+     * {@link #ingestOrUpdateLocalFile}. Callers have already looked up {@code contentHash}, so
+     * nothing is embedded for content stored under another document. Streamed documents do
+     * not keep their text in {@link DocumentContentStore}.
+     *
+     * <p>A large file can take minutes to embed, so this runs outside a transaction: new
+     * chunks are committed {@value #STREAM_BATCH_CHUNKS} at a time, and the document row,
+     * moved chunks and vanished ones are written in one short transaction at the end. A new
+     * document is held hidden until then (see {@link DocumentRepository#holdUnpublished});
+     * if the ingest fails, or the node dies, {@link DocumentPurger} removes it. An updated
+     * document shows its new chunks next to the old ones until the end; a failure removes the
+     * ones added so far.
+     */
+    private IngestionResult streamLocalFile(
+        Long sourceId,
+        InputStream in,
+        String filename,
+        String externalId,
+        long sizeBytes,
+        boolean updateExisting,
+        String contentHash
+    ) throws Exception {
+        Optional<Document> current = updateExisting
+            ? documentRepository.findBySourceIdAndExternalId(sourceId, externalId)
+            : Optional.empty();
+        long lease = Math.max(1, properties.getIngestion().getQueueLeaseDuration().toSeconds());
+        Document document = current.orElseGet(() -> transactions.execute(tx -> {
+            Document created = documentRepository.save(Document.create(sourceId, externalId, filename, contentHash, null, null));
+            documentRepository.holdUnpublished(created.id(), lease);
+            return created;
+        }));
+
+        Map<String, Deque<Chunk>> stored = new HashMap<>();
+        if (current.isPresent()) {
+            for (Chunk c : chunkRepository.findHashesByDocumentId(document.id())) {
+                stored.computeIfAbsent(c.contentHash(), k -> new ArrayDeque<>()).add(c);
+            }
+        }
+
+        Long documentId = document.id();
+        List<Chunk> batch = new ArrayList<>();
+        List<Long> added = new ArrayList<>();
+        List<Position> moved = new ArrayList<>();
+        Runnable flush = () -> {
+            if (batch.isEmpty()) return;
+            transactions.executeWithoutResult(tx -> {
+                chunkRepository.saveAll(batch).forEach(c -> added.add(c.id()));
+                if (current.isEmpty() && documentRepository.holdUnpublished(documentId, lease) == 0) {
+                    throw new IllegalStateException("Document " + documentId + " was purged while it was being streamed");
+                }
+            });
+            batch.clear();
+        };
+        // Streamed documents are indexed for near-duplicates but never linked: their chunks are already stored
+        MinHash.Builder shingles = nearDuplicates.enabled() ? new MinHash.Builder() : null;
+        IncrementalChunker chunker = chunkingService.incremental(tc -> {
+            if (shingles != null) shingles.add(tc.content());
+            Deque<Chunk> candidates = stored.get(Hashes.sha256(tc.content()));
+            Chunk match = candidates != null ? candidates.pollFirst() : null;
+            if (match == null) {
+                batch.add(embedChunk(documentId, tc));
+                if (batch.size() >= STREAM_BATCH_CHUNKS) flush.run();
+            } else if (!Objects.equals(match.chunkIndex(), tc.index())
+                || !Objects.equals(match.heading(), tc.heading())
+                || !Objects.equals(match.pageNumber(), tc.pageNumber())) {
+                moved.add(new Position(match.id(), tc.index(), tc.heading(), tc.pageNumber()));
+            }
+        });
+
+        boolean published = false;
+        try {
+            DocumentNormalizer.StreamedDocument streamed = documentNormalizer.normalizeStreaming(in, filename, chunker, contentHash);
+            if (streamed.chunkCount() == 0) {
+                return null;
+            }
+            flush.run();
+
+            Long[] vanished = stored.values().stream()
+                .flatMap(Deque::stream)
+                .map(Chunk::id)
+                .toArray(Long[]::new);
+            transactions.executeWithoutResult(tx -> {
+                documentRepository.save(document.withContent(
+                    streamed.title(),
+                    streamed.contentHash(),
+                    streamed.contentType(),
+                    buildMetadataJson(streamed.contentType(), streamed.metadata(), true)
+                ));
+                if (current.isPresent()) {
+                    contents.delete(documentId); // text stored by an earlier, buffered ingest
+                } else {
+                    documentRepository.publish(documentId);
+                }
+                for (Position p : moved) {
+                    chunkRepository.updatePosition(p.chunkId(), p.index(), p.heading(), p.pageNumber());
+                }
+                if (vanished.length > 0) {
+                    chunkRepository.deleteByIdIn(vanished);
+                }
+                if (shingles != null && nearDuplicates.indexed(documentId, nearDuplicates.signature(shingles)) > 0) {
+                    reindexReleasedDuplicates();
+                }
+            });
+            published = true;
+
+            log.info("Streamed document id={} externalId='{}': chars={} chunks={} embedded={} deleted={}",
+                documentId, externalId, streamed.charCount(), streamed.chunkCount(), added.size(), vanished.length);
+
+            return new IngestionResult(
+                documentId,
+                streamed.title(),
+                filename,
+                sizeBytes,
+                java.time.Instant.now(),
+                current.isPresent() && streamed.contentHash().equals(current.get().contentHash())
+            );
+        } finally {
+            if (!published) {
+                discardStreamed(documentId, current.isEmpty(), added);
+            }
+        }
+    }
+
+    /** A stored chunk's place in the new version of a streamed document. */
+    private record Position(Long chunkId, int index, String heading, Integer pageNumber) {}
+
+    /** Undoes a streaming ingest that did not finish; cleanup failures are left to the purger or the next ingest. */
+    private void discardStreamed(Long documentId, boolean created, List<Long> added) {
+        try {
+            if (created) {
+                documentRepository.releaseUnpublished(documentId);
+            } else if (!added.isEmpty()) {
+                chunkRepository.deleteByIdIn(added.toArray(Long[]::new));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not clean up after the unfinished streaming ingest of document {}", documentId, e);
+        }
+    }
+
+    private DocumentNormalizer.NormalizedDocument normalizeLocalFile(byte[] rawBytes, String filename, String contentHash) throws Exception {
+        DocumentNormalizer.NormalizedDocument normalized = documentNormalizer.normalize(rawBytes, filename, contentHash);
         if (normalized.text() == null || normalized.text().isBlank()) {
             throw new IllegalArgumentException(
                 "No extractable text found in document. If this is a scanned PDF or image-only PDF, enable OCR via 'cortex.ocr.enabled=true' and try again."
             );
         }
+        return normalized;
+    }
 
+    private IngestionResult createDocument(
+        Long sourceId,
+        DocumentNormalizer.NormalizedDocument normalized,
+        String filename,
+        String externalId,
+        long sizeBytes
+    ) {
         // Deduplicate by (source_id, content_hash)
         var existing = documentRepository.findBySourceIdAndContentHash(sourceId, normalized.contentHash());
         if (existing.isPresent()) {
@@ -83,7 +612,22 @@ public class IngestionService {
                 existing.get().id(),
                 normalized.title(),
                 filename,
-                rawBytes.length,
+                sizeBytes,
+                java.time.Instant.now(),
+                true
+            );
+        }
+
+        // Near-duplicate of a document already indexed in this source
+        int[] signature = nearDuplicates.signature(normalized.text());
+        var nearTwin = nearDuplicates.findTwin(sourceId, signature, null);
+        if (nearTwin.isPresent() && nearDuplicates.mode() == CortexProperties.Ingestion.NearDuplicateMode.SKIP) {
+            log.info("{} is a near-duplicate of document {}; not indexing it", externalId, nearTwin.get().documentId());
+            return new IngestionResult(
+                nearTwin.get().documentId(),
+                nearTwin.get().title(),
+                filename,
+                sizeBytes,
                 java.time.Instant.now(),
                 true
             );
@@ -92,60 +636,84 @@ public class IngestionService {
         // Persist document row
         Document document = Document.create(
             sourceId,
-            filename,
+            externalId,
             normalized.title(),
             normalized.contentHash(),
             normalized.contentType(),
-            normalized.text(), // Store raw content
             buildMetadataJson(normalized)
         );
         document = documentRepository.save(document);
+        contents.put(document.id(), normalized.text());
+
+        // A linked near-duplicate is stored without chunks; retrieval finds its twin's
+        if (nearTwin.isPresent()) {
+            nearDuplicates.link(document.id(), nearTwin.get());
+            return new IngestionResult(document.id(), normalized.title(), filename, sizeBytes, java.time.Instant.now(), true);
+        }
 
         // Chunk
-        List<ChunkingService.TextChunk> textChunks = chunkingService.chunk(
-            normalized.text(), normalized.title()
-        );
+        List<ChunkingService.TextChunk> textChunks = chunk(normalized);
 
         // Embed and persist chunks
         for (ChunkingService.TextChunk tc : textChunks) {
-            // Enforce max chars per chunk prior to embedding
-            int targetTokens = properties.getIngestion().getChunkSizeTokens();
-            int maxChars = (int) Math.round(targetTokens * 3.2);
-            String content = tc.content();
-            if (content.length() > maxChars) {
-                content = content.substring(0, maxChars);
-            }
-            float[] emb = embeddingModel.embed(content);
-            if (emb == null || emb.length != embeddingDimensions) {
-                throw new IllegalStateException(
-                    "Embedding dimension mismatch: expected " + embeddingDimensions +
-                    ", got " + (emb == null ? 0 : emb.length) +
-                    ". Verify LM Studio is serving 'text-embedding-bge-large-en-v1.5' and OPENAI_BASE_URL points to it."
-                );
-            }
-            Chunk c = Chunk.create(
-                document.id(),
-                tc.index(),
-                content,
-                sha256(tc.content().getBytes(StandardCharsets.UTF_8)),
-                tc.content().length(),
-                tc.heading(),
-                tc.pageNumber(),
-                emb
-            );
-            chunkRepository.save(c);
+            embedAndSaveChunk(document.id(), tc);
+        }
+        if (signature != null) {
+            nearDuplicates.indexed(document.id(), signature);
         }
 
         return new IngestionResult(
             document.id(),
             normalized.title(),
             filename,
-            rawBytes.length,
+            sizeBytes,
             java.time.Instant.now(),
             false
         );
     }
 
+    private List<ChunkingService.TextChunk> chunk(DocumentNormalizer.NormalizedDocument normalized) {
+        if (normalized.pages() != null) {
+            return chunkingService.chunkPages(normalized.pages(), normalized.title());
+        }
+        return chunkingService.chunk(normalized.text(), normalized.title());
+    }
+
+    private void embedAndSaveChunk(Long documentId, ChunkingService.TextChunk tc) {
+        chunkRepository.save(embedChunk(documentId, tc));
+    }
+
+    private Chunk embedChunk(Long documentId, ChunkingService.TextChunk tc) {
+        // Chunks are budgeted in model tokens already; this only guards the model's input window
+        String content = tc.content();
+        int tokenCount = tokenizer.count(content);
+        int maxTokens = properties.getIngestion().getEmbeddingMaxTokens() - 2; // [CLS] and [SEP]
+        if (tokenCount > maxTokens) {
+            content = content.substring(0, tokenizer.fit(content, 0, content.length(), maxTokens)).trim();
+            log.warn("Chunk {} of document {} has {} tokens; truncated to the {}-token embedding window",
+                tc.index(), documentId, tokenCount, maxTokens);
+            tokenCount = tokenizer.count(content);
+        }
+        float[] emb = embeddingModel.embed(content);
+        if (emb == null || emb.length != embeddingDimensions) {
+            throw new IllegalStateException(
+                "Embedding dimension mismatch: expected " + embeddingDimensions +
+                ", got " + (emb == null ? 0 : emb.length) +
+                ". Verify LM Studio is serving 'text-embedding-bge-large-en-v1.5' and OPENAI_BASE_URL points to it."
+            );
+        }
+        return Chunk.create(
+            documentId,
+            tc.index(),
+            content,
+            Hashes.sha256(tc.content()),
+            tokenizer.isExact() ? tokenCount : null, // estimates are not stored as counts
+            tc.heading(),
+            tc.pageNumber(),
+            emb
+        );
+    }
+
     @Transactional
     public IngestionResult ingestText(String title, String content, java.util.List<String> tags) throws Exception {
         return ingestText(title, content, tags, null, Source.SourceType.LOCAL_FILES);
@@ -168,7 +736,7 @@ public class IngestionService {
             throw new IllegalArgumentException("content must not be empty");
         }
 
-        String contentHash = sha256(text.getBytes(StandardCharsets.UTF_8));
+        String contentHash = Hashes.sha256(text);
         var existing = documentRepository.findBySourceIdAndContentHash(sourceId, contentHash);
         if (existing.isPresent()) {
             return new IngestionResult(
@@ -187,34 +755,16 @@ public class IngestionService {
             normalizedTitle,
             contentHash,
             "text/plain",
-            text,
             metadataJson
         );
         document = documentRepository.save(document);
+        contents.put(document.id(), text);
 
         // Chunk the provided text
         List<ChunkingService.TextChunk> textChunks = chunkingService.chunk(text, normalizedTitle);
 
         for (ChunkingService.TextChunk tc : textChunks) {
-            int targetTokens = properties.getIngestion().getChunkSizeTokens();
-            int maxChars = (int) Math.round(targetTokens * 3.2);
-            String c = tc.content();
-            if (c.length() > maxChars) c = c.substring(0, maxChars);
-            float[] emb = embeddingModel.embed(c);
-            if (emb == null || emb.length != embeddingDimensions) {
-                throw new IllegalStateException("Embedding dimension mismatch: expected " + embeddingDimensions + ", got " + (emb == null ? 0 : emb.length));
-            }
-            Chunk chunk = Chunk.create(
-                document.id(),
-                tc.index(),
-                c,
-                sha256(tc.content().getBytes(StandardCharsets.UTF_8)),
-                tc.content().length(),
-                tc.heading(),
-                tc.pageNumber(),
-                emb
-            );
-            chunkRepository.save(chunk);
+            embedAndSaveChunk(document.id(), tc);
         }
 
         return new IngestionResult(
@@ -229,11 +779,89 @@ public class IngestionService {
 
     @Transactional
     public IngestionResult ingestUrl(String url) throws Exception {
-        // Minimal metadata to keep original URL
-        String metadata = "{\"url\":\"" + url.replace("\"", "\\\"") + "\"}";
         ExtractedPage page = UrlFetcher.fetchReadable(url);
-        String title = page.title() != null && !page.title().isBlank() ? page.title() : url;
-        return ingestText(title, page.text(), java.util.List.of("web"), metadata, Source.SourceType.WEB_URL);
+        return ingestWebPage(url, page.title(), page.text());
+    }
+
+    /**
+     * Indexes a fetched web page under its URL. A page that was indexed before is updated in
+     * place like {@link #ingestOrUpdateLocalFile}, so re-fetching a changed page re-embeds only
+     * the chunks that changed and an unchanged page costs a hash comparison.
+     */
+    @Transactional
+    public IngestionResult ingestWebPage(String url, String title, String text) {
+        String content = text == null ? "" : text.trim();
+        if (content.isEmpty()) {
+            throw new IllegalArgumentException("No readable text found at " + url);
+        }
+        String pageTitle = title != null && !title.isBlank() ? title.trim() : url;
+        org.apache.tika.metadata.Metadata md = new org.apache.tika.metadata.Metadata();
+        md.set("url", url);
+        var normalized = new DocumentNormalizer.NormalizedDocument(pageTitle, content, "text/html", Hashes.sha256(content), md);
+        return upsertDocument(ensureWebUrlSource(), normalized, url, url, content.length());
+    }
+
+    /**
+     * Deletes (tombstones) the documents of web pages that no longer exist (e.g. answered 404
+     * or 410).
+     *
+     * @return number of documents deleted
+     */
+    @Transactional
+    public int deleteWebPages(java.util.Collection<String> urls) {
+        if (urls.isEmpty()) return 0;
+        return documentRepository.tombstoneBySourceIdAndExternalIdIn(ensureWebUrlSource(), urls.toArray(String[]::new));
+    }
+
+    /**
+     * Deletes (tombstones) a document; see {@link #deleteLocalFiles}.
+     *
+     * @return whether the document existed and was not already deleted
+     */
+    @Transactional
+    public boolean deleteDocument(Long documentId) {
+        return documentRepository.tombstoneById(documentId) > 0;
+    }
+
+    /**
+     * Indexes near-duplicates again whose twin was deleted or changed: each is linked to a new
+     * twin if one qualifies (often another copy released at the same time), otherwise chunked
+     * and embedded from its stored text. Runs inline when a twin changes and from
+     * {@link DocumentPurger} for deleted twins.
+     *
+     * @return number of documents handled
+     */
+    @Transactional
+    public int reindexReleasedDuplicates() {
+        nearDuplicates.releaseTombstoned();
+        int handled = 0;
+        List<Long> released;
+        while (!(released = nearDuplicates.released(100)).isEmpty()) {
+            for (Long id : released) {
+                handled++;
+                Document document = documentRepository.findById(id).orElseThrow();
+                String text = contents.get(id).orElse(null);
+                if (text == null || text.isBlank()) {
+                    log.warn("Near-duplicate document {} has no stored text; it is not searchable until re-ingested", id);
+                    nearDuplicates.indexed(id, null);
+                    continue;
+                }
+                int[] signature = nearDuplicates.signature(text);
+                var twin = nearDuplicates.findTwin(document.sourceId(), signature, id);
+                if (twin.isPresent()) {
+                    nearDuplicates.link(id, twin.get());
+                    continue;
+                }
+                for (ChunkingService.TextChunk tc : chunkingService.chunk(text, document.title())) {
+                    embedAndSaveChunk(id, tc);
+                }
+                nearDuplicates.indexed(id, signature);
+            }
+        }
+        if (handled > 0) {
+            log.info("Re-indexed {} near-duplicate documents whose twin was deleted or changed", handled);
+        }
+        return handled;
     }
 
     private Long ensureWebUrlSource() {
@@ -258,21 +886,6 @@ public class IngestionService {
         return src.id();
     }
 
-    private String sha256(byte[] content) {
-        try {
-            var digest = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content);
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hash) {
-                String h = Integer.toHexString(0xff & b);
-                if (h.length() == 1) hex.append('0');
-                hex.append(h);
-            }
-            return hex.toString();
-        } catch (Exception e) {
-            throw new IllegalStateException("SHA-256 not available", e);
-        }
-    }
 }
 
 
@@ -0,0 +1,203 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts Markdown to the plain text the chunker works on, one line at a time. Block
+ * structure is kept: ATX and setext headings are written as {@code #} lines of their own (which
+ * {@link ChunkAssembler} takes as section headings), paragraphs, lists, quotes and fenced code
+ * blocks are separated by blank lines, and a fenced block stays one paragraph, fences included,
+ * so a {@code #} comment at its top is not taken for a heading. Inline markup
+ * (emphasis, code spans, links, images, HTML tags) is reduced to its text; YAML front matter
+ * is dropped except for its {@code title}. Only the paragraph being read is buffered.
+ */
+final class MarkdownTextExtractor {
+
+    private static final int MAX_FRONT_MATTER_LINES = 200;
+    // Paragraphs without blank lines are flushed at this size; they just lose setext detection
+    private static final int MAX_PARAGRAPH_CHARS = 64 * 1024;
+
+    private static final Pattern ATX_HEADING = Pattern.compile("^(#{1,6})(?:\\s+(.*?))?(?:\\s+#+)?\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^(`{3,}|~{3,})");
+    private static final Pattern THEMATIC_BREAK = Pattern.compile("^([-*_])(\\s*\\1){2,}$");
+    private static final Pattern SETEXT_UNDERLINE = Pattern.compile("^(=+|-+)$");
+    private static final Pattern TABLE_DELIMITER = Pattern.compile("^\\|?(\\s*:?-+:?\\s*\\|)+\\s*(:?-+:?\\s*)?$");
+    private static final Pattern REFERENCE_DEFINITION = Pattern.compile("^\\[[^\\]]+]:\\s*\\S+.*$");
+    private static final Pattern FRONT_MATTER_TITLE = Pattern.compile("^title:\\s*(.*?)\\s*$");
+
+    private static final Pattern CODE_SPAN = Pattern.compile("(`+)(.+?)\\1");
+    private static final Pattern IMAGE = Pattern.compile("!\\[([^\\]]*)]\\([^)]*\\)");
+    private static final Pattern LINK = Pattern.compile("\\[([^\\]]+)](?:\\([^)]*\\)|\\[[^\\]]*])");
+    private static final Pattern AUTOLINK = Pattern.compile("<((?:https?|mailto):[^>\\s]+)>");
+    private static final Pattern HTML_TAG = Pattern.compile("</?[A-Za-z][A-Za-z0-9-]*(?:\\s[^>]*)?/?>|<!--.*?-->");
+    private static final Pattern STRONG = Pattern.compile("(\\*\\*|__)(?=\\S)(.+?)(?<=\\S)\\1");
+    private static final Pattern EMPHASIS = Pattern.compile("(?<![\\w*])([*_])(?=\\S)(.+?)(?<=\\S)\\1(?![\\w*])");
+    private static final Pattern STRIKETHROUGH = Pattern.compile("~~(.+?)~~");
+
+    private final Writer out;
+    private final StringBuilder paragraph = new StringBuilder();
+    private String fence;
+    private boolean written;
+    private String firstHeading;
+
+    private MarkdownTextExtractor(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the text of the Markdown in {@code in} to {@code out}.
+     *
+     * @return the front matter's title, else the first level-1 heading, else {@code null}
+     */
+    static String extract(BufferedReader in, Writer out) throws IOException {
+        MarkdownTextExtractor extractor = new MarkdownTextExtractor(out);
+        String title = null;
+        String line = in.readLine();
+        if (line != null && line.strip().equals("---")) {
+            List<String> frontMatter = new ArrayList<>();
+            boolean closed = false;
+            String next;
+            while (frontMatter.size() < MAX_FRONT_MATTER_LINES && (next = in.readLine()) != null) {
+                if (next.strip().equals("---") || next.strip().equals("...")) {
+                    closed = true;
+                    break;
+                }
+                frontMatter.add(next);
+            }
+            if (closed) {
+                title = frontMatterTitle(frontMatter);
+            } else {
+                // Just a thematic break at the top
+                extractor.line(line);
+                for (String l : frontMatter) extractor.line(l);
+            }
+            line = in.readLine();
+        }
+        for (; line != null; line = in.readLine()) {
+            extractor.line(line);
+        }
+        extractor.endBlock();
+        return title != null ? title : extractor.firstHeading;
+    }
+
+    private void line(String line) throws IOException {
+        if (fence != null) {
+            if (line.strip().startsWith(fence) && line.strip().chars().allMatch(c -> c == fence.charAt(0))) {
+                append(line.strip());
+                fence = null;
+                endBlock();
+            } else if (!line.isBlank()) {
+                append(line.stripTrailing());
+            }
+            return;
+        }
+        String text = line.strip();
+        if (text.isEmpty()) {
+            endBlock();
+            return;
+        }
+        Matcher m = FENCE.matcher(text);
+        if (m.find()) {
+            endBlock();
+            fence = m.group(1);
+            append(text);
+            return;
+        }
+        m = ATX_HEADING.matcher(text);
+        if (m.matches()) {
+            endBlock();
+            heading(m.group(1).length(), m.group(2) == null ? "" : m.group(2));
+            return;
+        }
+        if (paragraph.length() > 0 && SETEXT_UNDERLINE.matcher(text).matches()) {
+            String heading = paragraph.toString().replace('\n', ' ');
+            paragraph.setLength(0);
+            heading(text.charAt(0) == '=' ? 1 : 2, heading);
+            return;
+        }
+        if (THEMATIC_BREAK.matcher(text).matches()) {
+            endBlock();
+            return;
+        }
+        if (text.indexOf('|') >= 0 && TABLE_DELIMITER.matcher(text).matches()) return;
+        if (text.charAt(0) == '[' && REFERENCE_DEFINITION.matcher(text).matches()) return;
+        while (text.startsWith(">")) text = text.substring(1).strip();
+        if (text.isEmpty()) {
+            endBlock();
+            return;
+        }
+        append(inline(text));
+        if (paragraph.length() > MAX_PARAGRAPH_CHARS) endBlock();
+    }
+
+    private void heading(int level, String text) throws IOException {
+        String plain = inline(text.strip());
+        if (plain.isEmpty()) return;
+        if (level == 1 && firstHeading == null) firstHeading = plain;
+        block("#".repeat(level) + " " + plain);
+    }
+
+    private void append(String line) {
+        if (paragraph.length() > 0) paragraph.append('\n');
+        paragraph.append(line);
+    }
+
+    private void endBlock() throws IOException {
+        if (paragraph.length() == 0) return;
+        block(paragraph);
+        paragraph.setLength(0);
+    }
+
+    private void block(CharSequence text) throws IOException {
+        if (written) out.write("\n\n");
+        out.append(text);
+        written = true;
+    }
+
+    /** Strips inline markup; lines without any markup characters are returned as they are. */
+    static String inline(String text) {
+        if (!hasMarkup(text)) return text;
+        text = CODE_SPAN.matcher(text).replaceAll("$2");
+        text = IMAGE.matcher(text).replaceAll("$1");
+        text = LINK.matcher(text).replaceAll("$1");
+        text = AUTOLINK.matcher(text).replaceAll("$1");
+        text = HTML_TAG.matcher(text).replaceAll("");
+        text = STRONG.matcher(text).replaceAll("$2");
+        text = EMPHASIS.matcher(text).replaceAll("$2");
+        text = STRIKETHROUGH.matcher(text).replaceAll("$1");
+        return text.strip();
+    }
+
+    private static boolean hasMarkup(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '`', '[', '<', '*', '_', '~' -> {
+                    return true;
+                }
+                default -> { }
+            }
+        }
+        return false;
+    }
+
+    private static String frontMatterTitle(List<String> frontMatter) {
+        for (String line : frontMatter) {
+            Matcher m = FRONT_MATTER_TITLE.matcher(line);
+            if (m.matches()) {
+                String title = m.group(1);
+                if (title.length() >= 2 && (title.charAt(0) == '"' || title.charAt(0) == '\'')
+                    && title.charAt(title.length() - 1) == title.charAt(0)) {
+                    title = title.substring(1, title.length() - 1);
+                }
+                return title.isBlank() ? null : title;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * MinHash signatures of normalized text for near-duplicate detection. Text is reduced to
+ * lower-case words (runs of letters and digits), and each window of {@value #SHINGLE_WORDS}
+ * consecutive words is one shingle; the fraction of equal signature positions estimates the
+ * Jaccard similarity of two documents' shingle sets. Signatures are cut into
+ * {@value #BANDS} bands of {@value #ROWS} rows for LSH: documents sharing any band bucket are
+ * candidates, which finds pairs at 0.9 similarity almost surely and pairs at 0.5 rarely.
+ */
+final class MinHash {
+
+    static final int SHINGLE_WORDS = 5;
+    static final int BANDS = 16;
+    static final int ROWS = 8;
+    static final int SIZE = BANDS * ROWS;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private MinHash() {}
+
+    /** Accumulates the shingles of text written in one or more pieces. */
+    static final class Builder {
+        private final int[] mins = new int[SIZE];
+        private final long[] window = new long[SHINGLE_WORDS];
+        private long shingles;
+
+        Builder() {
+            Arrays.fill(mins, Integer.MAX_VALUE);
+        }
+
+        /** Adds the shingles of {@code text}; windows do not span separate calls. */
+        Builder add(CharSequence text) {
+            int words = 0;
+            long word = FNV_OFFSET;
+            boolean inWord = false;
+            for (int i = 0, n = text.length(); i <= n; i++) {
+                char c = i < n ? text.charAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+                    inWord = true;
+                } else if (inWord) {
+                    window[words++ % SHINGLE_WORDS] = word;
+                    if (words >= SHINGLE_WORDS) addShingle(words);
+                    word = FNV_OFFSET;
+                    inWord = false;
+                }
+            }
+            return this;
+        }
+
+        private void addShingle(int words) {
+            long h = 0;
+            for (int k = 0; k < SHINGLE_WORDS; k++) {
+                h = h * 31 + window[(words + k) % SHINGLE_WORDS];
+            }
+            // SIZE hash functions from two (Kirsch-Mitzenmacher): h1 + i * h2
+            long h1 = mix(h);
+            long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+            for (int i = 0; i < SIZE; i++) {
+                int v = (int) ((h1 + i * h2) >>> 32);
+                if (v < mins[i]) mins[i] = v;
+            }
+            shingles++;
+        }
+
+        long shingles() {
+            return shingles;
+        }
+
+        int[] signature() {
+            return mins.clone();
+        }
+    }
+
+    static int[] signature(CharSequence text) {
+        return new Builder().add(text).signature();
+    }
+
+    /** Estimated Jaccard similarity of the documents behind two signatures. */
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (a[i] == b[i]) equal++;
+        }
+        return (double) equal / SIZE;
+    }
+
+    /** One LSH bucket per band; the band number is mixed in so buckets of all bands share a key space. */
+    static Long[] buckets(int[] signature) {
+        Long[] buckets = new Long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long h = band;
+            for (int r = 0; r < ROWS; r++) {
+                h = h * 0x100000001b3L + signature[band * ROWS + r];
+            }
+            buckets[band] = mix(h);
+        }
+        return buckets;
+    }
+
+    static byte[] toBytes(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE * 4);
+        buffer.asIntBuffer().put(signature);
+        return buffer.array();
+    }
+
+    static int[] fromBytes(byte[] bytes) {
+        int[] signature = new int[SIZE];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(signature);
+        return signature;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,168 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Postgres-backed LSH index of {@link MinHash} signatures. Every indexed document (one with
+ * chunks) has its signature in {@code document_minhash} and one row per band in
+ * {@code document_lsh_bucket}; a new document's candidates are the documents of the same
+ * source sharing a bucket, and the most similar one at or above
+ * {@code cortex.ingestion.near-duplicate-threshold} is its twin.
+ *
+ * <p>A linked near-duplicate keeps its row and stored text ({@link DocumentContentStore}) but has no chunks and no
+ * signature, so it never becomes another document's twin. When its twin is deleted or
+ * changes, it is released ({@code near_duplicate_of} cleared, similarity kept) and the
+ * ingestion service indexes it again.
+ */
+@Service
+public class NearDuplicateIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(NearDuplicateIndex.class);
+
+    // Fewer shingles than this make the similarity estimate meaningless; exact dedupe still applies
+    private static final int MIN_SHINGLES = 20;
+    private static final int MAX_CANDIDATES = 20;
+
+    public record Twin(Long documentId, String title, double similarity) {}
+
+    private final CortexProperties properties;
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    public NearDuplicateIndex(CortexProperties properties, NamedParameterJdbcTemplate namedJdbc) {
+        this.properties = properties;
+        this.namedJdbc = namedJdbc;
+    }
+
+    public CortexProperties.Ingestion.NearDuplicateMode mode() {
+        return properties.getIngestion().getNearDuplicates();
+    }
+
+    boolean enabled() {
+        return mode() != CortexProperties.Ingestion.NearDuplicateMode.OFF;
+    }
+
+    /** Signature of {@code text}, or {@code null} if detection is off or the text is too short. */
+    int[] signature(CharSequence text) {
+        if (!enabled()) return null;
+        return signature(new MinHash.Builder().add(text));
+    }
+
+    int[] signature(MinHash.Builder builder) {
+        if (!enabled()) return null;
+        return builder.shingles() < MIN_SHINGLES ? null : builder.signature();
+    }
+
+    /** The indexed document of {@code sourceId} most similar to {@code signature}, other than {@code self}. */
+    Optional<Twin> findTwin(Long sourceId, int[] signature, Long self) {
+        if (signature == null) return Optional.empty();
+        var params = new MapSqlParameterSource()
+            .addValue("sourceId", sourceId)
+            .addValue("self", self == null ? -1L : self)
+            .addValue("buckets", MinHash.buckets(signature))
+            .addValue("limit", MAX_CANDIDATES);
+        List<Map<String, Object>> candidates = namedJdbc.queryForList("""
+            SELECT d.id, d.title, m.signature
+            FROM (
+                SELECT document_id, COUNT(*) AS hits
+                FROM document_lsh_bucket
+                WHERE bucket = ANY(:buckets) AND document_id <> :self
+                GROUP BY document_id
+                ORDER BY hits DESC
+                LIMIT :limit
+            ) c
+            JOIN document d ON d.id = c.document_id AND d.source_id = :sourceId AND d.deleted_at IS NULL
+            JOIN document_minhash m ON m.document_id = c.document_id
+            """, params);
+        Twin best = null;
+        for (Map<String, Object> row : candidates) {
+            double similarity = MinHash.similarity(signature, MinHash.fromBytes((byte[]) row.get("signature")));
+            if (similarity >= properties.getIngestion().getNearDuplicateThreshold()
+                && (best == null || similarity > best.similarity())) {
+                best = new Twin(((Number) row.get("id")).longValue(), (String) row.get("title"), similarity);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * Records {@code documentId} as indexed with {@code signature} (or without one when it is
+     * {@code null}) and not linked to a twin.
+     *
+     * @return number of near-duplicates released because this document's content changed
+     */
+    int indexed(Long documentId, int[] signature) {
+        var params = new MapSqlParameterSource("id", documentId);
+        namedJdbc.update("""
+            UPDATE document SET near_duplicate_of = NULL, near_duplicate_similarity = NULL
+            WHERE id = :id AND near_duplicate_similarity IS NOT NULL
+            """, params);
+        namedJdbc.update("DELETE FROM document_lsh_bucket WHERE document_id = :id", params);
+        if (signature == null) {
+            namedJdbc.update("DELETE FROM document_minhash WHERE document_id = :id", params);
+        } else {
+            params.addValue("signature", MinHash.toBytes(signature)).addValue("buckets", MinHash.buckets(signature));
+            namedJdbc.update("""
+                INSERT INTO document_minhash(document_id, signature) VALUES (:id, :signature)
+                ON CONFLICT (document_id) DO UPDATE SET signature = EXCLUDED.signature
+                """, params);
+            namedJdbc.update("""
+                INSERT INTO document_lsh_bucket(bucket, document_id)
+                SELECT DISTINCT b, :id FROM unnest(CAST(:buckets AS BIGINT[])) AS b
+                """, params);
+        }
+        return release(documentId);
+    }
+
+    /**
+     * Links {@code documentId} to {@code twin}; the caller has removed its chunks.
+     *
+     * @return number of near-duplicates of {@code documentId} released
+     */
+    int link(Long documentId, Twin twin) {
+        var params = new MapSqlParameterSource("id", documentId)
+            .addValue("twin", twin.documentId())
+            .addValue("similarity", twin.similarity());
+        namedJdbc.update("""
+            UPDATE document SET near_duplicate_of = :twin, near_duplicate_similarity = :similarity
+            WHERE id = :id
+            """, params);
+        namedJdbc.update("DELETE FROM document_lsh_bucket WHERE document_id = :id", params);
+        namedJdbc.update("DELETE FROM document_minhash WHERE document_id = :id", params);
+        log.info("Document {} is a near-duplicate of document {} ({}, similarity {})",
+            documentId, twin.documentId(), twin.title(), String.format("%.2f", twin.similarity()));
+        return release(documentId);
+    }
+
+    /** Releases the near-duplicates of deleted documents, which still exist as tombstones. */
+    int releaseTombstoned() {
+        return namedJdbc.update("""
+            UPDATE document d SET near_duplicate_of = NULL
+            FROM document t
+            WHERE d.near_duplicate_of = t.id AND t.deleted_at IS NOT NULL
+            """, Map.of());
+    }
+
+    /** Near-duplicates whose twin was deleted or changed; they need indexing again. */
+    List<Long> released(int limit) {
+        return namedJdbc.queryForList("""
+            SELECT id FROM document
+            WHERE near_duplicate_similarity IS NOT NULL AND near_duplicate_of IS NULL AND deleted_at IS NULL
+            ORDER BY id
+            LIMIT :limit
+            """, Map.of("limit", limit), Long.class);
+    }
+
+    private int release(Long documentId) {
+        return namedJdbc.update("UPDATE document SET near_duplicate_of = NULL WHERE near_duplicate_of = :id",
+            Map.of("id", documentId));
+    }
+}
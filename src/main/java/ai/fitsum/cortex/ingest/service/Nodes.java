@@ -0,0 +1,25 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Identity of this instance among the nodes sharing the database.
+ */
+public final class Nodes {
+
+    private Nodes() {}
+
+    public static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+    /** Host name and process id: unique per running instance. */
+    public static String localNodeId() {
+        return localHost() + "-" + ProcessHandle.current().pid();
+    }
+}
@@ -0,0 +1,106 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.OcrProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Postgres-backed cache of OCR output keyed by the hash of the image that was fed to
+ * Tesseract plus language and DPI. Entries are evicted least-recently-used first once the
+ * cached text exceeds {@code cortex.ocr.cache-max-size}.
+ */
+@Service
+public class OcrCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OcrCache.class);
+
+    private final OcrProperties props;
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    public OcrCache(OcrProperties props, NamedParameterJdbcTemplate namedJdbc) {
+        this.props = props;
+        this.namedJdbc = namedJdbc;
+    }
+
+    public boolean isEnabled() { return props.isCacheEnabled(); }
+
+    public Optional<String> get(String imageHash, int dpi) {
+        if (!props.isCacheEnabled()) return Optional.empty();
+        var params = key(imageHash, dpi);
+        List<String> rows = namedJdbc.queryForList(
+            "UPDATE ocr_cache SET hit_count = hit_count + 1, last_used_at = NOW() " +
+                "WHERE image_hash = :h AND lang = :l AND dpi = :d RETURNING text",
+            params, String.class);
+        return rows.stream().findFirst();
+    }
+
+    public void put(String imageHash, int dpi, String text) {
+        if (!props.isCacheEnabled() || text == null) return;
+        var params = key(imageHash, dpi);
+        params.put("t", text);
+        params.put("b", text.getBytes(StandardCharsets.UTF_8).length);
+        namedJdbc.update(
+            "INSERT INTO ocr_cache(image_hash, lang, dpi, text, text_bytes) VALUES(:h, :l, :d, :t, :b) " +
+                "ON CONFLICT (image_hash, lang, dpi) DO NOTHING",
+            params);
+    }
+
+    @Scheduled(fixedDelayString = "${cortex.ocr.cache-eviction-interval:PT10M}")
+    public void evict() {
+        if (!props.isCacheEnabled()) return;
+        var params = new HashMap<String, Object>();
+        params.put("max", props.getCacheMaxSize().toBytes());
+        int evicted = namedJdbc.update("""
+            DELETE FROM ocr_cache c
+            USING (
+                SELECT image_hash, lang, dpi,
+                       SUM(text_bytes) OVER (ORDER BY last_used_at DESC, image_hash, lang, dpi) AS running
+                FROM ocr_cache
+            ) r
+            WHERE c.image_hash = r.image_hash AND c.lang = r.lang AND c.dpi = r.dpi
+              AND r.running > :max
+            """, params);
+        if (evicted > 0) {
+            log.info("Evicted {} OCR cache entries to stay under {}", evicted, props.getCacheMaxSize());
+        }
+    }
+
+    /** Hash of a rendered page: dimensions plus the raw grayscale raster. */
+    static String hashImage(BufferedImage image) {
+        MessageDigest md = Hashes.sha256();
+        md.update(ByteBuffer.allocate(8).putInt(image.getWidth()).putInt(image.getHeight()).array());
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY && image.getRaster().getDataBuffer() instanceof DataBufferByte buf) {
+            md.update(buf.getData());
+        } else {
+            int[] row = new int[image.getWidth()];
+            ByteBuffer bytes = ByteBuffer.allocate(row.length * 4);
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.getRGB(0, y, row.length, 1, row, 0, row.length);
+                bytes.clear();
+                bytes.asIntBuffer().put(row);
+                md.update(bytes.array());
+            }
+        }
+        return Hashes.hex(md.digest());
+    }
+
+    private HashMap<String, Object> key(String imageHash, int dpi) {
+        var params = new HashMap<String, Object>();
+        params.put("h", imageHash);
+        params.put("l", props.getLang());
+        params.put("d", dpi);
+        return params;
+    }
+}
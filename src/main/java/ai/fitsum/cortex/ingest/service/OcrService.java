@@ -1,6 +1,7 @@
 package ai.fitsum.cortex.ingest.service;
 
 import ai.fitsum.cortex.api.config.OcrProperties;
+import jakarta.annotation.PreDestroy;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -15,20 +16,59 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
+/**
+ * Tesseract OCR for images and scanned PDFs. Tesseract instances are not thread-safe, so a
+ * fixed pool of them is shared by a worker executor of the same size. PDF pages are rendered
+ * sequentially on the calling thread (PDFBox documents are single-threaded) and handed to
+ * the workers, with at most one rendered page waiting beyond those being recognized, so
+ * rendering of the next page overlaps OCR without buffering the whole document as images.
+ * <p>
+ * {@code cortex.ocr.page-timeout} bounds each page from the moment a worker starts on it.
+ * Tesseract cannot be interrupted, so an engine that overruns stays busy; once no engine
+ * frees up within a page timeout, the pages still waiting for one are given up together
+ * instead of each waiting out its own timeout.
+ */
 @Service
 public class OcrService {
 
     private static final Logger log = LoggerFactory.getLogger(OcrService.class);
 
     private final OcrProperties props;
-    private final Tesseract tesseract;
+    private final OcrCache cache;
+    private final int poolSize;
+    private final BlockingQueue<Tesseract> engines;
+    private final ExecutorService workers;
 
-    public OcrService(OcrProperties props) {
+    public OcrService(OcrProperties props, OcrCache cache) {
+        this(props, cache, () -> {
+            Tesseract tesseract = new Tesseract();
+            tesseract.setLanguage(props.getLang());
+            // Let Tess4J use default data path; users can set TESSDATA_PREFIX env var if needed
+            return tesseract;
+        });
+    }
+
+    OcrService(OcrProperties props, OcrCache cache, Supplier<Tesseract> engineFactory) {
         this.props = props;
-        this.tesseract = new Tesseract();
-        this.tesseract.setLanguage(props.getLang());
-        // Let Tess4J use default data path; users can set TESSDATA_PREFIX env var if needed
+        this.cache = cache;
+        this.poolSize = Math.max(1, props.getWorkers());
+        this.engines = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            engines.add(engineFactory.get());
+        }
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "ocr-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     public boolean isEnabled() { return props.isEnabled(); }
@@ -39,31 +79,30 @@ public class OcrService {
         if (img == null) return null;
         img = clampSize(img, props.getMaxImageWidth(), props.getMaxImageHeight());
         try {
-            String txt = tesseract.doOCR(img);
+            // Keyed by the clamped image, like PDF pages, so a different size limit is a different entry
+            String txt = recognizeCached(img, OcrCache.hashImage(img), 0);
             return normalize(txt);
         } catch (TesseractException e) {
             log.warn("Tesseract OCR failed", e);
             return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an OCR engine", e);
         }
     }
 
     public String ocrPdf(byte[] pdfBytes) throws IOException {
         if (!props.isEnabled()) return null;
         try (PDDocument doc = PDDocument.load(pdfBytes)) {
-            PDFRenderer renderer = new PDFRenderer(doc);
-            StringBuilder sb = new StringBuilder();
             int pages = Math.min(doc.getNumberOfPages(), props.getMaxPages());
-            for (int i = 0; i < pages; i++) {
-                BufferedImage page = renderer.renderImageWithDPI(i, 200, ImageType.GRAY);
-                page = clampSize(page, props.getMaxImageWidth(), props.getMaxImageHeight());
-                try {
-                    String txt = tesseract.doOCR(page);
-                    if (txt != null && !txt.isBlank()) {
-                        if (sb.length() > 0) sb.append("\n\n");
-                        sb.append(txt.trim());
-                    }
-                } catch (TesseractException e) {
-                    log.warn("Tesseract OCR failed on page {}", i, e);
+            List<Integer> pageIndexes = new ArrayList<>(pages);
+            for (int i = 0; i < pages; i++) pageIndexes.add(i);
+
+            StringBuilder sb = new StringBuilder();
+            for (String txt : ocrPages(doc, pageIndexes)) {
+                if (txt != null && !txt.isBlank()) {
+                    if (sb.length() > 0) sb.append("\n\n");
+                    sb.append(txt.trim());
                 }
             }
             String out = normalize(sb.toString());
@@ -71,6 +110,148 @@ public class OcrService {
         }
     }
 
+    /**
+     * OCRs selected pages of an open PDF (0-based indexes) and returns their normalized text
+     * in the same order, or {@code null} when OCR is disabled.
+     */
+    public List<String> ocrPdfPages(PDDocument doc, List<Integer> pageIndexes) throws IOException {
+        if (!props.isEnabled()) return null;
+        List<String> texts = ocrPages(doc, pageIndexes);
+        texts.replaceAll(OcrService::normalize);
+        return texts;
+    }
+
+    /**
+     * OCRs the given pages of an open document in parallel and returns their raw text in the
+     * same order; pages that fail, exceed {@code cortex.ocr.page-timeout} or never get an
+     * engine yield {@code null}.
+     */
+    List<String> ocrPages(PDDocument doc, List<Integer> pageIndexes) throws IOException {
+        PDFRenderer renderer = new PDFRenderer(doc);
+        long timeoutMs = props.getPageTimeout().toMillis();
+        // Pages rendered but not yet recognized: one per worker plus the next in line
+        Semaphore inFlight = new Semaphore(poolSize + 1);
+        List<PageTask> tasks = new ArrayList<>(pageIndexes.size());
+        boolean stalled = false;
+        try {
+            for (int pageIndex : pageIndexes) {
+                if (!inFlight.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    stalled = true;
+                    log.warn("No OCR engine finished a page within {} ms; skipping the remaining {} page(s)",
+                        timeoutMs, pageIndexes.size() - tasks.size());
+                    break;
+                }
+                BufferedImage page;
+                try {
+                    page = renderer.renderImageWithDPI(pageIndex, props.getDpi(), ImageType.GRAY);
+                    page = clampSize(page, props.getMaxImageWidth(), props.getMaxImageHeight());
+                } catch (IOException | RuntimeException e) {
+                    inFlight.release();
+                    log.warn("Failed to render page {} for OCR", pageIndex, e);
+                    tasks.add(new PageTask(CompletableFuture.completedFuture(null), new AtomicLong(System.nanoTime())));
+                    continue;
+                }
+                BufferedImage image = page;
+                AtomicLong started = new AtomicLong();
+                tasks.add(new PageTask(workers.submit(() -> {
+                    try {
+                        started.set(System.nanoTime());
+                        return recognizeCached(image, OcrCache.hashImage(image), props.getDpi());
+                    } finally {
+                        inFlight.release();
+                    }
+                }), started));
+            }
+        } catch (InterruptedException e) {
+            tasks.forEach(t -> t.future().cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering pages for OCR", e);
+        }
+
+        List<String> texts = new ArrayList<>(pageIndexes.size());
+        for (int i = 0; i < pageIndexes.size(); i++) {
+            PageTask task = i < tasks.size() ? tasks.get(i) : null;
+            if (task == null) {
+                texts.add(null);
+            } else if (stalled && task.started().get() == 0) {
+                task.future().cancel(true);
+                texts.add(null);
+            } else {
+                texts.add(await(task, pageIndexes.get(i), timeoutMs));
+                // Waited a whole timeout without an engine freeing up: the rest would wait too
+                stalled |= task.started().get() == 0;
+            }
+        }
+        return texts;
+    }
+
+    private record PageTask(Future<String> future, AtomicLong started) {}
+
+    /** Waits for a page until {@code timeoutMs} after a worker started it, or that long for one to start it. */
+    private String await(PageTask task, int pageIndex, long timeoutMs) throws IOException {
+        try {
+            while (true) {
+                long started = task.started().get();
+                long waitMs = started == 0
+                    ? timeoutMs
+                    : timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                try {
+                    return task.future().get(Math.max(0, waitMs), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (started == 0 && task.started().get() != 0) continue; // started meanwhile: give it its full timeout
+                    // Tesseract runs natively and cannot be interrupted; the engine returns to the pool when it finishes
+                    task.future().cancel(true);
+                    if (task.started().get() == 0) {
+                        log.warn("No OCR engine became free for page {} within {} ms", pageIndex, timeoutMs);
+                    } else {
+                        log.warn("Tesseract OCR timed out on page {} after {} ms", pageIndex, timeoutMs);
+                    }
+                    return null;
+                }
+            }
+        } catch (ExecutionException e) {
+            log.warn("Tesseract OCR failed on page {}", pageIndex, e.getCause());
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for OCR results", e);
+        }
+    }
+
+    private String recognizeCached(BufferedImage image, String imageHash, int dpi) throws TesseractException, InterruptedException {
+        if (!cache.isEnabled()) return recognize(image);
+        try {
+            var cached = cache.get(imageHash, dpi);
+            if (cached.isPresent()) return cached.get();
+        } catch (RuntimeException e) {
+            log.warn("OCR cache lookup failed; recognizing without cache", e);
+        }
+        String text = recognize(image);
+        if (text == null) return null; // not a result; the next attempt may succeed
+        try {
+            cache.put(imageHash, dpi, text);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store OCR result in cache", e);
+        }
+        return text;
+    }
+
+    private String recognize(BufferedImage image) throws TesseractException, InterruptedException {
+        Tesseract tesseract = engines.take();
+        try {
+            return tesseract.doOCR(image);
+        } finally {
+            engines.add(tesseract);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
     private static BufferedImage clampSize(BufferedImage src, int maxW, int maxH) {
         int w = src.getWidth(), h = src.getHeight();
         if (w <= maxW && h <= maxH) return src;
@@ -90,5 +271,3 @@ public class OcrService {
         return s.replaceAll("\r", "").replaceAll("\s+", " ").trim();
     }
 }
-
-
@@ -0,0 +1,120 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.OcrProperties;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Page-level PDF text extraction. Each page's text layer is read with PDFBox; pages whose
+ * text layer is (nearly) empty but that carry images are treated as scanned and sent to
+ * {@link OcrService}, so mixed digital/scanned PDFs keep every page. Pages are processed
+ * in small windows (OCR'd in parallel) and emitted in page order.
+ */
+@Service
+public class PdfPageExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfPageExtractor.class);
+    private static final int WINDOW = 16;
+
+    private final OcrService ocrService;
+    private final OcrProperties ocrProperties;
+
+    public PdfPageExtractor(OcrService ocrService, OcrProperties ocrProperties) {
+        this.ocrService = ocrService;
+        this.ocrProperties = ocrProperties;
+    }
+
+    public PdfExtraction extract(PDDocument doc, Consumer<PageText> sink) throws IOException {
+        int pageCount = doc.getNumberOfPages();
+        int ocrBudget = ocrService.isEnabled() ? ocrProperties.getMaxPages() : 0;
+        int ocrPages = 0;
+        PDFTextStripper stripper = new PDFTextStripper();
+
+        for (int windowStart = 0; windowStart < pageCount; windowStart += WINDOW) {
+            int windowEnd = Math.min(pageCount, windowStart + WINDOW);
+            String[] texts = new String[windowEnd - windowStart];
+            boolean[] recognizedByOcr = new boolean[texts.length];
+            List<Integer> scanned = new ArrayList<>();
+
+            for (int i = windowStart; i < windowEnd; i++) {
+                stripper.setStartPage(i + 1);
+                stripper.setEndPage(i + 1);
+                String text = stripper.getText(doc);
+                texts[i - windowStart] = text;
+                if (ocrBudget > 0 && nonWhitespaceLength(text) < ocrProperties.getMinPageChars() && hasImages(doc.getPage(i))) {
+                    scanned.add(i);
+                    ocrBudget--;
+                }
+            }
+
+            if (!scanned.isEmpty()) {
+                List<String> recognized = ocrService.ocrPdfPages(doc, scanned);
+                for (int k = 0; recognized != null && k < scanned.size(); k++) {
+                    String ocrText = recognized.get(k);
+                    if (ocrText != null && !ocrText.isBlank()) {
+                        texts[scanned.get(k) - windowStart] = ocrText;
+                        recognizedByOcr[scanned.get(k) - windowStart] = true;
+                        ocrPages++;
+                    }
+                }
+            }
+
+            for (int i = windowStart; i < windowEnd; i++) {
+                sink.accept(new PageText(i + 1, texts[i - windowStart], recognizedByOcr[i - windowStart]));
+            }
+        }
+
+        if (ocrPages > 0) {
+            log.debug("OCR'd {} of {} PDF pages", ocrPages, pageCount);
+        }
+        return new PdfExtraction(pageCount, ocrPages);
+    }
+
+    private static boolean hasImages(PDPage page) {
+        try {
+            return hasImages(page.getResources(), 2);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasImages(PDResources resources, int depth) throws IOException {
+        if (resources == null) return false;
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject xobject = resources.getXObject(name);
+            if (xobject instanceof PDImageXObject) return true;
+            if (depth > 0 && xobject instanceof PDFormXObject form && hasImages(form.getResources(), depth - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int nonWhitespaceLength(String text) {
+        if (text == null) return 0;
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) n++;
+        }
+        return n;
+    }
+
+    /** Text of one page; {@code pageNumber} is 1-based. */
+    public record PageText(int pageNumber, String text, boolean ocr) {}
+
+    public record PdfExtraction(int pageCount, int ocrPages) {}
+}
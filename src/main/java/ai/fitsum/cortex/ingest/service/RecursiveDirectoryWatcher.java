@@ -0,0 +1,224 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Watches a directory tree with {@link WatchService} (inotify on Linux) on a single daemon
+ * thread. Directories are registered recursively, including ones created later; file
+ * changes are debounced so a file being written is reported once it has been quiet for the
+ * debounce period. When the OS drops events ({@code OVERFLOW}) the listener is told to fall
+ * back to a full scan. The thread blocks while nothing is pending, so an idle tree costs no CPU.
+ */
+final class RecursiveDirectoryWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RecursiveDirectoryWatcher.class);
+
+    interface Listener {
+        /** A regular file was created or modified and has settled. */
+        void changed(Path file);
+
+        /** A file or directory was deleted (or moved away). */
+        void deleted(Path path);
+
+        /** Events were lost; the tree must be rescanned to catch up. */
+        void overflow();
+    }
+
+    private final Path root;
+    private final boolean recursive;
+    private final long debounceMillis;
+    private final Predicate<Path> directoryFilter;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    // Debounce queue, only touched by the watcher thread: file -> time of its last event
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private volatile int pendingCount;
+    private volatile boolean running;
+    private Thread thread;
+
+    RecursiveDirectoryWatcher(Path root, boolean recursive, Duration debounce,
+                              Predicate<Path> directoryFilter, Listener listener) throws IOException {
+        this.root = root;
+        this.recursive = recursive;
+        this.debounceMillis = Math.max(0, debounce.toMillis());
+        this.directoryFilter = directoryFilter;
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    /**
+     * Registers the tree and starts the watcher thread.
+     */
+    synchronized void start() throws IOException {
+        if (running) return;
+        register(root, false);
+        running = true;
+        thread = new Thread(this::run, "folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} ({} directories)", root, keys.size());
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    int watchedDirectories() {
+        return keys.size();
+    }
+
+    int pendingFiles() {
+        return pendingCount;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Failed to close watch service", e);
+        }
+        if (thread != null) thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(Math.max(1, nextDue() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+                while (key != null) {
+                    process(key);
+                    key = watchService.poll();
+                }
+                flushSettled();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        } catch (RuntimeException e) {
+            log.error("Folder watcher stopped unexpectedly; relying on reconciliation scans", e);
+        } finally {
+            running = false;
+        }
+    }
+
+    private void process(WatchKey key) {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("Watch events overflowed under {}; requesting a full scan", dir != null ? dir : root);
+                notify(listener::overflow, root);
+                continue;
+            }
+            if (dir == null) continue;
+            Path child = dir.resolve((Path) event.context());
+            long now = System.currentTimeMillis();
+            if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.remove(child);
+                notify(() -> listener.deleted(child), child);
+            } else if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE && recursive) {
+                    try {
+                        register(child, true);
+                    } catch (IOException e) {
+                        log.warn("Failed to watch new directory {}", child, e);
+                    }
+                }
+            } else {
+                pending.remove(child); // re-insert to keep the queue ordered by last event
+                pending.put(child, now);
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        pendingCount = pending.size();
+    }
+
+    /**
+     * Registers {@code start} (and, when recursive, its subdirectories). Files found in newly
+     * created directories are queued too: they may have been written before the key existed.
+     */
+    private void register(Path start, boolean queueFiles) throws IOException {
+        long now = System.currentTimeMillis();
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && (!recursive || !directoryFilter.test(dir))) return FileVisitResult.SKIP_SUBTREE;
+                keys.put(dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (queueFiles && attrs.isRegularFile()) pending.put(file, now);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.debug("Cannot watch {}", file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private long nextDue() {
+        return pending.values().iterator().next() + debounceMillis;
+    }
+
+    private void flushSettled() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            // Entries are ordered by last event, so the first unsettled one ends the flush
+            if (now - e.getValue() < debounceMillis) break;
+            it.remove();
+            Path file = e.getKey();
+            if (Files.isRegularFile(file)) {
+                notify(() -> listener.changed(file), file);
+            }
+        }
+        pendingCount = pending.size();
+    }
+
+    private static void notify(Runnable callback, Path path) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            log.warn("Folder watcher callback failed for {}", path, e);
+        }
+    }
+}
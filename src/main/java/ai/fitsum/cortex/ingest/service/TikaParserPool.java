@@ -0,0 +1,454 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.ParserProperties;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Tika parses, and other text extractions such as PDFBox's, under limits, so a hostile
+ * file costs one parse slot for a bounded time instead of a CPU for minutes or the heap. At
+ * most {@code cortex.parser.workers} documents are extracted at once; an extraction that
+ * exceeds {@code timeout} fails, and text beyond {@code max-text-length} characters is cut off
+ * (the document keeps what was extracted and is marked as truncated).
+ *
+ * <p>Every extraction runs on a pool thread while its caller waits for the text, which is
+ * handed over piece by piece so the caller's writer (it may take part in the caller's
+ * transaction) is only used on the calling thread. At the timeout the caller gives up: the pool
+ * thread is interrupted and fails at its next read or piece of output, and if it is still busy
+ * it is abandoned and its slot goes to a fresh thread. At most {@code workers} abandoned threads
+ * are tolerated; beyond that a slot stays taken until its thread stops, so a handful of
+ * pathological files slow parsing down instead of stopping it. With {@code fork: true} Tika
+ * parsing runs in child JVMs (Tika's {@link ForkParser}) with their own {@code fork-heap}: a
+ * child that runs out of memory or over the timeout is killed and replaced, and every child is
+ * replaced after {@code fork-max-documents} parses.
+ */
+@Service
+public class TikaParserPool {
+
+    private static final Logger log = LoggerFactory.getLogger(TikaParserPool.class);
+
+    // Pieces of text extracted but not yet taken by the caller
+    private static final int HANDOFF_CAPACITY = 64;
+    private static final int PIECE_LENGTH = 8192;
+
+    /**
+     * @param truncated whether the text was cut off at {@code cortex.parser.max-text-length}
+     */
+    public record Parsed(String text, boolean truncated) {}
+
+    /**
+     * @param value     what the extractor returned, or {@code null} if the text was truncated
+     * @param truncated whether the text was cut off at {@code cortex.parser.max-text-length}
+     */
+    public record Extracted<T>(T value, boolean truncated) {}
+
+    /** Receives extracted text. */
+    public interface TextSink {
+        void write(String text) throws IOException;
+
+        /** The text that follows is on page {@code pageNumber} (1-based). */
+        default void startPage(int pageNumber) throws IOException {}
+    }
+
+    /** Extracts a document's text into {@code out}; runs on a pool thread. */
+    @FunctionalInterface
+    public interface Extractor<T> {
+        T extract(TextSink out) throws Exception;
+    }
+
+    private final Parser parser;
+    private final ForkParser forkParser;
+    private final Semaphore slots;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService watchdog;
+    private final Duration timeout;
+    private final int maxTextLength;
+    private final int maxAbandoned;
+    private final AtomicInteger abandoned = new AtomicInteger();
+
+    public TikaParserPool(ParserProperties properties) {
+        this(properties, new AutoDetectParser());
+    }
+
+    /**
+     * @param inProcessParser parser used unless {@code fork} is set
+     */
+    TikaParserPool(ParserProperties properties, Parser inProcessParser) {
+        int workerCount = Math.max(1, properties.getWorkers());
+        this.timeout = properties.getTimeout();
+        this.maxTextLength = properties.getMaxTextLength() > 0 ? properties.getMaxTextLength() : -1;
+        this.maxAbandoned = workerCount;
+        this.slots = new Semaphore(workerCount, true);
+        if (properties.isFork()) {
+            forkParser = new ForkParser(TikaParserPool.class.getClassLoader(), new AutoDetectParser());
+            forkParser.setPoolSize(workerCount);
+            forkParser.setJavaCommand(List.of(
+                javaCommand(properties),
+                "-Xmx" + properties.getForkHeap().toMegabytes() + "m",
+                "-XX:+ExitOnOutOfMemoryError"));
+            forkParser.setServerParseTimeoutMillis(timeout.toMillis());
+            forkParser.setMaxFilesProcessedPerServer(Math.max(1, properties.getForkMaxDocuments()));
+            parser = forkParser;
+            log.info("Parsing in up to {} forked JVMs ({} heap, recycled every {} documents)",
+                workerCount, properties.getForkHeap(), properties.getForkMaxDocuments());
+        } else {
+            forkParser = null;
+            parser = inProcessParser;
+        }
+        // Slots bound the threads in use; abandoned ones are replaced rather than waited for
+        AtomicInteger threadIds = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "tika-parse-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tika-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+        if (forkParser != null) forkParser.close();
+    }
+
+    /**
+     * Parses {@code in} into memory, returning or failing within the timeout. The stream is
+     * not closed.
+     */
+    public Parsed parseToString(InputStream in, Metadata metadata) throws IOException, TikaException, SAXException {
+        StringBuilder text = new StringBuilder();
+        Extracted<Void> parsed = run(name(metadata), handoff -> parseWithin(in, handoff, metadata), text::append);
+        return new Parsed(text.toString(), parsed.truncated());
+    }
+
+    /**
+     * Parses {@code in}, writing the text to {@code out} on the calling thread as it is
+     * extracted, and returning or failing within the timeout. The stream is not closed.
+     *
+     * @return whether the text was cut off at {@code max-text-length}
+     */
+    public boolean parse(InputStream in, Writer out, Metadata metadata) throws IOException, TikaException, SAXException {
+        return run(name(metadata), handoff -> parseWithin(in, handoff, metadata), out::write).truncated();
+    }
+
+    /**
+     * Runs {@code extractor} under the same slot, timeout and output limits as a Tika parse,
+     * passing what it writes on to {@code sink} on the calling thread. Text beyond
+     * {@code max-text-length} fails the extractor's write, which ends the extraction.
+     *
+     * @param name what is extracted, for log messages
+     */
+    public <T> Extracted<T> extract(String name, Extractor<T> extractor, TextSink sink)
+            throws IOException, TikaException, SAXException {
+        return run(name, extractor::extract, sink);
+    }
+
+    private <T> Extracted<T> run(String name, Work<T> work, TextSink sink) throws IOException, TikaException, SAXException {
+        acquire();
+        Handoff handoff = new Handoff();
+        Future<T> task;
+        try {
+            task = workers.submit(() -> {
+                ScheduledFuture<?> alarm = watchdog.schedule(handoff::expire, timeout.toMillis(), TimeUnit.MILLISECONDS);
+                try {
+                    return work.run(handoff);
+                } finally {
+                    alarm.cancel(false);
+                    handoff.end();
+                    finished(handoff);
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        try {
+            handoff.drainTo(sink, System.nanoTime() + timeout.toNanos());
+            return new Extracted<>(task.get(), handoff.truncated);
+        } catch (TimeoutException e) {
+            abandon(task, handoff, name);
+            throw timedOut(name);
+        } catch (InterruptedException e) {
+            abandon(task, handoff, name);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            if (handoff.truncated) {
+                log.warn("Text of {} cut off at {} characters", name, maxTextLength);
+                return new Extracted<>(null, true);
+            }
+            if (handoff.expired) throw timedOut(name);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof TikaException tika) throw tika;
+            if (cause instanceof SAXException sax) throw sax;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            throw new TikaException("Parse failed", cause);
+        } catch (IOException | RuntimeException e) {
+            // The sink failed; the extraction has nowhere to go
+            abandon(task, handoff, name);
+            throw e;
+        }
+    }
+
+    private void acquire() throws InterruptedIOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a parser");
+        }
+    }
+
+    /** Stops waiting for {@code task}; its slot is freed now unless too many threads are already abandoned. */
+    private void abandon(Future<?> task, Handoff handoff, String name) {
+        handoff.expire();
+        task.cancel(true);
+        synchronized (handoff) {
+            if (handoff.running && abandoned.get() < maxAbandoned) {
+                handoff.detached = true;
+                int count = abandoned.incrementAndGet();
+                slots.release();
+                log.warn("Abandoned the parse of {} on a busy thread ({} abandoned)", name, count);
+            }
+        }
+    }
+
+    private void finished(Handoff handoff) {
+        synchronized (handoff) {
+            handoff.running = false;
+            if (handoff.detached) {
+                abandoned.decrementAndGet();
+            } else {
+                slots.release();
+            }
+        }
+    }
+
+    private Void parseWithin(InputStream in, Handoff handoff, Metadata metadata)
+            throws IOException, TikaException, SAXException {
+        Writer out = new BufferedWriter(new HandoffWriter(handoff), PIECE_LENGTH);
+        ContentHandler handler = new DeadlineHandler(
+            new BodyContentHandler(new WriteOutContentHandler(out, maxTextLength)), handoff);
+        try {
+            parser.parse(new DeadlineInputStream(in, handoff), handler, metadata, new ParseContext());
+        } catch (IOException | TikaException | SAXException e) {
+            if (handoff.expired) throw e;
+            if (!WriteLimitReachedException.isWriteLimitReached(e)) throw e;
+            log.warn("Text of {} cut off at {} characters", name(metadata), maxTextLength);
+            handoff.truncated = true;
+        }
+        out.flush();
+        return null;
+    }
+
+    private IOException timedOut(String name) {
+        log.warn("Parsing {} did not finish within {}", name, timeout);
+        return new IOException("Parsing did not finish within " + timeout);
+    }
+
+    private static String name(Metadata metadata) {
+        return metadata.get("resourceName");
+    }
+
+    private static String javaCommand(ParserProperties properties) {
+        String command = properties.getForkJavaCommand();
+        if (command != null && !command.isBlank()) return command;
+        return Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(Handoff handoff) throws Exception;
+    }
+
+    /**
+     * Carries text from the pool thread to the caller, bounded in size and by
+     * {@code max-text-length}, and marks the extraction's deadline.
+     */
+    private final class Handoff implements TextSink {
+        private static final Runnable END = () -> {};
+
+        private final BlockingQueue<Object> pieces = new ArrayBlockingQueue<>(HANDOFF_CAPACITY);
+        private long written;
+        volatile boolean expired;
+        volatile boolean truncated;
+        // Guarded by this
+        boolean running = true;
+        boolean detached;
+
+        void expire() {
+            expired = true;
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            if (maxTextLength >= 0 && written + text.length() > maxTextLength) {
+                put(text.substring(0, (int) (maxTextLength - written)));
+                written = maxTextLength;
+                truncated = true;
+                throw new IOException("Text cut off at " + maxTextLength + " characters");
+            }
+            written += text.length();
+            if (!text.isEmpty()) put(text);
+        }
+
+        @Override
+        public void startPage(int pageNumber) throws IOException {
+            put(pageNumber);
+        }
+
+        private void put(Object piece) throws IOException {
+            try {
+                while (!pieces.offer(piece, 100, TimeUnit.MILLISECONDS)) {
+                    if (expired) throw new IOException("Parse deadline passed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Parse interrupted");
+            }
+            if (expired) throw new IOException("Parse deadline passed");
+        }
+
+        /** Tells the caller the extraction is over, unless it has stopped listening. */
+        void end() {
+            try {
+                while (!pieces.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (expired) return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void drainTo(TextSink sink, long deadlineNanos) throws IOException, InterruptedException, TimeoutException {
+            while (true) {
+                Object piece = pieces.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (piece == null) throw new TimeoutException();
+                if (piece == END) return;
+                if (piece instanceof Integer page) {
+                    sink.startPage(page);
+                } else {
+                    sink.write((String) piece);
+                }
+            }
+        }
+    }
+
+    private static final class HandoffWriter extends Writer {
+        private final Handoff handoff;
+
+        HandoffWriter(Handoff handoff) {
+            this.handoff = handoff;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            handoff.write(new String(cbuf, off, len));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Fails the parser's next read once the deadline has passed. */
+    private static final class DeadlineInputStream extends ProxyInputStream {
+        private final Handoff deadline;
+
+        DeadlineInputStream(InputStream in, Handoff deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected void beforeRead(int n) throws IOException {
+            if (deadline.expired) throw new IOException("Parse deadline passed");
+        }
+
+        @Override
+        public void close() {
+            // the caller owns the stream
+        }
+    }
+
+    /** Fails the parser's next output once the deadline has passed. */
+    private static final class DeadlineHandler extends ContentHandlerDecorator {
+        private final Handoff deadline;
+
+        DeadlineHandler(ContentHandler handler, Handoff deadline) {
+            super(handler);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes atts) throws SAXException {
+            check();
+            super.startElement(uri, localName, name, atts);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            check();
+            super.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            check();
+            super.ignorableWhitespace(ch, start, length);
+        }
+
+        private void check() throws SAXException {
+            if (deadline.expired) throw new SAXException("Parse deadline passed");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ai.fitsum.cortex.ingest.service;
+
+/**
+ * Measures text in embedding-model tokens. Ranges are {@code [from, to)} of a caller-owned
+ * {@link CharSequence} so chunkers can measure paragraphs without copying them.
+ */
+public interface TokenCounter {
+
+    /**
+     * Number of tokens in {@code text[from, to)}, excluding special tokens ([CLS]/[SEP]).
+     */
+    int count(CharSequence text, int from, int to);
+
+    /**
+     * Largest end index {@code e} in {@code (from, to]} such that {@code text[from, e)} holds at
+     * most {@code maxTokens} tokens, preferring word boundaries. Always makes progress.
+     */
+    int fit(CharSequence text, int from, int to, int maxTokens);
+
+    default int count(CharSequence text) {
+        return count(text, 0, text.length());
+    }
+
+    /**
+     * A character cut {@code e} in {@code (from, to]} for {@link #fit} implementations, moved
+     * back off the middle of a surrogate pair, or past the pair when it is the first code point.
+     */
+    static int codePointBoundary(CharSequence text, int from, int to, int e) {
+        if (e < to && Character.isLowSurrogate(text.charAt(e)) && Character.isHighSurrogate(text.charAt(e - 1))) {
+            return e - 1 > from ? e - 1 : e + 1;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,71 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+
+/**
+ * Copies incoming upload streams to a staging file while computing the SHA-256 content
+ * hash in the same pass, so uploads never have to be buffered in heap and duplicates
+ * can be detected before any parsing happens.
+ */
+@Service
+public class UploadStager {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadStager.class);
+
+    private final CortexProperties properties;
+
+    public UploadStager(CortexProperties properties) {
+        this.properties = properties;
+    }
+
+    public StagedFile stage(InputStream in, String filename) throws IOException {
+        Path dir = stagingDir();
+        Files.createDirectories(dir);
+        Path target = Files.createTempFile(dir, "upload-", ".part");
+        try (DigestInputStream hashing = new DigestInputStream(in, Hashes.sha256());
+             OutputStream out = Files.newOutputStream(target)) {
+            long size = hashing.transferTo(out);
+            String hash = Hashes.hex(hashing.getMessageDigest().digest());
+            log.debug("Staged upload {} ({} bytes) at {}", filename, size, target);
+            return new StagedFile(target, filename, hash, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+    }
+
+    public void discard(StagedFile staged) {
+        if (staged == null) return;
+        try {
+            Files.deleteIfExists(staged.path());
+        } catch (IOException e) {
+            log.warn("Failed to delete staged upload {}", staged.path(), e);
+        }
+    }
+
+    private Path stagingDir() {
+        String configured = properties.getIngestion().getStagingDir();
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("java.io.tmpdir"), "cortex-uploads");
+    }
+
+    public record StagedFile(
+        Path path,
+        String filename,
+        String contentHash,
+        long sizeBytes
+    ) {}
+}
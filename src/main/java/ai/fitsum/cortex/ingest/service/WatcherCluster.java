@@ -0,0 +1,113 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Membership of the folder watchers sharing one root. Each node heartbeats a row in
+ * {@code watcher_node}; rows older than the node timeout are expired by whichever node
+ * heartbeats next. Files are assigned with rendezvous hashing on their root-relative path,
+ * so every live node owns a disjoint share and a departing node's files spread over the
+ * survivors without moving anyone else's. Timestamps come from the database clock.
+ */
+final class WatcherCluster {
+
+    private static final Logger log = LoggerFactory.getLogger(WatcherCluster.class);
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final String nodeId;
+    private final Duration nodeTimeout;
+    private volatile List<String> members = List.of();
+
+    WatcherCluster(NamedParameterJdbcTemplate jdbc, String nodeId, Duration nodeTimeout) {
+        this.jdbc = jdbc;
+        this.nodeId = nodeId;
+        this.nodeTimeout = nodeTimeout;
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    List<String> members() {
+        return members;
+    }
+
+    /**
+     * Records this node's heartbeat, expires dead nodes and reloads the member list.
+     *
+     * @return whether membership changed since the previous heartbeat
+     */
+    synchronized boolean heartbeat() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", nodeId);
+        params.put("timeout", nodeTimeout.toMillis() / 1000.0);
+        jdbc.update("INSERT INTO watcher_node(node_id) VALUES(:id) ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = NOW()", params);
+        int expired = jdbc.update("DELETE FROM watcher_node WHERE heartbeat_at < NOW() - make_interval(secs => :timeout)", params);
+        if (expired > 0) {
+            log.info("Expired {} watcher node(s) without a heartbeat for {}", expired, nodeTimeout);
+        }
+        List<String> current = List.copyOf(jdbc.queryForList("SELECT node_id FROM watcher_node ORDER BY node_id", Map.of(), String.class));
+        if (!current.contains(nodeId)) return false; // expired by a peer between our statements; next heartbeat re-joins
+        boolean changed = !current.equals(members);
+        members = current;
+        if (changed) {
+            log.info("Watcher cluster membership: {} (this node: {})", current, nodeId);
+        }
+        return changed;
+    }
+
+    /**
+     * Leaves the cluster so peers take over this node's files at their next heartbeat.
+     */
+    synchronized void leave() {
+        members = List.of();
+        try {
+            jdbc.update("DELETE FROM watcher_node WHERE node_id = :id", Map.of("id", nodeId));
+        } catch (RuntimeException e) {
+            log.debug("Failed to remove watcher node {}", nodeId, e);
+        }
+    }
+
+    /**
+     * Whether this node is responsible for the file at {@code relativePath}. Before the first
+     * heartbeat nothing is owned.
+     */
+    boolean owns(String relativePath) {
+        return nodeId.equals(owner(members, relativePath));
+    }
+
+    static String owner(List<String> members, String relativePath) {
+        String best = null;
+        long bestScore = 0;
+        for (String member : members) {
+            long score = score(member, relativePath);
+            if (best == null || Long.compareUnsigned(score, bestScore) > 0) {
+                best = member;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // FNV-1a over "member \0 path", finished with the SplitMix64 mixer
+    private static long score(String member, String path) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < member.length(); i++) {
+            h = (h ^ member.charAt(i)) * 0x100000001b3L;
+        }
+        h *= 0x100000001b3L;
+        for (int i = 0; i < path.length(); i++) {
+            h = (h ^ path.charAt(i)) * 0x100000001b3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,136 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resident copy of {@code watcher_state} for one watched root. Rows are loaded with a single
+ * query, change checks are answered from memory, and updates are written back in batches
+ * (when {@code batchSize} changes have accumulated and on {@link #flush()}), so scanning an
+ * unchanged tree costs no database round trips. State not yet flushed when the process dies
+ * only causes the affected files to be re-checked, which the content-hash match makes cheap.
+ */
+final class WatcherStateStore {
+
+    private static final Logger log = LoggerFactory.getLogger(WatcherStateStore.class);
+
+    record FileState(long lastModified, long size, String contentHash) {}
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final String prefix;
+    private final int batchSize;
+
+    private final Map<String, FileState> states = new HashMap<>();
+    private final Map<String, FileState> dirty = new HashMap<>();
+    private final Set<String> removed = new HashSet<>();
+
+    /**
+     * @param prefix absolute path of the root including the trailing separator; every key
+     *               managed by this store starts with it
+     */
+    WatcherStateStore(NamedParameterJdbcTemplate jdbc, String prefix, int batchSize) {
+        this.jdbc = jdbc;
+        this.prefix = prefix;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    synchronized WatcherStateStore load() {
+        states.clear();
+        jdbc.query("SELECT path, last_modified, size, content_hash FROM watcher_state WHERE starts_with(path, :prefix)",
+            Map.of("prefix", prefix),
+            rs -> {
+                long lastModified = rs.getLong("last_modified");
+                if (rs.wasNull()) lastModified = -1;
+                long size = rs.getLong("size");
+                if (rs.wasNull()) size = -1;
+                states.put(rs.getString("path"), new FileState(lastModified, size, rs.getString("content_hash")));
+            });
+        log.info("Loaded watcher state for {} ({} files)", prefix, states.size());
+        return this;
+    }
+
+    String prefix() {
+        return prefix;
+    }
+
+    synchronized FileState get(String path) {
+        return states.get(path);
+    }
+
+    /** Copy of every tracked path and its state. */
+    synchronized Map<String, FileState> snapshot() {
+        return new HashMap<>(states);
+    }
+
+    synchronized int size() {
+        return states.size();
+    }
+
+    synchronized void put(String path, FileState state) {
+        states.put(path, state);
+        dirty.put(path, state);
+        removed.remove(path);
+        if (dirty.size() + removed.size() >= batchSize) flush();
+    }
+
+    synchronized void remove(String path) {
+        if (states.remove(path) == null) return;
+        dirty.remove(path);
+        removed.add(path);
+        if (dirty.size() + removed.size() >= batchSize) flush();
+    }
+
+    /**
+     * Tracked paths that are not in {@code seen}: candidates for deletion after a full scan.
+     */
+    synchronized List<String> missingFrom(Set<String> seen) {
+        List<String> missing = new ArrayList<>();
+        for (String path : states.keySet()) {
+            if (!seen.contains(path)) missing.add(path);
+        }
+        return missing;
+    }
+
+    /**
+     * {@code path} itself if tracked, otherwise every tracked path below it (a directory).
+     */
+    synchronized List<String> pathsAt(String path, String separator) {
+        if (states.containsKey(path)) return List.of(path);
+        String dir = path.endsWith(separator) ? path : path + separator;
+        List<String> below = new ArrayList<>();
+        for (String p : states.keySet()) {
+            if (p.startsWith(dir)) below.add(p);
+        }
+        return below;
+    }
+
+    synchronized void flush() {
+        if (!dirty.isEmpty()) {
+            List<SqlParameterSource> batch = new ArrayList<>(dirty.size());
+            dirty.forEach((path, st) -> batch.add(new MapSqlParameterSource()
+                .addValue("p", path)
+                .addValue("lm", st.lastModified())
+                .addValue("s", st.size())
+                .addValue("h", st.contentHash())));
+            jdbc.batchUpdate("INSERT INTO watcher_state(path,last_modified,size,content_hash) VALUES(:p,:lm,:s,:h) " +
+                "ON CONFLICT (path) DO UPDATE SET last_modified=:lm, size=:s, content_hash=:h",
+                batch.toArray(SqlParameterSource[]::new));
+            dirty.clear();
+        }
+        if (!removed.isEmpty()) {
+            jdbc.update("DELETE FROM watcher_state WHERE path = ANY(:paths)",
+                Map.of("paths", removed.toArray(String[]::new)));
+            removed.clear();
+        }
+    }
+}
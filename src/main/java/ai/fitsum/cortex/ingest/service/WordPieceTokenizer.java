@@ -0,0 +1,303 @@
+package ai.fitsum.cortex.ingest.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * BERT WordPiece tokenizer (uncased), as used by the BGE embedding models: text is cleaned,
+ * lowercased, stripped of accents and split on whitespace, punctuation and CJK characters,
+ * then every word is split greedily into the longest vocabulary pieces ({@code ##} marks
+ * word continuations). Only token counts are produced; ids are never needed for budgeting.
+ * <p>
+ * The vocabulary is held in a character trie (open-addressed, no per-node objects), so
+ * longest-match lookups walk each word once instead of probing every prefix substring.
+ * Instances are immutable and thread-safe.
+ */
+public final class WordPieceTokenizer implements TokenCounter {
+
+    private static final int MAX_WORD_CHARS = 100; // longer words become a single [UNK]
+    private static final String CONTINUATION = "##";
+
+    private final Trie wordStarts;
+    private final Trie continuations;
+    private final int vocabularySize;
+
+    private WordPieceTokenizer(Trie wordStarts, Trie continuations, int vocabularySize) {
+        this.wordStarts = wordStarts;
+        this.continuations = continuations;
+        this.vocabularySize = vocabularySize;
+    }
+
+    /**
+     * Reads a {@code vocab.txt} (one token per line, as shipped with BERT-family models).
+     */
+    public static WordPieceTokenizer load(InputStream vocab) throws IOException {
+        Trie wordStarts = new Trie();
+        Trie continuations = new Trie();
+        int size = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(vocab, StandardCharsets.UTF_8));
+        String token;
+        while ((token = reader.readLine()) != null) {
+            if (token.isEmpty()) continue;
+            size++;
+            if (token.startsWith(CONTINUATION) && token.length() > CONTINUATION.length()) {
+                continuations.add(token, CONTINUATION.length());
+            } else {
+                wordStarts.add(token, 0);
+            }
+        }
+        if (size == 0) throw new IOException("Empty WordPiece vocabulary");
+        return new WordPieceTokenizer(wordStarts, continuations, size);
+    }
+
+    public int vocabularySize() {
+        return vocabularySize;
+    }
+
+    @Override
+    public int count(CharSequence text, int from, int to) {
+        Scanner scanner = new Scanner(text, from, to);
+        int tokens = 0;
+        while (scanner.next()) {
+            tokens += scanner.pieces;
+        }
+        return tokens;
+    }
+
+    @Override
+    public int fit(CharSequence text, int from, int to, int maxTokens) {
+        Scanner scanner = new Scanner(text, from, to);
+        int tokens = 0;
+        int end = from;
+        while (scanner.next()) {
+            if (tokens + scanner.pieces > maxTokens) break;
+            tokens += scanner.pieces;
+            end = scanner.end;
+        }
+        if (end > from) return end;
+        // The first word alone exceeds the budget: cut it by characters (a piece is at least one char)
+        return TokenCounter.codePointBoundary(text, from, to, Math.min(to, from + Math.max(1, maxTokens)));
+    }
+
+    /**
+     * Walks the basic-tokenizer words of a range and reports the WordPiece count of each.
+     */
+    private final class Scanner {
+        private final CharSequence text;
+        private final int limit;
+        private int pos;
+        private final char[] buffer = new char[MAX_WORD_CHARS + 1];
+        int pieces;
+        int end;
+
+        Scanner(CharSequence text, int from, int to) {
+            this.text = text;
+            this.pos = from;
+            this.limit = to;
+        }
+
+        boolean next() {
+            while (pos < limit) {
+                int cp = Character.codePointAt(text, pos);
+                int width = Character.charCount(cp);
+                if (isIgnored(cp) || isWhitespace(cp)) {
+                    pos += width;
+                    continue;
+                }
+                int start = pos;
+                pos += width;
+                if (isPunctuation(cp) || isCjk(cp)) {
+                    // Stand-alone token; it is in the vocabulary or maps to [UNK], one piece either way
+                    pieces = 1;
+                    end = pos;
+                    return true;
+                }
+                boolean ascii = cp < 0x80;
+                while (pos < limit) {
+                    int c = Character.codePointAt(text, pos);
+                    if (isWhitespace(c) || isPunctuation(c) || isCjk(c)) break;
+                    ascii &= c < 0x80;
+                    pos += Character.charCount(c);
+                }
+                end = pos;
+                pieces = ascii ? asciiWord(start, pos) : unicodeWord(start, pos);
+                if (pieces == 0) continue; // nothing left after cleaning (e.g. only accents)
+                return true;
+            }
+            return false;
+        }
+
+        private int asciiWord(int start, int stop) {
+            int length = 0;
+            for (int i = start; i < stop; i++) {
+                char c = text.charAt(i);
+                if (c < 0x20 || c == 0x7F) continue; // control characters are dropped
+                if (length == buffer.length) return 1;
+                buffer[length++] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            }
+            return length > MAX_WORD_CHARS ? 1 : wordPieces(buffer, length);
+        }
+
+        private int unicodeWord(int start, int stop) {
+            String word = Normalizer.normalize(text.subSequence(start, stop).toString().toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+            StringBuilder cleaned = new StringBuilder(word.length());
+            int pieces = 0;
+            for (int i = 0; i < word.length(); ) {
+                int cp = word.codePointAt(i);
+                i += Character.charCount(cp);
+                if (Character.getType(cp) == Character.NON_SPACING_MARK || isIgnored(cp)) continue;
+                // Accent stripping can expose punctuation; BERT splits on it after normalizing
+                if (isPunctuation(cp)) {
+                    pieces += piecesOf(cleaned);
+                    cleaned.setLength(0);
+                    pieces++;
+                    continue;
+                }
+                cleaned.appendCodePoint(cp);
+            }
+            return pieces + piecesOf(cleaned);
+        }
+
+        private int piecesOf(StringBuilder word) {
+            if (word.length() == 0) return 0;
+            if (word.codePointCount(0, word.length()) > MAX_WORD_CHARS) return 1;
+            char[] chars = new char[word.length()];
+            word.getChars(0, word.length(), chars, 0);
+            return wordPieces(chars, chars.length);
+        }
+    }
+
+    /**
+     * Greedy longest-match-first split of one lowercased word; a word with any unmatched
+     * remainder is a single [UNK], as in the reference implementation.
+     */
+    private int wordPieces(char[] word, int length) {
+        if (length == 0) return 0;
+        int pieces = 0;
+        int start = 0;
+        while (start < length) {
+            int end = (start == 0 ? wordStarts : continuations).longestMatch(word, start, length);
+            if (end < 0) return 1;
+            pieces++;
+            start = end;
+        }
+        return pieces;
+    }
+
+    private static boolean isIgnored(int cp) {
+        if (cp == 0 || cp == 0xFFFD) return true;
+        if (cp == '\t' || cp == '\n' || cp == '\r') return false;
+        int type = Character.getType(cp);
+        return type == Character.CONTROL || type == Character.FORMAT;
+    }
+
+    private static boolean isWhitespace(int cp) {
+        return cp == ' ' || cp == '\t' || cp == '\n' || cp == '\r'
+            || Character.getType(cp) == Character.SPACE_SEPARATOR;
+    }
+
+    private static boolean isPunctuation(int cp) {
+        if ((cp >= 33 && cp <= 47) || (cp >= 58 && cp <= 64) || (cp >= 91 && cp <= 96) || (cp >= 123 && cp <= 126)) {
+            return true;
+        }
+        if (cp < 0x80) return false;
+        return switch (Character.getType(cp)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                 Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION, Character.FINAL_QUOTE_PUNCTUATION,
+                 Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isCjk(int cp) {
+        return (cp >= 0x4E00 && cp <= 0x9FFF) || (cp >= 0x3400 && cp <= 0x4DBF)
+            || (cp >= 0x20000 && cp <= 0x2A6DF) || (cp >= 0x2A700 && cp <= 0x2B73F)
+            || (cp >= 0x2B740 && cp <= 0x2B81F) || (cp >= 0x2B820 && cp <= 0x2CEAF)
+            || (cp >= 0xF900 && cp <= 0xFAFF) || (cp >= 0x2F800 && cp <= 0x2FA1F);
+    }
+
+    /**
+     * Character trie over UTF-16 units. Edges live in one open-addressed table keyed by
+     * {@code (node << 16) | char}; node 0 is the root.
+     */
+    static final class Trie {
+        private long[] keys = new long[1 << 12];
+        private int[] children = new int[1 << 12];
+        private int edges;
+        private int nodes = 1;
+        private final BitSet terminal = new BitSet();
+
+        void add(String token, int offset) {
+            int node = 0;
+            for (int i = offset; i < token.length(); i++) {
+                int child = child(node, token.charAt(i));
+                if (child < 0) {
+                    child = nodes++;
+                    put(node, token.charAt(i), child);
+                }
+                node = child;
+            }
+            terminal.set(node);
+        }
+
+        /**
+         * End index of the longest vocabulary entry starting at {@code start}, or -1.
+         */
+        int longestMatch(char[] word, int start, int length) {
+            int node = 0;
+            int match = -1;
+            for (int i = start; i < length; i++) {
+                node = child(node, word[i]);
+                if (node < 0) break;
+                if (terminal.get(node)) match = i + 1;
+            }
+            return match;
+        }
+
+        private int child(int node, char c) {
+            long key = ((long) node << 16) | c;
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                long k = keys[slot];
+                if (k == 0) return -1;
+                if (k == key + 1) return children[slot];
+            }
+        }
+
+        private void put(int node, char c, int child) {
+            if ((edges + 1) * 2 > keys.length) grow();
+            insert(((long) node << 16) | c, child);
+            edges++;
+        }
+
+        // Keys are stored +1 so that 0 marks an empty slot
+        private void insert(long key, int child) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0) slot = (slot + 1) & mask;
+            keys[slot] = key + 1;
+            children[slot] = child;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldChildren = children;
+            keys = new long[oldKeys.length * 2];
+            children = new int[oldChildren.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) insert(oldKeys[i] - 1, oldChildren[i]);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
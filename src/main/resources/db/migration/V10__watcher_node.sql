@@ -0,0 +1,6 @@
+-- Live folder-watcher instances; watched files are sharded across the nodes with a recent heartbeat
+CREATE TABLE IF NOT EXISTS watcher_node (
+    node_id TEXT PRIMARY KEY,
+    started_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,25 @@
+-- Durable ingestion work queue shared by all nodes; workers claim rows with FOR UPDATE SKIP LOCKED
+CREATE TABLE IF NOT EXISTS ingest_task (
+    id BIGSERIAL PRIMARY KEY,
+    kind VARCHAR(32) NOT NULL,          -- UPLOAD, JOB_ITEM, URL, WATCHED_FILE
+    payload JSONB NOT NULL,             -- kind-specific arguments
+    dedupe_key TEXT,                    -- at most one queued task per key
+    priority INTEGER NOT NULL DEFAULT 0, -- higher runs first
+    pinned_host TEXT,                   -- only this host can run it (e.g. uploads staged on local disk)
+    status VARCHAR(16) NOT NULL DEFAULT 'QUEUED', -- QUEUED, RUNNING, DONE, FAILED
+    attempts INTEGER NOT NULL DEFAULT 0,
+    max_attempts INTEGER NOT NULL,
+    available_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    lease_owner TEXT,
+    lease_expires_at TIMESTAMP,
+    document_id BIGINT,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingest_task_ready ON ingest_task(priority DESC, available_at, id) WHERE status = 'QUEUED';
+CREATE INDEX IF NOT EXISTS idx_ingest_task_lease ON ingest_task(lease_expires_at) WHERE status = 'RUNNING';
+CREATE INDEX IF NOT EXISTS idx_ingest_task_finished ON ingest_task(finished_at) WHERE status IN ('DONE', 'FAILED');
+CREATE UNIQUE INDEX IF NOT EXISTS uq_ingest_task_queued_key ON ingest_task(dedupe_key) WHERE status = 'QUEUED';
+CREATE INDEX IF NOT EXISTS idx_ingest_task_running_key ON ingest_task(dedupe_key) WHERE status = 'RUNNING';
@@ -0,0 +1,10 @@
+-- Per-URL crawl state: validators for conditional GETs and the links found on the page
+CREATE TABLE IF NOT EXISTS crawl_page (
+    url TEXT PRIMARY KEY,             -- absolute URL without fragment, same as document.external_id
+    etag TEXT,
+    last_modified TEXT,               -- Last-Modified header value as sent by the server
+    document_id BIGINT REFERENCES document(id) ON DELETE SET NULL,
+    links TEXT,                       -- newline-separated in-scope links, followed on 304 responses
+    fetched_at TIMESTAMP,             -- last time the body was downloaded
+    checked_at TIMESTAMP DEFAULT NOW()
+);
@@ -0,0 +1,23 @@
+-- Near-duplicate detection: MinHash signatures of indexed documents, LSH buckets to find
+-- candidates, and the link from a near-duplicate (stored without chunks) to its twin
+CREATE TABLE IF NOT EXISTS document_minhash (
+    document_id BIGINT PRIMARY KEY REFERENCES document(id) ON DELETE CASCADE,
+    signature BYTEA NOT NULL          -- 128 big-endian int32 minimums
+);
+
+CREATE TABLE IF NOT EXISTS document_lsh_bucket (
+    bucket BIGINT NOT NULL,           -- hash of one signature band (band number mixed in)
+    document_id BIGINT NOT NULL REFERENCES document(id) ON DELETE CASCADE,
+    PRIMARY KEY (bucket, document_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_document_lsh_bucket_document ON document_lsh_bucket(document_id);
+
+-- A twin's deletion leaves near_duplicate_similarity set without near_duplicate_of: such
+-- documents are indexed again from their stored text (document_content, from V14 on)
+ALTER TABLE document ADD COLUMN IF NOT EXISTS near_duplicate_of BIGINT REFERENCES document(id) ON DELETE SET NULL;
+ALTER TABLE document ADD COLUMN IF NOT EXISTS near_duplicate_similarity REAL;
+
+CREATE INDEX IF NOT EXISTS idx_document_near_duplicate_of ON document(near_duplicate_of) WHERE near_duplicate_of IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_document_near_duplicate_orphan ON document(id)
+    WHERE near_duplicate_similarity IS NOT NULL AND near_duplicate_of IS NULL;
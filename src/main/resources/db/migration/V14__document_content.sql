@@ -0,0 +1,19 @@
+-- Extracted document text moves out of the document row, so document lookups no longer
+-- read it. The application stores it zstd-compressed; rows copied here stay 'plain'
+-- (UTF-8 bytes) until their document is re-ingested.
+CREATE TABLE IF NOT EXISTS document_content (
+    document_id BIGINT PRIMARY KEY REFERENCES document(id) ON DELETE CASCADE,
+    codec VARCHAR(16) NOT NULL,
+    length INTEGER NOT NULL, -- uncompressed UTF-8 bytes
+    content BYTEA NOT NULL
+);
+
+-- Already compressed: store out of line without pglz
+ALTER TABLE document_content ALTER COLUMN content SET STORAGE EXTERNAL;
+
+INSERT INTO document_content(document_id, codec, length, content)
+SELECT id, 'plain', octet_length(raw_content), convert_to(raw_content, 'UTF8')
+FROM document
+WHERE raw_content IS NOT NULL;
+
+ALTER TABLE document DROP COLUMN raw_content;
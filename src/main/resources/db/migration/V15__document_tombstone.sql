@@ -0,0 +1,9 @@
+-- Deleting a document only tombstones it; DocumentPurger removes its chunks in small batches
+-- and then the row. Tombstoned documents are invisible to retrieval and ingestion.
+ALTER TABLE document ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS idx_document_tombstoned ON document(deleted_at, id) WHERE deleted_at IS NOT NULL;
+
+-- A tombstone must not block ingesting the same content again
+DROP INDEX IF EXISTS idx_document_content_hash;
+CREATE UNIQUE INDEX idx_document_content_hash ON document(source_id, content_hash) WHERE deleted_at IS NULL;
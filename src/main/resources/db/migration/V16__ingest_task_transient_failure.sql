@@ -0,0 +1,2 @@
+-- Whether a FAILED task's last error was transient (retries used up) rather than bad input
+ALTER TABLE ingest_task ADD COLUMN IF NOT EXISTS transient_failure BOOLEAN;
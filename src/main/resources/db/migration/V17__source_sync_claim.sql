@@ -0,0 +1,3 @@
+-- The node running a source's sync; another node may take it over once the lease expired
+ALTER TABLE source ADD COLUMN IF NOT EXISTS sync_owner TEXT;
+ALTER TABLE source ADD COLUMN IF NOT EXISTS sync_lease_expires_at TIMESTAMP;
@@ -0,0 +1,2 @@
+-- Until when a node's DocumentPurger has claimed a deleted document; others skip it meanwhile
+ALTER TABLE document ADD COLUMN IF NOT EXISTS purge_claimed_until TIMESTAMP;
@@ -0,0 +1,5 @@
+-- Hosts consuming the ingest queue; queued tasks pinned to a host without a recent heartbeat are unpinned
+CREATE TABLE IF NOT EXISTS ingest_host (
+    host TEXT PRIMARY KEY,
+    heartbeat_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
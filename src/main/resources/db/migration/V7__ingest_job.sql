@@ -0,0 +1,33 @@
+-- Asynchronous ingestion jobs: one job per upload request, one item per file
+CREATE TABLE IF NOT EXISTS ingest_job (
+    id BIGSERIAL PRIMARY KEY,
+    status VARCHAR(32) NOT NULL,  -- RUNNING, COMPLETED, COMPLETED_WITH_ERRORS
+    created_by VARCHAR(255),
+    total_files INTEGER NOT NULL DEFAULT 0,
+    completed_files INTEGER NOT NULL DEFAULT 0,
+    failed_files INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT NOW(),
+    updated_at TIMESTAMP DEFAULT NOW(),
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingest_job_created ON ingest_job(created_at);
+
+CREATE TABLE IF NOT EXISTS ingest_job_item (
+    id BIGSERIAL PRIMARY KEY,
+    job_id BIGINT NOT NULL REFERENCES ingest_job(id) ON DELETE CASCADE,
+    filename VARCHAR(1024),
+    staged_path TEXT,  -- staging file consumed by the worker; removed when the item finishes
+    content_hash VARCHAR(64),
+    size_bytes BIGINT,
+    status VARCHAR(32) NOT NULL,  -- QUEUED, RUNNING, DONE, DUPLICATE, FAILED
+    document_id BIGINT,
+    chunk_count INTEGER,
+    error TEXT,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    created_at TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingest_job_item_job ON ingest_job_item(job_id);
+CREATE INDEX IF NOT EXISTS idx_ingest_job_item_status ON ingest_job_item(status);
@@ -0,0 +1,14 @@
+-- OCR results keyed by the hash of the rendered page image, so identical pages are recognized once
+CREATE TABLE IF NOT EXISTS ocr_cache (
+    image_hash VARCHAR(64) NOT NULL,  -- SHA-256 of the grayscale raster (or raw image bytes)
+    lang VARCHAR(64) NOT NULL,
+    dpi INTEGER NOT NULL,             -- 0 for standalone images
+    text TEXT NOT NULL,
+    text_bytes INTEGER NOT NULL,      -- used for size-based eviction
+    hit_count INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT NOW(),
+    last_used_at TIMESTAMP DEFAULT NOW(),
+    PRIMARY KEY (image_hash, lang, dpi)
+);
+
+CREATE INDEX IF NOT EXISTS idx_ocr_cache_last_used ON ocr_cache(last_used_at);
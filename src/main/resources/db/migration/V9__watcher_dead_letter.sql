@@ -0,0 +1,10 @@
+-- Watched files whose ingestion kept failing; they are skipped until modified or retried via /v1/watcher/dead-letters
+CREATE TABLE IF NOT EXISTS watcher_dead_letter (
+    path TEXT PRIMARY KEY,            -- absolute path, same key as watcher_state
+    attempts INTEGER NOT NULL,
+    last_error TEXT,
+    first_failed_at TIMESTAMP DEFAULT NOW(),
+    last_failed_at TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_watcher_dead_letter_last_failed ON watcher_dead_letter(last_failed_at DESC);
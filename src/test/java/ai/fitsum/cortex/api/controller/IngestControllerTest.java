@@ -0,0 +1,100 @@
+package ai.fitsum.cortex.api.controller;
+
+import ai.fitsum.cortex.api.domain.Document;
+import ai.fitsum.cortex.api.repository.ChunkRepository;
+import ai.fitsum.cortex.api.repository.DocumentRepository;
+import ai.fitsum.cortex.api.service.DocumentListingService;
+import ai.fitsum.cortex.ingest.service.ArchiveIngestionService;
+import ai.fitsum.cortex.ingest.service.DocumentContentStore;
+import ai.fitsum.cortex.ingest.service.IngestJobService;
+import ai.fitsum.cortex.ingest.service.IngestQueue;
+import ai.fitsum.cortex.ingest.service.IngestionService;
+import ai.fitsum.cortex.ingest.service.UploadStager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class IngestControllerTest {
+
+    private DocumentRepository documentRepository;
+    private DocumentListingService listingService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        documentRepository = mock(DocumentRepository.class);
+        listingService = mock(DocumentListingService.class);
+        IngestController controller = new IngestController(mock(IngestionService.class), mock(IngestJobService.class),
+            mock(IngestQueue.class), mock(UploadStager.class), documentRepository, mock(ChunkRepository.class),
+            mock(ArchiveIngestionService.class), mock(DocumentContentStore.class), listingService);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void documentsAreStreamed() throws Exception {
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(3).write("{\"items\":[],\"nextCursor\":null}".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(listingService).writeDocuments(isNull(), eq(20), any(), any());
+
+        MvcResult started = mvc.perform(get("/v1/ingest/documents").param("limit", "20"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+            .andExpect(content().string("{\"items\":[],\"nextCursor\":null}"));
+    }
+
+    @Test
+    void unknownFieldIsABadRequest() throws Exception {
+        mvc.perform(get("/v1/ingest/documents").param("fields", "nope"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void chunksOfAMissingDocumentAreNotFound() throws Exception {
+        when(documentRepository.findLiveById(7L)).thenReturn(Optional.empty());
+
+        mvc.perform(get("/v1/ingest/document/7/chunks"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void chunksAreStreamed() throws Exception {
+        when(documentRepository.findLiveById(7L)).thenReturn(Optional.of(mock(Document.class)));
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(4).write("{\"items\":[]}".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(listingService).writeChunks(eq(7L), isNull(), anyInt(), eq(true), any());
+
+        MvcResult started = mvc.perform(get("/v1/ingest/document/7/chunks").param("content", "true"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"items\":[]}"));
+    }
+}
@@ -0,0 +1,57 @@
+package ai.fitsum.cortex.api.controller;
+
+import ai.fitsum.cortex.api.domain.IngestJob;
+import ai.fitsum.cortex.ingest.service.IngestJobService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class IngestJobControllerTest {
+
+    private IngestJobService jobService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        jobService = mock(IngestJobService.class);
+        mvc = MockMvcBuilders.standaloneSetup(new IngestJobController(jobService)).build();
+    }
+
+    @Test
+    void eventsOfAnUnknownJobAreNotFound() throws Exception {
+        when(jobService.find(7L)).thenReturn(Optional.empty());
+
+        mvc.perform(get("/v1/ingest/jobs/7/events"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void eventsEndWhenTheJobIsDeleted() throws Exception {
+        var running = new IngestJobService.JobView(new IngestJob(7L, IngestJob.Status.RUNNING, "alice", 2, 1, 0,
+            LocalDateTime.now(), LocalDateTime.now(), null), List.of());
+        when(jobService.find(7L)).thenReturn(Optional.of(running), Optional.of(running), Optional.empty());
+
+        MvcResult started = mvc.perform(get("/v1/ingest/jobs/7/events"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().string(containsString("\"completedFiles\":1")));
+    }
+}
@@ -67,7 +67,6 @@ class AskApiIntegrationTest {
             "Test Document",
             "hash123",
             "text/plain",
-            "This is test content about Fitsum Cortex features.",
             null
         );
         doc = documentRepository.save(doc);
@@ -0,0 +1,67 @@
+package ai.fitsum.cortex.api.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentListingServiceTest {
+
+    private final ObjectMapper json = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void writesOnePageAndTheCursorOfItsLastRow() throws Exception {
+        NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+        ResultSet rs = mock(ResultSet.class);
+        int[] row = {0};
+        when(rs.getLong(anyString())).thenReturn(4L);
+        when(rs.getLong("chunk_index")).thenAnswer(inv -> (long) row[0]);
+        when(rs.getString("heading")).thenReturn("Intro");
+        when(rs.getObject("created_at", LocalDateTime.class)).thenReturn(LocalDateTime.of(2026, 1, 2, 3, 4));
+        // three rows for a page of two: the third only tells that there is more
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(2);
+            for (row[0] = 0; row[0] < 3; row[0]++) handler.processRow(rs);
+            return null;
+        }).when(jdbc).query(
+            argThat((String sql) -> !sql.contains("content,") && !sql.contains("embedding") && sql.contains("LIMIT :limit")),
+            argThat((MapSqlParameterSource p) -> Integer.valueOf(3).equals(p.getValue("limit"))),
+            any(RowCallbackHandler.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DocumentListingService(jdbc, json).writeChunks(4L, null, 2, false, out);
+
+        JsonNode page = json.readTree(out.toByteArray());
+        assertThat(page.get("items")).hasSize(2);
+        assertThat(page.get("items").get(0).get("heading").asText()).isEqualTo("Intro");
+        assertThat(page.get("items").get(0).has("content")).isFalse();
+        assertThat(page.get("nextCursor").asLong()).isEqualTo(1L);
+    }
+
+    @Test
+    void projectsDocumentFields() {
+        assertThat(DocumentListingService.DocumentField.parse(List.of("title")))
+            .containsExactly(DocumentListingService.DocumentField.ID, DocumentListingService.DocumentField.TITLE);
+        assertThat(DocumentListingService.DocumentField.parse(null))
+            .doesNotContain(DocumentListingService.DocumentField.METADATA_JSON);
+        assertThatThrownBy(() -> DocumentListingService.DocumentField.parse(List.of("rawContent")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
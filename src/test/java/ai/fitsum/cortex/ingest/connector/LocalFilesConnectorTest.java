@@ -0,0 +1,72 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalFilesConnectorTest {
+
+    @TempDir
+    Path root;
+
+    private final LocalFilesConnector connector = new LocalFilesConnector();
+    private JsonNode config;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (String file : List.of("a-c.md", "a/b.txt", "a/z/deep.md", "b.pdf", "c.bin", "d/e.txt")) {
+            Path path = root.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file);
+        }
+        config = new ObjectMapper().createObjectNode().put("path", root.toString());
+    }
+
+    @Test
+    void walksSupportedFilesInNameOrder() throws Exception {
+        assertThat(checkpoints(null, null)).containsExactly("a/b.txt", "a/z/deep.md", "a-c.md", "b.pdf", "d/e.txt");
+    }
+
+    @Test
+    void resumesAfterCheckpointSkippingFinishedSubtrees() throws Exception {
+        assertThat(checkpoints("a/b.txt", null)).containsExactly("a/z/deep.md", "a-c.md", "b.pdf", "d/e.txt");
+        assertThat(checkpoints("a-c.md", null)).containsExactly("b.pdf", "d/e.txt");
+        assertThat(checkpoints("d/e.txt", null)).isEmpty();
+    }
+
+    @Test
+    void skipsFilesUnchangedSinceLastSync() throws Exception {
+        Instant lastSync = Instant.now().minusSeconds(60);
+        try (var files = Files.walk(root)) {
+            for (Path p : files.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(p, FileTime.from(lastSync.minusSeconds(3600)));
+            }
+        }
+        Files.writeString(root.resolve("a/z/deep.md"), "changed");
+
+        assertThat(checkpoints(null, lastSync)).containsExactly("a/z/deep.md");
+    }
+
+    private List<String> checkpoints(String checkpoint, Instant since) throws Exception {
+        List<String> seen = new ArrayList<>();
+        try (SourceCursor cursor = connector.open(config, checkpoint, since)) {
+            SourceItem item;
+            while ((item = cursor.next()) != null) {
+                assertThat(item.file()).isEqualTo(root.resolve(item.checkpoint()));
+                seen.add(item.checkpoint());
+            }
+        }
+        return seen;
+    }
+}
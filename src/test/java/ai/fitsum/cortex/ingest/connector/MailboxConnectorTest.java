@@ -0,0 +1,130 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MailboxConnectorTest {
+
+    @TempDir
+    Path dir;
+
+    private final MailboxConnector connector = new MailboxConnector();
+
+    @Test
+    void streamsMessagesKeyedByMessageIdAndResumesFromByteOffset() throws Exception {
+        Path mbox = dir.resolve("export.mbox");
+        Files.writeString(mbox, """
+            From alice@example.com Mon Jan  1 00:00:00 2024
+            Message-ID:
+             <one@example.com>
+            Subject: First
+
+            Hello
+            >From the archive, with love
+            >>From stays quoted once
+
+            From bob@example.com Mon Jan  1 00:00:01 2024
+            Subject: No id
+
+            Second body
+            """);
+        JsonNode config = new ObjectMapper().createObjectNode().put("path", mbox.toString());
+
+        List<SourceItem> items = drain(connector.open(config, null, null));
+
+        assertThat(items).hasSize(2);
+        assertThat(items.get(0).externalId()).isEqualTo("one@example.com");
+        assertThat(items.get(0).name()).isEqualTo("one_example.com.eml");
+        assertThat(items.get(1).externalId()).startsWith("sha256:");
+        try (InputStream in = items.get(0).content().open()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+                .startsWith("Message-ID:")
+                .contains("\nFrom the archive, with love\n>From stays quoted once\n")
+                .doesNotContain("bob@example.com");
+        }
+        // The last message may still be being appended, so the checkpoint stays at its From line
+        String checkpoint = items.get(1).checkpoint();
+        long bob = Files.readString(mbox).indexOf("From bob@");
+        assertThat(items.get(0).checkpoint()).isEqualTo("{\"\":" + bob + "}");
+        assertThat(checkpoint).isEqualTo("{\"\":" + bob + "}");
+
+        assertThat(drain(connector.open(config, checkpoint, null)))
+            .extracting(SourceItem::externalId).containsExactly(items.get(1).externalId());
+
+        Files.writeString(mbox, """
+            From carol@example.com Tue Jan  2 00:00:00 2024
+            Message-ID: <three@example.com>
+
+            Appended later
+            """, StandardOpenOption.APPEND);
+        List<SourceItem> appended = drain(connector.open(config, checkpoint, null));
+        assertThat(appended).extracting(SourceItem::externalId)
+            .containsExactly(items.get(1).externalId(), "three@example.com");
+        try (InputStream in = appended.get(0).content().open()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).endsWith("Second body\n");
+        }
+        try (InputStream in = appended.get(1).content().open()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).endsWith("Appended later\n");
+        }
+    }
+
+    @Test
+    void rereadsAFinalMessageThatWasCutOffMidAppend() throws Exception {
+        Path mbox = dir.resolve("inbox.mbox");
+        Files.writeString(mbox, """
+            From alice@example.com Mon Jan  1 00:00:00 2024
+            Message-ID: <one@example.com>
+
+            Hello
+            From bob@example.com Mon Jan  1 00:00:01 2024
+            Message-ID: <two@example.com>
+
+            Half of""");
+        JsonNode config = new ObjectMapper().createObjectNode().put("path", mbox.toString());
+        String checkpoint = drain(connector.open(config, null, null)).get(1).checkpoint();
+
+        Files.writeString(mbox, " the second body\n", StandardOpenOption.APPEND);
+        List<SourceItem> resumed = drain(connector.open(config, checkpoint, null));
+
+        assertThat(resumed).extracting(SourceItem::externalId).containsExactly("two@example.com");
+        try (InputStream in = resumed.get(0).content().open()) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).endsWith("Half of the second body\n");
+        }
+    }
+
+    @Test
+    void directoriesSkipExtensionlessFilesThatAreNotMail() throws Exception {
+        Files.writeString(dir.resolve("README"), "Mail exported on 2024-01-01\n");
+        Files.writeString(dir.resolve("Inbox"), """
+            From alice@example.com Mon Jan  1 00:00:00 2024
+            Message-ID: <one@example.com>
+
+            Hello
+            """);
+        JsonNode config = new ObjectMapper().createObjectNode().put("path", dir.toString());
+
+        assertThat(drain(connector.open(config, null, null)))
+            .extracting(SourceItem::externalId).containsExactly("one@example.com");
+    }
+
+    private static List<SourceItem> drain(SourceCursor cursor) throws Exception {
+        List<SourceItem> items = new ArrayList<>();
+        try (cursor) {
+            SourceItem item;
+            while ((item = cursor.next()) != null) items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,114 @@
+package ai.fitsum.cortex.ingest.connector;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.domain.Source;
+import ai.fitsum.cortex.api.repository.SourceRepository;
+import ai.fitsum.cortex.ingest.service.IngestionResult;
+import ai.fitsum.cortex.ingest.service.IngestionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SourceSyncServiceTest {
+
+    private static final String INTERRUPTED = "{\"sync\":{\"checkpoint\":\"c1\",\"startedAt\":\"2026-01-01T00:00:00Z\"}}";
+
+    private SourceRepository sourceRepository;
+    private SourceConnector connector;
+    private IngestionService ingestionService;
+    private SourceSyncService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sourceRepository = mock(SourceRepository.class);
+        connector = mock(SourceConnector.class);
+        when(connector.type()).thenReturn(Source.SourceType.LOCAL_FILES);
+        when(connector.open(any(), any(), any())).thenReturn(mock(SourceCursor.class));
+        ingestionService = mock(IngestionService.class);
+        service = new SourceSyncService(List.of(connector), sourceRepository, ingestionService, new CortexProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void syncClaimsTheSourceAndReleasesItWhenDone() throws Exception {
+        source(INTERRUPTED);
+        when(sourceRepository.claimSync(eq(1L), anyString(), anyDouble())).thenReturn(1);
+
+        SourceSyncService.SyncResult result = service.sync(1L);
+
+        assertThat(result.resumedFrom()).isEqualTo("c1");
+        verify(connector).open(any(), eq("c1"), any());
+        verify(sourceRepository).releaseSync(eq(1L), anyString());
+    }
+
+    @Test
+    void sourceClaimedByAnotherNodeIsNotSyncedHere() throws Exception {
+        Source source = source(INTERRUPTED);
+        when(sourceRepository.findByIsEnabled(true)).thenReturn(List.of(source));
+        when(sourceRepository.claimSync(eq(1L), anyString(), anyDouble())).thenReturn(0);
+
+        service.resumeInterrupted();
+        assertThatThrownBy(() -> service.sync(1L)).isInstanceOf(IllegalStateException.class);
+
+        verify(connector, never()).open(any(), any(), any());
+        verify(sourceRepository, never()).releaseSync(any(), any());
+        assertThat(service.progress(1L)).isNull();
+    }
+
+    @Test
+    void keptCheckpointStopsBeforeTheFirstFailedItem() throws Exception {
+        source("{}");
+        when(sourceRepository.claimSync(eq(1L), anyString(), anyDouble())).thenReturn(1);
+        when(connector.keepsCheckpoint()).thenReturn(true);
+        SourceCursor cursor = mock(SourceCursor.class);
+        when(cursor.next()).thenReturn(item("m1"), item("m2"), item("m3"), null);
+        when(connector.open(any(), any(), any())).thenReturn(cursor);
+        when(ingestionService.ingestSourceStream(eq(1L), any(), anyString(), anyString(), anyLong())).thenAnswer(inv -> {
+            if (inv.getArgument(3).equals("m2")) throw new IOException("unreadable message");
+            return new IngestionResult(1L, null, inv.getArgument(2), 0, Instant.now(), false);
+        });
+
+        SourceSyncService.SyncResult result = service.sync(1L);
+
+        assertThat(result.failed()).isEqualTo(1);
+        ArgumentCaptor<Source> saved = ArgumentCaptor.forClass(Source.class);
+        verify(sourceRepository).save(saved.capture());
+        assertThat(saved.getValue().configJson()).isEqualTo("{\"sync\":{\"checkpoint\":\"after-m1\"}}");
+        assertThat(saved.getValue().lastSyncAt()).isNull();
+    }
+
+    private static SourceItem item(String id) {
+        return SourceItem.ofStream(id, id + ".eml", 1, "after-" + id, () -> new ByteArrayInputStream(new byte[1]));
+    }
+
+    private Source source(String configJson) {
+        Source source = new Source(1L, "files", Source.SourceType.LOCAL_FILES, configJson, true, null,
+            LocalDateTime.now(), LocalDateTime.now());
+        when(sourceRepository.findById(1L)).thenReturn(Optional.of(source));
+        return source;
+    }
+}
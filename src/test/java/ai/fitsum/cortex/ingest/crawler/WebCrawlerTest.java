@@ -0,0 +1,177 @@
+package ai.fitsum.cortex.ingest.crawler;
+
+import ai.fitsum.cortex.api.config.CrawlerProperties;
+import ai.fitsum.cortex.api.domain.CrawlPage;
+import ai.fitsum.cortex.api.repository.CrawlPageRepository;
+import ai.fitsum.cortex.ingest.service.HtmlTextExtractor;
+import ai.fitsum.cortex.ingest.service.IngestionResult;
+import ai.fitsum.cortex.ingest.service.IngestionService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebCrawlerTest {
+
+    private final Map<String, String> pages = new ConcurrentHashMap<>();
+    private final Map<String, CrawlPage> state = new ConcurrentHashMap<>();
+    private final AtomicInteger bodiesServed = new AtomicInteger();
+    private HttpServer server;
+    private String base;
+    private IngestionService ingestionService;
+    private CrawlerProperties props;
+    private WebCrawler crawler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        CrawlPageRepository repository = mock(CrawlPageRepository.class);
+        when(repository.findById(anyString())).thenAnswer(inv -> Optional.ofNullable(state.get(inv.<String>getArgument(0))));
+        when(repository.recordFetch(anyString(), any(), any(), any(), any())).thenAnswer(inv -> {
+            state.put(inv.getArgument(0), new CrawlPage(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2),
+                inv.getArgument(3), inv.getArgument(4), LocalDateTime.now(), LocalDateTime.now()));
+            return 1;
+        });
+        ingestionService = mock(IngestionService.class);
+        AtomicInteger ids = new AtomicInteger();
+        when(ingestionService.ingestWebPage(anyString(), any(), anyString())).thenAnswer(inv ->
+            new IngestionResult((long) ids.incrementAndGet(), inv.getArgument(1), inv.getArgument(0), 0, Instant.now(), false));
+
+        props = new CrawlerProperties();
+        props.setMaxDepth(2);
+        crawler = new WebCrawler(props, ingestionService, repository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        crawler.stop();
+        server.stop(0);
+    }
+
+    @Test
+    void followsLinksInScopeAndRevalidatesWithEtags() {
+        pages.put("/wiki/", "<html><head><title>Home</title></head><body>"
+            + "<p>Welcome <a href='guide'>guide</a> <a href='/other/x'>elsewhere</a></p></body></html>");
+        pages.put("/wiki/guide", "<html><body><nav>menu</nav><article><h1>Guide</h1><p>Step one</p></article>"
+            + "<a href='deep'>deep</a></body></html>");
+        pages.put("/wiki/deep", "<html><body><p>Too deep</p><a href='deeper'>x</a></body></html>");
+        pages.put("/other/x", "<p>out of scope</p>");
+
+        WebCrawler.CrawlSummary first = crawler.crawl(List.of(base + "/wiki/"), List.of());
+
+        assertThat(first.fetched()).isEqualTo(3);
+        assertThat(first.ingested()).isEqualTo(3);
+        verify(ingestionService).ingestWebPage(base + "/wiki/guide", null, "# Guide\n\nStep one");
+        verify(ingestionService, never()).ingestWebPage(eq(base + "/other/x"), any(), anyString());
+        verify(ingestionService, never()).ingestWebPage(eq(base + "/wiki/deeper"), any(), anyString());
+
+        bodiesServed.set(0);
+        WebCrawler.CrawlSummary second = crawler.crawl(List.of(base + "/wiki/"), List.of());
+
+        assertThat(second.notModified()).isEqualTo(3);
+        assertThat(second.pages()).isEqualTo(3); // links of unchanged pages come from crawl_page
+        assertThat(bodiesServed).hasValue(0);
+        verify(ingestionService, times(3)).ingestWebPage(anyString(), any(), anyString());
+    }
+
+    @Test
+    void pagesAreIngestedAfterTheirConnectionIsReleased() {
+        pages.put("/a", "<p>first</p>");
+        pages.put("/b", "<p>second</p>");
+        props.setMaxConcurrency(1);
+        AtomicBoolean otherFetchedDuringIngest = new AtomicBoolean();
+        when(ingestionService.ingestWebPage(anyString(), any(), anyString())).thenAnswer(inv -> {
+            // With the only connection still held here, the other page could not be fetched
+            long deadline = System.currentTimeMillis() + 5000;
+            while (bodiesServed.get() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            if (bodiesServed.get() == 2) otherFetchedDuringIngest.set(true);
+            return new IngestionResult(1L, null, inv.getArgument(0), 0, Instant.now(), false);
+        });
+
+        WebCrawler.CrawlSummary summary = crawler.crawl(List.of(base + "/a", base + "/b"), List.of());
+
+        assertThat(summary.ingested()).isEqualTo(2);
+        assertThat(otherFetchedDuringIngest).isTrue();
+    }
+
+    @Test
+    void oversizedPagesAreSkippedNotTruncated() {
+        props.setMaxPageSize(DataSize.ofBytes(64));
+        pages.put("/small", "<p>fits</p>");
+        pages.put("/big", "<p>" + "x".repeat(100) + "</p>");
+
+        WebCrawler.CrawlSummary summary = crawler.crawl(List.of(base + "/small", base + "/big"), List.of());
+
+        assertThat(summary.ingested()).isEqualTo(1);
+        assertThat(summary.tooLarge()).isEqualTo(1);
+        verify(ingestionService, never()).ingestWebPage(eq(base + "/big"), any(), anyString());
+        assertThat(state).doesNotContainKey(base + "/big");
+    }
+
+    @Test
+    void extractsTextWhileStreamingAndPrefersMainContent() throws Exception {
+        HtmlTextExtractor.Page page = HtmlTextExtractor.extract(new StringReader(
+            "<html><head><title>T</title><script>var x;</script></head><body><div>Header</div>"
+                + "<main><h2>Intro</h2><ul><li>one</li><li>two <a href='/b#top'>b</a></li></ul></main></body></html>"),
+            "http://example.com/a/");
+
+        assertThat(page.title()).isEqualTo("T");
+        assertThat(page.text()).isEqualTo("## Intro\n\none\n\ntwo b");
+        assertThat(page.links()).containsExactly("http://example.com/b#top");
+        assertThat(WebCrawler.canonical(page.links().get(0))).isEqualTo("http://example.com/b");
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String html = pages.get(path);
+        try (exchange) {
+            if (html == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String etag = "\"" + Integer.toHexString(html.hashCode()) + "\"";
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = html.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bodiesServed.incrementAndGet();
+        }
+    }
+}
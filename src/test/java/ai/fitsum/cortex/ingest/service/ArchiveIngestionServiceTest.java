@@ -0,0 +1,112 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ArchiveIngestionServiceTest {
+
+    private IngestionService ingestionService;
+    private ArchiveIngestionService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ingestionService = mock(IngestionService.class);
+        when(ingestionService.ingestArchiveEntry(any(), anyString(), anyString(), anyString())).thenAnswer(inv ->
+            new IngestionResult(1L, inv.getArgument(1), inv.getArgument(1), 0, Instant.now(), false));
+        when(ingestionService.ingestLocalFileStreaming(any(), anyString(), anyString(), anyLong())).thenAnswer(inv -> {
+            inv.<InputStream>getArgument(0).readAllBytes();
+            return new IngestionResult(2L, inv.getArgument(1), inv.getArgument(1), 0, Instant.now(), false);
+        });
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setStreamingThreshold(DataSize.ofBytes(64));
+        properties.getIngestion().setArchiveConcurrency(2);
+        service = new ArchiveIngestionService(ingestionService, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void ingestsZipEntriesUnderTheirPathsAndSkipsJunkAndRepeats() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("docs/a.md", "# A");
+        entries.put("docs/copy-of-a.md", "# A");
+        entries.put("docs/big.txt", "x".repeat(500));
+        entries.put("__MACOSX/docs/._a.md", "junk");
+        entries.put("../escape.txt", "nope");
+        entries.put("nested.zip", "PK");
+
+        ArchiveIngestionService.ArchiveResult result = service.ingest(zip(entries), "dump.zip", "team/");
+
+        assertThat(result.format()).isEqualTo("zip");
+        assertThat(result.entries()).isEqualTo(6);
+        assertThat(result.ingested()).isEqualTo(2);
+        assertThat(result.duplicates()).isEqualTo(1);
+        assertThat(result.skipped()).isEqualTo(3);
+        verify(ingestionService).ingestArchiveEntry(any(), eq("a.md"), eq("archive:dump.zip/team/docs/a.md"), eq(Hashes.sha256("# A")));
+        verify(ingestionService).ingestLocalFileStreaming(any(), eq("big.txt"), eq("archive:dump.zip/team/docs/big.txt"), anyLong());
+        verify(ingestionService, never()).ingestArchiveEntry(any(), anyString(), eq("archive:dump.zip/team/docs/copy-of-a.md"), anyString());
+    }
+
+    @Test
+    void readsGzippedTarAndRejectsOtherInput() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(bytes))) {
+            byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+            TarArchiveEntry entry = new TarArchiveEntry("./notes/hello.txt");
+            entry.setSize(data.length);
+            tar.putArchiveEntry(entry);
+            tar.write(data);
+            tar.closeArchiveEntry();
+        }
+
+        ArchiveIngestionService.ArchiveResult result = service.ingest(new ByteArrayInputStream(bytes.toByteArray()), "dump.tgz", "");
+
+        assertThat(result.format()).isEqualTo("tar+gzip");
+        assertThat(result.ingested()).isEqualTo(1);
+        verify(ingestionService).ingestArchiveEntry(any(), eq("hello.txt"), eq("archive:dump.tgz/notes/hello.txt"), anyString());
+        assertThatThrownBy(() -> service.ingest(new ByteArrayInputStream("plain text".getBytes()), "x.txt", ""))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static InputStream zip(Map<String, String> entries) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,133 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkingServiceTest {
+
+    private static final int MAX_CHARS = 160;
+    private static final int OVERLAP_PERCENT = 15;
+
+    /** One token per character, so budgets in tests read as character counts. */
+    static final TokenCounter CHARACTERS = new TokenCounter() {
+        @Override
+        public int count(CharSequence text, int from, int to) {
+            return to - from;
+        }
+
+        @Override
+        public int fit(CharSequence text, int from, int to, int maxTokens) {
+            return Math.min(to, from + maxTokens);
+        }
+    };
+
+    private ChunkingService chunkingService;
+
+    @BeforeEach
+    void setUp() {
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setChunkSizeTokens(MAX_CHARS); // one token per char
+        properties.getIngestion().setChunkOverlapPercent(OVERLAP_PERCENT);
+        chunkingService = new ChunkingService(properties, CHARACTERS);
+    }
+
+    @Test
+    void matchesRegexReferenceOnRandomText() {
+        String[] pieces = {
+            "word", "Word", " ", " ", "  ", ".", ". ", "! ", "?", ":", "#", "\t",
+            "\n", "\n", "\n\n", "\r\n", "\r", "\u2028", "\f", "\u00e9t\u00e9",
+            "Intro", "Section Heading", "a fairly long run of lowercase text without punctuation "
+        };
+        Random random = new Random(42);
+        for (int round = 0; round < 2_000; round++) {
+            StringBuilder text = new StringBuilder();
+            int parts = random.nextInt(200);
+            for (int i = 0; i < parts; i++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String s = text.toString();
+            assertThat(chunkingService.chunk(s, "doc"))
+                .as("input %s", s.replace("\n", "\\n").replace("\r", "\\r"))
+                .isEqualTo(reference(s));
+        }
+    }
+
+    @Test
+    void fallsBackToLinesWhenOnlyTrailingParagraphBreak() {
+        String text = "First line\nSecond line\n\n";
+
+        List<ChunkingService.TextChunk> chunks = chunkingService.chunk(text, "doc");
+
+        assertThat(chunks).extracting(ChunkingService.TextChunk::heading).containsExactly("Second line");
+        assertThat(chunks).isEqualTo(reference(text));
+    }
+
+    /**
+     * The former split/regex implementation, kept as an oracle for the single-pass scanner
+     * (plus the rule that an overlap never pushes a chunk over the budget).
+     */
+    private static List<ChunkingService.TextChunk> reference(String text) {
+        Pattern sentenceEnd = Pattern.compile("[.!?]\\s+");
+        List<ChunkingService.TextChunk> chunks = new ArrayList<>();
+        String[] blocks = text.split("\\R{2,}");
+        if (blocks.length == 1) {
+            blocks = text.split("\\R");
+        }
+        StringBuilder current = new StringBuilder();
+        String heading = null;
+        for (String block : blocks) {
+            String paragraph = block.trim();
+            if (paragraph.isEmpty()) continue;
+            if (paragraph.startsWith("#") || (paragraph.length() < 100 && paragraph.endsWith(":"))
+                || paragraph.matches("^[A-Z][A-Za-z\\s]{2,50}$")) {
+                heading = paragraph;
+            }
+            if (current.length() > 0 && current.length() + paragraph.length() + 2 > MAX_CHARS) {
+                add(chunks, current.toString(), heading);
+                String previous = current.toString();
+                int overlapSize = (int) (previous.length() * OVERLAP_PERCENT / 100.0);
+                String overlap = "";
+                if (overlapSize > 0 && previous.length() > overlapSize) {
+                    String tail = previous.substring(previous.length() - overlapSize);
+                    Matcher m = sentenceEnd.matcher(tail);
+                    overlap = m.find() ? tail.substring(m.end()) : tail;
+                }
+                if (overlap.length() + paragraph.length() + 2 > MAX_CHARS) {
+                    overlap = "";
+                }
+                current = new StringBuilder(overlap);
+            }
+            if (paragraph.length() > MAX_CHARS) {
+                for (int start = 0; start < paragraph.length(); start += MAX_CHARS) {
+                    if (current.length() > 0) {
+                        add(chunks, current.toString(), heading);
+                        current.setLength(0);
+                    }
+                    add(chunks, paragraph.substring(start, Math.min(paragraph.length(), start + MAX_CHARS)), heading);
+                }
+            } else {
+                current.append(paragraph).append("\n\n");
+            }
+        }
+        if (current.length() > 0) {
+            add(chunks, current.toString(), heading);
+        }
+        return chunks;
+    }
+
+    private static void add(List<ChunkingService.TextChunk> chunks, String content, String heading) {
+        String trimmed = content.trim();
+        if (!trimmed.isEmpty()) {
+            chunks.add(new ChunkingService.TextChunk(chunks.size(), trimmed, heading, null));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class DocumentContentStoreTest {
+
+    @Test
+    void storesTextCompressed() {
+        NamedParameterJdbcTemplate jdbc = mock(NamedParameterJdbcTemplate.class);
+        String text = "Grüße aus dem Handbuch. ".repeat(500);
+
+        new DocumentContentStore(jdbc).put(7L, text);
+
+        ArgumentCaptor<MapSqlParameterSource> params = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+        verify(jdbc).update(anyString(), params.capture());
+        byte[] content = (byte[]) params.getValue().getValue("content");
+        int length = (int) params.getValue().getValue("length");
+        assertThat(params.getValue().getValue("codec")).isEqualTo("zstd");
+        assertThat(length).isEqualTo(text.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(content.length).isLessThan(length / 20);
+        assertThat(DocumentContentStore.decode("zstd", length, content)).isEqualTo(text);
+    }
+
+    @Test
+    void readsMigratedPlainText() {
+        byte[] bytes = "Grüße".getBytes(StandardCharsets.UTF_8);
+        assertThat(DocumentContentStore.decode("plain", bytes.length, bytes)).isEqualTo("Grüße");
+    }
+}
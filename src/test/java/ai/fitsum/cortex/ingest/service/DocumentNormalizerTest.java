@@ -0,0 +1,161 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.config.OcrProperties;
+import ai.fitsum.cortex.api.config.ParserProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DocumentNormalizerTest {
+
+    private DocumentNormalizer normalizer;
+    private ChunkingService chunkingService;
+
+    @BeforeEach
+    void setUp() {
+        normalizer = new DocumentNormalizer(mock(OcrService.class), mock(PdfPageExtractor.class), mock(TikaParserPool.class));
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setChunkSizeTokens(160); // one token per char
+        chunkingService = new ChunkingService(properties, ChunkingServiceTest.CHARACTERS);
+    }
+
+    @Test
+    void convertsMarkdownStructureWithoutTika() throws Exception {
+        String md = """
+            ---
+            title: "Release notes"
+            tags: [a, b]
+            ---
+            Overview
+            ========
+
+            Some **bold** and _emphasised_ text with `code`, a [link](http://x.test) and snake_case_name.
+
+            ## Install ##
+
+            ```bash
+            # not a heading
+
+            make install
+            ```
+
+            | a | b |
+            |---|:-:|
+            | 1 | 2 |
+            """;
+
+        var doc = normalizer.normalize(md.getBytes(StandardCharsets.UTF_8), "notes.md");
+
+        assertThat(doc.title()).isEqualTo("Release notes");
+        assertThat(doc.contentType()).isEqualTo("text/x-web-markdown; charset=UTF-8");
+        assertThat(doc.text()).isEqualTo("""
+            # Overview
+
+            Some bold and emphasised text with code, a link and snake_case_name.
+
+            ## Install
+
+            ```bash
+            # not a heading
+            make install
+            ```
+
+            | a | b |
+            | 1 | 2 |""");
+        assertThat(chunkingService.chunk(doc.text(), doc.title()))
+            .extracting(ChunkingService.TextChunk::heading)
+            .containsExactly("## Install");
+    }
+
+    @Test
+    void decodesPlainTextWithSniffedCharset() throws Exception {
+        byte[] latin = "Café crème".getBytes(Charset.forName("windows-1252"));
+        var doc = normalizer.normalize(latin, "menu.txt");
+        assertThat(doc.text()).isEqualTo("Café crème");
+        assertThat(doc.contentType()).isEqualTo("text/plain; charset=windows-1252");
+        assertThat(doc.title()).isEqualTo("menu");
+
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'h', 'i'};
+        assertThat(normalizer.normalize(bom, "hi.txt").text()).isEqualTo("hi");
+    }
+
+    @Test
+    void streamsHtmlIntoChunkerWithHeadings() throws Exception {
+        String html = "<html><head><meta charset='utf-8'><title>Guide</title></head><body>"
+            + "<nav>Menu</nav><article><h1>Setup</h1><p>Run the installer.</p></article></body></html>";
+        List<ChunkingService.TextChunk> chunks = new ArrayList<>();
+        IncrementalChunker chunker = chunkingService.incremental(chunks::add);
+
+        var doc = normalizer.normalizeStreaming(
+            new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "guide.html", chunker);
+
+        assertThat(doc.title()).isEqualTo("Guide");
+        assertThat(doc.contentType()).isEqualTo("text/html; charset=UTF-8");
+        assertThat(doc.contentHash()).isEqualTo(Hashes.sha256(html));
+        assertThat(chunks).singleElement().satisfies(c -> {
+            assertThat(c.content()).isEqualTo("# Setup\n\nRun the installer.");
+            assertThat(c.heading()).isEqualTo("# Setup");
+        });
+    }
+
+    @Test
+    void extractsPdfPagesThroughTheParserPool() throws Exception {
+        ParserProperties parserProperties = new ParserProperties();
+        parserProperties.setMaxTextLength(20);
+        TikaParserPool pool = new TikaParserPool(parserProperties);
+        try {
+            DocumentNormalizer pdfNormalizer = new DocumentNormalizer(mock(OcrService.class),
+                new PdfPageExtractor(mock(OcrService.class), new OcrProperties()), pool);
+            byte[] pdf = pdf("First page", "Second page");
+
+            var doc = pdfNormalizer.normalize(pdf, "report.pdf");
+
+            assertThat(doc.pages()).hasSize(2);
+            assertThat(doc.pages().get(0)).contains("First page");
+            assertThat(doc.text()).startsWith("First page").doesNotContain("Second page");
+            assertThat(doc.metadata().get("truncated")).isEqualTo("true");
+
+            List<ChunkingService.TextChunk> chunks = new ArrayList<>();
+            var streamed = pdfNormalizer.normalizeStreaming(new ByteArrayInputStream(pdf), "report.pdf",
+                chunkingService.incremental(chunks::add));
+
+            assertThat(streamed.contentHash()).isEqualTo(Hashes.sha256(pdf));
+            assertThat(chunks).extracting(ChunkingService.TextChunk::pageNumber).startsWith(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[] pdf(String... pages) throws Exception {
+        try (PDDocument doc = new PDDocument()) {
+            for (String text : pages) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText(text);
+                    content.endText();
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentPurgerTest {
+
+    private NamedParameterJdbcTemplate jdbc;
+    private IngestionService ingestionService;
+    private final Map<Long, Integer> chunksLeft = new HashMap<>();
+    private final AtomicInteger pauses = new AtomicInteger();
+    private boolean interruptOnPause;
+    private DocumentPurger purger;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(NamedParameterJdbcTemplate.class);
+        ingestionService = mock(IngestionService.class);
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setPurgeBatchSize(1000);
+        purger = new DocumentPurger(jdbc, ingestionService, properties) {
+            @Override
+            boolean pause() {
+                pauses.incrementAndGet();
+                if (interruptOnPause) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        when(jdbc.update(startsWith("DELETE FROM chunk"), any(SqlParameterSource.class))).thenAnswer(inv -> deleteChunks(inv.getArgument(1)));
+        when(jdbc.update(startsWith("DELETE FROM document"), anyMap())).thenReturn(1);
+    }
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    void deletesChunksInBatchesAndPausesBetweenFullOnes() {
+        chunksLeft.put(1L, 2500);
+        chunksLeft.put(2L, 300);
+        chunksLeft.put(3L, 800);
+        claims(List.of(1L, 2L, 3L), List.of());
+
+        purger.purge();
+
+        // 1000 and 1000 of document 1 each pause; its 500 plus 300 and 800 add up to one more
+        assertThat(pauses).hasValue(3);
+        verify(jdbc, times(5)).update(startsWith("DELETE FROM chunk"), any(SqlParameterSource.class));
+        verify(jdbc, times(3)).update(startsWith("DELETE FROM document"), anyMap());
+        assertThat(chunksLeft.values()).containsOnly(0);
+    }
+
+    @Test
+    void interruptedPauseStopsThePurge() {
+        interruptOnPause = true;
+        chunksLeft.put(1L, 2500);
+        chunksLeft.put(2L, 10);
+        claims(List.of(1L, 2L), List.of());
+
+        purger.purge();
+
+        assertThat(pauses).hasValue(1);
+        assertThat(chunksLeft).containsEntry(1L, 1500).containsEntry(2L, 10);
+        verify(jdbc, never()).update(startsWith("DELETE FROM document"), anyMap());
+    }
+
+    @Test
+    void reindexesReleasedNearDuplicatesEvenWhenNothingIsDeleted() {
+        claims(List.of());
+
+        purger.purge();
+
+        verify(ingestionService).reindexReleasedDuplicates();
+        verify(jdbc, never()).update(startsWith("DELETE FROM chunk"), any(SqlParameterSource.class));
+    }
+
+    @Test
+    void failedReindexDoesNotStopThePurge() {
+        doThrow(new IllegalStateException("embedding server down")).when(ingestionService).reindexReleasedDuplicates();
+        chunksLeft.put(1L, 10);
+        claims(List.of(1L), List.of());
+
+        purger.purge();
+
+        verify(jdbc).update(startsWith("DELETE FROM document"), anyMap());
+    }
+
+    @SafeVarargs
+    private void claims(List<Long> first, List<Long>... more) {
+        when(jdbc.queryForList(startsWith("UPDATE document SET purge_claimed_until"), any(SqlParameterSource.class), eq(Long.class)))
+            .thenReturn(first, more);
+    }
+
+    private int deleteChunks(SqlParameterSource params) {
+        Long id = (Long) params.getValue("id");
+        int batch = (Integer) params.getValue("batch");
+        int n = Math.min(batch, chunksLeft.getOrDefault(id, 0));
+        chunksLeft.put(id, chunksLeft.getOrDefault(id, 0) - n);
+        return n;
+    }
+}
@@ -0,0 +1,190 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.repository.ChunkRepository;
+import ai.fitsum.cortex.api.repository.DocumentRepository;
+import ai.fitsum.cortex.api.service.DocumentListingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jdbc.repository.query.Query;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the {@code deleted_at} filters of the document, chunk and near-duplicate queries, and
+ * the purger, against the migrated schema in a real Postgres; skipped without Docker.
+ */
+class DocumentTombstoneTest {
+
+    private static PostgreSQLContainer<?> postgres;
+    private static DriverManagerDataSource dataSource;
+    private static NamedParameterJdbcTemplate jdbc;
+
+    private long source;
+    private long live;
+    private long deleted;
+
+    @BeforeAll
+    static void startDatabase() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+        postgres.start();
+        dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbc = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (postgres != null) postgres.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM document", Map.of());
+        source = jdbc.queryForObject("""
+            INSERT INTO source(name, source_type) VALUES ('files', 'LOCAL_FILES') RETURNING id
+            """, Map.of(), Long.class);
+        live = document("live.txt", "hash-live", false);
+        deleted = document("deleted.txt", "hash-deleted", true);
+    }
+
+    @Test
+    void chunkSearchesSkipDeletedDocuments() {
+        String embedding = Collections.nCopies(1024, "0.1").toString();
+
+        assertThat(chunkDocuments("fullTextSearch", Map.of("query", "quarterly report", "limit", 10))).containsOnly(live);
+        assertThat(chunkDocuments("vectorSearch", Map.of("embedding", embedding, "limit", 10))).containsOnly(live);
+    }
+
+    @Test
+    void documentLookupsSkipDeletedDocuments() {
+        assertThat(documentIds("findLiveById", Map.of("id", deleted))).isEmpty();
+        assertThat(documentIds("findLiveById", Map.of("id", live))).containsExactly(live);
+        assertThat(documentIds("findBySourceIdAndExternalId", Map.of("sourceId", source, "externalId", "deleted.txt"))).isEmpty();
+        assertThat(documentIds("findBySourceIdAndContentHash", Map.of("sourceId", source, "contentHash", "hash-deleted"))).isEmpty();
+        assertThat(documentIds("findRecent", Map.of("limit", 10))).containsExactly(live);
+    }
+
+    @Test
+    void listingSkipsDeletedDocuments() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DocumentListingService(jdbc, new ObjectMapper()).writeDocuments(null, 10,
+            DocumentListingService.DocumentField.parse(List.of("id", "externalId")), out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains("live.txt").doesNotContain("deleted.txt");
+    }
+
+    @Test
+    void twinLookupSkipsDeletedDocumentsAndTheirNearDuplicatesAreReleased() {
+        NearDuplicateIndex index = new NearDuplicateIndex(new CortexProperties(), jdbc);
+        int[] signature = MinHash.signature("the quarterly report for the northern region, with revenue by product line and month");
+        index.indexed(live, signature);
+        index.indexed(deleted, signature);
+        long copy = document("copy.txt", "hash-copy", false);
+        index.link(copy, new NearDuplicateIndex.Twin(deleted, "deleted.txt", 0.95));
+
+        assertThat(index.findTwin(source, signature, null)).map(NearDuplicateIndex.Twin::documentId).contains(live);
+        assertThat(index.releaseTombstoned()).isEqualTo(1);
+        assertThat(index.released(10)).containsExactly(copy);
+    }
+
+    @Test
+    void purgerRemovesDeletedDocumentsAndSkipsOnesLockedElsewhere() throws Exception {
+        long other = document("other.txt", "hash-other", true);
+        DocumentPurger purger = new DocumentPurger(jdbc, mock(IngestionService.class), new CortexProperties());
+
+        // Another node's purger is claiming "other" and holds its row lock meanwhile
+        try (Connection elsewhere = dataSource.getConnection()) {
+            elsewhere.setAutoCommit(false);
+            try (PreparedStatement lock = elsewhere.prepareStatement("SELECT id FROM document WHERE id = ? FOR UPDATE")) {
+                lock.setLong(1, other);
+                lock.executeQuery().close();
+            }
+            purger.purge();
+            elsewhere.rollback();
+        }
+
+        assertThat(jdbc.queryForList("SELECT id FROM document ORDER BY id", Map.of(), Long.class)).containsExactly(live, other);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM chunk WHERE document_id = :id", Map.of("id", other), Long.class))
+            .isEqualTo(2);
+
+        purger.purge();
+
+        assertThat(jdbc.queryForList("SELECT id FROM document ORDER BY id", Map.of(), Long.class)).containsExactly(live);
+    }
+
+    @Test
+    void documentHeldWhileStreamingIsHiddenAndNotPurgedUntilReleased() {
+        long streaming = document("streaming.txt", "hash-streaming", false);
+        DocumentPurger purger = new DocumentPurger(jdbc, mock(IngestionService.class), new CortexProperties());
+
+        jdbc.update(sql(DocumentRepository.class, "holdUnpublished"), Map.of("id", streaming, "leaseSeconds", 60));
+        purger.purge();
+
+        assertThat(documentIds("findLiveById", Map.of("id", streaming))).isEmpty();
+        assertThat(jdbc.queryForList("SELECT id FROM document ORDER BY id", Map.of(), Long.class)).contains(streaming);
+
+        jdbc.update(sql(DocumentRepository.class, "releaseUnpublished"), Map.of("id", streaming));
+        purger.purge();
+
+        assertThat(jdbc.queryForList("SELECT id FROM document ORDER BY id", Map.of(), Long.class)).doesNotContain(streaming);
+    }
+
+    private long document(String externalId, String hash, boolean tombstoned) {
+        long id = jdbc.queryForObject("""
+            INSERT INTO document(source_id, external_id, title, content_hash, deleted_at)
+            VALUES (:source, :externalId, :externalId, :hash, CASE WHEN :tombstoned THEN NOW() END)
+            RETURNING id
+            """, Map.of("source", source, "externalId", externalId, "hash", hash, "tombstoned", tombstoned), Long.class);
+        for (int i = 0; i < 2; i++) {
+            jdbc.update("""
+                INSERT INTO chunk(document_id, chunk_index, content, content_hash, embedding)
+                VALUES (:id, :index, 'the quarterly report', :hash, CAST(:embedding AS vector))
+                """, Map.of("id", id, "index", i, "hash", hash + i,
+                    "embedding", Collections.nCopies(1024, "0.1").toString()));
+        }
+        return id;
+    }
+
+    private List<Long> chunkDocuments(String method, Map<String, ?> params) {
+        return jdbc.queryForList(sql(ChunkRepository.class, method), params).stream()
+            .map(row -> ((Number) row.get("document_id")).longValue())
+            .toList();
+    }
+
+    private List<Long> documentIds(String method, Map<String, ?> params) {
+        return jdbc.queryForList(sql(DocumentRepository.class, method), params).stream()
+            .map(row -> ((Number) row.get("id")).longValue())
+            .toList();
+    }
+
+    /** The SQL of a repository method, run here without a Spring Data context. */
+    private static String sql(Class<?> repository, String method) {
+        return Arrays.stream(repository.getMethods())
+            .filter(m -> m.getName().equals(method))
+            .findFirst()
+            .map(m -> m.getAnnotation(Query.class).value())
+            .orElseThrow();
+    }
+}
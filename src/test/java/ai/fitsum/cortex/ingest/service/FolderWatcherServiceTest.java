@@ -0,0 +1,129 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.WatcherProperties;
+import ai.fitsum.cortex.api.repository.WatcherDeadLetterRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class FolderWatcherServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final IngestionService ingestionService = mock(IngestionService.class);
+    private final WatcherDeadLetterRepository deadLetters = mock(WatcherDeadLetterRepository.class);
+    private FolderWatcherService service;
+
+    @BeforeEach
+    void setUp() {
+        WatcherProperties props = new WatcherProperties();
+        props.setEnabled(true);
+        props.setRoot(root.toString());
+        props.setConcurrency(2);
+        props.setMaxAttempts(3);
+        props.setRetryBackoff(Duration.ofMillis(10));
+        service = new FolderWatcherService(props, ingestionService, deadLetters, null, mock(NamedParameterJdbcTemplate.class));
+    }
+
+    private FolderWatcherService withProcessedRoot(Path processed) {
+        service.stopWatching();
+        WatcherProperties props = new WatcherProperties();
+        props.setEnabled(true);
+        props.setRoot(root.toString());
+        props.setProcessedRoot(processed.toString());
+        return new FolderWatcherService(props, ingestionService, deadLetters, null, mock(NamedParameterJdbcTemplate.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stopWatching();
+    }
+
+    @Test
+    void retriesTransientFailuresAndParksPermanentOnes() throws Exception {
+        Files.writeString(root.resolve("flaky.md"), "flaky");
+        Files.writeString(root.resolve("broken.md"), "broken");
+        when(ingestionService.ingestLocalPath(any(), eq("watch:flaky.md"), anyString()))
+            .thenThrow(new TransientAiException("embedding server busy"))
+            .thenReturn(new IngestionResult(1L, "flaky", "flaky.md", 5, Instant.now(), false));
+        when(ingestionService.ingestLocalPath(any(), eq("watch:broken.md"), anyString()))
+            .thenThrow(new IllegalStateException("corrupt file"));
+
+        assertThat(service.scanNow()).isTrue();
+
+        verify(ingestionService, timeout(5_000).times(2)).ingestLocalPath(any(), eq("watch:flaky.md"), anyString());
+        verify(deadLetters).park(eq(root.resolve("broken.md").toAbsolutePath().toString()), eq(1), contains("corrupt file"));
+        verify(deadLetters, never()).park(contains("flaky.md"), anyInt(), any());
+
+        // The parked file is skipped until it changes
+        service.scanNow();
+        verify(ingestionService, times(1)).ingestLocalPath(any(), eq("watch:broken.md"), anyString());
+    }
+
+    @Test
+    void touchedFilesWithUnchangedContentAreNotReingested() throws Exception {
+        Path file = Files.writeString(root.resolve("notes.md"), "notes");
+        when(ingestionService.ingestLocalPath(any(), eq("watch:notes.md"), anyString()))
+            .thenReturn(new IngestionResult(1L, "notes", "notes.md", 5, Instant.now(), false));
+        service.scanNow();
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        service.scanNow();
+        verify(ingestionService, times(1)).ingestLocalPath(any(), any(), any());
+
+        Files.writeString(file, "edited");
+        service.scanNow();
+        verify(ingestionService).ingestLocalPath(any(), eq("watch:notes.md"), eq(Hashes.sha256("edited")));
+    }
+
+    @Test
+    void processedFilesAreMovedWithoutDeletingTheirDocument(@TempDir Path processed) throws Exception {
+        service = withProcessedRoot(processed);
+        Files.writeString(root.resolve("notes.md"), "notes");
+        when(ingestionService.ingestLocalPath(any(), eq("watch:notes.md"), anyString()))
+            .thenReturn(new IngestionResult(1L, "notes", "notes.md", 5, Instant.now(), false));
+
+        service.scanNow();
+        service.scanNow();
+
+        assertThat(processed.resolve("notes.md")).hasContent("notes");
+        assertThat(root.resolve("notes.md")).doesNotExist();
+        verify(ingestionService, never()).deleteLocalFiles(any());
+    }
+
+    @Test
+    void fileThatCannotBeMovedStaysTracked(@TempDir Path elsewhere) throws Exception {
+        // A regular file where the processed root should be: every move fails
+        service = withProcessedRoot(Files.writeString(elsewhere.resolve("not-a-directory"), ""));
+        Files.writeString(root.resolve("notes.md"), "notes");
+        when(ingestionService.ingestLocalPath(any(), eq("watch:notes.md"), anyString()))
+            .thenReturn(new IngestionResult(1L, "notes", "notes.md", 5, Instant.now(), false));
+
+        service.scanNow();
+        service.scanNow();
+
+        assertThat(root.resolve("notes.md")).exists();
+        verify(ingestionService, times(1)).ingestLocalPath(any(), any(), any());
+    }
+
+    @Test
+    void classifiesFailuresByCauseChain() {
+        assertThat(Failures.isTransient(new RuntimeException(new java.net.ConnectException()))).isTrue();
+        assertThat(Failures.isTransient(new IllegalArgumentException("bad pdf"))).isFalse();
+    }
+}
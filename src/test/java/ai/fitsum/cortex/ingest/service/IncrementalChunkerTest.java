@@ -0,0 +1,73 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalChunkerTest {
+
+    private ChunkingService chunkingService;
+
+    @BeforeEach
+    void setUp() {
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setChunkSizeTokens(160); // one token per char
+        chunkingService = new ChunkingService(properties, ChunkingServiceTest.CHARACTERS);
+    }
+
+    @Test
+    void matchesBatchChunkingForParagraphText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("Paragraph ").append(i).append(" talks about topic ").append(i)
+                .append(". It has a second sentence.\n\n");
+        }
+
+        List<ChunkingService.TextChunk> streamed = new ArrayList<>();
+        IncrementalChunker chunker = chunkingService.incremental(streamed::add);
+        String s = text.toString();
+        for (int i = 0; i < s.length(); i += 7) {
+            chunker.write(s.toCharArray(), i, Math.min(7, s.length() - i));
+        }
+        chunker.finish();
+
+        assertThat(streamed).isEqualTo(chunkingService.chunk(s, "doc"));
+        assertThat(chunker.charCount()).isEqualTo(s.length());
+    }
+
+    @Test
+    void emitsBoundedChunksForGiantSingleLine() {
+        List<ChunkingService.TextChunk> streamed = new ArrayList<>();
+        IncrementalChunker chunker = chunkingService.incremental(streamed::add);
+        char[] piece = "abcdefghij".toCharArray();
+        for (int i = 0; i < 1_000; i++) {
+            chunker.write(piece, 0, piece.length);
+        }
+        chunker.finish();
+
+        assertThat(streamed).isNotEmpty();
+        assertThat(streamed).allSatisfy(c -> assertThat(c.content().length()).isLessThanOrEqualTo(160));
+        assertThat(streamed.stream().mapToInt(c -> c.content().length()).sum()).isEqualTo(10_000);
+        for (int i = 0; i < streamed.size(); i++) {
+            assertThat(streamed.get(i).index()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void chunkPagesCarriesStartingPageNumber() {
+        String longPage = "Sentence about page two that keeps going for a while. ".repeat(5);
+        List<ChunkingService.TextChunk> chunks = chunkingService.chunkPages(
+            List.of("Short first page.", "", longPage, "Fourth page text."), "doc");
+
+        assertThat(chunks).isNotEmpty();
+        assertThat(chunks.get(0).pageNumber()).isEqualTo(1);
+        assertThat(chunks.get(0).content()).startsWith("Short first page.");
+        assertThat(chunks).extracting(ChunkingService.TextChunk::pageNumber).contains(3);
+        assertThat(chunks.get(chunks.size() - 1).content()).endsWith("Fourth page text.");
+    }
+}
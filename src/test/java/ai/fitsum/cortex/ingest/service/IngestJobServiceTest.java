@@ -0,0 +1,190 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.domain.IngestJob;
+import ai.fitsum.cortex.api.domain.IngestJobItem;
+import ai.fitsum.cortex.api.repository.ChunkRepository;
+import ai.fitsum.cortex.api.repository.IngestJobItemRepository;
+import ai.fitsum.cortex.api.repository.IngestJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestJobServiceTest {
+
+    @TempDir
+    private Path stagingDir;
+
+    private IngestJobRepository jobRepository;
+    private IngestJobItemRepository itemRepository;
+    private IngestQueue queue;
+    private IngestionService ingestionService;
+    private PlatformTransactionManager transactionManager;
+    private IngestJobService service;
+
+    @BeforeEach
+    void setUp() {
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setStagingDir(stagingDir.toString());
+        jobRepository = mock(IngestJobRepository.class);
+        itemRepository = mock(IngestJobItemRepository.class);
+        queue = mock(IngestQueue.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        ingestionService = mock(IngestionService.class);
+        service = new IngestJobService(ingestionService, new UploadStager(properties), jobRepository,
+            itemRepository, mock(ChunkRepository.class), queue, new TransactionTemplate(transactionManager), properties);
+
+        when(jobRepository.save(any(IngestJob.class))).thenAnswer(inv -> {
+            IngestJob job = inv.getArgument(0);
+            return new IngestJob(11L, job.status(), job.createdBy(), job.totalFiles(), 0, 0,
+                job.createdAt(), job.updatedAt(), null);
+        });
+    }
+
+    @Test
+    void submit_recordsJobItemsAndTasksInOneTransaction() throws Exception {
+        AtomicLong ids = new AtomicLong(100);
+        when(itemRepository.save(any(IngestJobItem.class))).thenAnswer(inv -> withId(inv.getArgument(0), ids.incrementAndGet()));
+
+        IngestJob job = service.submit(List.of(upload("a.txt"), upload("b.txt")), "alice");
+
+        assertThat(job.id()).isEqualTo(11L);
+        verify(queue).enqueue(eq(IngestJobService.JOB_ITEM), eq(Map.of("itemId", "101")), isNull(), eq(IngestQueue.PRIORITY_BATCH), anyBoolean());
+        verify(queue).enqueue(eq(IngestJobService.JOB_ITEM), eq(Map.of("itemId", "102")), isNull(), eq(IngestQueue.PRIORITY_BATCH), anyBoolean());
+        verify(transactionManager).commit(any());
+        try (var staged = Files.list(stagingDir)) {
+            assertThat(staged).hasSize(2);
+        }
+    }
+
+    @Test
+    void submit_failureAfterTheJobRowRollsBackAndDiscardsUploads() throws Exception {
+        when(itemRepository.save(any(IngestJobItem.class)))
+            .thenAnswer(inv -> withId(inv.getArgument(0), 101L))
+            .thenThrow(new IllegalStateException("connection reset"));
+
+        assertThatThrownBy(() -> service.submit(List.of(upload("a.txt"), upload("b.txt")), "alice"))
+            .isInstanceOf(IllegalStateException.class);
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        try (var staged = Files.list(stagingDir)) {
+            assertThat(staged).isEmpty();
+        }
+    }
+
+    @Test
+    void jobItemKeepsItsUploadWhileTransientFailuresAreRetried() throws Exception {
+        Path staged = Files.writeString(stagingDir.resolve("upload-1.part"), "contents");
+        IngestJobItem item = withId(IngestJobItem.queued(11L, "a.txt", staged.toString(), "hash", 8), 101L);
+        when(itemRepository.markRunning(101L)).thenReturn(1);
+        when(itemRepository.findById(101L)).thenReturn(Optional.of(item));
+        when(ingestionService.ingestStagedFile(staged, "a.txt", "hash")).thenThrow(new TransientAiException("busy"));
+        IngestQueue.Handler handler = handler(IngestJobService.JOB_ITEM);
+
+        assertThatThrownBy(() -> handler.handle(task(101L, 1))).isInstanceOf(TransientAiException.class);
+        assertThat(staged).exists();
+        verify(itemRepository, never()).markFinished(any(), any(), any(), any(), any());
+
+        assertThatThrownBy(() -> handler.handle(task(101L, 3))).isInstanceOf(TransientAiException.class);
+        assertThat(staged).doesNotExist();
+        verify(itemRepository).markFinished(eq(101L), eq("FAILED"), isNull(), isNull(), eq("busy"));
+        verify(jobRepository).recordItemFinished(11L, 0, 1);
+    }
+
+    @Test
+    void finishedItemAndJobCountersAreWrittenInOneTransaction() throws Exception {
+        Path staged = Files.writeString(stagingDir.resolve("upload-2.part"), "contents");
+        IngestJobItem item = withId(IngestJobItem.queued(11L, "a.txt", staged.toString(), "hash", 8), 101L);
+        when(itemRepository.markRunning(101L)).thenReturn(1);
+        when(itemRepository.findById(101L)).thenReturn(Optional.of(item));
+        when(ingestionService.ingestStagedFile(staged, "a.txt", "hash"))
+            .thenReturn(new IngestionResult(5L, "a.txt", "hash", 1, Instant.now(), false));
+        when(jobRepository.recordItemFinished(11L, 1, 0)).thenThrow(new IllegalStateException("connection reset"));
+
+        assertThatThrownBy(() -> handler(IngestJobService.JOB_ITEM).handle(task(101L, 3)))
+            .isInstanceOf(IllegalStateException.class);
+
+        // The DONE update is rolled back with the failed counter update; the item is then failed as a whole
+        InOrder order = inOrder(transactionManager, itemRepository, jobRepository);
+        order.verify(itemRepository).markFinished(101L, "DONE", 5L, 0, null);
+        order.verify(jobRepository).recordItemFinished(11L, 1, 0);
+        order.verify(transactionManager).rollback(any());
+        order.verify(itemRepository).markFinished(eq(101L), eq("FAILED"), isNull(), isNull(), eq("connection reset"));
+        order.verify(jobRepository).recordItemFinished(11L, 0, 1);
+        order.verify(transactionManager).commit(any());
+        assertThat(staged).doesNotExist();
+    }
+
+    @Test
+    void itemWhoseLastAttemptExpiredIsFailedAndCounted() throws Exception {
+        Path staged = Files.writeString(stagingDir.resolve("upload-3.part"), "contents");
+        IngestJobItem item = withId(IngestJobItem.queued(11L, "a.txt", staged.toString(), "hash", 8), 101L);
+        when(itemRepository.findById(101L)).thenReturn(Optional.of(item));
+        when(itemRepository.markFailedIfUnfinished(101L, "lease of node-1 expired")).thenReturn(1, 0);
+        IngestQueue.Task expired = new IngestQueue.Task(1L, IngestJobService.JOB_ITEM, Map.of("itemId", "101"),
+            IngestQueue.PRIORITY_BATCH, null, IngestQueue.Status.FAILED, 3, 3, null, "lease of node-1 expired", true, null, null);
+
+        expiryHandler(IngestJobService.JOB_ITEM).expired(expired);
+        expiryHandler(IngestJobService.JOB_ITEM).expired(expired);
+
+        verify(jobRepository).recordItemFinished(11L, 0, 1);
+        verify(transactionManager, times(2)).commit(any());
+        assertThat(staged).doesNotExist();
+    }
+
+    private IngestQueue.Handler handler(String kind) {
+        ArgumentCaptor<IngestQueue.Handler> handler = ArgumentCaptor.forClass(IngestQueue.Handler.class);
+        verify(queue).register(eq(kind), handler.capture(), any());
+        return handler.getValue();
+    }
+
+    private IngestQueue.ExpiryHandler expiryHandler(String kind) {
+        ArgumentCaptor<IngestQueue.ExpiryHandler> handler = ArgumentCaptor.forClass(IngestQueue.ExpiryHandler.class);
+        verify(queue).register(eq(kind), any(), handler.capture());
+        return handler.getValue();
+    }
+
+    private static IngestQueue.Task task(Long itemId, int attempt) {
+        return new IngestQueue.Task(1L, IngestJobService.JOB_ITEM, Map.of("itemId", itemId.toString()),
+            IngestQueue.PRIORITY_BATCH, null, IngestQueue.Status.RUNNING, attempt, 3, null, null, null, null, null);
+    }
+
+    private static MockMultipartFile upload(String name) {
+        return new MockMultipartFile("files", name, "text/plain", ("contents of " + name).getBytes());
+    }
+
+    private static IngestJobItem withId(IngestJobItem item, long id) {
+        return new IngestJobItem(id, item.jobId(), item.filename(), item.stagedPath(), item.contentHash(),
+            item.sizeBytes(), item.status(), null, null, null, null, null, item.createdAt());
+    }
+}
@@ -0,0 +1,206 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the queue against {@code ingest_task} in a real Postgres; skipped without Docker.
+ */
+class IngestQueueTest {
+
+    private static PostgreSQLContainer<?> postgres;
+    private static NamedParameterJdbcTemplate jdbc;
+
+    private IngestQueue queue;
+
+    @BeforeAll
+    static void startDatabase() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+        postgres.start();
+        var dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V11__ingest_task.sql"),
+            new ClassPathResource("db/migration/V16__ingest_task_transient_failure.sql"),
+            new ClassPathResource("db/migration/V19__ingest_host.sql")).execute(dataSource);
+        jdbc = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (postgres != null) postgres.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbc.update("DELETE FROM ingest_task", Map.of());
+        jdbc.update("DELETE FROM ingest_host", Map.of());
+        CortexProperties properties = new CortexProperties();
+        properties.getIngestion().setQueueWorkers(1);
+        properties.getIngestion().setQueueMaxAttempts(3);
+        properties.getIngestion().setQueueRetryBackoff(Duration.ofMillis(10));
+        properties.getIngestion().setQueuePollInterval(Duration.ofMillis(50));
+        queue = new IngestQueue(jdbc, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    void claimsAndFinishesTasks() throws Exception {
+        queue.register("TEST", task -> Long.valueOf(task.payload().get("doc")));
+        queue.start();
+
+        long id = queue.enqueue("TEST", Map.of("doc", "42"), null, IngestQueue.PRIORITY_INTERACTIVE, false);
+
+        IngestQueue.Task task = queue.await(id, Duration.ofSeconds(10)).orElseThrow();
+        assertThat(task.status()).isEqualTo(IngestQueue.Status.DONE);
+        assertThat(task.documentId()).isEqualTo(42L);
+        assertThat(task.attempts()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesTransientFailures() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        queue.register("TEST", task -> {
+            if (calls.incrementAndGet() == 1) throw new TransientAiException("embedding server busy");
+            return 7L;
+        });
+        queue.start();
+
+        long id = queue.enqueue("TEST", Map.of(), null, IngestQueue.PRIORITY_INTERACTIVE, false);
+
+        IngestQueue.Task task = queue.await(id, Duration.ofSeconds(10)).orElseThrow();
+        assertThat(task.status()).isEqualTo(IngestQueue.Status.DONE);
+        assertThat(task.attempts()).isEqualTo(2);
+    }
+
+    @Test
+    void recordsWhetherAFailureWasTransient() throws Exception {
+        queue.register("BAD", task -> { throw new IllegalArgumentException("nothing to extract"); });
+        queue.register("BUSY", task -> { throw new TransientAiException("embedding server busy"); });
+        queue.start();
+
+        long bad = queue.enqueue("BAD", Map.of(), null, IngestQueue.PRIORITY_INTERACTIVE, false);
+        long busy = queue.enqueue("BUSY", Map.of(), null, IngestQueue.PRIORITY_INTERACTIVE, false);
+
+        IngestQueue.Task badTask = queue.await(bad, Duration.ofSeconds(10)).orElseThrow();
+        IngestQueue.Task busyTask = queue.await(busy, Duration.ofSeconds(10)).orElseThrow();
+        assertThat(badTask.isPermanentFailure()).isTrue();
+        assertThat(busyTask.status()).isEqualTo(IngestQueue.Status.FAILED);
+        assertThat(busyTask.attempts()).isEqualTo(3);
+        assertThat(busyTask.isPermanentFailure()).isFalse();
+    }
+
+    @Test
+    void takesBackTasksWhoseLeaseExpired() {
+        long id = insertRunning("crashed-node", "file:a", 1);
+
+        queue.maintain();
+
+        IngestQueue.Task task = queue.find(id).orElseThrow();
+        assertThat(task.status()).isEqualTo(IngestQueue.Status.QUEUED);
+        assertThat(task.lastError()).contains("lease of crashed-node expired");
+    }
+
+    @Test
+    void expiredTaskWhoseKeyIsQueuedAgainIsSuperseded() {
+        long crashed = insertRunning("crashed-node", "file:a", 1);
+        long queued = queue.enqueue("TEST", Map.of(), "file:a", IngestQueue.PRIORITY_BACKGROUND, false);
+        long other = insertRunning("crashed-node", "file:b", 1);
+
+        queue.maintain();
+
+        assertThat(queue.find(crashed).orElseThrow().status()).isEqualTo(IngestQueue.Status.DONE);
+        assertThat(queue.find(crashed).orElseThrow().lastError()).isEqualTo(IngestQueue.SUPERSEDED);
+        assertThat(queue.find(queued).orElseThrow().status()).isEqualTo(IngestQueue.Status.QUEUED);
+        assertThat(queue.find(other).orElseThrow().status()).isEqualTo(IngestQueue.Status.QUEUED);
+    }
+
+    @Test
+    void failedTaskWhoseKeyIsQueuedAgainIsNotRequeued() throws Exception {
+        long[] requeued = new long[1];
+        AtomicInteger calls = new AtomicInteger();
+        queue.register("TEST", task -> {
+            if (calls.incrementAndGet() > 1) return 1L;
+            // The file changed again while it was being ingested
+            requeued[0] = queue.enqueue("TEST", Map.of(), "file:a", IngestQueue.PRIORITY_BACKGROUND, false);
+            throw new TransientAiException("embedding server busy");
+        });
+        long id = queue.enqueue("TEST", Map.of(), "file:a", IngestQueue.PRIORITY_BACKGROUND, false);
+        queue.start();
+
+        IngestQueue.Task task = queue.await(id, Duration.ofSeconds(10)).orElseThrow();
+        assertThat(task.status()).isEqualTo(IngestQueue.Status.DONE);
+        assertThat(task.lastError()).isEqualTo(IngestQueue.SUPERSEDED);
+        assertThat(requeued[0]).isNotEqualTo(id);
+    }
+
+    @Test
+    void taskWhoseLeaseExpiredOnTheLastAttemptFailsAndIsHandedToItsKind() {
+        List<IngestQueue.Task> expired = new ArrayList<>();
+        queue.register("TEST", task -> 1L, expired::add);
+        long id = insertRunning("crashed-node", "file:last", 3);
+
+        queue.maintain();
+        queue.maintain();
+
+        IngestQueue.Task task = queue.find(id).orElseThrow();
+        assertThat(task.status()).isEqualTo(IngestQueue.Status.FAILED);
+        assertThat(expired).singleElement().satisfies(t -> {
+            assertThat(t.id()).isEqualTo(id);
+            assertThat(t.lastError()).contains("lease of crashed-node expired");
+        });
+    }
+
+    @Test
+    void unpinsQueuedTasksOfHostsThatStoppedHeartbeating() {
+        long gone = insertPinned("gone-host", "10 minutes");
+        long fresh = insertPinned("gone-host", "1 second");
+        jdbc.update("INSERT INTO ingest_host(host, heartbeat_at) VALUES ('live-host', NOW())", Map.of());
+        long live = insertPinned("live-host", "10 minutes");
+
+        queue.maintain();
+
+        assertThat(queue.find(gone).orElseThrow().pinnedHost()).isNull();
+        assertThat(queue.find(fresh).orElseThrow().pinnedHost()).isEqualTo("gone-host");
+        assertThat(queue.find(live).orElseThrow().pinnedHost()).isEqualTo("live-host");
+    }
+
+    private long insertPinned(String host, String age) {
+        return jdbc.queryForObject("""
+            INSERT INTO ingest_task(kind, payload, pinned_host, max_attempts, created_at)
+            VALUES ('TEST', '{}', :host, 3, NOW() - CAST(:age AS INTERVAL))
+            RETURNING id
+            """, Map.of("host", host, "age", age), Long.class);
+    }
+
+    private long insertRunning(String owner, String dedupeKey, int attempts) {
+        return jdbc.queryForObject("""
+            INSERT INTO ingest_task(kind, payload, dedupe_key, status, attempts, max_attempts, lease_owner, lease_expires_at)
+            VALUES ('TEST', '{}', :key, 'RUNNING', :attempts, 3, :owner, NOW() - INTERVAL '1 minute')
+            RETURNING id
+            """, Map.of("key", dedupeKey, "attempts", attempts, "owner", owner), Long.class);
+    }
+}
@@ -0,0 +1,267 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.CortexProperties;
+import ai.fitsum.cortex.api.domain.Chunk;
+import ai.fitsum.cortex.api.domain.Document;
+import ai.fitsum.cortex.api.domain.Source;
+import ai.fitsum.cortex.api.repository.ChunkRepository;
+import ai.fitsum.cortex.api.repository.DocumentRepository;
+import ai.fitsum.cortex.api.repository.SourceRepository;
+import org.apache.tika.metadata.Metadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionServiceTest {
+
+    @Mock
+    private DocumentNormalizer documentNormalizer;
+
+    @Mock
+    private ChunkingService chunkingService;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ChunkRepository chunkRepository;
+
+    @Mock
+    private SourceRepository sourceRepository;
+
+    @Mock
+    private NearDuplicateIndex nearDuplicates;
+
+    @Mock
+    private DocumentContentStore contents;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path stagingDir;
+
+    private CortexProperties properties;
+    private IngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CortexProperties();
+        properties.getIngestion().setStagingDir(stagingDir.toString());
+        service = new IngestionService(
+            documentNormalizer, chunkingService, new EmbeddingTokenizer(properties), embeddingModel,
+            documentRepository, chunkRepository, sourceRepository, properties, nearDuplicates,
+            contents, new UploadStager(properties), new TransactionTemplate(transactionManager)
+        );
+        ReflectionTestUtils.setField(service, "embeddingDimensions", 4);
+        when(sourceRepository.findBySourceType("LOCAL_FILES"))
+            .thenReturn(List.of(new Source(7L, "Local Files", Source.SourceType.LOCAL_FILES, null, true, null, null, null)));
+    }
+
+    @Test
+    void ingestOrUpdate_onlyEmbedsChangedChunks() throws Exception {
+        byte[] bytes = "new".getBytes(StandardCharsets.UTF_8);
+        when(documentNormalizer.normalize(bytes, "notes.md", null))
+            .thenReturn(new DocumentNormalizer.NormalizedDocument("notes", "kept\n\nadded", "text/markdown", "hash-new", new Metadata()));
+        Document stored = new Document(42L, 7L, "dir/notes.md", "notes", "hash-old", "text/markdown", null,
+            LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now());
+        when(documentRepository.findBySourceIdAndExternalId(7L, "dir/notes.md")).thenReturn(Optional.of(stored));
+        when(documentRepository.findBySourceIdAndContentHash(7L, "hash-new")).thenReturn(Optional.empty());
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(chunkingService.chunk("kept\n\nadded", "notes")).thenReturn(List.of(
+            new ChunkingService.TextChunk(0, "kept", null, null),
+            new ChunkingService.TextChunk(1, "added", null, null)
+        ));
+        when(chunkRepository.findByDocumentId(42L)).thenReturn(List.of(
+            storedChunk(100L, 0, "kept"),
+            storedChunk(101L, 1, "removed")
+        ));
+        when(embeddingModel.embed("added")).thenReturn(new float[4]);
+
+        IngestionResult result = service.ingestOrUpdateLocalFile(bytes, "notes.md", "dir/notes.md");
+
+        assertThat(result.documentId()).isEqualTo(42L);
+        assertThat(result.duplicate()).isFalse();
+        verify(embeddingModel, times(1)).embed(anyString());
+        ArgumentCaptor<Chunk> saved = ArgumentCaptor.forClass(Chunk.class);
+        verify(chunkRepository).save(saved.capture());
+        assertThat(saved.getValue().content()).isEqualTo("added");
+        assertThat(saved.getValue().chunkIndex()).isEqualTo(1);
+        assertThat(saved.getValue().tokenCount()).isNull(); // estimated without a vocabulary, so not stored
+        verify(chunkRepository).deleteByIdIn(new Long[]{101L});
+        verify(chunkRepository, never()).updatePosition(anyLong(), anyInt(), any(), any());
+    }
+
+    @Test
+    void ingestOrUpdate_unchangedContentIsDuplicate() throws Exception {
+        byte[] bytes = "same".getBytes(StandardCharsets.UTF_8);
+        when(documentNormalizer.normalize(bytes, "a.txt", null))
+            .thenReturn(new DocumentNormalizer.NormalizedDocument("a", "same", "text/plain", "hash-same", new Metadata()));
+        Document stored = new Document(5L, 7L, "a.txt", "a", "hash-same", "text/plain", null,
+            LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now());
+        when(documentRepository.findBySourceIdAndExternalId(7L, "a.txt")).thenReturn(Optional.of(stored));
+
+        IngestionResult result = service.ingestOrUpdateLocalFile(bytes, "a.txt", "a.txt");
+
+        assertThat(result.duplicate()).isTrue();
+        verifyNoInteractions(embeddingModel, chunkingService);
+        verify(documentRepository, never()).save(any());
+    }
+
+    @Test
+    void ingestLocalPath_knownHashSkipsParsing(@TempDir Path dir) throws Exception {
+        Path file = Files.writeString(dir.resolve("a.txt"), "same");
+        String hash = Hashes.sha256(file);
+        assertThat(hash).isEqualTo(Hashes.sha256("same"));
+        Document stored = new Document(5L, 7L, "a.txt", "a", hash, "text/plain", null,
+            LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now());
+        when(documentRepository.findBySourceIdAndExternalId(7L, "a.txt")).thenReturn(Optional.of(stored));
+
+        IngestionResult result = service.ingestLocalPath(file, "a.txt", hash);
+
+        assertThat(result.duplicate()).isTrue();
+        assertThat(result.documentId()).isEqualTo(5L);
+        verifyNoInteractions(documentNormalizer, embeddingModel, chunkingService);
+    }
+
+    @Test
+    void ingestLocalFileStreaming_twinIsAnsweredBeforeParsing() throws Exception {
+        byte[] bytes = "same text".getBytes(StandardCharsets.UTF_8);
+        Document twin = new Document(9L, 7L, "other.txt", "other", Hashes.sha256(bytes), "text/plain", null,
+            LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now());
+        when(documentRepository.findBySourceIdAndExternalId(7L, "big.txt")).thenReturn(Optional.empty());
+        when(documentRepository.findBySourceIdAndContentHash(7L, Hashes.sha256(bytes))).thenReturn(Optional.of(twin));
+
+        IngestionResult result = service.ingestLocalFileStreaming(new java.io.ByteArrayInputStream(bytes), "big.txt", "big.txt", bytes.length);
+
+        assertThat(result.duplicate()).isTrue();
+        assertThat(result.documentId()).isEqualTo(9L);
+        verifyNoInteractions(documentNormalizer, embeddingModel, chunkingService);
+        verify(documentRepository, never()).save(any());
+        try (var staged = Files.list(stagingDir)) {
+            assertThat(staged).isEmpty();
+        }
+    }
+
+    @Test
+    void ingestLocalFileStreaming_streamOfUnknownSizeIsStagedAndDiscarded() throws Exception {
+        byte[] bytes = "same text".getBytes(StandardCharsets.UTF_8);
+        Document twin = new Document(9L, 7L, "other.txt", "other", Hashes.sha256(bytes), "text/plain", null,
+            LocalDateTime.now(), LocalDateTime.now(), LocalDateTime.now());
+        when(documentRepository.findBySourceIdAndContentHash(7L, Hashes.sha256(bytes))).thenReturn(Optional.of(twin));
+
+        IngestionResult result = service.ingestLocalFileStreaming(new java.io.ByteArrayInputStream(bytes), "big.txt", "big.txt", -1);
+
+        assertThat(result.documentId()).isEqualTo(9L);
+        verifyNoInteractions(documentNormalizer);
+        try (var staged = Files.list(stagingDir)) {
+            assertThat(staged).isEmpty();
+        }
+    }
+
+    @Test
+    void streamedDocumentIsHiddenWhileItsChunksAreCommittedInBatches(@TempDir Path dir) throws Exception {
+        properties.getIngestion().setStreamingThreshold(DataSize.ofBytes(1));
+        Path file = Files.writeString(dir.resolve("big.txt"), "big");
+        String hash = Hashes.sha256(file);
+        stubNewDocument(50L);
+        List<Integer> batches = streamChunks(file, hash, 40, null);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[4]);
+
+        IngestionResult result = service.ingestStagedFile(file, "big.txt", hash);
+
+        assertThat(result.documentId()).isEqualTo(50L);
+        assertThat(result.duplicate()).isFalse();
+        var inOrder = inOrder(documentRepository, chunkRepository);
+        inOrder.verify(documentRepository).holdUnpublished(eq(50L), anyLong());
+        inOrder.verify(chunkRepository, times(2)).saveAll(any());
+        inOrder.verify(documentRepository).publish(50L);
+        assertThat(batches).containsExactly(32, 8);
+        verify(chunkRepository, never()).save(any());
+        verify(documentRepository, never()).releaseUnpublished(any());
+    }
+
+    @Test
+    void failedStreamHandsItsHiddenDocumentToThePurger(@TempDir Path dir) throws Exception {
+        properties.getIngestion().setStreamingThreshold(DataSize.ofBytes(1));
+        Path file = Files.writeString(dir.resolve("big.txt"), "big");
+        String hash = Hashes.sha256(file);
+        stubNewDocument(50L);
+        streamChunks(file, hash, 2, new IOException("truncated archive"));
+        when(embeddingModel.embed(anyString())).thenReturn(new float[4]);
+
+        assertThatThrownBy(() -> service.ingestStagedFile(file, "big.txt", hash)).hasMessage("truncated archive");
+
+        verify(documentRepository).releaseUnpublished(50L);
+        verify(documentRepository, never()).publish(any());
+    }
+
+    private void stubNewDocument(Long id) {
+        when(documentRepository.save(any(Document.class))).thenAnswer(inv -> {
+            Document d = inv.getArgument(0);
+            return d.id() != null ? d : new Document(id, d.sourceId(), d.externalId(), d.title(), d.contentHash(),
+                d.contentType(), d.metadataJson(), d.indexedAt(), d.updatedAt(), d.createdAt());
+        });
+        when(documentRepository.holdUnpublished(eq(id), anyLong())).thenReturn(1);
+    }
+
+    /**
+     * Has the streaming parse of {@code file} hand {@code count} chunks to the chunker's sink,
+     * then fail with {@code error} if given; returns the sizes of the chunk batches saved.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Integer> streamChunks(Path file, String hash, int count, Exception error) throws Exception {
+        Consumer<ChunkingService.TextChunk>[] sink = new Consumer[1];
+        when(chunkingService.incremental(any())).thenAnswer(inv -> {
+            sink[0] = inv.getArgument(0);
+            return null;
+        });
+        when(documentNormalizer.normalizeStreaming(any(), eq(file.getFileName().toString()), any(), eq(hash))).thenAnswer(inv -> {
+            IntStream.range(0, count).forEach(i -> sink[0].accept(new ChunkingService.TextChunk(i, "chunk " + i, null, null)));
+            if (error != null) throw error;
+            return new DocumentNormalizer.StreamedDocument("big", "text/plain", hash, new Metadata(), 100, count);
+        });
+        List<Integer> batches = new java.util.ArrayList<>();
+        lenient().when(chunkRepository.saveAll(any())).thenAnswer(inv -> {
+            batches.add(((List<?>) inv.getArgument(0)).size());
+            return inv.getArgument(0);
+        });
+        return batches;
+    }
+
+    private Chunk storedChunk(Long id, int index, String content) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        return new Chunk(id, 42L, index, content, HexFormat.of().formatHex(digest), content.length(),
+            null, null, null, LocalDateTime.now());
+    }
+}
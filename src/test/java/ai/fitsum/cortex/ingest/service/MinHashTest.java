@@ -0,0 +1,47 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinHashTest {
+
+    private static final String REPORT = IntStream.range(0, 300)
+        .mapToObj(i -> "Section " + i + " of the quarterly report covers revenue line " + (i * 7) + " in detail.")
+        .collect(Collectors.joining(" "));
+
+    @Test
+    void nearIdenticalTextsShareBuckets() {
+        int[] original = MinHash.signature(REPORT);
+        int[] edited = MinHash.signature(REPORT.replace("Section 42 ", "Part 42 ").toUpperCase() + " Footer.");
+
+        assertThat(MinHash.similarity(original, edited)).isGreaterThan(0.9);
+        assertThat(List.of(MinHash.buckets(original))).containsAnyElementsOf(List.of(MinHash.buckets(edited)));
+        assertThat(MinHash.fromBytes(MinHash.toBytes(original))).isEqualTo(original);
+    }
+
+    @Test
+    void unrelatedTextsDoNot() {
+        String other = IntStream.range(0, 300)
+            .mapToObj(i -> "Chapter " + i + " describes how the migration tool rewrites schema " + (i * 13) + ".")
+            .collect(Collectors.joining(" "));
+        int[] a = MinHash.signature(REPORT);
+        int[] b = MinHash.signature(other);
+
+        assertThat(MinHash.similarity(a, b)).isLessThan(0.1);
+        assertThat(Arrays.asList(MinHash.buckets(a))).doesNotContainAnyElementsOf(Arrays.asList(MinHash.buckets(b)));
+    }
+
+    @Test
+    void piecesAddUpToTheWholeWithinEachPiece() {
+        MinHash.Builder builder = new MinHash.Builder().add("one two three four five six");
+        assertThat(builder.shingles()).isEqualTo(2);
+        builder.add("seven eight");
+        assertThat(builder.shingles()).isEqualTo(2);
+    }
+}
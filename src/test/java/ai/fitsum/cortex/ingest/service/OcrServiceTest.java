@@ -0,0 +1,148 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.OcrProperties;
+import net.sourceforge.tess4j.Tesseract;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OcrServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private OcrService service;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (service != null) service.shutdown();
+    }
+
+    @Test
+    void recognizesPagesInOrder() throws Exception {
+        Tesseract engine = mock(Tesseract.class);
+        when(engine.doOCR(any(BufferedImage.class))).thenReturn("scanned text");
+        service = service(2, Duration.ofSeconds(10), engine);
+
+        try (PDDocument doc = pages(5)) {
+            assertThat(service.ocrPages(doc, List.of(0, 1, 2, 3, 4))).containsExactly(
+                "scanned text", "scanned text", "scanned text", "scanned text", "scanned text");
+        }
+    }
+
+    @Test
+    void hungEngineCostsOneTimeoutNotOnePerPage() throws Exception {
+        Tesseract engine = mock(Tesseract.class);
+        when(engine.doOCR(any(BufferedImage.class))).thenAnswer(inv -> {
+            // Like native Tesseract, ignores interrupts
+            while (true) {
+                try {
+                    release.await();
+                    return "late";
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        service = service(1, Duration.ofMillis(300), engine);
+
+        try (PDDocument doc = pages(8)) {
+            long start = System.nanoTime();
+            List<String> texts = service.ocrPages(doc, IntStream.range(0, 8).boxed().toList());
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            assertThat(texts).containsExactlyElementsOf(Collections.nCopies(8, null));
+            assertThat(elapsedMs).isLessThan(8 * 300 / 2);
+        }
+    }
+
+    @Test
+    void failedRecognitionIsNotCached() throws Exception {
+        Tesseract engine = mock(Tesseract.class);
+        when(engine.doOCR(any(BufferedImage.class))).thenReturn(null);
+        OcrCache cache = mock(OcrCache.class);
+        when(cache.isEnabled()).thenReturn(true);
+        when(cache.get(anyString(), anyInt())).thenReturn(Optional.empty());
+        service = new OcrService(properties(1, Duration.ofSeconds(10)), cache, () -> engine);
+
+        try (PDDocument doc = pages(1)) {
+            assertThat(service.ocrPages(doc, List.of(0))).containsExactly((String) null);
+        }
+        verify(cache, never()).put(anyString(), anyInt(), any());
+    }
+
+    @Test
+    void imageCacheKeyFollowsTheSizeClamp() throws Exception {
+        Tesseract engine = mock(Tesseract.class);
+        when(engine.doOCR(any(BufferedImage.class))).thenReturn("text");
+        OcrCache cache = mock(OcrCache.class);
+        when(cache.isEnabled()).thenReturn(true);
+        when(cache.get(anyString(), anyInt())).thenReturn(Optional.empty());
+        byte[] png = png(400, 200);
+
+        OcrProperties props = properties(1, Duration.ofSeconds(10));
+        service = new OcrService(props, cache, () -> engine);
+        service.ocrImage(png);
+        props.setMaxImageWidth(100);
+        service.ocrImage(png);
+
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(cache, times(2)).put(keys.capture(), eq(0), eq("text"));
+        assertThat(keys.getAllValues().get(0)).isNotEqualTo(keys.getAllValues().get(1));
+    }
+
+    private OcrService service(int workers, Duration pageTimeout, Tesseract engine) {
+        OcrProperties props = properties(workers, pageTimeout);
+        return new OcrService(props, new OcrCache(props, null), () -> engine);
+    }
+
+    private static OcrProperties properties(int workers, Duration pageTimeout) {
+        OcrProperties props = new OcrProperties();
+        props.setEnabled(true);
+        props.setWorkers(workers);
+        props.setPageTimeout(pageTimeout);
+        props.setDpi(20);
+        props.setCacheEnabled(false);
+        return props;
+    }
+
+    private static byte[] png(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        for (int x = 0; x < width; x += 7) {
+            image.getRaster().setSample(x, x % height, 0, 255);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static PDDocument pages(int count) {
+        PDDocument doc = new PDDocument();
+        for (int i = 0; i < count; i++) {
+            doc.addPage(new PDPage(PDRectangle.A6));
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,53 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecursiveDirectoryWatcherTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void reportsSettledFilesInNewSubdirectoriesAndDeletions() throws Exception {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        try (RecursiveDirectoryWatcher watcher = new RecursiveDirectoryWatcher(root, true, Duration.ofMillis(100),
+                dir -> !dir.getFileName().toString().equals("ignored"), new RecursiveDirectoryWatcher.Listener() {
+                    @Override
+                    public void changed(Path file) { events.add("changed " + root.relativize(file)); }
+
+                    @Override
+                    public void deleted(Path path) { events.add("deleted " + root.relativize(path)); }
+
+                    @Override
+                    public void overflow() { events.add("overflow"); }
+                })) {
+            watcher.start();
+
+            Path file = root.resolve("notes.md");
+            Files.writeString(file, "one");
+            Files.writeString(file, "two"); // rapid rewrites are reported once
+            assertThat(events.poll(10, TimeUnit.SECONDS)).isEqualTo("changed notes.md");
+
+            Path sub = Files.createDirectories(root.resolve("a/b"));
+            Files.writeString(sub.resolve("deep.txt"), "deep");
+            assertThat(events.poll(10, TimeUnit.SECONDS)).isEqualTo("changed " + Path.of("a", "b", "deep.txt"));
+            assertThat(watcher.watchedDirectories()).isEqualTo(3);
+
+            Files.createDirectories(root.resolve("ignored"));
+            Files.delete(file);
+            assertThat(events.poll(10, TimeUnit.SECONDS)).isEqualTo("deleted notes.md");
+            assertThat(events.poll(300, TimeUnit.MILLISECONDS)).isNull();
+            assertThat(watcher.watchedDirectories()).isEqualTo(3);
+        }
+    }
+}
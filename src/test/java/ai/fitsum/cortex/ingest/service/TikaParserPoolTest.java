@@ -0,0 +1,171 @@
+package ai.fitsum.cortex.ingest.service;
+
+import ai.fitsum.cortex.api.config.ParserProperties;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AbstractParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TikaParserPoolTest {
+
+    private TikaParserPool pool;
+    private volatile boolean releaseStuckParsers;
+
+    @AfterEach
+    void tearDown() {
+        releaseStuckParsers = true;
+        if (pool != null) pool.shutdown();
+    }
+
+    @Test
+    void cutsOffTextAtMaxLength() throws Exception {
+        ParserProperties properties = new ParserProperties();
+        properties.setMaxTextLength(100);
+        pool = new TikaParserPool(properties);
+
+        TikaParserPool.Parsed parsed = pool.parseToString(
+            new ByteArrayInputStream("word ".repeat(1000).getBytes(StandardCharsets.UTF_8)), metadata("big.csv"));
+
+        assertThat(parsed.truncated()).isTrue();
+        assertThat(parsed.text().length()).isLessThanOrEqualTo(100);
+        assertThat(parsed.text()).startsWith("word word");
+    }
+
+    @Test
+    void failsParsesThatOutrunTheTimeout() {
+        ParserProperties properties = new ParserProperties();
+        properties.setWorkers(1);
+        properties.setTimeout(Duration.ofMillis(300));
+        pool = new TikaParserPool(properties);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> pool.parseToString(slowStream(), metadata("slow.csv")))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("did not finish");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+
+        // The stuck parse gives its slot back once it notices the deadline
+        assertThatThrownBy(() -> pool.parse(slowStream(), new StringWriter(), metadata("slow2.csv")))
+            .hasMessageContaining("did not finish");
+    }
+
+    @Test
+    void abandonsAParserThatNeverReturnsAndReusesItsSlot() throws Exception {
+        ParserProperties properties = new ParserProperties();
+        properties.setWorkers(1);
+        properties.setTimeout(Duration.ofMillis(300));
+        pool = new TikaParserPool(properties, new StuckParser());
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> pool.parseToString(InputStream.nullInputStream(), metadata("stuck")))
+            .hasMessageContaining("did not finish");
+
+        // The only slot went to a new thread while the first one still spins
+        assertThat(pool.parseToString(InputStream.nullInputStream(), metadata("fine")).text()).contains("ok");
+        assertThatThrownBy(() -> pool.parse(InputStream.nullInputStream(), new StringWriter(), metadata("stuck")))
+            .hasMessageContaining("did not finish");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void extractionsHandTheirTextToTheCallingThreadUpToTheLimit() throws Exception {
+        ParserProperties properties = new ParserProperties();
+        properties.setMaxTextLength(10);
+        pool = new TikaParserPool(properties);
+        Thread caller = Thread.currentThread();
+        List<String> received = new ArrayList<>();
+
+        TikaParserPool.Extracted<String> extracted = pool.extract("doc.pdf", out -> {
+            out.startPage(1);
+            out.write("page one ");
+            out.startPage(2);
+            out.write("page two");
+            return "done";
+        }, new TikaParserPool.TextSink() {
+            @Override
+            public void startPage(int pageNumber) {
+                assertThat(Thread.currentThread()).isSameAs(caller);
+                received.add("#" + pageNumber);
+            }
+
+            @Override
+            public void write(String text) {
+                assertThat(Thread.currentThread()).isSameAs(caller);
+                received.add(text);
+            }
+        });
+
+        assertThat(extracted.truncated()).isTrue();
+        assertThat(received).containsExactly("#1", "page one ", "#2", "p");
+    }
+
+    private static Metadata metadata(String name) {
+        Metadata metadata = new Metadata();
+        metadata.set("resourceName", name);
+        return metadata;
+    }
+
+    /** Spins without reading or writing anything, ignoring interrupts, for documents named "stuck". */
+    private final class StuckParser extends AbstractParser {
+        @Override
+        public Set<MediaType> getSupportedTypes(ParseContext context) {
+            return Set.of(MediaType.TEXT_PLAIN);
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws SAXException {
+            if ("stuck".equals(metadata.get("resourceName"))) {
+                while (!releaseStuckParsers) {
+                    Thread.onSpinWait();
+                }
+                return;
+            }
+            XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+            xhtml.startDocument();
+            xhtml.element("p", "ok");
+            xhtml.endDocument();
+        }
+    }
+
+    /** Endless input, one byte every 10 ms. */
+    private static InputStream slowStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                return 'a';
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                b[off] = (byte) read();
+                return 1;
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WatcherClusterTest {
+
+    @Test
+    void spreadsFilesEvenlyAndOnlyMovesTheDepartedNodesShare() {
+        List<String> three = List.of("node-a", "node-b", "node-c");
+        List<String> two = List.of("node-a", "node-c");
+        Map<String, Integer> counts = new HashMap<>();
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String path = "docs/" + (i % 97) + "/file-" + i + ".md";
+            String before = WatcherCluster.owner(three, path);
+            String after = WatcherCluster.owner(two, path);
+            counts.merge(before, 1, Integer::sum);
+            if (!before.equals(after)) {
+                assertThat(before).isEqualTo("node-b");
+                moved++;
+            }
+        }
+
+        assertThat(counts.values()).allSatisfy(n -> assertThat(n).isBetween(9_000, 11_000));
+        assertThat(moved).isEqualTo(counts.get("node-b"));
+        assertThat(WatcherCluster.owner(List.of(), "a.md")).isNull();
+    }
+}
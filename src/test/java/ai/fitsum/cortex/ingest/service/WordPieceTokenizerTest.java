@@ -0,0 +1,65 @@
+package ai.fitsum.cortex.ingest.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WordPieceTokenizerTest {
+
+    private static WordPieceTokenizer tokenizer;
+
+    @BeforeAll
+    static void loadVocabulary() throws Exception {
+        String vocab = String.join("\n",
+            "[PAD]", "[UNK]", "[CLS]", "[SEP]", ".", ",", "!",
+            "the", "un", "##aff", "##able", "token", "##izer", "##s", "cafe", "x", "##x");
+        tokenizer = WordPieceTokenizer.load(new ByteArrayInputStream(vocab.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void splitsWordsIntoLongestVocabularyPieces() {
+        assertThat(tokenizer.vocabularySize()).isEqualTo(17);
+        assertThat(tokenizer.count("unaffable")).isEqualTo(3);   // un ##aff ##able
+        assertThat(tokenizer.count("Tokenizers.")).isEqualTo(4); // token ##izer ##s .
+        assertThat(tokenizer.count("the, the!")).isEqualTo(4);
+    }
+
+    @Test
+    void unmatchedAndOverlongWordsCountAsOneUnknown() {
+        assertThat(tokenizer.count("unknowable")).isEqualTo(1);
+        assertThat(tokenizer.count("x".repeat(100))).isEqualTo(100);
+        assertThat(tokenizer.count("x".repeat(101))).isEqualTo(1);
+    }
+
+    @Test
+    void lowercasesAndStripsAccents() {
+        assertThat(tokenizer.count("CAFÉ Café")).isEqualTo(2);
+        assertThat(tokenizer.count("中文")).isEqualTo(2); // CJK characters are split individually
+    }
+
+    @Test
+    void fitStopsAtWordBoundaryWithinBudget() {
+        String text = "unaffable tokenizers the";
+
+        int end = tokenizer.fit(text, 0, text.length(), 6);
+
+        assertThat(text.substring(0, end)).isEqualTo("unaffable tokenizers");
+        assertThat(tokenizer.count(text, 0, end)).isEqualTo(6);
+        assertThat(tokenizer.fit(text, 0, text.length(), 1)).isPositive();
+    }
+
+    @Test
+    void fitCutsAnOverlongFirstWordBetweenCodePoints() throws Exception {
+        String vocab = String.join("\n", "[UNK]", "x", "\uD83D\uDE00", "##x", "##\uD83D\uDE00");
+        WordPieceTokenizer emoji = WordPieceTokenizer.load(new ByteArrayInputStream(vocab.getBytes(StandardCharsets.UTF_8)));
+        String grin = "\uD83D\uDE00";
+
+        assertThat(emoji.count("x" + grin + grin)).isEqualTo(3);
+        assertThat(emoji.fit("x" + grin + grin, 0, 5, 2)).isEqualTo(1);  // not between the halves of the first pair
+        assertThat(emoji.fit(grin + "xx", 0, 4, 1)).isEqualTo(2);        // a pair that starts the range is kept whole
+    }
+}
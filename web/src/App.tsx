@@ -1,4 +1,4 @@
-import { useMutation, useQuery, useQueryClient } from '@tanstack/react-query'
+import { useInfiniteQuery, useMutation, useQuery, useQueryClient } from '@tanstack/react-query'
 import { useState, useRef, useEffect } from 'react'
 import { useDropzone } from 'react-dropzone'
 import { Brain, Eye, X } from 'lucide-react'
@@ -25,7 +25,6 @@ type Document = {
   title: string
   contentType: string
   contentHash: string
-  rawContent: string
   metadataJson: string
   indexedAt: string
   createdAt: string
@@ -43,13 +42,40 @@ type Chunk = {
   createdAt: string
 }
 
-type DocumentWithChunks = {
+type DocumentDetail = {
   document: Document
-  chunks: Chunk[]
+  chunkCount: number
+  content: string | null
+}
+
+type Page<T> = {
+  items: T[]
+  nextCursor: number | null
 }
 
 type QuickMode = 'text' | 'voice'
 
+type IngestTask = {
+  id: number
+  status: 'QUEUED' | 'RUNNING' | 'DONE' | 'FAILED'
+  documentId: number | null
+  lastError: string | null
+}
+
+// Upload and URL ingests answer 202 with a task id; poll the task until it finishes
+async function awaitIngestTask(res: Response): Promise<number> {
+  if (!res.ok) throw new Error(await res.text())
+  const { taskId } = await res.json()
+  for (;;) {
+    const r = await fetch(`${API_BASE}/v1/ingest/tasks/${taskId}`)
+    if (r.status === 404) throw new Error(`Ingest task ${taskId} not found`)
+    const task: IngestTask = await r.json()
+    if (task.status === 'DONE') return task.documentId as number
+    if (task.status === 'FAILED') throw new Error(task.lastError ?? 'Ingest failed')
+    await new Promise(resolve => setTimeout(resolve, 1000))
+  }
+}
+
 function GlobalDropOverlay({ onFiles }: { onFiles: (files: File[]) => void }) {
   const { getRootProps, getInputProps, isDragActive } = useDropzone({
     noClick: true, noKeyboard: true,
@@ -145,11 +171,7 @@ function UploadCard({ onUploaded }: { onUploaded: () => void }) {
     form.append('file', file)
     setUploading(true)
     fetch(`${API_BASE}/v1/ingest/upload`, { method: 'POST', body: form })
-      .then(async r => {
-        const t = await r.text()
-        if (!r.ok) throw new Error(t)
-        return t
-      })
+      .then(awaitIngestTask)
       .then(() => onUploaded())
       .catch(err => onUploaded() || alert(`Upload failed: ${err.message ?? err}`))
       .finally(() => setUploading(false))
@@ -167,12 +189,25 @@ function DocumentDetailModal({ documentId, onClose }: { documentId: number | nul
   const { data, isLoading, error } = useQuery({
     queryKey: ['document', documentId],
     queryFn: async () => {
-      const res = await fetch(`${API_BASE}/v1/ingest/document/${documentId}`)
+      const res = await fetch(`${API_BASE}/v1/ingest/document/${documentId}?content=true`)
       if (!res.ok) throw new Error('Document not found')
-      return res.json() as Promise<DocumentWithChunks>
+      return res.json() as Promise<DocumentDetail>
+    },
+    enabled: !!documentId
+  })
+  const chunkPages = useInfiniteQuery({
+    queryKey: ['document-chunks', documentId],
+    queryFn: async ({ pageParam }) => {
+      const cursor = pageParam != null ? `&cursor=${pageParam}` : ''
+      const res = await fetch(`${API_BASE}/v1/ingest/document/${documentId}/chunks?content=true&limit=50${cursor}`)
+      if (!res.ok) throw new Error('Failed to load chunks')
+      return res.json() as Promise<Page<Chunk>>
     },
+    initialPageParam: null as number | null,
+    getNextPageParam: (last) => last.nextCursor,
     enabled: !!documentId
   })
+  const chunks = chunkPages.data?.pages.flatMap(p => p.items) ?? []
 
   const [activeTab, setActiveTab] = useState<'content' | 'chunks' | 'metadata'>('content')
 
@@ -206,7 +241,7 @@ function DocumentDetailModal({ documentId, onClose }: { documentId: number | nul
                 className={`px-4 py-2 text-sm ${activeTab === 'chunks' ? 'border-b-2 border-blue-500 text-blue-600' : 'text-gray-600'}`}
                 onClick={() => setActiveTab('chunks')}
               >
-                Chunks ({data.chunks.length})
+                Chunks ({data.chunkCount})
               </button>
               <button
                 className={`px-4 py-2 text-sm ${activeTab === 'metadata' ? 'border-b-2 border-blue-500 text-blue-600' : 'text-gray-600'}`}
@@ -226,7 +261,7 @@ function DocumentDetailModal({ documentId, onClose }: { documentId: number | nul
                   </div>
                   <div className="prose max-w-none">
                     <pre className="whitespace-pre-wrap text-sm text-gray-900 bg-gray-50 p-3 rounded border">
-                      {data.document.rawContent || 'No content available'}
+                      {data.content || 'No content available'}
                     </pre>
                   </div>
                 </div>
@@ -234,7 +269,7 @@ function DocumentDetailModal({ documentId, onClose }: { documentId: number | nul
               
               {activeTab === 'chunks' && (
                 <div className="space-y-3">
-                  {data.chunks.map((chunk, index) => (
+                  {chunks.map((chunk) => (
                     <div key={chunk.id} className="border rounded p-3">
                       <div className="flex justify-between items-start mb-2">
                         <div className="text-sm text-gray-600">
@@ -249,6 +284,12 @@ function DocumentDetailModal({ documentId, onClose }: { documentId: number | nul
                       </div>
                     </div>
                   ))}
+                  {chunkPages.hasNextPage && (
+                    <button className="text-sm text-blue-600" onClick={() => chunkPages.fetchNextPage()}
+                      disabled={chunkPages.isFetchingNextPage}>
+                      {chunkPages.isFetchingNextPage ? 'Loading…' : 'Load more chunks'}
+                    </button>
+                  )}
                 </div>
               )}
               
@@ -282,7 +323,10 @@ function RecentUploads({ onAskAbout }: { onAskAbout: (doc: { id: number, title:
   const [viewingDocument, setViewingDocument] = useState<number | null>(null)
   const { data, refetch, isLoading } = useQuery({
     queryKey: ['recent'],
-    queryFn: async () => (await fetch(`${API_BASE}/v1/ingest/recent?limit=10`)).json()
+    queryFn: async () => {
+      const res = await fetch(`${API_BASE}/v1/ingest/documents?limit=10&fields=title,contentType,indexedAt`)
+      return ((await res.json()) as Page<Document>).items
+    }
   })
   const del = async (id: number) => {
     if (!confirm('Delete this document?')) return
@@ -433,8 +477,7 @@ Details: ${msg}`)
     setToast('Uploading…');
     try {
       const res = await fetch(`${API_BASE}/v1/ingest/upload`, { method: 'POST', body: form });
-      const t = await res.text();
-      if (!res.ok) throw new Error(t);
+      await awaitIngestTask(res);
       setToast('File ingested successfully');
       await qc.invalidateQueries({ queryKey: ['recent'] });
     } catch (e: any) {
@@ -489,8 +532,7 @@ Details: ${msg}`)
                       setToast('Fetching URL…')
                       try {
                         const res = await fetch(`${API_BASE}/v1/ingest/url`, { method: 'POST', headers: { 'Content-Type': 'application/json' }, body: JSON.stringify({ url }) })
-                        const t = await res.text();
-                        if (!res.ok) throw new Error(t)
+                        await awaitIngestTask(res)
                         setToast('URL ingested successfully')
                         await qc.invalidateQueries({ queryKey: ['recent'] })
                       } catch (e:any) {